@@ -117,6 +117,7 @@ create table SYS_SCHEDULED_TASK (
     PERMITTED_SERVERS varchar(4096),
     LOG_START boolean,
     LOG_FINISH boolean,
+    PRIORITY integer,
     LAST_START_TIME timestamp,
     LAST_START_SERVER varchar(512),
     DESCRIPTION varchar(1000),
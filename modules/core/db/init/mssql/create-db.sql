@@ -115,6 +115,7 @@ create table SYS_SCHEDULED_TASK (
     PERMITTED_SERVERS varchar(4096),
     LOG_START tinyint,
     LOG_FINISH tinyint,
+    PRIORITY integer,
     LAST_START_TIME datetime,
     LAST_START_SERVER varchar(512),
     DESCRIPTION varchar(1000),
@@ -466,10 +467,10 @@ create table SEC_ENTITY_LOG (
 
 create clustered index IDX_SEC_ENTITY_LOG_EVENT_TS on SEC_ENTITY_LOG (EVENT_TS)^
 
-create index IDX_SEC_ENTITY_LOG_ENTITY_ID on SEC_ENTITY_LOG (ENTITY_ID)^
-create index IDX_SEC_ENTITY_LOG_SENTITY_ID on SEC_ENTITY_LOG (STRING_ENTITY_ID)^
-create index IDX_SEC_ENTITY_LOG_IENTITY_ID on SEC_ENTITY_LOG (INT_ENTITY_ID)^
-create index IDX_SEC_ENTITY_LOG_LENTITY_ID on SEC_ENTITY_LOG (LONG_ENTITY_ID)^
+create index IDX_SEC_ENTITY_LOG_ENTITY_ID on SEC_ENTITY_LOG (ENTITY_ID, EVENT_TS)^
+create index IDX_SEC_ENTITY_LOG_SENTITY_ID on SEC_ENTITY_LOG (STRING_ENTITY_ID, EVENT_TS)^
+create index IDX_SEC_ENTITY_LOG_IENTITY_ID on SEC_ENTITY_LOG (INT_ENTITY_ID, EVENT_TS)^
+create index IDX_SEC_ENTITY_LOG_LENTITY_ID on SEC_ENTITY_LOG (LONG_ENTITY_ID, EVENT_TS)^
 
 ------------------------------------------------------------------------------------------------------------
 
@@ -112,6 +112,7 @@ create table SYS_SCHEDULED_TASK (
     PERMITTED_SERVERS varchar(4096),
     LOG_START boolean,
     LOG_FINISH boolean,
+    PRIORITY integer,
     LAST_START_TIME datetime(3),
     LAST_START_SERVER varchar(512),
     DESCRIPTION varchar(1000),
@@ -488,10 +489,10 @@ create table SEC_ENTITY_LOG (
     constraint FK_SEC_ENTITY_LOG_USER foreign key (USER_ID) references SEC_USER(ID)
 )^
 
-create index IDX_SEC_ENTITY_LOG_ENTITY_ID on SEC_ENTITY_LOG (ENTITY_ID)^
-create index IDX_SEC_ENTITY_LOG_SENTITY_ID on SEC_ENTITY_LOG (STRING_ENTITY_ID)^
-create index IDX_SEC_ENTITY_LOG_IENTITY_ID on SEC_ENTITY_LOG (INT_ENTITY_ID)^
-create index IDX_SEC_ENTITY_LOG_LENTITY_ID on SEC_ENTITY_LOG (LONG_ENTITY_ID)^
+create index IDX_SEC_ENTITY_LOG_ENTITY_ID on SEC_ENTITY_LOG (ENTITY_ID, EVENT_TS)^
+create index IDX_SEC_ENTITY_LOG_SENTITY_ID on SEC_ENTITY_LOG (STRING_ENTITY_ID, EVENT_TS)^
+create index IDX_SEC_ENTITY_LOG_IENTITY_ID on SEC_ENTITY_LOG (INT_ENTITY_ID, EVENT_TS)^
+create index IDX_SEC_ENTITY_LOG_LENTITY_ID on SEC_ENTITY_LOG (LONG_ENTITY_ID, EVENT_TS)^
 
 /**********************************************************************************************/
 
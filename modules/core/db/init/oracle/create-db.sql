@@ -298,6 +298,7 @@ create table SYS_SCHEDULED_TASK (
     PERMITTED_SERVERS varchar2(4000),
     LOG_START char(1),
     LOG_FINISH char(1),
+    PRIORITY integer,
     LAST_START_TIME timestamp,
     LAST_START_SERVER varchar2(512),
     DESCRIPTION varchar2(1000),
@@ -428,10 +429,10 @@ create table SEC_ENTITY_LOG (
     CHANGES clob,
     primary key(ID)
 )^
-create index IDX_SEC_ENTITY_LOG_ENTITY_ID on SEC_ENTITY_LOG(ENTITY_ID)^
-create index IDX_SEC_ENTITY_LOG_SENTITY_ID on SEC_ENTITY_LOG (STRING_ENTITY_ID)^
-create index IDX_SEC_ENTITY_LOG_IENTITY_ID on SEC_ENTITY_LOG (INT_ENTITY_ID)^
-create index IDX_SEC_ENTITY_LOG_LENTITY_ID on SEC_ENTITY_LOG (LONG_ENTITY_ID)^
+create index IDX_SEC_ENTITY_LOG_ENTITY_ID on SEC_ENTITY_LOG (ENTITY_ID, EVENT_TS)^
+create index IDX_SEC_ENTITY_LOG_SENTITY_ID on SEC_ENTITY_LOG (STRING_ENTITY_ID, EVENT_TS)^
+create index IDX_SEC_ENTITY_LOG_IENTITY_ID on SEC_ENTITY_LOG (INT_ENTITY_ID, EVENT_TS)^
+create index IDX_SEC_ENTITY_LOG_LENTITY_ID on SEC_ENTITY_LOG (LONG_ENTITY_ID, EVENT_TS)^
 
 create table SEC_FILTER (
     ID varchar2(32) not null,
@@ -0,0 +1,8 @@
+drop index IDX_SEC_ENTITY_LOG_ENTITY_ID^
+create index IDX_SEC_ENTITY_LOG_ENTITY_ID on SEC_ENTITY_LOG (ENTITY_ID, EVENT_TS)^
+drop index IDX_SEC_ENTITY_LOG_SENTITY_ID^
+create index IDX_SEC_ENTITY_LOG_SENTITY_ID on SEC_ENTITY_LOG (STRING_ENTITY_ID, EVENT_TS)^
+drop index IDX_SEC_ENTITY_LOG_IENTITY_ID^
+create index IDX_SEC_ENTITY_LOG_IENTITY_ID on SEC_ENTITY_LOG (INT_ENTITY_ID, EVENT_TS)^
+drop index IDX_SEC_ENTITY_LOG_LENTITY_ID^
+create index IDX_SEC_ENTITY_LOG_LENTITY_ID on SEC_ENTITY_LOG (LONG_ENTITY_ID, EVENT_TS)^
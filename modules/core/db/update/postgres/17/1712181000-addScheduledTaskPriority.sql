@@ -0,0 +1 @@
+alter table SYS_SCHEDULED_TASK add PRIORITY integer^
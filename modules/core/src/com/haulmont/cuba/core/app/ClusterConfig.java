@@ -66,4 +66,19 @@ public interface ClusterConfig extends Config {
     @Property("cuba.cluster.messageSendingQueueCapacity")
     @DefaultInt(Integer.MAX_VALUE)
     int getClusterMessageSendingQueueCapacity();
+
+    /**
+     * @return whether pessimistic locks are partitioned between cluster nodes instead of being replicated to all nodes
+     * @see LockManager
+     */
+    @Property("cuba.cluster.lockSharding")
+    @DefaultBoolean(false)
+    boolean getLockSharding();
+
+    /**
+     * @return timeout in milliseconds of a lock request sent to the node owning the lock
+     */
+    @Property("cuba.cluster.lockRequestTimeout")
+    @DefaultLong(5000)
+    long getLockRequestTimeout();
 }
@@ -16,6 +16,8 @@
  */
 package com.haulmont.cuba.core.app;
 
+import java.util.List;
+
 /**
  * Interface to be implemented by middleware cluster listeners. A cluster listener receives messages from other nodes
  * in the cluster.
@@ -50,4 +52,13 @@ public interface ClusterListener<T> {
      * @param state byte array containing the state
      */
     void setState(byte[] state);
+
+    /**
+     * Invoked by clustering implementation when the set of active cluster nodes changes.
+     *
+     * @param viewId  identifier of the new cluster view, growing with each view change
+     * @param members names of active nodes, see {@link ClusterManagerAPI#getCurrentMembers()}
+     */
+    default void membersChanged(long viewId, List<String> members) {
+    }
 }
@@ -38,12 +38,16 @@ import org.springframework.context.event.EventListener;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.management.MBeanServer;
 import java.io.*;
 import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
@@ -63,6 +67,8 @@ public class ClusterManager implements ClusterManagerAPI {
 
     protected View currentView;
 
+    protected volatile Map<String, Address> memberAddresses = Collections.emptyMap();
+
     protected ThreadPoolExecutor executor;
 
     @Inject
@@ -135,7 +141,51 @@ public class ClusterManager implements ClusterManagerAPI {
         internalSend(message, true);
     }
 
+    @Override
+    public void send(Serializable message, String member) {
+        if (channel == null)
+            return;
+
+        log.trace("Submitting message: {}: {} to send asynchronously to {}", message.getClass(), message, member);
+        executor.execute(new SendMessageRunnable(message, member));
+    }
+
+    @Override
+    public void sendSync(Serializable message, String member) {
+        if (channel == null)
+            return;
+
+        // the message is sent in the current thread to keep the order of messages, without waiting for the delivery
+        internalSend(message, member, false);
+    }
+
+    @Override
+    public List<String> getCurrentMembers() {
+        return new ArrayList<>(memberAddresses.keySet());
+    }
+
+    @Override
+    public String getLocalMember() {
+        JChannel channel = this.channel;
+        if (channel == null || channel.getAddress() == null)
+            return null;
+
+        return channel.getAddress().toString();
+    }
+
     protected void internalSend(Serializable message, boolean sync) {
+        internalSend(message, null, sync);
+    }
+
+    protected void internalSend(Serializable message, @Nullable String member, boolean sync) {
+        Address dest = null;
+        if (member != null) {
+            dest = memberAddresses.get(member);
+            if (dest == null) {
+                log.debug("Member {} is not in the current view, message is not sent: {}", member, message);
+                return;
+            }
+        }
         StopWatch sw = new Slf4JStopWatch(String.format("sendClusterMessage(%s)", message.getClass().getSimpleName()));
         try {
             byte[] bytes = SerializationSupport.serialize(message);
@@ -144,7 +194,7 @@ public class ClusterManager implements ClusterManagerAPI {
             if (stat != null) {
                 stat.updateSent(bytes.length);
             }
-            Message msg = new Message(null, null, bytes);
+            Message msg = new Message(dest, null, bytes);
             if (sync) {
                 msg.setFlag(Message.Flag.RSVP);
             }
@@ -286,6 +336,7 @@ public class ClusterManager implements ClusterManagerAPI {
         }
         channel = null;
         currentView = null;
+        memberAddresses = Collections.emptyMap();
     }
 
     @Override
@@ -417,6 +468,22 @@ public class ClusterManager implements ClusterManagerAPI {
         public void viewAccepted(View new_view) {
             log.info("New cluster view: {}", new_view);
             currentView = new_view;
+
+            Map<String, Address> addresses = new LinkedHashMap<>();
+            for (Address member : new_view.getMembers()) {
+                addresses.put(member.toString(), member);
+            }
+            memberAddresses = Collections.unmodifiableMap(addresses);
+
+            List<String> members = new ArrayList<>(addresses.keySet());
+            long viewId = new_view.getViewId().getId();
+            for (ClusterListener listener : listeners.values()) {
+                try {
+                    listener.membersChanged(viewId, members);
+                } catch (Exception e) {
+                    log.error("Error notifying listener {} about view change", listener, e);
+                }
+            }
         }
 
         @Override
@@ -508,14 +575,20 @@ public class ClusterManager implements ClusterManagerAPI {
 
     protected class SendMessageRunnable implements Runnable {
         protected Serializable message;
+        protected String member;
 
         public SendMessageRunnable(Serializable message) {
             this.message = message;
         }
 
+        public SendMessageRunnable(Serializable message, String member) {
+            this.message = message;
+            this.member = member;
+        }
+
         @Override
         public void run() {
-            internalSend(message, false);
+            internalSend(message, member, false);
         }
     }
 
@@ -16,7 +16,10 @@
  */
 package com.haulmont.cuba.core.app;
 
+import javax.annotation.Nullable;
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Interface defining methods for communication in a middleware cluster.
@@ -39,6 +42,45 @@ public interface ClusterManagerAPI {
      */
     void sendSync(Serializable message);
 
+    /**
+     * Send a message to the specified cluster node asynchronously. If the clustering implementation doesn't
+     * support targeted messages, the message is sent to all active nodes.
+     *
+     * @param message serializable message
+     * @param member  name of the target node, see {@link #getCurrentMembers()}
+     */
+    default void send(Serializable message, String member) {
+        send(message);
+    }
+
+    /**
+     * Send a message to the specified cluster node in the current thread, bypassing the queue of asynchronous
+     * messages. Messages sent this way by one thread to one node are received in the order of sending.
+     * If the clustering implementation doesn't support targeted messages, the message is sent to all active nodes.
+     *
+     * @param message serializable message
+     * @param member  name of the target node, see {@link #getCurrentMembers()}
+     */
+    default void sendSync(Serializable message, String member) {
+        sendSync(message);
+    }
+
+    /**
+     * @return names of active cluster nodes in the order of joining the cluster, or empty list if clustering is not
+     * started. The names are unique within the cluster view.
+     */
+    default List<String> getCurrentMembers() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return name of this cluster node or null if clustering is not started
+     */
+    @Nullable
+    default String getLocalMember() {
+        return null;
+    }
+
     /**
      * @return whether the synchronous sending is forced for the current thread
      * @see #setSyncSendingForCurrentThread(boolean)
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Immutable consistent hash ring assigning string keys to cluster members.
+ * <p>Each member is placed on the ring at several points, so the keys are distributed evenly, and a change of
+ * the member set moves only the keys of the joined or left members.</p>
+ */
+public class ConsistentHashRing {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    protected final NavigableMap<Long, String> ring = new TreeMap<>();
+
+    protected final Set<String> members;
+
+    public ConsistentHashRing(Collection<String> members) {
+        this(members, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashRing(Collection<String> members, int virtualNodes) {
+        this.members = Collections.unmodifiableSet(new LinkedHashSet<>(members));
+        for (String member : this.members) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(member + "#" + i), member);
+            }
+        }
+    }
+
+    /**
+     * @return the member owning the key or null if the ring is empty
+     */
+    @Nullable
+    public String getOwner(String key) {
+        if (ring.isEmpty())
+            return null;
+
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public Set<String> getMembers() {
+        return members;
+    }
+
+    protected long hash(String value) {
+        return HASH_FUNCTION.hashString(value, StandardCharsets.UTF_8).asLong();
+    }
+}
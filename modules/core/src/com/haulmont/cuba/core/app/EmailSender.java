@@ -17,9 +17,11 @@
 
 package com.haulmont.cuba.core.app;
 
+import com.haulmont.cuba.core.entity.FileDescriptor;
 import com.haulmont.cuba.core.entity.SendingAttachment;
 import com.haulmont.cuba.core.entity.SendingMessage;
 import com.haulmont.cuba.core.global.EmailHeader;
+import com.haulmont.cuba.core.global.FileStorageException;
 import com.haulmont.cuba.core.global.FileTypesHelper;
 import com.haulmont.cuba.core.global.TimeSource;
 import com.haulmont.cuba.core.sys.CubaMailSender;
@@ -30,6 +32,8 @@ import org.perf4j.StopWatch;
 import org.perf4j.slf4j.Slf4JStopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Component;
 
@@ -43,6 +47,7 @@ import javax.mail.Part;
 import javax.mail.internet.*;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.util.*;
 
 @Component(EmailSenderAPI.NAME)
 public class EmailSender implements EmailSenderAPI {
@@ -54,6 +59,9 @@ public class EmailSender implements EmailSenderAPI {
     @Inject
     protected TimeSource timeSource;
 
+    @Inject
+    protected FileStorageAPI fileStorage;
+
     @Resource(name = CubaMailSender.NAME)
     public void setMailSender(JavaMailSender mailSender) {
         this.mailSender = mailSender;
@@ -70,6 +78,58 @@ public class EmailSender implements EmailSenderAPI {
         log.info("Email '{}' to '{}' has been sent successfully", msg.getSubject(), sendingMessage.getAddress());
     }
 
+    @Override
+    public Map<SendingMessage, Exception> sendEmails(List<SendingMessage> sendingMessages) {
+        Map<SendingMessage, Exception> failures = new LinkedHashMap<>();
+        Map<MimeMessage, SendingMessage> messages = new IdentityHashMap<>();
+        List<MimeMessage> mimeMessages = new ArrayList<>(sendingMessages.size());
+        for (SendingMessage sendingMessage : sendingMessages) {
+            try {
+                MimeMessage msg = createMimeMessage(sendingMessage);
+                messages.put(msg, sendingMessage);
+                mimeMessages.add(msg);
+            } catch (Exception e) {
+                failures.put(sendingMessage, e);
+            }
+        }
+        if (mimeMessages.isEmpty()) {
+            return failures;
+        }
+
+        StopWatch sw = new Slf4JStopWatch("EmailSender.sendBatch");
+        try {
+            mailSender.send(mimeMessages.toArray(new MimeMessage[mimeMessages.size()]));
+        } catch (MailSendException e) {
+            Map<Object, Exception> failedMessages = e.getFailedMessages();
+            if (failedMessages.isEmpty()) {
+                for (SendingMessage sendingMessage : messages.values()) {
+                    failures.put(sendingMessage, e);
+                }
+            }
+            for (Map.Entry<Object, Exception> entry : failedMessages.entrySet()) {
+                SendingMessage sendingMessage = messages.get(entry.getKey());
+                if (sendingMessage != null) {
+                    failures.put(sendingMessage,
+                            new MailSendException("Failed to send message", entry.getValue()));
+                }
+            }
+        } catch (MailException e) {
+            for (SendingMessage sendingMessage : messages.values()) {
+                failures.put(sendingMessage, e);
+            }
+        } finally {
+            sw.stop();
+        }
+
+        for (SendingMessage sendingMessage : messages.values()) {
+            if (!failures.containsKey(sendingMessage)) {
+                log.info("Email '{}' to '{}' has been sent successfully",
+                        sendingMessage.getCaption(), sendingMessage.getAddress());
+            }
+        }
+        return failures;
+    }
+
     protected MimeMessage createMimeMessage(SendingMessage sendingMessage) throws MessagingException {
         MimeMessage msg = mailSender.createMimeMessage();
         assignRecipient(sendingMessage, msg);
@@ -160,7 +220,12 @@ public class EmailSender implements EmailSenderAPI {
     }
 
     protected MimeBodyPart createAttachmentPart(SendingAttachment attachment) throws MessagingException {
-        DataSource source = new MyByteArrayDataSource(attachment.getContent());
+        DataSource source;
+        if (attachment.getContent() == null && attachment.getContentFile() != null) {
+            source = new FileStorageDataSource(fileStorage, attachment.getContentFile());
+        } else {
+            source = new MyByteArrayDataSource(attachment.getContent());
+        }
 
         String mimeType = FileTypesHelper.getMIMEType(attachment.getName());
         String encodedFileName = encodeAttachmentName(attachment);
@@ -196,6 +261,43 @@ public class EmailSender implements EmailSenderAPI {
         return encodedFileName;
     }
 
+    /**
+     * Reads the attachment content from file storage when the message is written to the SMTP connection.
+     */
+    protected static class FileStorageDataSource implements DataSource {
+        private FileStorageAPI fileStorage;
+        private FileDescriptor fileDescriptor;
+
+        public FileStorageDataSource(FileStorageAPI fileStorage, FileDescriptor fileDescriptor) {
+            this.fileStorage = fileStorage;
+            this.fileDescriptor = fileDescriptor;
+        }
+
+        @Override
+        public String getContentType() {
+            return "application/octet-stream";
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            try {
+                return fileStorage.openStream(fileDescriptor);
+            } catch (FileStorageException e) {
+                throw new IOException("Unable to read attachment " + fileDescriptor.getName(), e);
+            }
+        }
+
+        @Override
+        public String getName() {
+            return fileDescriptor.getName();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return null;
+        }
+    }
+
     protected static class MyByteArrayDataSource implements DataSource {
         private byte[] data;
 
@@ -20,6 +20,8 @@ package com.haulmont.cuba.core.app;
 import com.haulmont.cuba.core.entity.SendingMessage;
 
 import javax.mail.MessagingException;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Adapter to javax.mail email sending API.
@@ -38,4 +40,12 @@ public interface EmailSenderAPI {
      * @throws MessagingException if delivery fails
      */
     void sendEmail(SendingMessage sendingMessage) throws MessagingException;
+
+    /**
+     * Sends several emails through a single SMTP connection if possible.
+     * Message bodies must be loaded from file storage, attachments stored in file storage are read while sending.
+     *
+     * @return exceptions of the messages which were not sent
+     */
+    Map<SendingMessage, Exception> sendEmails(List<SendingMessage> sendingMessages);
 }
\ No newline at end of file
@@ -25,6 +25,8 @@ import com.haulmont.cuba.core.entity.SendingAttachment;
 import com.haulmont.cuba.core.entity.SendingMessage;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.persistence.DbTypeConverter;
+import com.haulmont.cuba.core.sys.persistence.DbmsType;
 import com.haulmont.cuba.security.app.Authentication;
 import com.sun.mail.smtp.SMTPAddressFailedException;
 import org.apache.commons.io.FilenameUtils;
@@ -39,11 +41,16 @@ import org.springframework.stereotype.Component;
 import javax.annotation.Nullable;
 import javax.annotation.Resource;
 import javax.inject.Inject;
+import javax.mail.MessagingException;
 import javax.mail.internet.AddressException;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 
 @Component(EmailerAPI.NAME)
 public class Emailer implements EmailerAPI {
@@ -56,6 +63,12 @@ public class Emailer implements EmailerAPI {
 
     protected volatile int callCount = 0;
 
+    protected LongAdder sentCount = new LongAdder();
+    protected LongAdder notSentCount = new LongAdder();
+    protected LongAdder requeuedCount = new LongAdder();
+    protected LongAdder sendingTimeMs = new LongAdder();
+    protected LongAdder sendingCount = new LongAdder();
+
     @Resource(name = "mailSendTaskExecutor")
     protected TaskExecutor mailSendTaskExecutor;
 
@@ -164,20 +177,42 @@ public class Emailer implements EmailerAPI {
     }
 
     protected void sendSendingMessage(SendingMessage sendingMessage) {
-        Objects.requireNonNull(sendingMessage, "sendingMessage is null");
-        Objects.requireNonNull(sendingMessage.getAddress(), "sendingMessage.address is null");
-        Objects.requireNonNull(sendingMessage.getCaption(), "sendingMessage.caption is null");
-        Objects.requireNonNull(sendingMessage.getContentText(), "sendingMessage.contentText is null");
-        Objects.requireNonNull(sendingMessage.getFrom(), "sendingMessage.from is null");
+        sendSendingMessages(Collections.singletonList(sendingMessage));
+    }
+
+    protected void sendSendingMessages(List<SendingMessage> sendingMessages) {
+        for (SendingMessage sendingMessage : sendingMessages) {
+            Objects.requireNonNull(sendingMessage, "sendingMessage is null");
+            Objects.requireNonNull(sendingMessage.getAddress(), "sendingMessage.address is null");
+            Objects.requireNonNull(sendingMessage.getCaption(), "sendingMessage.caption is null");
+            Objects.requireNonNull(sendingMessage.getContentText(), "sendingMessage.contentText is null");
+            Objects.requireNonNull(sendingMessage.getFrom(), "sendingMessage.from is null");
+        }
+
+        long start = System.currentTimeMillis();
+        Map<SendingMessage, Exception> failures;
         try {
-            emailSender.sendEmail(sendingMessage);
-            markAsSent(sendingMessage);
+            failures = emailSender.sendEmails(sendingMessages);
         } catch (Exception e) {
-            log.warn("Unable to send email to '" + sendingMessage.getAddress() + "'", e);
-            if (isNeedToRetry(e)) {
-                returnToQueue(sendingMessage);
+            failures = new HashMap<>();
+            for (SendingMessage sendingMessage : sendingMessages) {
+                failures.put(sendingMessage, e);
+            }
+        }
+        sendingTimeMs.add(System.currentTimeMillis() - start);
+        sendingCount.add(sendingMessages.size());
+
+        for (SendingMessage sendingMessage : sendingMessages) {
+            Exception e = failures.get(sendingMessage);
+            if (e == null) {
+                markAsSent(sendingMessage);
             } else {
-                markAsNonSent(sendingMessage);
+                log.warn("Unable to send email to '" + sendingMessage.getAddress() + "'", e);
+                if (isNeedToRetry(e)) {
+                    returnToQueue(sendingMessage);
+                } else {
+                    markAsNonSent(sendingMessage);
+                }
             }
         }
     }
@@ -281,8 +316,10 @@ public class Emailer implements EmailerAPI {
     protected String sendQueuedEmails() {
         List<SendingMessage> messagesToSend = loadEmailsToSend();
 
-        for (SendingMessage msg : messagesToSend) {
-            submitExecutorTask(msg);
+        int batchSize = Math.max(config.getSendingBatchSize(), 1);
+        for (int i = 0; i < messagesToSend.size(); i += batchSize) {
+            submitExecutorTask(new ArrayList<>(
+                    messagesToSend.subList(i, Math.min(i + batchSize, messagesToSend.size()))));
         }
 
         if (messagesToSend.isEmpty()) {
@@ -307,17 +344,25 @@ public class Emailer implements EmailerAPI {
     }
 
     protected void submitExecutorTask(SendingMessage msg) {
+        submitExecutorTask(Collections.singletonList(msg));
+    }
+
+    protected void submitExecutorTask(List<SendingMessage> messages) {
         try {
-            Runnable mailSendTask = new EmailSendTask(msg);
+            Runnable mailSendTask = new EmailSendTask(messages);
             mailSendTaskExecutor.execute(mailSendTask);
         } catch (RejectedExecutionException e) {
-            returnToQueue(msg);
+            for (SendingMessage msg : messages) {
+                returnToQueue(msg);
+            }
         } catch (Exception e) {
             log.error("Exception while sending email: ", e);
-            if (isNeedToRetry(e)) {
-                returnToQueue(msg);
-            } else {
-                markAsNonSent(msg);
+            for (SendingMessage msg : messages) {
+                if (isNeedToRetry(e)) {
+                    returnToQueue(msg);
+                } else {
+                    markAsNonSent(msg);
+                }
             }
         }
     }
@@ -329,22 +374,36 @@ public class Emailer implements EmailerAPI {
 
         try (Transaction tx = persistence.createTransaction()) {
             EntityManager em = persistence.getEntityManager();
-            TypedQuery<SendingMessage> query = em.createQuery(
-                    "select sm from sys$SendingMessage sm" +
-                            " where sm.status = :statusQueue or (sm.status = :statusSending and sm.updateTs < :time)" +
-                            " order by sm.createTs",
-                    SendingMessage.class
-            );
-            query.setParameter("statusQueue", SendingStatus.QUEUE.getId());
-            query.setParameter("time", sendTimeoutTime);
-            query.setParameter("statusSending", SendingStatus.SENDING.getId());
+            TypedQuery<SendingMessage> query;
+            int maxResults = config.getMessageQueueCapacity();
+            String claimSql = getClaimMessagesSql(maxResults);
+            if (claimSql != null) {
+                List<UUID> ids = claimMessages(em, claimSql, sendTimeoutTime, maxResults);
+                if (ids.isEmpty()) {
+                    tx.commit();
+                    return emailsToSend;
+                }
+                query = em.createQuery(
+                        "select sm from sys$SendingMessage sm where sm.id in :ids order by sm.createTs",
+                        SendingMessage.class);
+                query.setParameter("ids", ids);
+            } else {
+                query = em.createQuery(
+                        "select sm from sys$SendingMessage sm" +
+                                " where sm.status = :statusQueue or (sm.status = :statusSending and sm.updateTs < :time)" +
+                                " order by sm.createTs",
+                        SendingMessage.class
+                );
+                query.setParameter("statusQueue", SendingStatus.QUEUE.getId());
+                query.setParameter("time", sendTimeoutTime);
+                query.setParameter("statusSending", SendingStatus.SENDING.getId());
+                query.setMaxResults(config.getMessageQueueCapacity());
+            }
 
             View view = metadata.getViewRepository().getView(SendingMessage.class, "sendingMessage.loadFromQueue");
             view.setLoadPartialEntities(true); // because SendingAttachment.content has FetchType.LAZY
             query.setView(view);
 
-            query.setMaxResults(config.getMessageQueueCapacity());
-
             List<SendingMessage> resList = query.getResultList();
 
             for (SendingMessage msg : resList) {
@@ -364,6 +423,62 @@ public class Emailer implements EmailerAPI {
         return emailsToSend;
     }
 
+    /**
+     * Returns SQL selecting and locking the IDs of messages to send, skipping the rows locked by other nodes,
+     * so several cluster nodes can process the queue concurrently. The number of rows is also limited by the
+     * statement in {@link #claimMessages(EntityManager, String, Date, int)}.
+     *
+     * @return SQL with status and update time parameters, or null if the database doesn't support skipping
+     * locked rows
+     */
+    @Nullable
+    protected String getClaimMessagesSql(int maxResults) {
+        return getClaimMessagesSql(DbmsType.getType(), maxResults);
+    }
+
+    @Nullable
+    protected String getClaimMessagesSql(String dbmsType, int maxResults) {
+        String where = " where DELETE_TS is null and (STATUS = ? or (STATUS = ? and UPDATE_TS < ?))";
+        switch (dbmsType) {
+            case "postgres":
+                return "select ID from SYS_SENDING_MESSAGE" + where
+                        + " order by CREATE_TS limit " + maxResults + " for update skip locked";
+            case "oracle":
+                // neither rownum nor FETCH FIRST can be used here: rownum is applied before skipping locked rows,
+                // so concurrent nodes would filter the same rows and claim nothing, and FETCH FIRST is not allowed
+                // with FOR UPDATE. Oracle locks rows with SKIP LOCKED as they are fetched, so the row limit of the
+                // statement stops locking after maxResults rows.
+                return "select ID from SYS_SENDING_MESSAGE" + where
+                        + " order by CREATE_TS for update skip locked";
+            case "mssql":
+                return "select top (" + maxResults + ") ID from SYS_SENDING_MESSAGE with (updlock, rowlock, readpast)"
+                        + where + " order by CREATE_TS";
+            default:
+                return null;
+        }
+    }
+
+    protected List<UUID> claimMessages(EntityManager em, String claimSql, Date sendTimeoutTime, int maxResults) {
+        DbTypeConverter converter = persistence.getDbTypeConverter();
+        List<UUID> ids = new ArrayList<>();
+        try (PreparedStatement statement = em.getConnection().prepareStatement(claimSql)) {
+            statement.setMaxRows(maxResults);
+            statement.setFetchSize(maxResults);
+            statement.setObject(1, SendingStatus.QUEUE.getId());
+            statement.setObject(2, SendingStatus.SENDING.getId());
+            statement.setObject(3, converter.getSqlObject(sendTimeoutTime));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Object id = resultSet.getObject(1);
+                    ids.add(id instanceof UUID ? (UUID) id : UuidProvider.fromString(id.toString()));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to claim messages to send", e);
+        }
+        return ids;
+    }
+
     @Override
     public String loadContentText(SendingMessage sendingMessage) {
         SendingMessage msg;
@@ -396,12 +511,7 @@ public class Emailer implements EmailerAPI {
                 message.setContentText(body);
             }
 
-            for (SendingAttachment attachment : message.getAttachments()) {
-                if (attachment.getContentFile() != null) {
-                    byte[] content = fileStorage.loadFile(attachment.getContentFile());
-                    attachment.setContent(content);
-                }
-            }
+            // attachments stored in file storage are streamed by EmailSender
         } catch (FileStorageException e) {
             log.error("Failed to load body or attachments for " + message);
         }
@@ -501,6 +611,7 @@ public class Emailer implements EmailerAPI {
             msg.setStatus(SendingStatus.QUEUE);
 
             tx.commit();
+            requeuedCount.increment();
         } catch (Exception e) {
             log.error("Error returning message to '{}' to the queue", sendingMessage.getAddress(), e);
         }
@@ -516,6 +627,7 @@ public class Emailer implements EmailerAPI {
             msg.setDateSent(timeSource.currentTimestamp());
 
             tx.commit();
+            sentCount.increment();
         } catch (Exception e) {
             log.error("Error marking message to '{}' as sent", sendingMessage.getAddress(), e);
         }
@@ -530,6 +642,7 @@ public class Emailer implements EmailerAPI {
             msg.setAttemptsMade(msg.getAttemptsMade() + 1);
 
             tx.commit();
+            notSentCount.increment();
         } catch (Exception e) {
             log.error("Error marking message to '{}' as not sent", sendingMessage.getAddress(), e);
         }
@@ -610,15 +723,43 @@ public class Emailer implements EmailerAPI {
 
     protected boolean isNeedToRetry(Exception e) {
         if (e instanceof MailSendException) {
-            if (e.getCause() instanceof SMTPAddressFailedException) {
-                return false;
-            }
+            return !isAddressFailure(e);
         } else if (e instanceof AddressException) {
             return false;
         }
         return true;
     }
 
+    /**
+     * Checks whether the exception is caused by a rejected recipient address. Walks the causes, the chained
+     * {@link MessagingException#getNextException()} exceptions and the per-message exceptions of
+     * {@link MailSendException}, because the batched sending wraps the exception of each failed message.
+     */
+    protected boolean isAddressFailure(Throwable e) {
+        Set<Throwable> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Throwable> toVisit = new ArrayDeque<>();
+        toVisit.add(e);
+        while (!toVisit.isEmpty()) {
+            Throwable throwable = toVisit.poll();
+            if (!visited.add(throwable)) {
+                continue;
+            }
+            if (throwable instanceof SMTPAddressFailedException || throwable instanceof AddressException) {
+                return true;
+            }
+            if (throwable.getCause() != null) {
+                toVisit.add(throwable.getCause());
+            }
+            if (throwable instanceof MessagingException && ((MessagingException) throwable).getNextException() != null) {
+                toVisit.add(((MessagingException) throwable).getNextException());
+            }
+            if (throwable instanceof MailSendException) {
+                toVisit.addAll(((MailSendException) throwable).getFailedMessages().values());
+            }
+        }
+        return false;
+    }
+
     @Override
     public void migrateEmailsToFileStorage(List<SendingMessage> messages) {
         try (Transaction tx = persistence.createTransaction()) {
@@ -673,13 +814,38 @@ public class Emailer implements EmailerAPI {
         attachment.setContent(null);
     }
 
+    @Override
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    @Override
+    public long getNotSentCount() {
+        return notSentCount.sum();
+    }
+
+    @Override
+    public long getRequeuedCount() {
+        return requeuedCount.sum();
+    }
+
+    @Override
+    public double getAvgSendingTime() {
+        long count = sendingCount.sum();
+        return count == 0 ? 0 : (double) sendingTimeMs.sum() / count;
+    }
+
     protected static class EmailSendTask implements Runnable {
 
-        private SendingMessage sendingMessage;
+        private List<SendingMessage> sendingMessages;
         private Logger log = LoggerFactory.getLogger(EmailSendTask.class);
 
         public EmailSendTask(SendingMessage message) {
-            sendingMessage = message;
+            sendingMessages = Collections.singletonList(message);
+        }
+
+        public EmailSendTask(List<SendingMessage> messages) {
+            sendingMessages = messages;
         }
 
         @Override
@@ -690,7 +856,7 @@ public class Emailer implements EmailerAPI {
 
                 authentication.begin(emailer.getEmailerLogin());
                 try {
-                    emailer.sendSendingMessage(sendingMessage);
+                    emailer.sendSendingMessages(sendingMessages);
                 } finally {
                     authentication.end();
                 }
@@ -108,4 +108,24 @@ public interface EmailerAPI {
      * @return email content text
      */
     String loadContentText(SendingMessage sendingMessage);
+
+    /**
+     * @return number of messages marked as sent since the application start
+     */
+    long getSentCount();
+
+    /**
+     * @return number of messages marked as not sent since the application start
+     */
+    long getNotSentCount();
+
+    /**
+     * @return number of failed sending attempts which returned messages to the queue since the application start
+     */
+    long getRequeuedCount();
+
+    /**
+     * @return average SMTP sending time of a message in milliseconds
+     */
+    double getAvgSendingTime();
 }
\ No newline at end of file
@@ -187,4 +187,25 @@ public interface EmailerConfig extends Config {
     @Property("cuba.emailerUserLogin")
     @Default("admin")
     String getEmailerUserLogin();
-}
\ No newline at end of file
+
+    /**
+     * Maximum number of queued messages sent by one task through a single SMTP connection.
+     */
+    @Property("cuba.email.sendingBatchSize")
+    @DefaultInt(10)
+    int getSendingBatchSize();
+
+    /**
+     * Maximum number of idle SMTP connections kept for reuse. 0 means a connection is opened for each sending.
+     */
+    @Property("cuba.email.smtpConnectionPoolSize")
+    @DefaultInt(4)
+    int getSmtpConnectionPoolSize();
+
+    /**
+     * Idle SMTP connections are closed after this timeout.
+     */
+    @Property("cuba.email.smtpConnectionIdleTimeoutSec")
+    @DefaultInt(30)
+    int getSmtpConnectionIdleTimeoutSec();
+}
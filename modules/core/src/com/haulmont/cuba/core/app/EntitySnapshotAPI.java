@@ -109,4 +109,32 @@ public interface EntitySnapshotAPI {
      * @return Diffs
      */
     EntityDiff getDifference(@Nullable EntitySnapshot first, EntitySnapshot second);
+
+    /**
+     * Re-encode all snapshots of the entity into chains of full snapshots followed by compressed deltas
+     * according to {@link ServerConfig#getEntitySnapshotChainLength()}. Snapshots stored in the legacy XML format
+     * are left as is.
+     *
+     * @param metaClass Entity metaclass
+     * @param id        Entity Id
+     * @return number of re-encoded snapshots
+     */
+    int rebuildSnapshotChains(MetaClass metaClass, Object id);
+
+    /**
+     * Compress all snapshots stored as plain JSON. Snapshots are processed in transactions of the given size.
+     *
+     * @param batchSize number of snapshots processed in one transaction
+     * @return number of compressed snapshots
+     */
+    int compressSnapshots(int batchSize);
+
+    /**
+     * INTERNAL.
+     * Re-encode snapshots stored as deltas against the given full snapshot, so they remain readable after
+     * the full snapshot is removed. Must be invoked in a transaction before the removal.
+     *
+     * @param snapshot full snapshot to be removed
+     */
+    void detachDependentSnapshots(EntitySnapshot snapshot);
 }
\ No newline at end of file
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.google.gson.*;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes the {@link com.haulmont.cuba.core.entity.EntitySnapshot} content.
+ * <p>
+ * Besides the legacy XML and plain JSON content, the following encodings are supported:
+ * <ul>
+ *     <li>{@code z:<data>} - full snapshot, deflated and Base64-encoded</li>
+ *     <li>{@code d:<base id>:<sequence>:<data>} - delta against the full snapshot with the given id, deflated and
+ *     Base64-encoded. The sequence is the position of the delta in the chain of deltas following the full snapshot.</li>
+ *     <li>{@code r:<base id>} - the content is the same as in the snapshot with the given id
+ *     (used for views)</li>
+ * </ul>
+ * A delta is a JSON object with optional {@code "s"} (set values), {@code "r"} (removed properties)
+ * and {@code "o"} (nested object deltas) members. Arrays are replaced as a whole.
+ */
+public final class EntitySnapshotFormat {
+
+    public static final String COMPRESSED_PREFIX = "z:";
+    public static final String DELTA_PREFIX = "d:";
+    public static final String REFERENCE_PREFIX = "r:";
+
+    private static final String SET_KEY = "s";
+    private static final String REMOVE_KEY = "r";
+    private static final String OBJECT_KEY = "o";
+
+    private static final Gson GSON = new GsonBuilder().serializeNulls().create();
+
+    private EntitySnapshotFormat() {
+    }
+
+    public static boolean isCompressed(@Nullable String content) {
+        return content != null && content.startsWith(COMPRESSED_PREFIX);
+    }
+
+    public static boolean isDelta(@Nullable String content) {
+        return content != null && content.startsWith(DELTA_PREFIX);
+    }
+
+    public static boolean isReference(@Nullable String content) {
+        return content != null && content.startsWith(REFERENCE_PREFIX);
+    }
+
+    public static String encodeCompressed(String json) {
+        return COMPRESSED_PREFIX + compress(json);
+    }
+
+    public static String encodeDelta(UUID baseId, int sequence, String delta) {
+        return DELTA_PREFIX + baseId + ":" + sequence + ":" + compress(delta);
+    }
+
+    public static String encodeReference(UUID baseId) {
+        return REFERENCE_PREFIX + baseId;
+    }
+
+    /**
+     * @return the base snapshot id of a delta or reference
+     */
+    public static UUID getBaseId(String content) {
+        int start = content.indexOf(':') + 1;
+        int end = content.indexOf(':', start);
+        return UUID.fromString(end < 0 ? content.substring(start) : content.substring(start, end));
+    }
+
+    /**
+     * @return the position of a delta in its chain
+     */
+    public static int getSequence(String delta) {
+        String[] parts = delta.split(":", 4);
+        return Integer.parseInt(parts[2]);
+    }
+
+    /**
+     * @return decompressed JSON of a compressed snapshot or the delta JSON of a delta snapshot
+     */
+    public static String decodeData(String content) {
+        if (isCompressed(content)) {
+            return decompress(content.substring(COMPRESSED_PREFIX.length()));
+        } else if (isDelta(content)) {
+            return decompress(content.split(":", 4)[3]);
+        }
+        throw new IllegalArgumentException("Content is neither compressed nor delta");
+    }
+
+    /**
+     * Creates a delta transforming the base JSON object to the target one.
+     *
+     * @return delta JSON or null if the base or the target is not a JSON object
+     */
+    @Nullable
+    public static String createDelta(String baseJson, String targetJson) {
+        JsonParser parser = new JsonParser();
+        JsonElement base = parser.parse(baseJson);
+        JsonElement target = parser.parse(targetJson);
+        if (!base.isJsonObject() || !target.isJsonObject()) {
+            return null;
+        }
+        JsonObject delta = createObjectDelta(base.getAsJsonObject(), target.getAsJsonObject());
+        return GSON.toJson(delta != null ? delta : new JsonObject());
+    }
+
+    /**
+     * Applies the delta created by {@link #createDelta(String, String)} to the base JSON.
+     */
+    public static String applyDelta(String baseJson, String deltaJson) {
+        JsonParser parser = new JsonParser();
+        JsonObject base = parser.parse(baseJson).getAsJsonObject();
+        applyObjectDelta(base, parser.parse(deltaJson).getAsJsonObject());
+        return GSON.toJson(base);
+    }
+
+    @Nullable
+    private static JsonObject createObjectDelta(JsonObject base, JsonObject target) {
+        JsonObject set = new JsonObject();
+        JsonArray removed = new JsonArray();
+        JsonObject nested = new JsonObject();
+
+        for (Map.Entry<String, JsonElement> entry : target.entrySet()) {
+            JsonElement baseValue = base.get(entry.getKey());
+            JsonElement targetValue = entry.getValue();
+            if (baseValue == null) {
+                set.add(entry.getKey(), targetValue);
+            } else if (!baseValue.equals(targetValue)) {
+                if (baseValue.isJsonObject() && targetValue.isJsonObject()) {
+                    JsonObject delta = createObjectDelta(baseValue.getAsJsonObject(), targetValue.getAsJsonObject());
+                    if (delta != null) {
+                        nested.add(entry.getKey(), delta);
+                    }
+                } else {
+                    set.add(entry.getKey(), targetValue);
+                }
+            }
+        }
+        for (Map.Entry<String, JsonElement> entry : base.entrySet()) {
+            if (!target.has(entry.getKey())) {
+                removed.add(new JsonPrimitive(entry.getKey()));
+            }
+        }
+
+        if (set.entrySet().isEmpty() && removed.size() == 0 && nested.entrySet().isEmpty()) {
+            return null;
+        }
+        JsonObject delta = new JsonObject();
+        if (!set.entrySet().isEmpty()) {
+            delta.add(SET_KEY, set);
+        }
+        if (removed.size() > 0) {
+            delta.add(REMOVE_KEY, removed);
+        }
+        if (!nested.entrySet().isEmpty()) {
+            delta.add(OBJECT_KEY, nested);
+        }
+        return delta;
+    }
+
+    private static void applyObjectDelta(JsonObject base, JsonObject delta) {
+        JsonArray removed = delta.getAsJsonArray(REMOVE_KEY);
+        if (removed != null) {
+            for (JsonElement key : removed) {
+                base.remove(key.getAsString());
+            }
+        }
+        JsonObject set = delta.getAsJsonObject(SET_KEY);
+        if (set != null) {
+            for (Map.Entry<String, JsonElement> entry : set.entrySet()) {
+                base.add(entry.getKey(), entry.getValue());
+            }
+        }
+        JsonObject nested = delta.getAsJsonObject(OBJECT_KEY);
+        if (nested != null) {
+            for (Map.Entry<String, JsonElement> entry : nested.entrySet()) {
+                JsonElement baseValue = base.get(entry.getKey());
+                if (baseValue == null || !baseValue.isJsonObject()) {
+                    throw new IllegalStateException("Snapshot delta doesn't match its base: " + entry.getKey());
+                }
+                applyObjectDelta(baseValue.getAsJsonObject(), entry.getValue().getAsJsonObject());
+            }
+        }
+    }
+
+    private static String compress(String value) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(value.getBytes(StandardCharsets.UTF_8));
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return Base64.getEncoder().encodeToString(out.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String decompress(String value) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(Base64.getDecoder().decode(value));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated snapshot content");
+                }
+                out.write(buffer, 0, count);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Invalid snapshot content", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.haulmont.cuba.core.app;
+
+import com.haulmont.cuba.core.EntityManager;
+import com.haulmont.cuba.core.entity.EntitySnapshot;
+import com.haulmont.cuba.core.listener.BeforeDeleteEntityListener;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+
+/**
+ * Keeps snapshot chains readable when a full snapshot is removed by re-encoding the deltas stored against it.
+ */
+@Component("cuba_EntitySnapshotListener")
+public class EntitySnapshotListener implements BeforeDeleteEntityListener<EntitySnapshot> {
+
+    @Inject
+    protected EntitySnapshotAPI entitySnapshotAPI;
+
+    @Override
+    public void onBeforeDelete(EntitySnapshot entity, EntityManager entityManager) {
+        entitySnapshotAPI.detachDependentSnapshots(entity);
+    }
+}
@@ -17,10 +17,14 @@
 
 package com.haulmont.cuba.core.app;
 
+import com.haulmont.bali.db.QueryRunner;
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.chile.core.model.MetaClass;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.haulmont.cuba.core.EntityManager;
 import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.Query;
 import com.haulmont.cuba.core.Transaction;
 import com.haulmont.cuba.core.TypedQuery;
 import com.haulmont.cuba.core.app.serialization.EntitySerializationAPI;
@@ -31,22 +35,37 @@ import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.entity.diff.EntityDiff;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.sys.CubaXStream;
+import com.haulmont.cuba.core.sys.persistence.DbTypeConverter;
 import com.haulmont.cuba.security.entity.User;
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.mapper.MapperWrapper;
 import org.dom4j.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
+import java.sql.SQLException;
 import java.util.*;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.lang.String.format;
 
+/**
+ * Standard implementation of {@link EntitySnapshotAPI}.
+ * <p>
+ * If {@link ServerConfig#getEntitySnapshotChainLength()} is positive, snapshots of an entity are stored in chains:
+ * a compressed full snapshot followed by compressed deltas against it, see {@link EntitySnapshotFormat}.
+ * The content of snapshots is reconstructed lazily in {@link #extractEntity(EntitySnapshot)} and
+ * {@link #extractView(EntitySnapshot)}, decoded full snapshots are cached, so restoring several snapshots of a chain,
+ * e.g. to get the difference between them, decodes the full snapshot only once.
+ */
 @Component(EntitySnapshotAPI.NAME)
 public class EntitySnapshotManager implements EntitySnapshotAPI {
 
+    private final Logger log = LoggerFactory.getLogger(EntitySnapshotManager.class);
+
     @Inject
     protected Persistence persistence;
 
@@ -77,6 +96,14 @@ public class EntitySnapshotManager implements EntitySnapshotAPI {
     @Inject
     protected DataManager dataManager;
 
+    @Inject
+    protected ServerConfig serverConfig;
+
+    /**
+     * Decoded content of full snapshots by {@code "e"} or {@code "v"} (for views) prefix and snapshot id.
+     */
+    protected Cache<String, String> fullSnapshotCache = CacheBuilder.newBuilder().maximumSize(200).build();
+
     @Override
     public List<EntitySnapshot> getSnapshots(MetaClass metaClass, Object id) {
         metaClass = extendedEntities.getOriginalOrThisMetaClass(metaClass);
@@ -174,14 +201,36 @@ public class EntitySnapshotManager implements EntitySnapshotAPI {
         EntitySnapshot snapshot = metadata.create(EntitySnapshot.class);
         snapshot.setObjectEntityId(referenceToEntitySupport.getReferenceId(entity));
         snapshot.setEntityMetaClass(metaClass.getName());
-        snapshot.setViewXml(viewSerializationAPI.toJson(view, ViewSerializationOption.COMPACT_FORMAT));
-        snapshot.setSnapshotXml(entitySerializationAPI.toJson(entity));
+        String viewJson = viewSerializationAPI.toJson(view, ViewSerializationOption.COMPACT_FORMAT);
+        String entityJson = entitySerializationAPI.toJson(entity);
         snapshot.setSnapshotDate(snapshotDate);
         snapshot.setAuthor(author);
 
         Transaction tx = persistence.createTransaction();
         try {
             EntityManager em = persistence.getEntityManager();
+            int chainLength = serverConfig.getEntitySnapshotChainLength();
+            if (chainLength > 0) {
+                EntitySnapshot latest = loadLatestSnapshot(metaClass, snapshot.getObjectEntityId());
+                EntitySnapshot base = null;
+                int sequence = 0;
+                if (latest != null) {
+                    String content = latest.getSnapshotXml();
+                    if (EntitySnapshotFormat.isCompressed(content)) {
+                        base = latest;
+                        sequence = 1;
+                    } else if (EntitySnapshotFormat.isDelta(content)) {
+                        sequence = EntitySnapshotFormat.getSequence(content) + 1;
+                        if (sequence < chainLength) {
+                            base = loadSnapshot(EntitySnapshotFormat.getBaseId(content));
+                        }
+                    }
+                }
+                encodeContent(snapshot, entityJson, viewJson, sequence < chainLength ? base : null, sequence);
+            } else {
+                snapshot.setViewXml(viewJson);
+                snapshot.setSnapshotXml(entityJson);
+            }
             em.persist(snapshot);
 
             tx.commit();
@@ -199,7 +248,8 @@ public class EntitySnapshotManager implements EntitySnapshotAPI {
         if (isXml(rawResult)) {
             entity = (BaseGenericIdEntity) fromXML(snapshot.getSnapshotXml());
         } else {
-            entity = entitySerializationAPI.entityFromJson(rawResult, metadata.getClass(snapshot.getEntityMetaClass()));
+            entity = entitySerializationAPI.entityFromJson(decodeEntityJson(snapshot),
+                    metadata.getClass(snapshot.getEntityMetaClass()));
         }
         return entity;
     }
@@ -211,7 +261,7 @@ public class EntitySnapshotManager implements EntitySnapshotAPI {
         if (isXml(rawResult)) {
             view = (View) fromXML(rawResult);
         } else {
-            view = viewSerializationAPI.fromJson(rawResult);
+            view = viewSerializationAPI.fromJson(decodeViewJson(snapshot));
         }
         return view;
     }
@@ -221,6 +271,289 @@ public class EntitySnapshotManager implements EntitySnapshotAPI {
         return diffManager.getDifference(first, second);
     }
 
+    @Override
+    public int rebuildSnapshotChains(MetaClass metaClass, Object id) {
+        int chainLength = serverConfig.getEntitySnapshotChainLength();
+        if (chainLength <= 0) {
+            return 0;
+        }
+        List<EntitySnapshot> snapshots = new ArrayList<>(getSnapshots(metaClass, id));
+        Collections.reverse(snapshots);
+
+        // decode all snapshots before re-encoding as the chains are changed
+        List<String[]> contents = new ArrayList<>(snapshots.size());
+        for (EntitySnapshot snapshot : snapshots) {
+            contents.add(isXml(snapshot.getSnapshotXml()) || isXml(snapshot.getViewXml()) ? null
+                    : new String[]{decodeEntityJson(snapshot), decodeViewJson(snapshot)});
+        }
+
+        int count;
+        Transaction tx = persistence.createTransaction();
+        try {
+            EntityManager em = persistence.getEntityManager();
+            count = encodeChains(snapshots, contents, chainLength);
+            for (int i = 0; i < snapshots.size(); i++) {
+                if (contents.get(i) != null) {
+                    em.merge(snapshots.get(i));
+                }
+            }
+            tx.commit();
+        } finally {
+            tx.end();
+        }
+        fullSnapshotCache.invalidateAll();
+        return count;
+    }
+
+    @Override
+    public void detachDependentSnapshots(EntitySnapshot snapshot) {
+        String content = snapshot.getSnapshotXml();
+        if (!EntitySnapshotFormat.isCompressed(content)) {
+            // only compressed full snapshots can start a chain
+            return;
+        }
+        EntityManager em = persistence.getEntityManager();
+        MetaClass metaClass = metadata.getClassNN(snapshot.getEntityMetaClass());
+        TypedQuery<EntitySnapshot> query = em.createQuery(format(
+                "select s from sys$EntitySnapshot s where s.entity.%s = :entityId and s.entityMetaClass = :metaClass " +
+                        "order by s.snapshotDate", referenceToEntitySupport.getReferenceIdPropertyName(metaClass)),
+                EntitySnapshot.class);
+        query.setParameter("entityId", snapshot.getEntity().getObjectEntityId());
+        query.setParameter("metaClass", snapshot.getEntityMetaClass());
+
+        List<EntitySnapshot> dependents = new ArrayList<>();
+        for (EntitySnapshot candidate : query.getResultList()) {
+            if (!candidate.getId().equals(snapshot.getId())
+                    && !BaseEntityInternalAccess.isRemoved(candidate)
+                    && (isDependent(candidate.getSnapshotXml(), snapshot.getId())
+                    || isDependent(candidate.getViewXml(), snapshot.getId()))) {
+                dependents.add(candidate);
+            }
+        }
+        if (dependents.isEmpty()) {
+            return;
+        }
+
+        // decode the dependents while their base is still available
+        List<String[]> contents = new ArrayList<>(dependents.size());
+        for (EntitySnapshot dependent : dependents) {
+            contents.add(new String[]{decodeEntityJson(dependent), decodeViewJson(dependent)});
+        }
+        fullSnapshotCache.invalidate("e" + snapshot.getId());
+        fullSnapshotCache.invalidate("v" + snapshot.getId());
+
+        int chainLength = Math.max(serverConfig.getEntitySnapshotChainLength(), 1);
+        encodeChains(dependents, contents, chainLength);
+        log.debug("Re-encoded {} snapshots depending on removed snapshot {}", dependents.size(), snapshot.getId());
+    }
+
+    protected boolean isDependent(@Nullable String content, UUID baseId) {
+        return (EntitySnapshotFormat.isDelta(content) || EntitySnapshotFormat.isReference(content))
+                && baseId.equals(EntitySnapshotFormat.getBaseId(content));
+    }
+
+    /**
+     * Encodes the snapshots ordered by date into chains of the given length.
+     *
+     * @param contents decoded entity and view JSON of each snapshot, null for legacy XML snapshots
+     * @return number of encoded snapshots
+     */
+    protected int encodeChains(List<EntitySnapshot> snapshots, List<String[]> contents, int chainLength) {
+        int count = 0;
+        EntitySnapshot base = null;
+        int sequence = 0;
+        for (int i = 0; i < snapshots.size(); i++) {
+            EntitySnapshot snapshot = snapshots.get(i);
+            String[] content = contents.get(i);
+            if (content == null) {
+                // legacy XML snapshot breaks the chain
+                base = null;
+                continue;
+            }
+            if (base == null || ++sequence >= chainLength) {
+                base = null;
+                sequence = 0;
+            }
+            encodeContent(snapshot, content[0], content[1], base, sequence);
+            if (!EntitySnapshotFormat.isDelta(snapshot.getSnapshotXml())) {
+                base = snapshot;
+                sequence = 0;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public int compressSnapshots(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        int compressed = 0;
+        UUID lastId = null;
+        while (true) {
+            try (Transaction tx = persistence.createTransaction()) {
+                EntityManager em = persistence.getEntityManager();
+                Query query = em.createQuery("select s.id, s.snapshotXml, s.viewXml from sys$EntitySnapshot s" +
+                        (lastId != null ? " where s.id > :lastId" : "") + " order by s.id");
+                if (lastId != null) {
+                    query.setParameter("lastId", lastId);
+                }
+                query.setMaxResults(batchSize);
+                @SuppressWarnings("unchecked")
+                List<Object[]> rows = query.getResultList();
+                if (rows.isEmpty()) {
+                    tx.commit();
+                    break;
+                }
+
+                DbTypeConverter converter = persistence.getDbTypeConverter();
+                List<Object[]> params = new ArrayList<>();
+                for (Object[] row : rows) {
+                    String snapshotXml = (String) row[1];
+                    String viewXml = (String) row[2];
+                    // only plain JSON rows are compressed: they are never the base of a chain,
+                    // and full snapshots and deltas already stored in chains are left untouched
+                    if (isPlainJson(snapshotXml) && isPlainJson(viewXml)) {
+                        params.add(new Object[]{
+                                EntitySnapshotFormat.encodeCompressed(snapshotXml),
+                                EntitySnapshotFormat.encodeCompressed(viewXml),
+                                converter.getSqlObject(row[0])
+                        });
+                    }
+                }
+                if (!params.isEmpty()) {
+                    int stringType = converter.getSqlType(String.class);
+                    QueryRunner runner = new QueryRunner();
+                    runner.batch(em.getConnection(),
+                            "update SYS_ENTITY_SNAPSHOT set SNAPSHOT_XML = ?, VIEW_XML = ? where ID = ?",
+                            params.toArray(new Object[params.size()][]),
+                            new int[]{stringType, stringType, converter.getSqlType(UUID.class)});
+                }
+                tx.commit();
+
+                compressed += params.size();
+                lastId = (UUID) rows.get(rows.size() - 1)[0];
+                log.debug("Compressed {} entity snapshots", compressed);
+            } catch (SQLException e) {
+                throw new RuntimeException("Error compressing entity snapshots", e);
+            }
+        }
+        log.info("Compressed {} entity snapshots", compressed);
+        return compressed;
+    }
+
+    /**
+     * Loads the latest snapshot of the entity in the current transaction.
+     */
+    @Nullable
+    protected EntitySnapshot loadLatestSnapshot(MetaClass metaClass, Object referenceId) {
+        EntityManager em = persistence.getEntityManager();
+        TypedQuery<EntitySnapshot> query = em.createQuery(format(
+                "select s from sys$EntitySnapshot s where s.entity.%s = :entityId and s.entityMetaClass = :metaClass " +
+                        "order by s.snapshotDate desc", referenceToEntitySupport.getReferenceIdPropertyName(metaClass)),
+                EntitySnapshot.class);
+        query.setParameter("entityId", referenceId);
+        query.setParameter("metaClass", metaClass.getName());
+        query.setMaxResults(1);
+        return query.getFirstResult();
+    }
+
+    /**
+     * Sets the snapshot content as a delta against the given full snapshot, or as a compressed full snapshot
+     * if there is no base or the delta is not shorter than the full snapshot.
+     *
+     * @param base     full snapshot starting the chain, can be null
+     * @param sequence position of the snapshot in the chain
+     */
+    protected void encodeContent(EntitySnapshot snapshot, String entityJson, String viewJson,
+                                 @Nullable EntitySnapshot base, int sequence) {
+        String compressed = EntitySnapshotFormat.encodeCompressed(entityJson);
+        if (base != null) {
+            String delta = EntitySnapshotFormat.createDelta(decodeEntityJson(base), entityJson);
+            if (delta != null) {
+                String encodedDelta = EntitySnapshotFormat.encodeDelta(base.getId(), sequence, delta);
+                if (encodedDelta.length() < compressed.length()) {
+                    snapshot.setSnapshotXml(encodedDelta);
+                    snapshot.setViewXml(viewJson.equals(decodeViewJson(base))
+                            ? EntitySnapshotFormat.encodeReference(base.getId())
+                            : EntitySnapshotFormat.encodeCompressed(viewJson));
+                    return;
+                }
+            }
+        }
+        snapshot.setSnapshotXml(compressed);
+        snapshot.setViewXml(EntitySnapshotFormat.encodeCompressed(viewJson));
+    }
+
+    /**
+     * Returns JSON of the entity stored in the snapshot, reconstructing it from the full snapshot if needed.
+     */
+    protected String decodeEntityJson(EntitySnapshot snapshot) {
+        String content = snapshot.getSnapshotXml();
+        if (EntitySnapshotFormat.isDelta(content)) {
+            String baseJson = getFullSnapshotContent(EntitySnapshotFormat.getBaseId(content), false);
+            return EntitySnapshotFormat.applyDelta(baseJson, EntitySnapshotFormat.decodeData(content));
+        }
+        if (EntitySnapshotFormat.isCompressed(content)) {
+            return getFullSnapshotContent(snapshot.getId(), content, false);
+        }
+        return content;
+    }
+
+    /**
+     * Returns JSON of the view stored in the snapshot, taking it from the full snapshot if needed.
+     */
+    protected String decodeViewJson(EntitySnapshot snapshot) {
+        String content = snapshot.getViewXml();
+        if (EntitySnapshotFormat.isReference(content)) {
+            return getFullSnapshotContent(EntitySnapshotFormat.getBaseId(content), true);
+        }
+        if (EntitySnapshotFormat.isCompressed(content)) {
+            return getFullSnapshotContent(snapshot.getId(), content, true);
+        }
+        return content;
+    }
+
+    protected String getFullSnapshotContent(UUID snapshotId, boolean view) {
+        String cached = fullSnapshotCache.getIfPresent((view ? "v" : "e") + snapshotId);
+        if (cached != null) {
+            return cached;
+        }
+        EntitySnapshot snapshot = loadSnapshot(snapshotId);
+        if (snapshot == null) {
+            throw new IllegalStateException("Full entity snapshot not found: " + snapshotId);
+        }
+        return view ? decodeViewJson(snapshot) : decodeEntityJson(snapshot);
+    }
+
+    protected String getFullSnapshotContent(UUID snapshotId, String content, boolean view) {
+        String key = (view ? "v" : "e") + snapshotId;
+        String json = fullSnapshotCache.getIfPresent(key);
+        if (json == null) {
+            json = EntitySnapshotFormat.decodeData(content);
+            fullSnapshotCache.put(key, json);
+        }
+        return json;
+    }
+
+    @Nullable
+    protected EntitySnapshot loadSnapshot(UUID snapshotId) {
+        Transaction tx = persistence.getTransaction();
+        try {
+            EntityManager em = persistence.getEntityManager();
+            EntitySnapshot snapshot = em.find(EntitySnapshot.class, snapshotId, View.LOCAL);
+            tx.commit();
+            return snapshot;
+        } finally {
+            tx.end();
+        }
+    }
+
+    protected boolean isPlainJson(@Nullable String value) {
+        return value != null && value.trim().startsWith("{");
+    }
+
     protected Object fromXML(String xml) {
         final List exclUpdateFields = Arrays.asList("updateTs", "updatedBy");
         XStream xStream = new CubaXStream() {
@@ -33,15 +33,29 @@ import org.springframework.stereotype.Component;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Standard implementation of {@link LockManagerAPI}.
+ * <p>By default, each lock is replicated to all cluster nodes. If {@link ClusterConfig#getLockSharding()} is set,
+ * each lock is kept only by the node owning its key according to the consistent hashing over the current cluster
+ * view. Other nodes send lock requests to the owner and wait for the answer, so conflicts are detected immediately.
+ * In this mode, {@link #getCurrentLocks()} returns the locks owned by the current node only.</p>
+ * <p>Every request carries the identifier of the sender's cluster view. The owner serves it only if it is in the same
+ * view and still owns the key, otherwise the request is rejected and retried by the sender until
+ * {@link ClusterConfig#getLockRequestTimeout()} elapses. When the view changes, each node hands over the locks owned
+ * by other nodes now and sends a (possibly empty) {@link LockShardMessage.Type#TRANSFER} to every other node. A node
+ * serves requests only after it has received the handover from all other nodes of the view, so a lock moved to it
+ * can't be granted twice. Locks kept by a failed node are lost. If views change again while the handover is in
+ * progress, conflicting locks are reconciled by keeping the older one.</p>
+ */
 @Component(LockManagerAPI.NAME)
 public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
 
+    private static final long SHARD_RETRY_DELAY_MS = 20;
+
     private static class LockKey {
         
         private final String name;
@@ -71,6 +85,65 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
             result = 31 * result + (id != null ? id.hashCode() : 0);
             return result;
         }
+
+        @Override
+        public String toString() {
+            return name + "/" + id;
+        }
+    }
+
+    private static class LockExpiration implements Comparable<LockExpiration> {
+
+        private final long deadline;
+        private final LockKey key;
+        private final LockInfo lockInfo;
+
+        private LockExpiration(long deadline, LockKey key, LockInfo lockInfo) {
+            this.deadline = deadline;
+            this.key = key;
+            this.lockInfo = lockInfo;
+        }
+
+        @Override
+        public int compareTo(LockExpiration other) {
+            return Long.compare(deadline, other.deadline);
+        }
+    }
+
+    /**
+     * Cluster view the locks are partitioned by.
+     */
+    private static class ShardView {
+
+        private final long epoch;
+        private final ConsistentHashRing ring;
+
+        private ShardView(long epoch, ConsistentHashRing ring) {
+            this.epoch = epoch;
+            this.ring = ring;
+        }
+    }
+
+    private class ShardMessageListener implements ClusterListener<LockShardMessage> {
+
+        @Override
+        public void receive(LockShardMessage message) {
+            receiveShardMessage(message);
+        }
+
+        @Override
+        public byte[] getState() {
+            return new byte[0];
+        }
+
+        @Override
+        public void setState(byte[] state) {
+        }
+
+        @Override
+        public void membersChanged(long viewId, List<String> members) {
+            rebalance(viewId, members);
+        }
     }
 
     private Logger log = LoggerFactory.getLogger(LockManager.class);
@@ -79,21 +152,46 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
 
     private Map<LockKey, LockInfo> locks = new ConcurrentHashMap<>();
 
+    // guarded by itself
+    private final PriorityQueue<LockExpiration> expirations = new PriorityQueue<>();
+
+    // guards the shard view, the handover state and the changes of owned locks in the sharded mode
+    private final Object shardLock = new Object();
+
+    private volatile ShardView shardView;
+
+    // nodes of the current view the handover is not received from yet
+    private final Set<String> awaitedTransfers = new HashSet<>();
+
+    // handovers sent by nodes which are already in a newer view than the current node
+    private final List<LockShardMessage> earlyTransfers = new ArrayList<>();
+
+    private final AtomicLong requestCounter = new AtomicLong();
+
+    private final Map<Long, CompletableFuture<LockShardMessage>> pendingRequests = new ConcurrentHashMap<>();
+
+    @Inject
+    protected Persistence persistence;
+
     @Inject
-    private Persistence persistence;
+    protected Metadata metadata;
 
     @Inject
-    private Metadata metadata;
+    protected UserSessionSource userSessionSource;
 
     @Inject
-    private UserSessionSource userSessionSource;
+    protected TimeSource timeSource;
 
-    private ClusterManagerAPI clusterManager;
+    @Inject
+    protected ClusterConfig clusterConfig;
+
+    protected ClusterManagerAPI clusterManager;
 
     @Inject
     public void setClusterManager(ClusterManagerAPI clusterManager) {
         this.clusterManager = clusterManager;
         this.clusterManager.addListener(LockInfo.class, this);
+        this.clusterManager.addListener(LockShardMessage.class, new ShardMessageListener());
     }
 
     private Map<String, LockDescriptor> getConfig() {
@@ -122,14 +220,23 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
         return config;
     }
 
+    /**
+     * @return whether locks are partitioned between the nodes of a started cluster
+     */
+    private boolean isSharded() {
+        return clusterConfig.getLockSharding() && shardView != null;
+    }
+
     @Override
     public LockInfo lock(String name, String id) {
         LockKey key = new LockKey(name, id);
 
-        LockInfo lockInfo = locks.get(key);
-        if (lockInfo != null) {
-            log.debug("Already locked: " + lockInfo);
-            return lockInfo;
+        if (!isSharded()) {
+            LockInfo lockInfo = locks.get(key);
+            if (lockInfo != null) {
+                log.debug("Already locked: " + lockInfo);
+                return lockInfo;
+            }
         }
 
         LockDescriptor ld = getConfig().get(name);
@@ -137,8 +244,24 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
             return new LockNotSupported();
         }
 
-        lockInfo = new LockInfo(userSessionSource.getUserSession().getCurrentOrSubstitutedUser(), name, id);
-        locks.put(key, lockInfo);
+        LockInfo lockInfo = new LockInfo(userSessionSource.getUserSession().getCurrentOrSubstitutedUser(), name, id);
+
+        if (isSharded()) {
+            LockInfo existing = executeShardRequest(LockShardMessage.Type.LOCK, key, lockInfo).getLockInfo();
+            if (existing != null) {
+                log.debug("Already locked: " + existing);
+            } else {
+                log.debug("Locked " + name + "/" + id);
+            }
+            return existing;
+        }
+
+        LockInfo existing = locks.putIfAbsent(key, lockInfo);
+        if (existing != null) {
+            log.debug("Already locked: " + existing);
+            return existing;
+        }
+        scheduleExpiration(key, lockInfo);
         log.debug("Locked " + name + "/" + id);
 
         clusterManager.send(lockInfo);
@@ -159,7 +282,15 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
 
     @Override
     public void unlock(String name, String id) {
-        LockInfo lockInfo = locks.remove(new LockKey(name, id));
+        LockKey key = new LockKey(name, id);
+
+        if (isSharded()) {
+            executeShardRequest(LockShardMessage.Type.UNLOCK, key, null);
+            log.debug("Unlocked " + name + "/" + id);
+            return;
+        }
+
+        LockInfo lockInfo = locks.remove(key);
         if (lockInfo != null) {
             log.debug("Unlocked " + name + "/" + id);
 
@@ -184,7 +315,12 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
             return new LockNotSupported();
         }
 
-        return locks.get(new LockKey(name, id));
+        LockKey key = new LockKey(name, id);
+        if (isSharded()) {
+            return executeShardRequest(LockShardMessage.Type.GET, key, null).getLockInfo();
+        }
+
+        return locks.get(key);
     }
 
     @Override
@@ -195,24 +331,17 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
     @Override
     public void expireLocks() {
         log.debug("Expiring locks");
-        ArrayList<LockKey> list = new ArrayList<>(locks.keySet());
-        for (LockKey key : list) {
-            LockInfo lockInfo = locks.get(key);
-            if (lockInfo != null) {
-                LockDescriptor ld = getConfig().get(key.name);
-                if (ld == null) {
-                    log.debug("Lock " + key.name + "/" + key.id + " configuration not found, remove it");
-                    locks.remove(key);
-                } else {
-                    Integer timeoutSec = ld.getTimeoutSec();
-                    if (timeoutSec != null && timeoutSec > 0) {
-                        Date since = lockInfo.getSince();
-                        if (since.getTime() + timeoutSec * 1000 < AppBeans.get(TimeSource.class).currentTimestamp().getTime()) {
-                            log.debug("Lock " + key.name + "/" + key.id + " expired");
-                            locks.remove(key);
-                        }
-                    }
-                }
+        long now = timeSource.currentTimeMillis();
+        List<LockExpiration> expired = new ArrayList<>();
+        synchronized (expirations) {
+            while (!expirations.isEmpty() && expirations.peek().deadline < now) {
+                expired.add(expirations.poll());
+            }
+        }
+        for (LockExpiration expiration : expired) {
+            // the lock could be released and acquired again since the expiration was scheduled
+            if (locks.remove(expiration.key, expiration.lockInfo)) {
+                log.debug("Lock " + expiration.key + " expired");
             }
         }
     }
@@ -220,6 +349,37 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
     @Override
     public void reloadConfiguration() {
         config = null;
+
+        synchronized (expirations) {
+            expirations.clear();
+        }
+        for (Map.Entry<LockKey, LockInfo> entry : locks.entrySet()) {
+            if (getConfig().get(entry.getKey().name) == null) {
+                log.debug("Lock " + entry.getKey() + " configuration not found, remove it");
+                locks.remove(entry.getKey(), entry.getValue());
+            } else {
+                scheduleExpiration(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void scheduleExpiration(LockKey key, LockInfo lockInfo) {
+        LockDescriptor ld = getConfig().get(key.name);
+        if (ld == null) {
+            return;
+        }
+        Integer timeoutSec = ld.getTimeoutSec();
+        if (timeoutSec != null && timeoutSec > 0) {
+            long deadline = lockInfo.getSince().getTime() + timeoutSec * 1000L;
+            synchronized (expirations) {
+                expirations.add(new LockExpiration(deadline, key, lockInfo));
+            }
+        }
+    }
+
+    private void putLock(LockKey key, LockInfo lockInfo) {
+        locks.put(key, lockInfo);
+        scheduleExpiration(key, lockInfo);
     }
 
     @Override
@@ -228,7 +388,7 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
         if (message.getUser() != null) {
             LockInfo lockInfo = locks.get(key);
             if (lockInfo == null || lockInfo.getSince().before(message.getSince())) {
-                locks.put(key, message);
+                putLock(key, message);
             }
         } else {
             locks.remove(key);
@@ -237,6 +397,11 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
 
     @Override
     public byte[] getState() {
+        if (isSharded()) {
+            // locks are handed over to the new node on view change
+            return new byte[0];
+        }
+
         List<LockInfo> list = new ArrayList<>(locks.values());
 
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -269,4 +434,238 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
             receive(lockInfo);
         }
     }
-}
\ No newline at end of file
+
+    private LockShardMessage createMessage(LockShardMessage.Type type, long requestId, String target, long epoch) {
+        return new LockShardMessage(type, requestId, clusterManager.getLocalMember(), target, epoch);
+    }
+
+    /**
+     * Sends the request to the node owning the key in the current view, or serves it locally if the current node
+     * is the owner. Rejected requests are repeated with the then current view until the request timeout elapses.
+     */
+    private LockShardMessage executeShardRequest(LockShardMessage.Type type, LockKey key, @Nullable LockInfo lockInfo) {
+        String localMember = clusterManager.getLocalMember();
+        long deadline = System.currentTimeMillis() + clusterConfig.getLockRequestTimeout();
+        while (true) {
+            ShardView view = shardView;
+            String owner = view.ring.getOwner(key.toString());
+            if (owner == null) {
+                owner = localMember;
+            }
+            LockShardMessage request = createMessage(type, requestCounter.incrementAndGet(), owner, view.epoch)
+                    .setEntity(key.name, key.id)
+                    .setLockInfo(lockInfo);
+
+            LockShardMessage response;
+            if (owner.equals(localMember)) {
+                response = serveRequest(request);
+            } else {
+                response = sendRequest(owner, request, key, deadline);
+            }
+            if (response.getType() == LockShardMessage.Type.RESPONSE) {
+                return response;
+            }
+
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new RuntimeException("Unable to execute " + type + " of lock " + key
+                        + ": the owner doesn't accept requests while the cluster view is changing");
+            }
+            log.debug("{} of lock {} rejected by {} in view {}, retrying", type, key, owner, view.epoch);
+            try {
+                Thread.sleep(Math.min(remaining, SHARD_RETRY_DELAY_MS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for lock " + key, e);
+            }
+        }
+    }
+
+    private LockShardMessage sendRequest(String owner, LockShardMessage request, LockKey key, long deadline) {
+        CompletableFuture<LockShardMessage> future = new CompletableFuture<>();
+        pendingRequests.put(request.getRequestId(), future);
+        try {
+            clusterManager.send(request, owner);
+            return future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for lock " + key + " from " + owner, e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new RuntimeException("Unable to get lock " + key + " from " + owner, e);
+        } finally {
+            pendingRequests.remove(request.getRequestId());
+        }
+    }
+
+    /**
+     * Serves a LOCK, UNLOCK or GET request if the current node owns the key in the request's view and has received
+     * the handover of this view from all other nodes.
+     */
+    private LockShardMessage serveRequest(LockShardMessage request) {
+        LockKey key = new LockKey(request.getEntityName(), request.getEntityId());
+        synchronized (shardLock) {
+            ShardView view = shardView;
+            String localMember = clusterManager.getLocalMember();
+            if (view == null || request.getEpoch() != view.epoch || !awaitedTransfers.isEmpty()
+                    || !localMember.equals(view.ring.getOwner(key.toString()))) {
+                return createMessage(LockShardMessage.Type.REJECTED, request.getRequestId(), request.getSender(),
+                        view != null ? view.epoch : 0);
+            }
+
+            LockInfo result = null;
+            switch (request.getType()) {
+                case LOCK:
+                    LockInfo lockInfo = request.getLockInfo();
+                    result = locks.putIfAbsent(key, lockInfo);
+                    if (result == null && lockInfo != null) {
+                        scheduleExpiration(key, lockInfo);
+                    }
+                    break;
+                case UNLOCK:
+                    locks.remove(key);
+                    break;
+                case GET:
+                    result = locks.get(key);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported request type: " + request.getType());
+            }
+            return createMessage(LockShardMessage.Type.RESPONSE, request.getRequestId(), request.getSender(), view.epoch)
+                    .setLockInfo(result);
+        }
+    }
+
+    private void receiveShardMessage(LockShardMessage message) {
+        String localMember = clusterManager.getLocalMember();
+        if (message.getTarget() != null && !message.getTarget().equals(localMember)) {
+            return;
+        }
+
+        switch (message.getType()) {
+            case LOCK:
+            case UNLOCK:
+            case GET:
+                clusterManager.send(serveRequest(message), message.getSender());
+                break;
+            case RESPONSE:
+            case REJECTED: {
+                CompletableFuture<LockShardMessage> future = pendingRequests.get(message.getRequestId());
+                if (future != null) {
+                    future.complete(message);
+                }
+                break;
+            }
+            case TRANSFER:
+                synchronized (shardLock) {
+                    ShardView view = shardView;
+                    if (view == null || message.getEpoch() > view.epoch) {
+                        // the sender is already in the view the current node hasn't received yet
+                        earlyTransfers.add(message);
+                    } else {
+                        receiveTransfer(message);
+                    }
+                }
+                break;
+            case FORWARD:
+                synchronized (shardLock) {
+                    mergeLocks(message.getLocks());
+                }
+                break;
+            default:
+                log.warn("Unsupported message type: " + message.getType());
+        }
+    }
+
+    // must be called holding shardLock
+    private void receiveTransfer(LockShardMessage message) {
+        mergeLocks(message.getLocks());
+        if (message.getEpoch() == shardView.epoch && awaitedTransfers.remove(message.getSender())
+                && awaitedTransfers.isEmpty()) {
+            log.debug("Locks of view {} are received from all nodes", shardView.epoch);
+        }
+    }
+
+    /**
+     * Adds the locks handed over by other nodes. The locks owned by other nodes in the current view are forwarded
+     * to them. If a lock of the same key exists, the older lock is kept.
+     */
+    // must be called holding shardLock
+    private void mergeLocks(List<LockInfo> received) {
+        ConsistentHashRing ring = shardView.ring;
+        String localMember = clusterManager.getLocalMember();
+        Map<String, List<LockInfo>> forwards = new HashMap<>();
+        for (LockInfo lockInfo : received) {
+            LockKey key = new LockKey(lockInfo.getEntityName(), lockInfo.getEntityId());
+            String owner = ring.getOwner(key.toString());
+            if (owner != null && !owner.equals(localMember)) {
+                forwards.computeIfAbsent(owner, k -> new ArrayList<>()).add(lockInfo);
+                continue;
+            }
+            LockInfo existing = locks.get(key);
+            if (existing == null) {
+                putLock(key, lockInfo);
+            } else if (!existing.equals(lockInfo)) {
+                if (lockInfo.getSince().before(existing.getSince())) {
+                    log.warn("Lock {} is granted twice while the cluster view is changing, keeping the older lock of {}",
+                            key, lockInfo.getUser());
+                    putLock(key, lockInfo);
+                } else {
+                    log.warn("Lock {} is granted twice while the cluster view is changing, keeping the older lock of {}",
+                            key, existing.getUser());
+                }
+            }
+        }
+        for (Map.Entry<String, List<LockInfo>> entry : forwards.entrySet()) {
+            clusterManager.sendSync(createMessage(LockShardMessage.Type.FORWARD, 0, entry.getKey(), shardView.epoch)
+                    .setLocks(entry.getValue()), entry.getKey());
+        }
+    }
+
+    /**
+     * Rebuilds the ring for the new cluster view and hands over the locks owned by other nodes now.
+     */
+    private void rebalance(long viewId, List<String> members) {
+        synchronized (shardLock) {
+            ShardView oldView = shardView;
+            if (oldView != null && viewId <= oldView.epoch) {
+                return;
+            }
+            ConsistentHashRing newRing = new ConsistentHashRing(members);
+            shardView = new ShardView(viewId, newRing);
+            if (!clusterConfig.getLockSharding())
+                return;
+
+            String localMember = clusterManager.getLocalMember();
+            awaitedTransfers.clear();
+            Map<String, List<LockInfo>> transfers = new LinkedHashMap<>();
+            for (String member : members) {
+                if (!member.equals(localMember)) {
+                    awaitedTransfers.add(member);
+                    transfers.put(member, new ArrayList<>());
+                }
+            }
+
+            for (Map.Entry<LockKey, LockInfo> entry : locks.entrySet()) {
+                String owner = newRing.getOwner(entry.getKey().toString());
+                if (owner != null && !owner.equals(localMember)) {
+                    if (locks.remove(entry.getKey(), entry.getValue())) {
+                        transfers.get(owner).add(entry.getValue());
+                    }
+                }
+            }
+            for (Map.Entry<String, List<LockInfo>> entry : transfers.entrySet()) {
+                log.debug("Handing over {} locks to {} in view {}", entry.getValue().size(), entry.getKey(), viewId);
+                clusterManager.sendSync(createMessage(LockShardMessage.Type.TRANSFER, 0, entry.getKey(), viewId)
+                        .setLocks(entry.getValue()), entry.getKey());
+            }
+
+            for (Iterator<LockShardMessage> it = earlyTransfers.iterator(); it.hasNext(); ) {
+                LockShardMessage message = it.next();
+                if (message.getEpoch() <= viewId) {
+                    it.remove();
+                    receiveTransfer(message);
+                }
+            }
+        }
+    }
+}
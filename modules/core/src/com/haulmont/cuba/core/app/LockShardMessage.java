@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.haulmont.cuba.core.global.LockInfo;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Cluster message exchanged by {@link LockManager} nodes when locks are partitioned between them.
+ * <p>Each message carries the epoch of the sender's cluster view. Requests are served only by the node owning the
+ * key in the same epoch, otherwise they are answered with {@link Type#REJECTED} and retried by the sender.</p>
+ */
+public class LockShardMessage implements Serializable {
+
+    private static final long serialVersionUID = 2383426624370963120L;
+
+    public enum Type {
+        /** Request to acquire the lock, answered with the existing lock or null */
+        LOCK,
+        /** Request to release the lock, answered with null */
+        UNLOCK,
+        /** Request of the lock state, answered with the existing lock or null */
+        GET,
+        /** Answer to LOCK, UNLOCK or GET request */
+        RESPONSE,
+        /** Answer to a request that the receiver can't serve in the sender's epoch, the request should be retried */
+        REJECTED,
+        /**
+         * Locks handed over to the new owners after a cluster view change. Each node sends it to every other node
+         * of the new view, even if there are no locks to hand over.
+         */
+        TRANSFER,
+        /** Locks received by a node that doesn't own them in its current view, sent to their owner */
+        FORWARD
+    }
+
+    private final Type type;
+    private final long requestId;
+    private final String sender;
+    private final String target;
+    private final long epoch;
+    private String entityName;
+    private String entityId;
+    private LockInfo lockInfo;
+    private List<LockInfo> locks;
+
+    public LockShardMessage(Type type, long requestId, String sender, String target, long epoch) {
+        this.type = type;
+        this.requestId = requestId;
+        this.sender = sender;
+        this.target = target;
+        this.epoch = epoch;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * @return identifier of the cluster view the sender was in when sending the message
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public String getEntityName() {
+        return entityName;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public LockShardMessage setEntity(String entityName, String entityId) {
+        this.entityName = entityName;
+        this.entityId = entityId;
+        return this;
+    }
+
+    @Nullable
+    public LockInfo getLockInfo() {
+        return lockInfo;
+    }
+
+    public LockShardMessage setLockInfo(@Nullable LockInfo lockInfo) {
+        this.lockInfo = lockInfo;
+        return this;
+    }
+
+    public List<LockInfo> getLocks() {
+        return locks;
+    }
+
+    public LockShardMessage setLocks(List<LockInfo> locks) {
+        this.locks = locks;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "LockShardMessage{" + type + ", requestId=" + requestId + ", sender=" + sender
+                + ", epoch=" + epoch + ", entity=" + entityName + "/" + entityId + "}";
+    }
+}
@@ -144,7 +144,7 @@ public class RdbmsStore implements DataStore {
 
             if (result instanceof BaseGenericIdEntity && context.isLoadDynamicAttributes()) {
                 dynamicAttributesManagerAPI.fetchDynamicAttributes(Collections.singletonList((BaseGenericIdEntity) result),
-                        collectEntityClassesWithDynamicAttributes(context.getView()));
+                        collectEntityClassesWithDynamicAttributes(context.getView()), context.getDynamicAttributeCodes());
             }
 
             if (result != null && needToApplyConstraints) {
@@ -212,7 +212,7 @@ public class RdbmsStore implements DataStore {
             // Fetch dynamic attributes
             if (!resultList.isEmpty() && resultList.get(0) instanceof BaseGenericIdEntity && context.isLoadDynamicAttributes()) {
                 dynamicAttributesManagerAPI.fetchDynamicAttributes((List<BaseGenericIdEntity>) resultList,
-                        collectEntityClassesWithDynamicAttributes(context.getView()));
+                        collectEntityClassesWithDynamicAttributes(context.getView()), context.getDynamicAttributeCodes());
             }
 
             if (needToApplyConstraints) {
@@ -141,6 +141,15 @@ public interface ServerConfig extends Config {
     long getSchedulingInterval();
     void setSchedulingInterval(long value);
 
+    /**
+     * @return Interval in milliseconds of reloading active scheduled tasks by
+     * {@link com.haulmont.cuba.core.app.scheduling.LeaseBasedCoordinator}
+     */
+    @Property("cuba.schedulingTasksReloadInterval")
+    @Source(type = SourceType.DATABASE)
+    @DefaultLong(60000)
+    long getSchedulingTasksReloadInterval();
+
     /**
      * @return Maximum size of thread pool which is used to process scheduled tasks
      */
@@ -149,6 +158,40 @@ public interface ServerConfig extends Config {
     int getSchedulingThreadPoolSize();
     void setSchedulingThreadPoolSize(int value);
 
+    /**
+     * @return Maximum number of scheduled tasks waiting for a free thread. If the queue is full, the task run is skipped.
+     */
+    @Property("cuba.schedulingQueueCapacity")
+    @DefaultInt(1000)
+    int getSchedulingQueueCapacity();
+
+    /**
+     * @return Ratio of successful executions registered for tasks with "Log start" flag: 1 - every execution,
+     * N - every N-th execution, 0 - only failed executions. Executions of singleton and fixed delay tasks are always
+     * registered as they are used for coordination of the task starts.
+     */
+    @Property("cuba.schedulingExecutionLogSampleRate")
+    @Source(type = SourceType.DATABASE)
+    @DefaultInt(1)
+    int getSchedulingExecutionLogSampleRate();
+
+    /**
+     * @return Age in hours after which the scheduled executions history is removed by
+     * {@link com.haulmont.cuba.core.app.scheduling.SchedulingAPI#removeExecutionHistory()}. If 0 (by default),
+     * the history is not removed.
+     */
+    @Property("cuba.schedulingExecutionHistoryMaxAgeHours")
+    @Source(type = SourceType.DATABASE)
+    @DefaultInt(0)
+    int getSchedulingExecutionHistoryMaxAgeHours();
+
+    /**
+     * @return Number of scheduled executions removed in one transaction
+     */
+    @Property("cuba.schedulingExecutionHistoryRemovalBatchSize")
+    @DefaultInt(1000)
+    int getSchedulingExecutionHistoryRemovalBatchSize();
+
     /**
      * @return Tells DataService to ensure distinct results by processing them in memory, instead of issue
      * 'select distinct' to the database.
@@ -175,6 +218,27 @@ public interface ServerConfig extends Config {
     @DefaultBoolean(false)
     boolean getSyncNewUserSessionReplication();
 
+    /**
+     * @return if true (by default), permissions and constraints compiled for a combination of roles and a group
+     * are shared by all user sessions having these roles and group. User sessions replicated in the cluster carry
+     * the permissions and constraints granted by the sending server, the receiving server shares them if they are
+     * equal to its own.
+     * Session attributes of a group are also compiled once and cached.
+     */
+    @Property("cuba.userSessionSharedPermissions")
+    @DefaultBoolean(true)
+    boolean getUserSessionSharedPermissions();
+
+    /**
+     * @return if true (by default), user sessions having shared permissions and constraints are sent to the cluster
+     * with the keys and hashes of them instead of the content. A receiving server whose own permissions or
+     * constraints differ requests the full session. Set to false while the cluster contains servers of previous
+     * versions.
+     */
+    @Property("cuba.userSessionCompactReplication")
+    @DefaultBoolean(true)
+    boolean getUserSessionCompactReplication();
+
     /**
      * If set to false, attribute permissions are not enforced on Middleware. This is appropriate if only server-side
      * clients are used.
@@ -199,6 +263,14 @@ public interface ServerConfig extends Config {
     @DefaultString("CUBA.Platform")
     String getKeyForSecurityTokenEncryption();
 
+    /**
+     * @return if true (by default), security tokens are written in the compact binary format. Otherwise they are
+     * written as JSON, which can be read by servers of previous versions. Tokens in both formats are always readable.
+     */
+    @Property("cuba.securityTokenCompactFormat")
+    @DefaultBoolean(true)
+    boolean getSecurityTokenCompactFormat();
+
     /**
      * Indicates that {@code DataManager} should always apply security restrictions on the middleware.
      */
@@ -278,6 +350,87 @@ public interface ServerConfig extends Config {
     @DefaultBoolean(false)
     boolean getRestStoreTokensInDb();
 
+    /**
+     * @return interval in milliseconds of writing REST API OAuth tokens to the database in background, if
+     * {@link #getRestStoreTokensInDb()} is true. If 0 (by default), tokens are written to the database synchronously.
+     */
+    @Property("cuba.rest.tokensDbFlushInterval")
+    @DefaultInt(0)
+    int getRestTokensDbFlushInterval();
+
+    /**
+     * @return maximum number of REST API OAuth tokens written to the database in one transaction by the background
+     * writer
+     */
+    @Property("cuba.rest.tokensDbFlushBatchSize")
+    @DefaultInt(100)
+    int getRestTokensDbFlushBatchSize();
+
+    /**
+     * @return if true (by default), REST API OAuth tokens are passed to joining cluster members in the compact binary
+     * format. Otherwise they are passed as serialized maps, which can be read by servers of previous versions.
+     * Tokens in both formats are always readable.
+     */
+    @Property("cuba.rest.tokenStoreCompactState")
+    @DefaultBoolean(true)
+    boolean getRestTokenStoreCompactState();
+
+    /**
+     * @return comma-separated list of {@code domain:blockSize} pairs defining the {@link UniqueNumbersAPI} domains
+     * which numbers are allocated by blocks, e.g. {@code invoice:100,order:50}. See {@link UniqueNumbers} for details.
+     */
+    @Property("cuba.uniqueNumbersBlockSizes")
+    String getUniqueNumbersBlockSizes();
+
+    /**
+     * @return maximum length of a chain of {@link EntitySnapshotAPI} snapshots of an entity, including the full
+     * snapshot starting the chain. Each snapshot following the full one is stored as a compressed delta against it.
+     * If 0 (by default), each snapshot is stored as plain JSON.
+     */
+    @Property("cuba.entitySnapshot.chainLength")
+    @DefaultInt(0)
+    int getEntitySnapshotChainLength();
+
+    /**
+     * @return maximum number of entity ids passed in one query loading dynamic attribute values. If 0 (by default),
+     * the size is chosen according to the DBMS limits on the number of query parameters.
+     */
+    @Property("cuba.dynamicAttributesFetchBatchSize")
+    @DefaultInt(0)
+    int getDynamicAttributesFetchBatchSize();
+
+    /**
+     * @return minimum size of a collection filtered by in-memory constraints in parallel threads. If 0 (by default),
+     * collections are always filtered in the calling thread.
+     * <p>Groovy scripts of in-memory constraints evaluated in parallel must access only loaded attributes of entities.</p>
+     */
+    @Property("cuba.inMemoryConstraintsParallelThreshold")
+    @DefaultInt(0)
+    int getInMemoryConstraintsParallelThreshold();
+
+    /**
+     * @return maximum number of fetch groups and query hints compiled for views and queries, which are cached by
+     * {@link com.haulmont.cuba.core.sys.FetchGroupManager}. If 0, fetch plans are compiled for each query.
+     */
+    @Property("cuba.fetchPlanCacheSize")
+    @DefaultInt(1000)
+    int getFetchPlanCacheSize();
+
+    /**
+     * @return capacity of the queue of session log records written to the database asynchronously in batches.
+     * If the queue is full, new records are dropped. If 0 (by default), records are written synchronously.
+     */
+    @Property("cuba.userSessionLogQueueCapacity")
+    @DefaultInt(0)
+    int getUserSessionLogQueueCapacity();
+
+    /**
+     * @return interval of writing queued session log records to the database, in milliseconds
+     */
+    @Property("cuba.userSessionLogFlushInterval")
+    @DefaultInt(1000)
+    int getUserSessionLogFlushInterval();
+
     /**
      * @return if true, sequences for BaseLongIdEntity and BaseIntegerIdEntity subclasses are created in data stores
      * of these entities. Otherwise (by default), sequences for all entities are created in the main data store.
@@ -26,10 +26,12 @@ import com.haulmont.cuba.core.sys.persistence.DbmsSpecificFactory;
 import com.haulmont.cuba.core.sys.persistence.SequenceSupport;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.text.StrTokenizer;
-
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
-import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.math.BigDecimal;
 import java.math.BigInteger;
@@ -37,35 +39,170 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Pattern;
 
 /**
  * Provides unique numbers based on database sequences.
+ * <p>
+ * Numbers of the domains listed in {@link ServerConfig#getUniqueNumbersBlockSizes()} are allocated by blocks:
+ * the sequence of such domain is created with the increment equal to the block size, each sequence value {@code v}
+ * reserves the numbers from {@code v - blockSize + 1} to {@code v}, and the reserved numbers are handed out
+ * from memory. Consequences of the block allocation:
+ * <ul>
+ *     <li>numbers are unique, but in a cluster they are not ordered by the time of issue across servers</li>
+ *     <li>numbers left in the block on server shutdown or after {@link #setCurrentNumber(String, long)} are lost,
+ *     producing a gap</li>
+ *     <li>after {@link #setCurrentNumber(String, long)} the next block starts right after the given value</li>
+ *     <li>{@link #setCurrentNumber(String, long)} and {@link #deleteSequence(String)} discard the block of the current
+ *     server only</li>
+ *     <li>the increment of an existing sequence is not changed. If it differs from the block size, for example
+ *     when the sequence was created before switching the domain to the block allocation or servers are configured
+ *     with different block sizes, {@link #getNextNumber(String)} throws {@link IllegalStateException}. To switch
+ *     an existing domain to the block allocation, delete its sequence and set the current number again</li>
+ * </ul>
  */
 @Component(UniqueNumbersAPI.NAME)
 public class UniqueNumbers implements UniqueNumbersAPI {
 
+    private final Logger log = LoggerFactory.getLogger(UniqueNumbers.class);
+
     @Inject
     protected Persistence persistence;
 
+    @Inject
+    protected ServerConfig serverConfig;
+
     protected ReadWriteLock lock = new ReentrantReadWriteLock();
 
     @GuardedBy("lock")
     protected Set<String> existingSequences = new HashSet<>();
 
+    protected ConcurrentMap<String, BlockAllocator> blockAllocators = new ConcurrentHashMap<>();
+
+    protected volatile Map<String, Integer> blockSizes;
+    protected volatile String blockSizesProperty;
+
+    protected final AtomicLong sequenceFetchCount = new AtomicLong();
+    protected final AtomicLong numbersServedCount = new AtomicLong();
+
     public static final Pattern SEQ_PATTERN = Pattern.compile("[a-zA-Z0-9_]+");
 
+    /**
+     * Numbers reserved by one sequence value.
+     */
+    protected static class NumberBlock {
+
+        protected final long last;
+        protected final AtomicLong counter;
+
+        protected NumberBlock(long first, long last) {
+            this.last = last;
+            this.counter = new AtomicLong(first - 1);
+        }
+
+        /**
+         * @return next number of the block or -1 if the block is exhausted
+         */
+        protected long next() {
+            long next = counter.incrementAndGet();
+            return next <= last ? next : -1;
+        }
+
+        protected long current() {
+            return Math.min(counter.get(), last);
+        }
+    }
+
+    /**
+     * Hands out numbers of a domain from the current block, reserving the next block when it is exhausted.
+     */
+    protected class BlockAllocator {
+
+        protected final String domain;
+        protected final int blockSize;
+        protected volatile NumberBlock block;
+        protected boolean incrementChecked;
+        // whether the increment can't be read from the database and is checked by the distance between fetches
+        protected boolean compareFetches;
+        protected Long lastValue;
+
+        protected BlockAllocator(String domain, int blockSize) {
+            this.domain = domain;
+            this.blockSize = blockSize;
+        }
+
+        protected long next() {
+            NumberBlock current = block;
+            long next = current != null ? current.next() : -1;
+            if (next != -1)
+                return next;
+
+            synchronized (this) {
+                while (true) {
+                    current = block;
+                    next = current != null ? current.next() : -1;
+                    if (next != -1)
+                        return next;
+
+                    if (!incrementChecked) {
+                        Long increment = getSequenceIncrement(domain);
+                        if (increment != null && increment != blockSize) {
+                            throw incrementMismatch(increment);
+                        }
+                        compareFetches = increment == null;
+                        incrementChecked = true;
+                    }
+
+                    long value = fetchBlock(domain);
+                    if (compareFetches) {
+                        // consecutive fetches are at least the increment apart unless the sequence was restarted
+                        if (lastValue != null && value > lastValue && value - lastValue < blockSize) {
+                            throw incrementMismatch(value - lastValue);
+                        }
+                        lastValue = value;
+                    }
+                    block = new NumberBlock(value - blockSize + 1, value);
+                    log.debug("Reserved block [{}, {}] for domain {}", value - blockSize + 1, value, domain);
+                }
+            }
+        }
+
+        protected synchronized void reset() {
+            block = null;
+            incrementChecked = false;
+            lastValue = null;
+        }
+
+        protected IllegalStateException incrementMismatch(long increment) {
+            return new IllegalStateException(String.format("Sequence %s has increment %d, but the block size of " +
+                    "domain %s is %d. Configure the same block size on all servers, or delete the sequence and set " +
+                    "the current number again to recreate it with the new increment",
+                    getSequenceName(domain), increment, domain, blockSize));
+        }
+    }
+
     @Override
     public long getNextNumber(String domain) {
+        int blockSize = getBlockSize(domain);
+        if (blockSize > 1) {
+            long next = getBlockAllocator(domain, blockSize).next();
+            numbersServedCount.incrementAndGet();
+            return next;
+        }
+
         String sqlScript = getSequenceSupport(domain).getNextValueSql(getSequenceName(domain));
         try {
             lock.readLock().lock();
-            return getResult(domain, sqlScript);
+            long next = getResult(domain, sqlScript);
+            sequenceFetchCount.incrementAndGet();
+            numbersServedCount.incrementAndGet();
+            return next;
         } finally {
             lock.readLock().unlock();
         }
@@ -73,6 +210,12 @@ public class UniqueNumbers implements UniqueNumbersAPI {
 
     @Override
     public long getCurrentNumber(String domain) {
+        BlockAllocator allocator = blockAllocators.get(domain);
+        NumberBlock block = allocator != null ? allocator.block : null;
+        if (block != null) {
+            return block.current();
+        }
+
         String sqlScript = getSequenceSupport(domain).getCurrentValueSql(getSequenceName(domain));
         try {
             lock.readLock().lock();
@@ -84,7 +227,16 @@ public class UniqueNumbers implements UniqueNumbersAPI {
 
     @Override
     public void setCurrentNumber(String domain, long value) {
-        String sqlScript = getSequenceSupport(domain).modifySequenceSql(getSequenceName(domain), value);
+        SequenceSupport sequenceSupport = getSequenceSupport(domain);
+        int blockSize = getBlockSize(domain);
+        String sqlScript;
+        if (blockSize > 1) {
+            // the first value fetched after the restart must be the last number of the block following the value
+            long startWith = sequenceSupport.isStartValueReturnedFirst() ? value + blockSize : value;
+            sqlScript = sequenceSupport.modifySequenceSql(getSequenceName(domain), startWith, blockSize);
+        } else {
+            sqlScript = sequenceSupport.modifySequenceSql(getSequenceName(domain), value);
+        }
 
         Transaction tx = persistence.getTransaction(getDataStore(domain));
         try {
@@ -96,6 +248,7 @@ public class UniqueNumbers implements UniqueNumbersAPI {
             lock.readLock().unlock();
             tx.end();
         }
+        resetBlock(domain);
     }
 
     @Override
@@ -123,6 +276,122 @@ public class UniqueNumbers implements UniqueNumbersAPI {
             lock.writeLock().unlock();
             tx.end();
         }
+        resetBlock(domain);
+    }
+
+    @Override
+    public long getSequenceFetchCount() {
+        return sequenceFetchCount.get();
+    }
+
+    @Override
+    public long getNumbersServedCount() {
+        return numbersServedCount.get();
+    }
+
+    /**
+     * Override this method if you want to control the block allocation for a particular domain.
+     *
+     * @param domain    sequence identifier passed to the interface methods
+     * @return          number of values reserved by one sequence fetch (by default, taken from
+     *                  {@link ServerConfig#getUniqueNumbersBlockSizes()}). Values less than 2 turn off the block
+     *                  allocation.
+     */
+    protected int getBlockSize(String domain) {
+        String property = serverConfig.getUniqueNumbersBlockSizes();
+        Map<String, Integer> sizes = blockSizes;
+        if (sizes == null || !Objects.equals(property, blockSizesProperty)) {
+            sizes = parseBlockSizes(property);
+            blockSizes = sizes;
+            blockSizesProperty = property;
+        }
+        Integer size = sizes.get(domain);
+        return size != null ? size : 1;
+    }
+
+    protected Map<String, Integer> parseBlockSizes(@Nullable String property) {
+        Map<String, Integer> sizes = new HashMap<>();
+        if (StringUtils.isNotBlank(property)) {
+            for (String item : property.split("[,;]")) {
+                String[] parts = item.split(":");
+                if (parts.length != 2) {
+                    log.warn("Invalid block size definition: '{}'", item);
+                    continue;
+                }
+                try {
+                    sizes.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+                } catch (NumberFormatException e) {
+                    log.warn("Invalid block size definition: '{}'", item);
+                }
+            }
+        }
+        return sizes;
+    }
+
+    protected BlockAllocator getBlockAllocator(String domain, int blockSize) {
+        BlockAllocator allocator = blockAllocators.get(domain);
+        if (allocator == null || allocator.blockSize != blockSize) {
+            BlockAllocator newAllocator = new BlockAllocator(domain, blockSize);
+            if (allocator == null) {
+                allocator = blockAllocators.putIfAbsent(domain, newAllocator);
+                if (allocator == null) {
+                    allocator = newAllocator;
+                }
+            } else {
+                blockAllocators.put(domain, newAllocator);
+                allocator = newAllocator;
+            }
+        }
+        return allocator;
+    }
+
+    protected void resetBlock(String domain) {
+        BlockAllocator allocator = blockAllocators.get(domain);
+        if (allocator != null) {
+            allocator.reset();
+        }
+    }
+
+    /**
+     * Reserves the next block in a separate transaction, so the reservation is not rolled back with the invoking code.
+     *
+     * @return the last number of the block
+     */
+    protected long fetchBlock(String domain) {
+        String sqlScript = getSequenceSupport(domain).getNextValueSql(getSequenceName(domain));
+        try {
+            lock.readLock().lock();
+            Transaction tx = persistence.createTransaction(getDataStore(domain));
+            try {
+                checkSequenceExists(domain);
+
+                long value = toLong(executeScript(domain, sqlScript));
+                tx.commit();
+                sequenceFetchCount.incrementAndGet();
+                return value;
+            } finally {
+                tx.end();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return increment of the domain sequence, or null if the DBMS doesn't provide it
+     */
+    @Nullable
+    protected Long getSequenceIncrement(String domain) {
+        String sqlScript = getSequenceSupport(domain).getIncrementSql(getSequenceName(domain));
+        if (sqlScript == null)
+            return null;
+
+        try {
+            lock.readLock().lock();
+            return getResult(domain, sqlScript);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -146,23 +415,27 @@ public class UniqueNumbers implements UniqueNumbersAPI {
 
             Object value = executeScript(domain, sqlScript);
             tx.commit();
-            if (value instanceof Long)
-                return (Long) value;
-            else if (value instanceof BigDecimal)
-                return ((BigDecimal) value).longValue();
-            else if (value instanceof BigInteger)
-                return ((BigInteger) value).longValue();
-            else if (value instanceof String)
-                return Long.parseLong((String) value);
-            else if (value == null)
-                throw new IllegalStateException("No value returned");
-            else
-                throw new IllegalStateException("Unsupported value type: " + value.getClass());
+            return toLong(value);
         } finally {
             tx.end();
         }
     }
 
+    protected long toLong(Object value) {
+        if (value instanceof Long)
+            return (Long) value;
+        else if (value instanceof BigDecimal)
+            return ((BigDecimal) value).longValue();
+        else if (value instanceof BigInteger)
+            return ((BigInteger) value).longValue();
+        else if (value instanceof String)
+            return Long.parseLong((String) value);
+        else if (value == null)
+            throw new IllegalStateException("No value returned");
+        else
+            throw new IllegalStateException("Unsupported value type: " + value.getClass());
+    }
+
     protected Object executeScript(String domain, String sqlScript) {
         EntityManager em = persistence.getEntityManager(getDataStore(domain));
         StrTokenizer tokenizer = new StrTokenizer(sqlScript, SequenceSupport.SQL_DELIMITER);
@@ -205,7 +478,9 @@ public class UniqueNumbers implements UniqueNumbersAPI {
             Query query = em.createNativeQuery(getSequenceSupport(domain).sequenceExistsSql(seqName));
             List list = query.getResultList();
             if (list.isEmpty()) {
-                query = em.createNativeQuery(getSequenceSupport(domain).createSequenceSql(seqName, 1, 1));
+                int blockSize = getBlockSize(domain);
+                long increment = blockSize > 1 ? blockSize : 1;
+                query = em.createNativeQuery(getSequenceSupport(domain).createSequenceSql(seqName, increment, increment));
                 query.executeUpdate();
             }
             tx.commit();
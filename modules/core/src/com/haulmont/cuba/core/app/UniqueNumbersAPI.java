@@ -57,4 +57,14 @@ public interface UniqueNumbersAPI {
      * @throws java.lang.IllegalStateException if sequence does not exist
      */
     void deleteSequence(String domain);
+
+    /**
+     * @return number of database sequence calls since the application start
+     */
+    long getSequenceFetchCount();
+
+    /**
+     * @return number of values returned by {@link #getNextNumber(String)} since the application start
+     */
+    long getNumbersServedCount();
 }
@@ -27,10 +27,13 @@ import com.haulmont.cuba.core.Transaction;
 import com.haulmont.cuba.core.TypedQuery;
 import com.haulmont.cuba.core.app.ClusterListenerAdapter;
 import com.haulmont.cuba.core.app.ClusterManagerAPI;
+import com.haulmont.cuba.core.app.ServerConfig;
 import com.haulmont.cuba.core.entity.*;
 import com.haulmont.cuba.core.global.*;
-import org.apache.commons.collections4.CollectionUtils;
+import com.haulmont.cuba.core.sys.persistence.DbmsType;
 import org.apache.commons.lang.BooleanUtils;
+import org.perf4j.StopWatch;
+import org.perf4j.slf4j.Slf4JStopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -40,6 +43,7 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
@@ -47,6 +51,10 @@ import static java.lang.String.format;
 
 @Component(DynamicAttributesManagerAPI.NAME)
 public class DynamicAttributesManager implements DynamicAttributesManagerAPI {
+    /**
+     * @deprecated the batch size is defined by {@link ServerConfig#getDynamicAttributesFetchBatchSize()}
+     */
+    @Deprecated
     public static final int MAX_ENTITIES_FOR_ATTRIBUTE_VALUES_BATCH = 100;
 
     protected Logger log = LoggerFactory.getLogger(DynamicAttributesManager.class);
@@ -66,12 +74,25 @@ public class DynamicAttributesManager implements DynamicAttributesManagerAPI {
     @Inject
     protected ReferenceToEntitySupport referenceToEntitySupport;
 
+    @Inject
+    protected ServerConfig serverConfig;
+
     protected ClusterManagerAPI clusterManager;
 
     protected ReentrantLock loadCacheLock = new ReentrantLock();
 
     protected volatile DynamicAttributesCache dynamicAttributesCache;
 
+    protected volatile View attributeValuesView;
+
+    protected volatile View attributeValuesWithChildrenView;
+
+    protected LongAdder fetchedValuesCount = new LongAdder();
+
+    protected LongAdder fetchQueriesCount = new LongAdder();
+
+    protected LongAdder fetchTime = new LongAdder();
+
     @Inject
     public void setClusterManager(ClusterManagerAPI clusterManager) {
         this.clusterManager = clusterManager;
@@ -195,6 +216,12 @@ public class DynamicAttributesManager implements DynamicAttributesManagerAPI {
 
     @Override
     public <E extends BaseGenericIdEntity> void fetchDynamicAttributes(List<E> entities, @Nonnull Set<Class> dependentClasses) {
+        fetchDynamicAttributes(entities, dependentClasses, null);
+    }
+
+    @Override
+    public <E extends BaseGenericIdEntity> void fetchDynamicAttributes(List<E> entities, @Nonnull Set<Class> dependentClasses,
+                                                                       @Nullable Collection<String> attributeCodes) {
         Set<BaseGenericIdEntity> toProcess = new HashSet<>();
         entities.forEach(entity -> {
             toProcess.add(entity);
@@ -224,7 +251,7 @@ public class DynamicAttributesManager implements DynamicAttributesManagerAPI {
             toProcess.forEach(e -> entitiesByType.put(e.getMetaClass().getName(), e));
             entitiesByType.keySet().forEach(entityType -> {
                 MetaClass metaClass = metadata.getExtendedEntities().getOriginalOrThisMetaClass(metadata.getClass(entityType));
-                doFetchDynamicAttributes(metaClass, entitiesByType.get(entityType));
+                doFetchDynamicAttributes(metaClass, entitiesByType.get(entityType), attributeCodes);
             });
             tx.commit();
         }
@@ -319,71 +346,93 @@ public class DynamicAttributesManager implements DynamicAttributesManagerAPI {
         });
     }
 
-    protected void doFetchDynamicAttributes(MetaClass metaClass, Collection<BaseGenericIdEntity> entities) {
-        List<Object> ids = entities.stream()
-                .map(e -> referenceToEntitySupport.getReferenceId(e))
-                .collect(Collectors.toList());
-
-        Multimap<Object, CategoryAttributeValue> allAttributeValues = HashMultimap.create();
+    protected void doFetchDynamicAttributes(MetaClass metaClass, Collection<BaseGenericIdEntity> entities,
+                                            @Nullable Collection<String> attributeCodes) {
+        StopWatch sw = new Slf4JStopWatch("DynamicAttributesManager.fetchDynamicAttributes");
+        try {
+            List<Object> ids = entities.stream()
+                    .map(e -> referenceToEntitySupport.getReferenceId(e))
+                    .distinct()
+                    .collect(Collectors.toList());
 
-        List<Object> currentIds = new ArrayList<>();
-        for (Object id : ids) {
-            currentIds.add(id);
-            if (currentIds.size() >= MAX_ENTITIES_FOR_ATTRIBUTE_VALUES_BATCH) {
-                handleAttributeValuesForIds(metaClass, currentIds, allAttributeValues);
-                currentIds = new ArrayList<>();
-            }
-        }
-        handleAttributeValuesForIds(metaClass, currentIds, allAttributeValues);
-
-        for (BaseGenericIdEntity entity : entities) {
-            Collection<CategoryAttributeValue> entityAttributeValues = allAttributeValues.get(referenceToEntitySupport.getReferenceId(entity));
-            Map<String, CategoryAttributeValue> map = new HashMap<>();
-            entity.setDynamicAttributes(map);
-            if (CollectionUtils.isNotEmpty(entityAttributeValues)) {
-                for (CategoryAttributeValue categoryAttributeValue : entityAttributeValues) {
-                    CategoryAttribute attribute = categoryAttributeValue.getCategoryAttribute();
+            Map<Object, Map<String, CategoryAttributeValue>> valuesByEntityId = new HashMap<>();
+            int batchSize = getFetchBatchSize(attributeCodes);
+            for (int i = 0; i < ids.size(); i += batchSize) {
+                List<Object> batchIds = new ArrayList<>(ids.subList(i, Math.min(i + batchSize, ids.size())));
+                List<CategoryAttributeValue> attributeValues = loadAttributeValues(metaClass, batchIds, attributeCodes);
+                fetchedValuesCount.add(attributeValues.size());
+                for (CategoryAttributeValue attributeValue : attributeValues) {
+                    CategoryAttribute attribute = attributeValue.getCategoryAttribute();
                     if (attribute != null) {
-                        map.put(attribute.getCode(), categoryAttributeValue);
+                        valuesByEntityId.computeIfAbsent(attributeValue.getObjectEntityId(), id -> new HashMap<>())
+                                .put(attribute.getCode(), attributeValue);
                     }
                 }
             }
+
+            for (BaseGenericIdEntity entity : entities) {
+                Map<String, CategoryAttributeValue> map = valuesByEntityId.get(referenceToEntitySupport.getReferenceId(entity));
+                entity.setDynamicAttributes(map != null ? new HashMap<>(map) : new HashMap<>());
+            }
+        } finally {
+            sw.stop();
+            fetchTime.add(sw.getElapsedTime());
         }
     }
 
-    protected void handleAttributeValuesForIds(MetaClass metaClass, List<Object> currentIds, Multimap<Object, CategoryAttributeValue> attributeValuesForEntity) {
-        if (CollectionUtils.isNotEmpty(currentIds)) {
-            for (CategoryAttributeValue attributeValue : loadAttributeValues(metaClass, currentIds)) {
-                attributeValuesForEntity.put(attributeValue.getObjectEntityId(), attributeValue);
-            }
+    /**
+     * @return maximum number of entity ids passed in one query, either configured or limited by the DBMS
+     */
+    protected int getFetchBatchSize(@Nullable Collection<String> attributeCodes) {
+        int batchSize = serverConfig.getDynamicAttributesFetchBatchSize();
+        if (batchSize > 0) {
+            return batchSize;
+        }
+        switch (DbmsType.getType()) {
+            case "postgres":
+                return 5000;
+            case "mssql":
+                // at most 2100 parameters per statement, the attribute codes are passed as parameters too
+                return Math.max(1, 2000 - (attributeCodes != null ? attributeCodes.size() : 0));
+            default:
+                // Oracle does not allow more than 1000 expressions in a list
+                return 1000;
         }
     }
 
     protected List<CategoryAttributeValue> loadAttributeValues(MetaClass metaClass, List<Object> entityIds) {
+        return loadAttributeValues(metaClass, entityIds, null);
+    }
+
+    protected List<CategoryAttributeValue> loadAttributeValues(MetaClass metaClass, List<Object> entityIds,
+                                                               @Nullable Collection<String> attributeCodes) {
         List<CategoryAttributeValue> attributeValues = new ArrayList<>();
+        if (attributeCodes != null && attributeCodes.isEmpty()) {
+            return attributeValues;
+        }
         try (Transaction tx = persistence.getTransaction()) {
             EntityManager em = persistence.getEntityManager();
 
-            View view = new View(viewRepository.getView(CategoryAttributeValue.class, View.LOCAL), null, false)
-                    .addProperty("categoryAttribute", new View(viewRepository.getView(CategoryAttribute.class, View.LOCAL), null, false)
-                            .addProperty("category")
-                            .addProperty("defaultEntity", viewRepository.getView(ReferenceToEntity.class, View.LOCAL)));
-
-            TypedQuery<CategoryAttributeValue> query;
-            if (HasUuid.class.isAssignableFrom(metaClass.getJavaClass())) {
-                query = em.createQuery(format("select cav from sys$CategoryAttributeValue cav where cav.entity.%s in :ids and cav.parent is null",
-                        referenceToEntitySupport.getReferenceIdPropertyName(metaClass)),
-                        CategoryAttributeValue.class);
-            } else {
-                query = em.createQuery(format("select cav from sys$CategoryAttributeValue cav where cav.entity.%s in :ids " +
-                                "and cav.categoryAttribute.categoryEntityType = :entityType and cav.parent is null",
-                        referenceToEntitySupport.getReferenceIdPropertyName(metaClass)),
-                        CategoryAttributeValue.class);
+            StringBuilder queryString = new StringBuilder(format(
+                    "select cav from sys$CategoryAttributeValue cav where cav.entity.%s in :ids and cav.parent is null",
+                    referenceToEntitySupport.getReferenceIdPropertyName(metaClass)));
+            if (!HasUuid.class.isAssignableFrom(metaClass.getJavaClass())) {
+                queryString.append(" and cav.categoryAttribute.categoryEntityType = :entityType");
+            }
+            if (attributeCodes != null) {
+                queryString.append(" and cav.code in :codes");
+            }
+            TypedQuery<CategoryAttributeValue> query = em.createQuery(queryString.toString(), CategoryAttributeValue.class);
+            if (!HasUuid.class.isAssignableFrom(metaClass.getJavaClass())) {
                 query.setParameter("entityType", metaClass.getName());
             }
+            if (attributeCodes != null) {
+                query.setParameter("codes", attributeCodes);
+            }
             query.setParameter("ids", entityIds);
-            query.setView(view);
+            query.setView(getAttributeValuesView());
             List<CategoryAttributeValue> resultList = query.getResultList();
+            fetchQueriesCount.increment();
 
             List<CategoryAttributeValue> cavsOfEntityType = resultList.stream()
                     .filter(cav -> cav.getObjectEntityValueId() != null)
@@ -477,23 +526,57 @@ public class DynamicAttributesManager implements DynamicAttributesManagerAPI {
     protected List<CategoryAttributeValue> reloadCategoryAttributeValuesWithChildren(List<CategoryAttributeValue> categoryAttributeValues) {
         EntityManager em = persistence.getEntityManager();
 
-        View categoryAttributeValueLocalView = viewRepository.getView(CategoryAttributeValue.class, View.LOCAL);
-        View categoryAttributeLocalView = viewRepository.getView(CategoryAttribute.class, View.LOCAL);
-
-        View view = new View(categoryAttributeValueLocalView, null, false)
-                .addProperty("categoryAttribute", new View(categoryAttributeLocalView, null, false).addProperty("category"))
-                .addProperty("childValues", categoryAttributeValueLocalView);
-
         List<UUID> ids = categoryAttributeValues.stream()
                 .map(BaseUuidEntity::getId)
                 .collect(Collectors.toList());
 
         return em.createQuery("select cav from sys$CategoryAttributeValue cav where cav.id in :ids", CategoryAttributeValue.class)
                 .setParameter("ids", ids)
-                .setView(view)
+                .setView(getAttributeValuesWithChildrenView())
                 .getResultList();
     }
 
+    protected View getAttributeValuesView() {
+        View view = attributeValuesView;
+        if (view == null) {
+            view = new View(viewRepository.getView(CategoryAttributeValue.class, View.LOCAL), null, false)
+                    .addProperty("categoryAttribute", new View(viewRepository.getView(CategoryAttribute.class, View.LOCAL), null, false)
+                            .addProperty("category")
+                            .addProperty("defaultEntity", viewRepository.getView(ReferenceToEntity.class, View.LOCAL)));
+            attributeValuesView = view;
+        }
+        return view;
+    }
+
+    protected View getAttributeValuesWithChildrenView() {
+        View view = attributeValuesWithChildrenView;
+        if (view == null) {
+            View categoryAttributeValueLocalView = viewRepository.getView(CategoryAttributeValue.class, View.LOCAL);
+            View categoryAttributeLocalView = viewRepository.getView(CategoryAttribute.class, View.LOCAL);
+
+            view = new View(categoryAttributeValueLocalView, null, false)
+                    .addProperty("categoryAttribute", new View(categoryAttributeLocalView, null, false).addProperty("category"))
+                    .addProperty("childValues", categoryAttributeValueLocalView);
+            attributeValuesWithChildrenView = view;
+        }
+        return view;
+    }
+
+    @Override
+    public long getFetchedValuesCount() {
+        return fetchedValuesCount.sum();
+    }
+
+    @Override
+    public long getFetchQueriesCount() {
+        return fetchQueriesCount.sum();
+    }
+
+    @Override
+    public long getFetchTime() {
+        return fetchTime.sum();
+    }
+
     private static class ReloadCacheMsg implements Serializable {
         private static final long serialVersionUID = -3116358584797500962L;
     }
@@ -61,8 +61,31 @@ public interface DynamicAttributesManagerAPI {
      */
     <E extends BaseGenericIdEntity> void fetchDynamicAttributes(List<E> entities, @Nonnull Set<Class> dependentClasses);
 
+    /**
+     * Fetch dynamic attributes from database for each entity, loading only the attributes with the given codes.
+     *
+     * @param attributeCodes codes of the attributes to load, if null all attributes are loaded
+     */
+    <E extends BaseGenericIdEntity> void fetchDynamicAttributes(List<E> entities, @Nonnull Set<Class> dependentClasses,
+                                                                @Nullable Collection<String> attributeCodes);
+
     /**
      * Store dynamic attributes from the entity to database
      */
     void storeDynamicAttributes(BaseGenericIdEntity entity);
+
+    /**
+     * @return total number of dynamic attribute values loaded by {@code fetchDynamicAttributes()}
+     */
+    long getFetchedValuesCount();
+
+    /**
+     * @return total number of queries executed by {@code fetchDynamicAttributes()}
+     */
+    long getFetchQueriesCount();
+
+    /**
+     * @return total time in milliseconds spent in {@code fetchDynamicAttributes()}
+     */
+    long getFetchTime();
 }
\ No newline at end of file
@@ -19,8 +19,8 @@ package com.haulmont.cuba.core.app.scheduling;
 
 import com.haulmont.cuba.core.entity.ScheduledTask;
 
-import java.util.Date;
 import java.util.List;
+import java.util.function.LongSupplier;
 
 /**
  * Interface used by {@link Scheduling} to coordinate work in distributed environment. Class {@link Scheduling} itself
@@ -43,4 +43,24 @@ public interface Coordinator {
     boolean isLastExecutionFinished(ScheduledTask task, long now);
 
     long getLastFinished(ScheduledTask task);
+
+    /**
+     * @return all active tasks. The default implementation returns the tasks of a new context.
+     */
+    default List<ScheduledTask> getActiveTasks() {
+        Context context = begin();
+        end(context);
+        return context.getTasks();
+    }
+
+    /**
+     * Invoked by {@link Scheduling} after the task returned by {@link #begin()} is processed. Implementations keeping
+     * the tasks in memory between scheduling ticks can use the supplied time to decide when to return the task again.
+     *
+     * @param context       current context
+     * @param task          processed task
+     * @param nextCheckTime supplier of the earliest time when the task can be started next time
+     */
+    default void taskProcessed(Context context, ScheduledTask task, LongSupplier nextCheckTime) {
+    }
 }
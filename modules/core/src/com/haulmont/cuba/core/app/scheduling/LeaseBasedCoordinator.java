@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.core.app.scheduling;
+
+import com.haulmont.cuba.core.EntityManager;
+import com.haulmont.cuba.core.Query;
+import com.haulmont.cuba.core.Transaction;
+import com.haulmont.cuba.core.TypedQuery;
+import com.haulmont.cuba.core.app.ServerConfig;
+import com.haulmont.cuba.core.entity.ScheduledTask;
+import com.haulmont.cuba.core.global.TimeSource;
+import com.haulmont.cuba.core.sys.persistence.DbmsType;
+import org.apache.commons.lang.BooleanUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.annotation.concurrent.GuardedBy;
+import javax.inject.Inject;
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * Implementation of {@link Coordinator} interface which doesn't lock all active tasks on each scheduling tick.
+ * <p>Active tasks are kept in memory and reloaded from the database with the
+ * {@link ServerConfig#getSchedulingTasksReloadInterval()} interval. The time of the next check of each task is kept
+ * in a priority queue, so {@link #begin()} returns only the tasks that can be started at the moment. A singleton task
+ * is reloaded from the database only when it is due, after acquiring the lease on its row: the row is locked
+ * with {@code SKIP LOCKED} (or {@code READPAST} on MS SQL Server) until the end of the scheduling tick, so a server
+ * skips the task if another server is processing it.</p>
+ * <p>Other databases (HSQLDB, MySQL) have no non-blocking row locks, so the coordinator refuses to start on them.
+ * To support such a database, override {@link #getLockTaskSql()}.</p>
+ * <p>This implementation is not registered by default. To use it, register it in the application's
+ * {@code spring.xml} with the {@link Coordinator#NAME} id.</p>
+ */
+public class LeaseBasedCoordinator extends DbBasedCoordinator {
+
+    private final Logger log = LoggerFactory.getLogger(LeaseBasedCoordinator.class);
+
+    protected static class LeaseContextImpl extends ContextImpl {
+
+        protected Set<UUID> unprocessedTaskIds;
+
+        protected LeaseContextImpl(List<ScheduledTask> tasks, Transaction transaction, Set<UUID> unprocessedTaskIds) {
+            super(tasks, transaction);
+            this.unprocessedTaskIds = unprocessedTaskIds;
+        }
+    }
+
+    protected static class TaskCheck implements Comparable<TaskCheck> {
+
+        protected final long time;
+        protected final UUID taskId;
+
+        protected TaskCheck(long time, UUID taskId) {
+            this.time = time;
+            this.taskId = taskId;
+        }
+
+        @Override
+        public int compareTo(TaskCheck other) {
+            return Long.compare(time, other.time);
+        }
+    }
+
+    @Inject
+    protected TimeSource timeSource;
+
+    @Inject
+    protected ServerConfig serverConfig;
+
+    @GuardedBy("this")
+    protected Map<UUID, ScheduledTask> activeTasks = new HashMap<>();
+
+    @GuardedBy("this")
+    protected Map<UUID, Long> nextCheckTimes = new HashMap<>();
+
+    @GuardedBy("this")
+    protected PriorityQueue<TaskCheck> checkQueue = new PriorityQueue<>();
+
+    @GuardedBy("this")
+    protected long lastReloadTime;
+
+    @PostConstruct
+    public void init() {
+        if (getLockTaskSql() == null) {
+            throw new IllegalStateException(String.format(
+                    "%s requires non-blocking row locks which are not supported by the '%s' database, use %s instead",
+                    getClass().getSimpleName(), DbmsType.getType(), DbBasedCoordinator.class.getSimpleName()));
+        }
+    }
+
+    @Override
+    public Context begin() {
+        long now = timeSource.currentTimeMillis();
+        List<ScheduledTask> dueTasks = pollDueTasks(now);
+        if (dueTasks.isEmpty()) {
+            return new LeaseContextImpl(Collections.emptyList(), null, Collections.emptySet());
+        }
+
+        Transaction tx = persistence.createTransaction();
+        try {
+            List<ScheduledTask> tasks = new ArrayList<>(dueTasks.size());
+            Set<UUID> unprocessedTaskIds = new HashSet<>();
+            for (ScheduledTask task : dueTasks) {
+                if (BooleanUtils.isTrue(task.getSingleton())) {
+                    ScheduledTask leasedTask = acquireLease(task);
+                    if (leasedTask == null) {
+                        log.trace("{}: lease is not acquired", task);
+                        scheduleCheck(task.getId(), now + getSchedulingInterval());
+                        continue;
+                    }
+                    task = leasedTask;
+                }
+                tasks.add(task);
+                unprocessedTaskIds.add(task.getId());
+            }
+            return new LeaseContextImpl(tasks, tx, unprocessedTaskIds);
+        } catch (Exception e) {
+            tx.end();
+            for (ScheduledTask task : dueTasks) {
+                scheduleCheck(task.getId(), now + getSchedulingInterval());
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void end(Context context) {
+        LeaseContextImpl leaseContext = (LeaseContextImpl) context;
+        if (!leaseContext.unprocessedTaskIds.isEmpty()) {
+            long nextTick = timeSource.currentTimeMillis() + getSchedulingInterval();
+            for (UUID taskId : leaseContext.unprocessedTaskIds) {
+                scheduleCheck(taskId, nextTick);
+            }
+        }
+        if (leaseContext.transaction != null) {
+            log.trace("Commit transaction thereby release leases of due tasks");
+            leaseContext.transaction.commit();
+            leaseContext.transaction.end();
+        }
+    }
+
+    @Override
+    public void taskProcessed(Context context, ScheduledTask task, LongSupplier nextCheckTime) {
+        if (((LeaseContextImpl) context).unprocessedTaskIds.remove(task.getId())) {
+            scheduleCheck(task.getId(), nextCheckTime.getAsLong());
+        }
+    }
+
+    @Override
+    public List<ScheduledTask> getActiveTasks() {
+        try (Transaction tx = persistence.createTransaction()) {
+            List<ScheduledTask> tasks = loadActiveTasks();
+            tx.commit();
+            return tasks;
+        }
+    }
+
+    /**
+     * Removes the tasks which can be started at the given time from the queue, reloading active tasks if needed.
+     */
+    protected synchronized List<ScheduledTask> pollDueTasks(long now) {
+        if (now - lastReloadTime >= serverConfig.getSchedulingTasksReloadInterval()) {
+            reloadActiveTasks(now);
+        }
+
+        List<ScheduledTask> dueTasks = new ArrayList<>();
+        while (!checkQueue.isEmpty() && checkQueue.peek().time <= now) {
+            TaskCheck check = checkQueue.poll();
+            Long time = nextCheckTimes.get(check.taskId);
+            // skip outdated checks of rescheduled or removed tasks
+            if (time != null && time == check.time) {
+                nextCheckTimes.remove(check.taskId);
+                ScheduledTask task = activeTasks.get(check.taskId);
+                if (task != null) {
+                    dueTasks.add(task);
+                }
+            }
+        }
+        return dueTasks;
+    }
+
+    /**
+     * Reloads active tasks. New and changed tasks are checked immediately, the check time of other tasks is kept.
+     */
+    @GuardedBy("this")
+    protected void reloadActiveTasks(long now) {
+        log.trace("Reload active tasks");
+        List<ScheduledTask> tasks;
+        try (Transaction tx = persistence.createTransaction()) {
+            tasks = loadActiveTasks();
+            tx.commit();
+        }
+
+        Map<UUID, ScheduledTask> reloadedTasks = new HashMap<>();
+        for (ScheduledTask task : tasks) {
+            reloadedTasks.put(task.getId(), task);
+            ScheduledTask oldTask = activeTasks.get(task.getId());
+            if (oldTask == null || !Objects.equals(oldTask.getUpdateTs(), task.getUpdateTs())
+                    || !nextCheckTimes.containsKey(task.getId())) {
+                scheduleCheckInternal(task.getId(), now);
+            }
+        }
+        nextCheckTimes.keySet().retainAll(reloadedTasks.keySet());
+        activeTasks = reloadedTasks;
+        lastReloadTime = now;
+    }
+
+    protected synchronized void scheduleCheck(UUID taskId, long time) {
+        if (activeTasks.containsKey(taskId)) {
+            scheduleCheckInternal(taskId, time);
+        }
+    }
+
+    @GuardedBy("this")
+    protected void scheduleCheckInternal(UUID taskId, long time) {
+        nextCheckTimes.put(taskId, time);
+        checkQueue.add(new TaskCheck(time, taskId));
+    }
+
+    protected List<ScheduledTask> loadActiveTasks() {
+        EntityManager em = persistence.getEntityManager();
+        TypedQuery<ScheduledTask> query = em.createQuery(
+                "select t from sys$ScheduledTask t where t.active = true", ScheduledTask.class);
+        return query.getResultList();
+    }
+
+    /**
+     * Locks the task row in the current transaction and reloads the task.
+     *
+     * @return the reloaded task or null if the row is locked by another server or the task is not active anymore
+     */
+    protected ScheduledTask acquireLease(ScheduledTask task) {
+        EntityManager em = persistence.getEntityManager();
+        Query lockQuery = em.createNativeQuery(getLockTaskSql());
+        lockQuery.setParameter(1, persistence.getDbTypeConverter().getSqlObject(task.getId()));
+        if (lockQuery.getResultList().isEmpty()) {
+            return null;
+        }
+
+        TypedQuery<ScheduledTask> query = em.createQuery(
+                "select t from sys$ScheduledTask t where t.id = :id and t.active = true", ScheduledTask.class);
+        query.setParameter("id", task.getId());
+        return query.getFirstResult();
+    }
+
+    /**
+     * @return SQL locking the task row without waiting for the lock, returning no rows if the row is locked by another
+     * transaction, or null if the database does not support it
+     */
+    @Nullable
+    protected String getLockTaskSql() {
+        switch (DbmsType.getType()) {
+            case "postgres":
+            case "oracle":
+                return "select ID from SYS_SCHEDULED_TASK where ID = ? and DELETE_TS is null for update skip locked";
+            case "mssql":
+                return "select ID from SYS_SCHEDULED_TASK with (updlock, rowlock, readpast) where ID = ? and DELETE_TS is null";
+            default:
+                return null;
+        }
+    }
+
+    protected long getSchedulingInterval() {
+        return serverConfig.getSchedulingInterval();
+    }
+}
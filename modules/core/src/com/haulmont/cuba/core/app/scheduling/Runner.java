@@ -31,4 +31,43 @@ public interface Runner {
     String NAME = "cuba_SchedulingRunner";
 
     void runTask(ScheduledTask task, long now, @Nullable UserSession userSession);
+
+    /**
+     * Checks whether the task can be accepted for running now. Called by {@link Scheduling} before it records the
+     * start of the task, so a rejected run does not shift the schedule. A rejected run is counted in
+     * {@link #getRejectedCount()}.
+     *
+     * @return false if the task queue is full
+     */
+    default boolean acceptTask(ScheduledTask task) {
+        return true;
+    }
+
+    /**
+     * @return number of tasks waiting for a free thread
+     */
+    default int getQueueSize() {
+        return 0;
+    }
+
+    /**
+     * @return number of tasks being executed
+     */
+    default int getActiveCount() {
+        return 0;
+    }
+
+    /**
+     * @return number of task runs skipped because the queue was full
+     */
+    default long getRejectedCount() {
+        return 0;
+    }
+
+    /**
+     * @return average time in milliseconds the tasks spent in the queue
+     */
+    default long getAvgQueueWaitTime() {
+        return 0;
+    }
 }
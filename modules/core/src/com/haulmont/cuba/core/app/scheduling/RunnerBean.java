@@ -49,6 +49,7 @@ import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Standard implementation of {@link Runner} interface used by {@link Scheduling} to run scheduled tasks.
@@ -58,7 +59,16 @@ public class RunnerBean implements Runner {
 
     private final Logger log = LoggerFactory.getLogger(RunnerBean.class);
 
-    protected ExecutorService executorService;
+    protected ThreadPoolExecutor executorService;
+
+    protected int queueCapacity;
+
+    protected final AtomicLong runSequence = new AtomicLong();
+    protected final AtomicLong rejectedCount = new AtomicLong();
+    protected final AtomicLong startedCount = new AtomicLong();
+    protected final AtomicLong totalQueueWaitTime = new AtomicLong();
+
+    protected Map<UUID, AtomicLong> executionCounters = new ConcurrentHashMap<>();
 
     @Inject
     protected SchedulingAPI scheduling;
@@ -94,8 +104,12 @@ public class RunnerBean implements Runner {
 
     @PostConstruct
     public void init() {
-        int nThreads = configuration.getConfig(ServerConfig.class).getSchedulingThreadPoolSize();
-        executorService = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+        ServerConfig serverConfig = configuration.getConfig(ServerConfig.class);
+        int nThreads = serverConfig.getSchedulingThreadPoolSize();
+        queueCapacity = serverConfig.getSchedulingQueueCapacity();
+        // tasks are ordered by priority in the queue, see QueuedRun
+        executorService = new ThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), new ThreadFactory() {
             private final AtomicInteger threadNumber = new AtomicInteger(1);
             @Override
             public Thread newThread(@Nonnull Runnable r) {
@@ -111,20 +125,30 @@ public class RunnerBean implements Runner {
         // It's better not to pass an entity instance in managed state to another thread
         final ScheduledTask taskCopy = metadata.getTools().copy(task);
 
-        executorService.submit(() -> {
+        if (!acceptTask(taskCopy)) {
+            return;
+        }
+
+        boolean sampled = isExecutionSampled(taskCopy);
+        int priority = taskCopy.getPriority() != null ? taskCopy.getPriority() : 0;
+        executorService.execute(new QueuedRun(priority, () -> {
             log.debug("{}: running", taskCopy);
             try {
                 boolean runConcurrent = scheduling.setRunning(taskCopy, true);
                 if (!runConcurrent) {
                     try {
                         setSecurityContext(taskCopy, userSession);
-                        ScheduledExecution execution = registerExecutionStart(taskCopy, now);
+                        ScheduledExecution execution = registerExecutionStart(taskCopy, now, sampled);
                         statisticsCounter.incCubaScheduledTasksCount();
                         try {
                             Object result = executeTask(taskCopy);
                             registerExecutionFinish(taskCopy, execution, result);
                         } catch (Throwable throwable) {
-                            registerExecutionFinish(taskCopy, execution, throwable);
+                            if (execution == null) {
+                                registerFailedExecution(taskCopy, now, throwable);
+                            } else {
+                                registerExecutionFinish(taskCopy, execution, throwable);
+                            }
                             throw throwable;
                         }
                     } finally {
@@ -137,7 +161,59 @@ public class RunnerBean implements Runner {
             } catch (Throwable throwable) {
                 log.error("Error running {}", taskCopy, throwable);
             }
-        });
+        }));
+    }
+
+    @Override
+    public boolean acceptTask(ScheduledTask task) {
+        if (executorService.getQueue().size() >= queueCapacity) {
+            rejectedCount.incrementAndGet();
+            log.warn("Scheduled tasks queue is full, skip running {}", task);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int getQueueSize() {
+        return executorService.getQueue().size();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return executorService.getActiveCount();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public long getAvgQueueWaitTime() {
+        long count = startedCount.get();
+        return count == 0 ? 0 : totalQueueWaitTime.get() / count;
+    }
+
+    /**
+     * Executions of singleton and fixed delay tasks are always registered as they are used to coordinate the starts.
+     */
+    protected boolean isExecutionRegistrationRequired(ScheduledTask task) {
+        return BooleanUtils.isTrue(task.getSingleton()) || task.getSchedulingType() == SchedulingType.FIXED_DELAY;
+    }
+
+    /**
+     * @return whether a successful execution of the task should be registered according to
+     * {@link ServerConfig#getSchedulingExecutionLogSampleRate()}
+     */
+    protected boolean isExecutionSampled(ScheduledTask task) {
+        int sampleRate = configuration.getConfig(ServerConfig.class).getSchedulingExecutionLogSampleRate();
+        if (sampleRate == 1)
+            return true;
+        if (sampleRate <= 0)
+            return false;
+        long counter = executionCounters.computeIfAbsent(task.getId(), id -> new AtomicLong()).getAndIncrement();
+        return counter % sampleRate == 0;
     }
 
     protected void setSecurityContext(ScheduledTask task, @Nullable UserSession userSession) throws LoginException {
@@ -152,8 +228,8 @@ public class RunnerBean implements Runner {
         AppContext.setSecurityContext(new SecurityContext(userSession));
     }
 
-    protected ScheduledExecution registerExecutionStart(ScheduledTask task, long now) {
-        if (!BooleanUtils.isTrue(task.getLogStart()) && !BooleanUtils.isTrue(task.getSingleton()) && task.getSchedulingType() != SchedulingType.FIXED_DELAY)
+    protected ScheduledExecution registerExecutionStart(ScheduledTask task, long now, boolean sampled) {
+        if (!isExecutionRegistrationRequired(task) && !(BooleanUtils.isTrue(task.getLogStart()) && sampled))
             return null;
 
         log.trace("{}: registering execution start", task);
@@ -177,7 +253,7 @@ public class RunnerBean implements Runner {
     }
 
     protected void registerExecutionFinish(ScheduledTask task, ScheduledExecution execution, Object result) {
-        if ((!BooleanUtils.isTrue(task.getLogFinish()) && !BooleanUtils.isTrue(task.getSingleton()) && task.getSchedulingType() != SchedulingType.FIXED_DELAY)
+        if ((!BooleanUtils.isTrue(task.getLogFinish()) && !isExecutionRegistrationRequired(task))
                 || execution == null)
             return;
 
@@ -196,6 +272,29 @@ public class RunnerBean implements Runner {
         }
     }
 
+    /**
+     * Registers a failed execution of the task if its start was not registered because of sampling.
+     */
+    protected void registerFailedExecution(ScheduledTask task, long startTime, Throwable throwable) {
+        if (!BooleanUtils.isTrue(task.getLogStart()))
+            return;
+
+        log.trace("{}: registering failed execution", task);
+        try (Transaction tx = persistence.createTransaction()) {
+            EntityManager em = persistence.getEntityManager();
+
+            ScheduledExecution execution = metadata.create(ScheduledExecution.class);
+            execution.setTask(em.getReference(ScheduledTask.class, task.getId()));
+            execution.setStartTime(new Date(startTime));
+            execution.setFinishTime(timeSource.currentTimestamp());
+            execution.setServer(serverInfo.getServerId());
+            execution.setResult(throwable.toString());
+
+            em.persist(execution);
+            tx.commit();
+        }
+    }
+
     protected Object executeTask(ScheduledTask task) {
         switch (task.getDefinedBy()) {
             case BEAN: {
@@ -243,4 +342,36 @@ public class RunnerBean implements Runner {
             }
         }
     }
+
+    /**
+     * Task run waiting in the executor queue. Runs with greater priority go first, runs with equal priority
+     * preserve the submission order.
+     */
+    protected class QueuedRun implements Runnable, Comparable<QueuedRun> {
+
+        protected final int priority;
+        protected final long sequence;
+        protected final long enqueueTs;
+        protected final Runnable action;
+
+        protected QueuedRun(int priority, Runnable action) {
+            this.priority = priority;
+            this.action = action;
+            this.sequence = runSequence.incrementAndGet();
+            this.enqueueTs = timeSource.currentTimeMillis();
+        }
+
+        @Override
+        public void run() {
+            startedCount.incrementAndGet();
+            totalQueueWaitTime.addAndGet(Math.max(0, timeSource.currentTimeMillis() - enqueueTs));
+            action.run();
+        }
+
+        @Override
+        public int compareTo(QueuedRun other) {
+            int result = Integer.compare(other.priority, priority);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
 }
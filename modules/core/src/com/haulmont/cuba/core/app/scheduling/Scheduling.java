@@ -17,6 +17,10 @@
 
 package com.haulmont.cuba.core.app.scheduling;
 
+import com.haulmont.cuba.core.EntityManager;
+import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.Query;
+import com.haulmont.cuba.core.Transaction;
 import com.haulmont.cuba.core.app.ClusterManagerAPI;
 import com.haulmont.cuba.core.app.ServerConfig;
 import com.haulmont.cuba.core.app.ServerInfoAPI;
@@ -33,6 +37,7 @@ import com.haulmont.cuba.security.global.UserSession;
 import org.apache.commons.lang.BooleanUtils;
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.time.DateUtils;
 import org.perf4j.StopWatch;
 import org.perf4j.slf4j.Slf4JStopWatch;
 import org.slf4j.Logger;
@@ -46,6 +51,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -84,6 +90,9 @@ public class Scheduling implements SchedulingAPI {
     @Inject
     protected ServerInfoService serverInfoService;
 
+    @Inject
+    protected Persistence persistence;
+
     protected ConcurrentMap<ScheduledTask, Long> runningTasks = new ConcurrentHashMap<>();
 
     protected Map<ScheduledTask, Long> lastStartCache = new ConcurrentHashMap<>();
@@ -115,6 +124,8 @@ public class Scheduling implements SchedulingAPI {
             try {
                 for (ScheduledTask task : context.getTasks()) {
                     processTask(task);
+                    coordinator.taskProcessed(context, task,
+                            () -> calculateNextCheckTime(task, timeSource.currentTimeMillis()));
                 }
             } finally {
                 coordinator.end(context);
@@ -163,10 +174,7 @@ public class Scheduling implements SchedulingAPI {
 
     @Override
     public List<ScheduledTask> getActiveTasks() {
-        Coordinator.Context context = coordinator.begin();
-        coordinator.end(context);
-
-        List<ScheduledTask> tasks = context.getTasks();
+        List<ScheduledTask> tasks = coordinator.getActiveTasks();
         for (ScheduledTask task : tasks) {
             if (!BooleanUtils.isTrue(task.getSingleton())) {
                 Long time = lastStartCache.get(task);
@@ -177,6 +185,53 @@ public class Scheduling implements SchedulingAPI {
         return tasks;
     }
 
+    @Override
+    public void removeExecutionHistory() {
+        int maxAgeHours = configuration.getConfig(ServerConfig.class).getSchedulingExecutionHistoryMaxAgeHours();
+        if (maxAgeHours <= 0 || !clusterManager.isMaster())
+            return;
+
+        int count = removeExecutionHistory(maxAgeHours, null);
+        log.debug("Removed {} scheduled executions", count);
+    }
+
+    @Override
+    public int removeExecutionHistory(int ageHours, @Nullable Integer maxPeriodHours) {
+        Date startDate = DateUtils.addHours(timeSource.currentTimestamp(), -ageHours);
+        int batchSize = configuration.getConfig(ServerConfig.class).getSchedulingExecutionHistoryRemovalBatchSize();
+        int count = 0;
+        while (true) {
+            List<UUID> ids;
+            try (Transaction tx = persistence.createTransaction()) {
+                EntityManager em = persistence.getEntityManager();
+                String jpql = "select e.id from sys$ScheduledExecution e where e.startTime < ?1";
+                if (maxPeriodHours != null) {
+                    jpql += " and e.task.period <= ?2";
+                }
+                jpql += " order by e.startTime";
+
+                Query query = em.createQuery(jpql);
+                query.setParameter(1, startDate);
+                if (maxPeriodHours != null) {
+                    query.setParameter(2, maxPeriodHours * 3600);
+                }
+                query.setMaxResults(batchSize);
+                ids = query.getResultList();
+
+                if (!ids.isEmpty()) {
+                    em.createQuery("delete from sys$ScheduledExecution e where e.id in ?1")
+                            .setParameter(1, ids)
+                            .executeUpdate();
+                }
+                tx.commit();
+            }
+            count += ids.size();
+            if (ids.size() < batchSize)
+                break;
+        }
+        return count;
+    }
+
     protected long getSchedulingInterval() {
         return configuration.getConfig(ServerConfig.class).getSchedulingInterval();
     }
@@ -287,6 +342,42 @@ public class Scheduling implements SchedulingAPI {
         }
     }
 
+    /**
+     * Calculates the earliest time when the task can be started after it has been processed at the given time.
+     * The result is not earlier than the next scheduling tick. If the start depends on the state that can be changed
+     * by other servers, the next tick is returned.
+     */
+    protected long calculateNextCheckTime(ScheduledTask task, long now) {
+        long nextTick = now + getSchedulingInterval();
+        if (isRunning(task) || task.getStartDelay() != null)
+            return nextTick;
+
+        if (task.getStartDate() != null && task.getStartDate().getTime() > now)
+            return Math.max(task.getStartDate().getTime(), nextTick);
+
+        long period = task.getPeriod() != null ? task.getPeriod() * 1000 : 0;
+        long frame = task.getTimeFrame() != null ? task.getTimeFrame() * 1000 : period / 2;
+        if (frame == 0) {
+            frame = getSchedulingInterval();
+        }
+        long lastStart = BooleanUtils.isTrue(task.getSingleton()) ? task.getLastStart() : lastStartCache.getOrDefault(task, 0L);
+
+        long next;
+        if (SchedulingType.CRON == task.getSchedulingType()) {
+            CronSequenceGenerator cronSequenceGenerator = new CronSequenceGenerator(task.getCron(), getCurrentTimeZone());
+            next = cronSequenceGenerator.next(new Date(now)).getTime();
+        } else if (SchedulingType.FIXED_DELAY == task.getSchedulingType()) {
+            // the next start depends on the finish time, which is not less than the last start
+            next = task.getStartDate() == null && lastStart > 0 ? lastStart + period : nextTick;
+        } else if (task.getStartDate() != null) {
+            long currentStart = calculateNextPeriodDate(task, lastStart, now, frame, period);
+            next = needToStartInTimeFrame(now, frame, lastStart, currentStart) ? nextTick : currentStart + period;
+        } else {
+            next = lastStart > 0 ? lastStart + period : nextTick;
+        }
+        return Math.max(next, nextTick);
+    }
+
     protected boolean needToStartInTimeFrame(long now, long frame, long lastStart, long currentStart) {
         return currentStart <= now && now < currentStart + frame && lastStart < currentStart;
     }
@@ -346,6 +437,9 @@ public class Scheduling implements SchedulingAPI {
             finished = coordinator.isLastExecutionFinished(task, now);
         }
         if (finished) {
+            if (!runner.acceptTask(task)) {
+                return;
+            }
             task.setLastStartTime(new Date(now));
             task.setLastStartServer(server);
             runner.runTask(task, now, getUserSession(task));
@@ -354,6 +448,9 @@ public class Scheduling implements SchedulingAPI {
     }
 
     protected void runTask(ScheduledTask task, long time) throws LoginException {
+        if (!runner.acceptTask(task)) {
+            return;
+        }
         lastStartCache.put(task, time);
         runner.runTask(task, time, getUserSession(task));
     }
@@ -19,6 +19,7 @@ package com.haulmont.cuba.core.app.scheduling;
 
 import com.haulmont.cuba.core.entity.ScheduledTask;
 
+import javax.annotation.Nullable;
 import java.util.List;
 
 /**
@@ -74,4 +75,22 @@ public interface SchedulingAPI {
      * @return a list of active task instances in detached state
      */
     List<ScheduledTask> getActiveTasks();
+
+    /**
+     * Removes the execution history older than {@link com.haulmont.cuba.core.app.ServerConfig#getSchedulingExecutionHistoryMaxAgeHours()}
+     * hours, if the parameter is set. This method should be invoked from a Spring scheduler, e.g.:
+     * <pre>&lt;task:scheduled ref="cuba_Scheduling" method="removeExecutionHistory" cron="0 30 3 * * ?"/&gt;</pre>
+     *
+     * <p>The history is removed only on the master server of the cluster.</p>
+     */
+    void removeExecutionHistory();
+
+    /**
+     * Removes the execution history by batches, each batch in its own transaction.
+     * @param ageHours          executions started earlier than this number of hours ago are removed
+     * @param maxPeriodHours    if not null, only executions of tasks with the period less than or equal
+     *                          to this number of hours are removed
+     * @return number of removed executions
+     */
+    int removeExecutionHistory(int ageHours, @Nullable Integer maxPeriodHours);
 }
@@ -161,6 +161,36 @@ public class Emailer implements EmailerMBean {
         config.setSmtpConnectionTimeoutSec(timeoutSec);
     }
 
+    @Override
+    public int getSendingBatchSize() {
+        return config.getSendingBatchSize();
+    }
+
+    @Override
+    public int getSmtpConnectionPoolSize() {
+        return config.getSmtpConnectionPoolSize();
+    }
+
+    @Override
+    public long getSentCount() {
+        return emailer.getSentCount();
+    }
+
+    @Override
+    public long getNotSentCount() {
+        return emailer.getNotSentCount();
+    }
+
+    @Override
+    public long getRequeuedCount() {
+        return emailer.getRequeuedCount();
+    }
+
+    @Override
+    public double getAvgSendingTime() {
+        return emailer.getAvgSendingTime();
+    }
+
     @Authenticated
     @Override
     public String sendTestEmail(String addresses) {
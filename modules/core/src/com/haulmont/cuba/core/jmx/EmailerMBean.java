@@ -54,6 +54,30 @@ public interface EmailerMBean {
     int getSmtpConnectionTimeoutSec();
     void setSmtpConnectionTimeoutSec(int timeoutSec);
 
+    int getSendingBatchSize();
+
+    int getSmtpConnectionPoolSize();
+
+    /**
+     * @return number of messages sent since the application start
+     */
+    long getSentCount();
+
+    /**
+     * @return number of messages marked as not sent since the application start
+     */
+    long getNotSentCount();
+
+    /**
+     * @return number of failed attempts which returned messages to the queue
+     */
+    long getRequeuedCount();
+
+    /**
+     * @return average SMTP sending time of a message, ms
+     */
+    double getAvgSendingTime();
+
     @ManagedOperationParameters({@ManagedOperationParameter(name = "addresses", description = "")})
     String sendTestEmail(String addresses);
 
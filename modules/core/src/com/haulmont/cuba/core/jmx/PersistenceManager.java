@@ -29,6 +29,7 @@ import com.haulmont.cuba.core.global.QueryParser;
 import com.haulmont.cuba.core.global.QueryTransformerFactory;
 import com.haulmont.cuba.core.sys.DbInitializationException;
 import com.haulmont.cuba.core.sys.DbUpdater;
+import com.haulmont.cuba.core.sys.FetchGroupManager;
 import com.haulmont.cuba.core.sys.persistence.DbmsType;
 import com.haulmont.cuba.security.app.Authenticated;
 import org.apache.commons.lang.StringUtils;
@@ -66,6 +67,9 @@ public class PersistenceManager implements PersistenceManagerMBean {
     @Inject
     protected PersistenceSecurity security;
 
+    @Inject
+    protected FetchGroupManager fetchGroupManager;
+
     protected PersistenceConfig persistenceConfig;
 
     protected ServerConfig serverConfig;
@@ -149,6 +153,17 @@ public class PersistenceManager implements PersistenceManagerMBean {
         return new ViewRepositoryInfo(metadata).dumpHtml();
     }
 
+    @Override
+    public String printFetchPlanCacheStatistics() {
+        return new ViewRepositoryInfo(metadata).dumpFetchPlanCache(fetchGroupManager);
+    }
+
+    @Override
+    public String clearFetchPlanCache() {
+        fetchGroupManager.clearFetchPlanCache();
+        return "Done";
+    }
+
     @Authenticated
     @Override
     public String updateDatabase(String token) {
@@ -56,6 +56,12 @@ public interface PersistenceManagerMBean {
     @ManagedOperation(description = "Print list of views with properties from ViewRepository as HTML markup")
     String printViewRepositoryDumpHtml();
 
+    @ManagedOperation(description = "Show statistics of the cache of fetch plans compiled for views")
+    String printFetchPlanCacheStatistics();
+
+    @ManagedOperation(description = "Clear the cache of fetch plans compiled for views")
+    String clearFetchPlanCache();
+
     /**
      * Start the database update.
      * @param token 'update' string must be passed to avoid accidental invocation
@@ -17,25 +17,18 @@
 
 package com.haulmont.cuba.core.jmx;
 
-import com.haulmont.cuba.core.EntityManager;
-import com.haulmont.cuba.core.Persistence;
-import com.haulmont.cuba.core.Query;
-import com.haulmont.cuba.core.Transaction;
+import com.haulmont.cuba.core.app.scheduling.Runner;
 import com.haulmont.cuba.core.app.scheduling.SchedulingAPI;
 import com.haulmont.cuba.core.entity.ScheduledTask;
-import com.haulmont.cuba.core.global.TimeSource;
 import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.security.app.Authenticated;
 import org.apache.commons.lang.BooleanUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
-import org.apache.commons.lang.time.DateUtils;
 import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
 import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.List;
-import java.util.UUID;
 
 @Component("cuba_SchedulingMBean")
 public class Scheduling implements SchedulingMBean {
@@ -44,10 +37,7 @@ public class Scheduling implements SchedulingMBean {
     protected SchedulingAPI scheduling;
 
     @Inject
-    protected Persistence persistence;
-
-    @Inject
-    protected TimeSource timeSource;
+    protected Runner runner;
 
     @Override
     public boolean isActive() {
@@ -60,6 +50,26 @@ public class Scheduling implements SchedulingMBean {
         scheduling.setActive(value);
     }
 
+    @Override
+    public int getQueueSize() {
+        return runner.getQueueSize();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return runner.getActiveCount();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return runner.getRejectedCount();
+    }
+
+    @Override
+    public long getAvgQueueWaitTime() {
+        return runner.getAvgQueueWaitTime();
+    }
+
     @Override
     public String printActiveScheduledTasks() {
         SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
@@ -96,42 +106,12 @@ public class Scheduling implements SchedulingMBean {
     @Authenticated
     @Override
     public String removeExecutionHistory(String age, String maxPeriod) {
-        List<UUID> list;
-        Transaction tx = persistence.createTransaction();
         try {
-            EntityManager em = persistence.getEntityManager();
-            String jpql = "select e.id from sys$ScheduledExecution e where e.startTime < ?1";
-            if (maxPeriod != null) {
-                jpql += " and e.task.period <= ?2";
-            }
-            jpql += " order by e.startTime";
-
-            Query query = em.createQuery(jpql);
-
-            Date startDate = DateUtils.addHours(timeSource.currentTimestamp(), -Integer.parseInt(age));
-            query.setParameter(1, startDate);
-            if (maxPeriod != null) {
-                query.setParameter(2, Integer.parseInt(maxPeriod) * 3600);
-            }
-            list = query.getResultList();
-
-            tx.commit();
-        } finally {
-            tx.end();
-        }
-
-        for (int i = 0; i < list.size(); i += 100) {
-            final List<UUID> subList = list.subList(i, Math.min(i + 100, list.size()));
-            persistence.createTransaction().execute(new Transaction.Runnable() {
-                @Override
-                public void run(EntityManager em) {
-                    Query query = em.createQuery("delete from sys$ScheduledExecution e where e.id in ?1");
-                    query.setParameter(1, subList);
-                    query.executeUpdate();
-                }
-            });
+            int count = scheduling.removeExecutionHistory(Integer.parseInt(age),
+                    maxPeriod != null ? Integer.parseInt(maxPeriod) : null);
+            return "Deleted " + count;
+        } catch (Exception e) {
+            return ExceptionUtils.getStackTrace(e);
         }
-
-        return "Deleted " + list.size();
     }
-}
\ No newline at end of file
+}
@@ -41,6 +41,26 @@ public interface SchedulingMBean {
      */
     void setActive(boolean value);
 
+    /**
+     * @return number of tasks waiting for a free thread
+     */
+    int getQueueSize();
+
+    /**
+     * @return number of tasks being executed
+     */
+    int getActiveCount();
+
+    /**
+     * @return number of task runs skipped because the queue was full
+     */
+    long getRejectedCount();
+
+    /**
+     * @return average time in milliseconds the tasks spent in the queue
+     */
+    long getAvgQueueWaitTime();
+
     @ManagedOperation(description = "Print active scheduled tasks")
     String printActiveScheduledTasks();
 
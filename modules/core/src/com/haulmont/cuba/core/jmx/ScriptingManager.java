@@ -18,6 +18,7 @@ package com.haulmont.cuba.core.jmx;
 
 import com.haulmont.cuba.core.Persistence;
 import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.core.sys.AbstractScripting;
 import com.haulmont.cuba.security.app.Authenticated;
 import groovy.lang.Binding;
 import org.apache.commons.lang.exception.ExceptionUtils;
@@ -52,6 +53,31 @@ public class ScriptingManager implements ScriptingManagerMBean {
         return configuration.getConfig(GlobalConfig.class).getConfDir();
     }
 
+    @Override
+    public long getCompiledScriptsCount() {
+        return scripting instanceof AbstractScripting ? ((AbstractScripting) scripting).getCompiledScriptsCount() : 0;
+    }
+
+    @Override
+    public long getCompilationCount() {
+        return scripting instanceof AbstractScripting ? ((AbstractScripting) scripting).getCompilationCount() : 0;
+    }
+
+    @Override
+    public long getCompilationCacheHitCount() {
+        return scripting instanceof AbstractScripting ? ((AbstractScripting) scripting).getCompilationCacheHitCount() : 0;
+    }
+
+    @Override
+    public long getEvaluationCount() {
+        return scripting instanceof AbstractScripting ? ((AbstractScripting) scripting).getEvaluationCount() : 0;
+    }
+
+    @Override
+    public long getEvaluationTime() {
+        return scripting instanceof AbstractScripting ? ((AbstractScripting) scripting).getEvaluationTime() : 0;
+    }
+
     @Authenticated
     @Override
     public String runGroovyScript(String scriptName) {
@@ -16,6 +16,7 @@
  */
 package com.haulmont.cuba.core.jmx;
 
+import org.springframework.jmx.export.annotation.ManagedAttribute;
 import org.springframework.jmx.export.annotation.ManagedOperation;
 import org.springframework.jmx.export.annotation.ManagedOperationParameter;
 import org.springframework.jmx.export.annotation.ManagedOperationParameters;
@@ -30,6 +31,21 @@ public interface ScriptingManagerMBean {
 
     String getRootPath();
 
+    @ManagedAttribute(description = "Number of compiled Groovy expressions in the cache")
+    long getCompiledScriptsCount();
+
+    @ManagedAttribute(description = "Number of Groovy expressions compiled since the start")
+    long getCompilationCount();
+
+    @ManagedAttribute(description = "Number of Groovy expressions found in the compilation cache since the start")
+    long getCompilationCacheHitCount();
+
+    @ManagedAttribute(description = "Number of Groovy expressions evaluated since the start")
+    long getEvaluationCount();
+
+    @ManagedAttribute(description = "Total time of Groovy expressions evaluation, ms")
+    long getEvaluationTime();
+
     @ManagedOperation(description = "Execute a Groovy script. Binding contains variables: persistence, metadata, configuration")
     @ManagedOperationParameters(
             {@ManagedOperationParameter(name = "scriptName",
@@ -42,4 +42,14 @@ public class UniqueNumbers implements UniqueNumbersMBean {
     public long getNextNumber(String domain) {
         return uniqueNumbers.getNextNumber(domain);
     }
+
+    @Override
+    public long getSequenceFetchCount() {
+        return uniqueNumbers.getSequenceFetchCount();
+    }
+
+    @Override
+    public long getNumbersServedCount() {
+        return uniqueNumbers.getNumbersServedCount();
+    }
 }
\ No newline at end of file
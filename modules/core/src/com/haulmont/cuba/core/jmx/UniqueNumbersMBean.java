@@ -36,4 +36,14 @@ public interface UniqueNumbersMBean {
 
     @ManagedOperationParameters({@ManagedOperationParameter(name = "domain", description = "")})
     long getNextNumber(String domain);
+
+    /**
+     * @return number of database sequence calls since the application start
+     */
+    long getSequenceFetchCount();
+
+    /**
+     * @return number of values returned by getNextNumber() since the application start
+     */
+    long getNumbersServedCount();
 }
@@ -17,10 +17,12 @@
 
 package com.haulmont.cuba.core.jmx;
 
+import com.google.common.cache.CacheStats;
 import com.haulmont.cuba.core.global.Metadata;
 import com.haulmont.cuba.core.global.View;
 import com.haulmont.cuba.core.global.ViewProperty;
 import com.haulmont.cuba.core.sys.AbstractViewRepository;
+import com.haulmont.cuba.core.sys.FetchGroupManager;
 import org.apache.commons.lang.StringUtils;
 
 public class ViewRepositoryInfo {
@@ -112,6 +114,19 @@ public class ViewRepositoryInfo {
         content.append("<br/>").append("\n");
     }
 
+    public String dumpFetchPlanCache(FetchGroupManager fetchGroupManager) {
+        CacheStats stats = fetchGroupManager.getFetchPlanCacheStats();
+        if (stats == null) {
+            return "Fetch plan cache is disabled";
+        }
+        return "Compiled fetch plans: " + fetchGroupManager.getFetchPlanCacheSize() + "\n" +
+                "Hits: " + stats.hitCount() + "\n" +
+                "Misses: " + stats.missCount() + "\n" +
+                "Hit rate: " + String.format("%.2f", stats.hitRate()) + "\n" +
+                "Evictions: " + stats.evictionCount() + "\n" +
+                "Average compilation time, ms: " + String.format("%.3f", stats.averageLoadPenalty() / 1000000);
+    }
+
     public String dumpHtml() {
         StringBuilder content = new StringBuilder("<html><head><title>Views</title></head><body>");
 
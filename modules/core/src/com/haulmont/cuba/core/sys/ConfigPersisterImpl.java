@@ -67,6 +67,12 @@ public class ConfigPersisterImpl implements ConfigPersister {
         }
     }
 
+    @Override
+    public boolean isCacheable(SourceType sourceType) {
+        // ConfigStorage invalidates cached values when DB-stored properties change
+        return sourceType == SourceType.APP || sourceType == SourceType.DATABASE;
+    }
+
     private ConfigStorageAPI getConfigStorageAPI() {
         return AppBeans.get(ConfigStorageAPI.NAME);
     }
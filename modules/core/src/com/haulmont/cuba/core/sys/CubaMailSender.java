@@ -19,25 +19,57 @@ package com.haulmont.cuba.core.sys;
 
 import com.haulmont.cuba.core.app.EmailerConfig;
 import com.haulmont.cuba.core.global.Configuration;
+import com.haulmont.cuba.core.sys.events.AppContextStoppedEvent;
 import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSenderImpl;
-
 import org.springframework.stereotype.Component;
+
 import javax.inject.Inject;
+import javax.mail.Address;
+import javax.mail.AuthenticationFailedException;
+import javax.mail.MessagingException;
 import javax.mail.Session;
-import java.util.HashSet;
-import java.util.Properties;
-import java.util.Set;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import java.util.*;
 
+/**
+ * Mail sender configured by {@link EmailerConfig}.
+ * <p>Keeps up to {@link EmailerConfig#getSmtpConnectionPoolSize()} idle SMTP connections and reuses them
+ * for subsequent sendings, so several messages passed to {@link #send(MimeMessage...)} and consecutive
+ * sendings share one connection.</p>
+ */
 @Component(CubaMailSender.NAME)
 public class CubaMailSender extends JavaMailSenderImpl {
 
     public static final String NAME = "cuba_MailSender";
 
+    private final Logger log = LoggerFactory.getLogger(CubaMailSender.class);
+
     protected EmailerConfig config;
 
     private boolean propertiesInitialized;
 
+    // guarded by itself
+    protected final Deque<PooledTransport> idleTransports = new ArrayDeque<>();
+
+    protected static class PooledTransport {
+        protected final Transport transport;
+        protected final String key;
+        protected long lastUsed;
+
+        protected PooledTransport(Transport transport, String key) {
+            this.transport = transport;
+            this.key = key;
+        }
+    }
+
     @Inject
     public void setConfiguration(Configuration configuration) {
         config = configuration.getConfig(EmailerConfig.class);
@@ -121,4 +153,117 @@ public class CubaMailSender extends JavaMailSenderImpl {
     protected boolean includeJavaMailProperty(String name, Set excludedProperties) {
         return name.startsWith("mail.") && !excludedProperties.contains(name);
     }
-}
\ No newline at end of file
+
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, Object[] originalMessages) throws MailException {
+        if (config.getSmtpConnectionPoolSize() <= 0) {
+            super.doSend(mimeMessages, originalMessages);
+            return;
+        }
+
+        Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+        PooledTransport pooled = null;
+        try {
+            for (int i = 0; i < mimeMessages.length; i++) {
+                if (pooled == null || !pooled.transport.isConnected()) {
+                    if (pooled != null) {
+                        closeTransport(pooled.transport);
+                        pooled = null;
+                    }
+                    try {
+                        pooled = acquireTransport();
+                    } catch (AuthenticationFailedException ex) {
+                        throw new MailAuthenticationException(ex);
+                    } catch (Exception ex) {
+                        for (int j = i; j < mimeMessages.length; j++) {
+                            failedMessages.put(originalMessages != null ? originalMessages[j] : mimeMessages[j], ex);
+                        }
+                        throw new MailSendException("Mail server connection failed", ex, failedMessages);
+                    }
+                }
+
+                MimeMessage mimeMessage = mimeMessages[i];
+                try {
+                    if (mimeMessage.getSentDate() == null) {
+                        mimeMessage.setSentDate(new Date());
+                    }
+                    String messageId = mimeMessage.getMessageID();
+                    mimeMessage.saveChanges();
+                    if (messageId != null) {
+                        // preserve explicitly specified message id
+                        mimeMessage.setHeader("Message-ID", messageId);
+                    }
+                    Address[] addresses = mimeMessage.getAllRecipients();
+                    pooled.transport.sendMessage(mimeMessage, addresses != null ? addresses : new Address[0]);
+                } catch (Exception ex) {
+                    failedMessages.put(originalMessages != null ? originalMessages[i] : mimeMessages[i], ex);
+                }
+            }
+        } finally {
+            if (pooled != null) {
+                releaseTransport(pooled);
+            }
+        }
+
+        if (!failedMessages.isEmpty()) {
+            throw new MailSendException(failedMessages);
+        }
+    }
+
+    protected PooledTransport acquireTransport() throws MessagingException {
+        String key = getConnectionKey();
+        long idleTimeout = config.getSmtpConnectionIdleTimeoutSec() * 1000L;
+        while (true) {
+            PooledTransport pooled;
+            synchronized (idleTransports) {
+                pooled = idleTransports.pollFirst();
+            }
+            if (pooled == null) {
+                break;
+            }
+            if (pooled.key.equals(key) && System.currentTimeMillis() - pooled.lastUsed < idleTimeout
+                    && pooled.transport.isConnected()) {
+                log.trace("Reusing SMTP connection");
+                return pooled;
+            }
+            closeTransport(pooled.transport);
+        }
+        log.trace("Opening SMTP connection");
+        return new PooledTransport(connectTransport(), key);
+    }
+
+    protected void releaseTransport(PooledTransport pooled) {
+        pooled.lastUsed = System.currentTimeMillis();
+        synchronized (idleTransports) {
+            if (idleTransports.size() < config.getSmtpConnectionPoolSize()) {
+                idleTransports.addFirst(pooled);
+                return;
+            }
+        }
+        closeTransport(pooled.transport);
+    }
+
+    protected String getConnectionKey() {
+        return getHost() + ":" + getPort() + ":" + getUsername();
+    }
+
+    protected void closeTransport(Transport transport) {
+        try {
+            transport.close();
+        } catch (Exception e) {
+            log.debug("Error closing SMTP connection: {}", e.toString());
+        }
+    }
+
+    @EventListener(AppContextStoppedEvent.class)
+    protected void closeIdleTransports() {
+        List<PooledTransport> transports;
+        synchronized (idleTransports) {
+            transports = new ArrayList<>(idleTransports);
+            idleTransports.clear();
+        }
+        for (PooledTransport pooled : transports) {
+            closeTransport(pooled.transport);
+        }
+    }
+}
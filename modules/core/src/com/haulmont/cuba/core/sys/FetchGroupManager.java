@@ -17,10 +17,15 @@
 
 package com.haulmont.cuba.core.sys;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.chile.core.model.MetaProperty;
 import com.haulmont.chile.core.model.MetaPropertyPath;
+import com.haulmont.cuba.core.app.ServerConfig;
 import com.haulmont.cuba.core.entity.BaseUuidEntity;
 import com.haulmont.cuba.core.entity.EmbeddableEntity;
 import com.haulmont.cuba.core.entity.Entity;
@@ -41,6 +46,7 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 @Component(FetchGroupManager.NAME)
@@ -59,11 +65,23 @@ public class FetchGroupManager {
     @Inject
     private ViewRepository viewRepository;
 
+    private Cache<String, FetchPlan> fetchPlanCache;
+
+    @Inject
+    public void setConfiguration(Configuration configuration) {
+        int cacheSize = configuration.getConfig(ServerConfig.class).getFetchPlanCacheSize();
+        if (cacheSize > 0) {
+            fetchPlanCache = CacheBuilder.newBuilder()
+                    .maximumSize(cacheSize)
+                    .recordStats()
+                    .build();
+        }
+    }
+
     public void setView(JpaQuery query, String queryString, @Nullable View view, boolean singleResultExpected) {
         Preconditions.checkNotNullArgument(query, "query is null");
         if (view != null) {
-            AttributeGroup ag = view.loadPartialEntities() ? new FetchGroup() : new LoadGroup();
-            applyView(query, queryString, ag, view, singleResultExpected);
+            applyView(query, queryString, null, view, singleResultExpected);
         } else {
             query.setHint(QueryHints.FETCH_GROUP, null);
         }
@@ -75,25 +93,106 @@ public class FetchGroupManager {
 
         Map<String, Object> hints = query.getHints();
         AttributeGroup ag = null;
-        if (view.loadPartialEntities()) {
-            if (hints != null)
-                ag = (FetchGroup) hints.get(QueryHints.FETCH_GROUP);
-            if (ag == null)
-                ag = new FetchGroup();
-        } else {
-            if (hints != null)
-                ag = (LoadGroup) hints.get(QueryHints.LOAD_GROUP);
-            if (ag == null)
-                ag = new LoadGroup();
+        if (hints != null) {
+            ag = (AttributeGroup) hints.get(view.loadPartialEntities() ? QueryHints.FETCH_GROUP : QueryHints.LOAD_GROUP);
         }
 
         applyView(query, queryString, ag, view, singleResultExpected);
     }
 
-    private void applyView(JpaQuery query, String queryString, AttributeGroup attrGroup, View view,
+    /**
+     * @return number of compiled fetch plans in the cache
+     */
+    public long getFetchPlanCacheSize() {
+        return fetchPlanCache != null ? fetchPlanCache.size() : 0;
+    }
+
+    /**
+     * @return fetch plan cache statistics or null if the cache is disabled
+     */
+    @Nullable
+    public CacheStats getFetchPlanCacheStats() {
+        return fetchPlanCache != null ? fetchPlanCache.stats() : null;
+    }
+
+    /**
+     * Removes all compiled fetch plans from the cache. Must be invoked if views are redeployed at runtime.
+     */
+    public void clearFetchPlanCache() {
+        if (fetchPlanCache != null) {
+            fetchPlanCache.invalidateAll();
+        }
+    }
+
+    private void applyView(JpaQuery query, String queryString, @Nullable AttributeGroup attrGroup, View view,
                            boolean singleResultExpected) {
+        FetchPlan fetchPlan = getFetchPlan(queryString, view, singleResultExpected);
+
+        AttributeGroup ag;
+        if (attrGroup == null) {
+            ag = fetchPlan.attributeGroup.clone();
+        } else {
+            ag = attrGroup;
+            if (ag instanceof FetchGroup)
+                ((FetchGroup) ag).setShouldLoadAll(true);
+            for (String attribute : fetchPlan.attributes) {
+                ag.addAttribute(attribute);
+            }
+        }
+
+        if (fetchPlan.setAttributeGroup) {
+            query.setHint(fetchPlan.useFetchGroup ? QueryHints.FETCH_GROUP : QueryHints.LOAD_GROUP, ag);
+        }
+
+        for (Map.Entry<String, String> entry : fetchPlan.hints.entrySet()) {
+            query.setHint(entry.getValue(), entry.getKey());
+        }
+
+        if (fetchPlan.hasBatches) {
+            query.setHint(QueryHints.BATCH_TYPE, "IN");
+        }
+    }
 
-        boolean useFetchGroup = attrGroup instanceof FetchGroup;
+    private FetchPlan getFetchPlan(String queryString, View view, boolean singleResultExpected) {
+        boolean useFetchGroup = view.loadPartialEntities();
+        if (fetchPlanCache == null) {
+            return compileFetchPlan(queryString, view, useFetchGroup, singleResultExpected);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(useFetchGroup ? 'F' : 'L').append(singleResultExpected ? '1' : 'N');
+        appendViewSignature(view, sb);
+        sb.append(queryString);
+        String key = sb.toString();
+        try {
+            return fetchPlanCache.get(key, () -> compileFetchPlan(queryString, view, useFetchGroup, singleResultExpected));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException("Error compiling fetch plan for " + view, e.getCause());
+        }
+    }
+
+    /**
+     * Appends a string identifying the view content, so restricted copies of the same view share the fetch plan.
+     */
+    private void appendViewSignature(View view, StringBuilder sb) {
+        sb.append(view.getEntityClass().getName()).append('{');
+        for (ViewProperty property : view.getProperties()) {
+            sb.append(property.getName());
+            if (property.getFetchMode() != FetchMode.AUTO) {
+                sb.append(':').append(property.getFetchMode());
+            }
+            if (property.getView() != null) {
+                appendViewSignature(property.getView(), sb);
+            }
+            sb.append(',');
+        }
+        sb.append('}');
+    }
+
+    private FetchPlan compileFetchPlan(String queryString, View view, boolean useFetchGroup, boolean singleResultExpected) {
+        AttributeGroup attrGroup = useFetchGroup ? new FetchGroup() : new LoadGroup();
 
         Set<FetchGroupField> fetchGroupFields = new LinkedHashSet<>();
         processView(view, null, fetchGroupFields, useFetchGroup);
@@ -236,23 +335,15 @@ public class FetchGroupManager {
             attrGroup.addAttribute(attribute);
         }
 
-        if (!metadataTools.isCacheable(metaClass)) {
-            query.setHint(useFetchGroup ? QueryHints.FETCH_GROUP : QueryHints.LOAD_GROUP, attrGroup);
-        }
-
         if (log.isDebugEnabled()) {
             String fetchModes = fetchHints.entrySet().stream()
                     .map(e -> e.getKey() + "=" + (e.getValue().equals(QueryHints.LEFT_FETCH) ? "JOIN" : "BATCH"))
                     .collect(Collectors.joining(", "));
             log.debug("Fetch modes for " + view + ": " + (fetchModes.equals("") ? "<none>" : fetchModes));
         }
-        for (Map.Entry<String, String> entry : fetchHints.entrySet()) {
-            query.setHint(entry.getValue(), entry.getKey());
-        }
 
-        if (hasBatches) {
-            query.setHint(QueryHints.BATCH_TYPE, "IN");
-        }
+        return new FetchPlan(attrGroup, useFetchGroup, fetchGroupAttributes, !metadataTools.isCacheable(metaClass),
+                fetchHints, hasBatches);
     }
 
     private List<String> getMasterEntityAttributes(Set<FetchGroupField> fetchGroupFields,
@@ -386,6 +477,29 @@ public class FetchGroupManager {
         return metadata.getClassNN(entityClass);
     }
 
+    /**
+     * Fetch group and query hints compiled for a view and a query. The attribute group is a template,
+     * queries receive its copies.
+     */
+    protected static class FetchPlan {
+        private final AttributeGroup attributeGroup;
+        private final boolean useFetchGroup;
+        private final Set<String> attributes;
+        private final boolean setAttributeGroup;
+        private final Map<String, String> hints;
+        private final boolean hasBatches;
+
+        public FetchPlan(AttributeGroup attributeGroup, boolean useFetchGroup, Set<String> attributes,
+                         boolean setAttributeGroup, Map<String, String> hints, boolean hasBatches) {
+            this.attributeGroup = attributeGroup;
+            this.useFetchGroup = useFetchGroup;
+            this.attributes = attributes;
+            this.setAttributeGroup = setAttributeGroup;
+            this.hints = hints;
+            this.hasBatches = hasBatches;
+        }
+    }
+
     protected static class FetchGroupField {
         private final MetaClass metaClass;
         private FetchMode fetchMode;
@@ -18,6 +18,7 @@
 package com.haulmont.cuba.core.sys;
 
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.chile.core.model.MetaProperty;
 import com.haulmont.cuba.core.EntityManager;
@@ -25,10 +26,12 @@ import com.haulmont.cuba.core.Persistence;
 import com.haulmont.cuba.core.PersistenceSecurity;
 import com.haulmont.cuba.core.Query;
 import com.haulmont.cuba.core.app.AttributeSecuritySupport;
+import com.haulmont.cuba.core.app.ServerConfig;
 import com.haulmont.cuba.core.entity.BaseEntityInternalAccess;
 import com.haulmont.cuba.core.entity.BaseGenericIdEntity;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.core.sys.events.AppContextStoppedEvent;
 import com.haulmont.cuba.core.sys.jpql.JpqlSyntaxException;
 import com.haulmont.cuba.security.entity.ConstraintOperationType;
 import com.haulmont.cuba.security.global.ConstraintData;
@@ -37,10 +40,12 @@ import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 
 import javax.inject.Inject;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.*;
 
 import static java.lang.String.format;
 
@@ -63,6 +68,8 @@ public class PersistenceSecurityImpl extends SecurityImpl implements Persistence
     @Inject
     protected AttributeSecuritySupport attributeSecuritySupport;
 
+    protected volatile ExecutorService filterExecutor;
+
     @Override
     public boolean applyConstraints(Query query) {
         QueryParser parser = QueryTransformerFactory.createParser(query.getQueryString());
@@ -123,6 +130,11 @@ public class PersistenceSecurityImpl extends SecurityImpl implements Persistence
 
     @Override
     public boolean filterByConstraints(Collection<Entity> entities) {
+        int parallelThreshold = configuration.getConfig(ServerConfig.class).getInMemoryConstraintsParallelThreshold();
+        if (parallelThreshold > 0 && entities.size() >= parallelThreshold) {
+            return filterByConstraintsInParallel(entities);
+        }
+
         boolean filtered = false;
         for (Iterator<Entity> iterator = entities.iterator(); iterator.hasNext(); ) {
             Entity entity = iterator.next();
@@ -135,6 +147,84 @@ public class PersistenceSecurityImpl extends SecurityImpl implements Persistence
         return filtered;
     }
 
+    /**
+     * Evaluates in-memory constraints for chunks of the collection in parallel threads and then removes
+     * the denied entities in the calling thread. Constraint scripts are executed outside of the current
+     * transaction, so they must access only loaded attributes.
+     */
+    protected boolean filterByConstraintsInParallel(Collection<Entity> entities) {
+        List<Entity> list = new ArrayList<>(entities);
+        boolean[] denied = new boolean[list.size()];
+
+        int chunkCount = Math.min(Runtime.getRuntime().availableProcessors(), list.size());
+        int chunkSize = (list.size() + chunkCount - 1) / chunkCount;
+        List<Future<?>> futures = new ArrayList<>(chunkCount);
+        for (int start = chunkSize; start < list.size(); start += chunkSize) {
+            int from = start;
+            int to = Math.min(start + chunkSize, list.size());
+            futures.add(getFilterExecutor().submit(new SecurityContextAwareRunnable(() ->
+                    checkPermittedInMemory(list, denied, from, to))));
+        }
+        checkPermittedInMemory(list, denied, 0, Math.min(chunkSize, list.size()));
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while filtering entities by constraints", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new RuntimeException("Error filtering entities by constraints", e.getCause());
+            }
+        }
+
+        boolean filtered = false;
+        int i = 0;
+        for (Iterator<Entity> iterator = entities.iterator(); iterator.hasNext(); i++) {
+            iterator.next();
+            if (denied[i]) {
+                //we ignore situations when the collection is immutable
+                iterator.remove();
+                filtered = true;
+            }
+        }
+        return filtered;
+    }
+
+    protected void checkPermittedInMemory(List<Entity> entities, boolean[] denied, int from, int to) {
+        for (int i = from; i < to; i++) {
+            denied[i] = !isPermittedInMemory(entities.get(i));
+        }
+    }
+
+    protected ExecutorService getFilterExecutor() {
+        ExecutorService executor = filterExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = filterExecutor;
+                if (executor == null) {
+                    ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                            .setNameFormat("ConstraintsFilter-%d")
+                            .setDaemon(true)
+                            .build();
+                    executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), threadFactory);
+                    filterExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    @EventListener(AppContextStoppedEvent.class)
+    protected synchronized void applicationStopped() {
+        if (filterExecutor != null) {
+            filterExecutor.shutdownNow();
+            filterExecutor = null;
+        }
+    }
+
     @Override
     public boolean filterByConstraints(Entity entity) {
         return !isPermittedInMemory(entity);
@@ -32,6 +32,7 @@ import org.springframework.stereotype.Component;
 import javax.crypto.Cipher;
 import javax.crypto.spec.SecretKeySpec;
 import javax.inject.Inject;
+import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 
@@ -53,13 +54,26 @@ public class SecurityTokenManager {
     protected static final String HIDDEN_ATTRIBUTES_KEY = "__hiddenAttributes";
     protected static final Set SYSTEM_ATTRIBUTE_KEYS = Sets.newHashSet(READ_ONLY_ATTRIBUTES_KEY,
             REQUIRED_ATTRIBUTES_KEY, HIDDEN_ATTRIBUTES_KEY);
+
+    protected static final byte COMPACT_FORMAT_VERSION = 1;
+
+    protected static final byte UUID_ID = 0;
+    protected static final byte LONG_ID = 1;
+    protected static final byte INTEGER_ID = 2;
+    protected static final byte STRING_ID = 3;
+
+    protected final ThreadLocal<CipherHolder> encryptCipher = ThreadLocal.withInitial(CipherHolder::new);
+    protected final ThreadLocal<CipherHolder> decryptCipher = ThreadLocal.withInitial(CipherHolder::new);
+
+    protected volatile KeySpecHolder keySpecHolder;
+
     /**
      * Encrypt filtered data and write the result to the security token
      */
     public void writeSecurityToken(Entity entity) {
         SecurityState securityState = getOrCreateSecurityState(entity);
         if (securityState != null) {
-            JSONObject jsonObject = new JSONObject();
+            Map<String, Collection<Object>> filteredIds = new LinkedHashMap<>();
             Multimap<String, Object> filtered = getFilteredData(securityState);
             if (filtered != null) {
                 Set<Map.Entry<String, Collection<Object>>> entries = filtered.asMap().entrySet();
@@ -68,27 +82,19 @@ public class SecurityTokenManager {
                 for (Map.Entry<String, Collection<Object>> entry : entries) {
                     MetaProperty metaProperty = entity.getMetaClass().getPropertyNN(entry.getKey());
                     if (metadata.getTools().isOwningSide(metaProperty)) {
-                        jsonObject.put(entry.getKey(), entry.getValue());
+                        filteredIds.put(entry.getKey(), entry.getValue());
                     }
                     filteredAttributes[i++] = entry.getKey();
                 }
                 setFilteredAttributes(securityState, filteredAttributes);
             }
-            if (!securityState.getReadonlyAttributes().isEmpty()) {
-                jsonObject.put(READ_ONLY_ATTRIBUTES_KEY, securityState.getReadonlyAttributes());
-            }
-            if (!securityState.getHiddenAttributes().isEmpty()) {
-                jsonObject.put(HIDDEN_ATTRIBUTES_KEY, securityState.getHiddenAttributes());
-            }
-            if (!securityState.getRequiredAttributes().isEmpty()) {
-                jsonObject.put(REQUIRED_ATTRIBUTES_KEY, securityState.getRequiredAttributes());
-            }
 
-            String json = jsonObject.toString();
             byte[] encrypted;
-            Cipher cipher = getCipher(Cipher.ENCRYPT_MODE);
             try {
-                encrypted = cipher.doFinal(json.getBytes(StandardCharsets.UTF_8));
+                byte[] data = config.getSecurityTokenCompactFormat()
+                        ? writeCompactToken(securityState, filteredIds)
+                        : writeJsonToken(securityState, filteredIds);
+                encrypted = getCipher(Cipher.ENCRYPT_MODE).doFinal(data);
             } catch (Exception e) {
                 throw new RuntimeException("An error occurred while generating security token", e);
             }
@@ -96,6 +102,73 @@ public class SecurityTokenManager {
         }
     }
 
+    protected byte[] writeJsonToken(SecurityState securityState, Map<String, Collection<Object>> filteredIds) {
+        JSONObject jsonObject = new JSONObject();
+        for (Map.Entry<String, Collection<Object>> entry : filteredIds.entrySet()) {
+            jsonObject.put(entry.getKey(), entry.getValue());
+        }
+        if (!securityState.getReadonlyAttributes().isEmpty()) {
+            jsonObject.put(READ_ONLY_ATTRIBUTES_KEY, securityState.getReadonlyAttributes());
+        }
+        if (!securityState.getHiddenAttributes().isEmpty()) {
+            jsonObject.put(HIDDEN_ATTRIBUTES_KEY, securityState.getHiddenAttributes());
+        }
+        if (!securityState.getRequiredAttributes().isEmpty()) {
+            jsonObject.put(REQUIRED_ATTRIBUTES_KEY, securityState.getRequiredAttributes());
+        }
+        return jsonObject.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the token in the compact binary format: the format version byte, filtered ids by attribute,
+     * read-only, hidden and required attributes. Each id is prefixed by its type.
+     */
+    protected byte[] writeCompactToken(SecurityState securityState, Map<String, Collection<Object>> filteredIds)
+            throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeByte(COMPACT_FORMAT_VERSION);
+        out.writeInt(filteredIds.size());
+        for (Map.Entry<String, Collection<Object>> entry : filteredIds.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (Object id : entry.getValue()) {
+                writeId(out, id);
+            }
+        }
+        writeStrings(out, securityState.getReadonlyAttributes());
+        writeStrings(out, securityState.getHiddenAttributes());
+        writeStrings(out, securityState.getRequiredAttributes());
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    protected void writeId(DataOutputStream out, Object id) throws IOException {
+        if (id instanceof UUID) {
+            out.writeByte(UUID_ID);
+            out.writeLong(((UUID) id).getMostSignificantBits());
+            out.writeLong(((UUID) id).getLeastSignificantBits());
+        } else if (id instanceof Long) {
+            out.writeByte(LONG_ID);
+            out.writeLong((Long) id);
+        } else if (id instanceof Integer) {
+            out.writeByte(INTEGER_ID);
+            out.writeInt((Integer) id);
+        } else if (id instanceof String) {
+            out.writeByte(STRING_ID);
+            out.writeUTF((String) id);
+        } else {
+            throw new IllegalStateException("Unsupported id type: " + (id == null ? null : id.getClass().getName()));
+        }
+    }
+
+    protected void writeStrings(DataOutputStream out, Collection<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
     /**
      * Decrypt security token and read filtered data
      */
@@ -106,53 +179,143 @@ public class SecurityTokenManager {
         }
         Multimap<String, Object> filteredData = ArrayListMultimap.create();
         BaseEntityInternalAccess.setFilteredData(securityState, filteredData);
-        Cipher cipher = getCipher(Cipher.DECRYPT_MODE);
         try {
-            byte[] decrypted = cipher.doFinal(getSecurityToken(securityState));
-            String json = new String(decrypted, StandardCharsets.UTF_8);
-            JSONObject jsonObject = new JSONObject(json);
-            for (Object key : jsonObject.keySet()) {
-                if (!SYSTEM_ATTRIBUTE_KEYS.contains(key)) {
-                    String elementName = String.valueOf(key);
-                    JSONArray jsonArray = jsonObject.getJSONArray(elementName);
-                    MetaProperty metaProperty = entity.getMetaClass().getPropertyNN(elementName);
-                    for (int i = 0; i < jsonArray.length(); i++) {
-                        Object id = jsonArray.get(i);
-                        filteredData.put(elementName, convertId(id, metaProperty));
-                    }
-                }
-            }
-            if (jsonObject.has(READ_ONLY_ATTRIBUTES_KEY)) {
-                BaseEntityInternalAccess.setReadonlyAttributes(securityState, parseJsonArrayAsStrings(
-                        jsonObject.getJSONArray(READ_ONLY_ATTRIBUTES_KEY)));
-            }
-            if (jsonObject.has(HIDDEN_ATTRIBUTES_KEY)) {
-                BaseEntityInternalAccess.setHiddenAttributes(securityState, parseJsonArrayAsStrings(
-                        jsonObject.getJSONArray(HIDDEN_ATTRIBUTES_KEY)));
-            }
-            if (jsonObject.has(REQUIRED_ATTRIBUTES_KEY)) {
-                BaseEntityInternalAccess.setRequiredAttributes(securityState, parseJsonArrayAsStrings(
-                        jsonObject.getJSONArray(REQUIRED_ATTRIBUTES_KEY)));
+            byte[] decrypted = getCipher(Cipher.DECRYPT_MODE).doFinal(getSecurityToken(securityState));
+            if (decrypted.length > 0 && decrypted[0] == COMPACT_FORMAT_VERSION) {
+                readCompactToken(securityState, filteredData, decrypted);
+            } else {
+                readJsonToken(entity, securityState, filteredData, decrypted);
             }
         } catch (Exception e) {
             throw new RuntimeException("An error occurred while reading security token", e);
         }
     }
 
+    protected void readJsonToken(Entity entity, SecurityState securityState, Multimap<String, Object> filteredData,
+                                 byte[] decrypted) {
+        String json = new String(decrypted, StandardCharsets.UTF_8);
+        JSONObject jsonObject = new JSONObject(json);
+        for (Object key : jsonObject.keySet()) {
+            if (!SYSTEM_ATTRIBUTE_KEYS.contains(key)) {
+                String elementName = String.valueOf(key);
+                JSONArray jsonArray = jsonObject.getJSONArray(elementName);
+                MetaProperty metaProperty = entity.getMetaClass().getPropertyNN(elementName);
+                for (int i = 0; i < jsonArray.length(); i++) {
+                    Object id = jsonArray.get(i);
+                    filteredData.put(elementName, convertId(id, metaProperty));
+                }
+            }
+        }
+        if (jsonObject.has(READ_ONLY_ATTRIBUTES_KEY)) {
+            BaseEntityInternalAccess.setReadonlyAttributes(securityState, parseJsonArrayAsStrings(
+                    jsonObject.getJSONArray(READ_ONLY_ATTRIBUTES_KEY)));
+        }
+        if (jsonObject.has(HIDDEN_ATTRIBUTES_KEY)) {
+            BaseEntityInternalAccess.setHiddenAttributes(securityState, parseJsonArrayAsStrings(
+                    jsonObject.getJSONArray(HIDDEN_ATTRIBUTES_KEY)));
+        }
+        if (jsonObject.has(REQUIRED_ATTRIBUTES_KEY)) {
+            BaseEntityInternalAccess.setRequiredAttributes(securityState, parseJsonArrayAsStrings(
+                    jsonObject.getJSONArray(REQUIRED_ATTRIBUTES_KEY)));
+        }
+    }
+
+    protected void readCompactToken(SecurityState securityState, Multimap<String, Object> filteredData,
+                                    byte[] decrypted) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(decrypted, 1, decrypted.length - 1));
+        int attributesCount = in.readInt();
+        for (int i = 0; i < attributesCount; i++) {
+            String attribute = in.readUTF();
+            int idsCount = in.readInt();
+            for (int j = 0; j < idsCount; j++) {
+                filteredData.put(attribute, readId(in));
+            }
+        }
+        String[] readonlyAttributes = readStrings(in);
+        if (readonlyAttributes.length > 0) {
+            BaseEntityInternalAccess.setReadonlyAttributes(securityState, readonlyAttributes);
+        }
+        String[] hiddenAttributes = readStrings(in);
+        if (hiddenAttributes.length > 0) {
+            BaseEntityInternalAccess.setHiddenAttributes(securityState, hiddenAttributes);
+        }
+        String[] requiredAttributes = readStrings(in);
+        if (requiredAttributes.length > 0) {
+            BaseEntityInternalAccess.setRequiredAttributes(securityState, requiredAttributes);
+        }
+    }
+
+    protected Object readId(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case UUID_ID:
+                return new UUID(in.readLong(), in.readLong());
+            case LONG_ID:
+                return in.readLong();
+            case INTEGER_ID:
+                return in.readInt();
+            case STRING_ID:
+                return in.readUTF();
+            default:
+                throw new IllegalStateException("Unsupported id type in security token: " + type);
+        }
+    }
+
+    protected String[] readStrings(DataInputStream in) throws IOException {
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+        return strings;
+    }
+
+    /**
+     * Returns the cipher initialized for the current thread. Ciphers are not thread-safe, so each thread
+     * keeps its own instances, which are reinitialized only if the encryption key changes.
+     */
     protected Cipher getCipher(int mode) {
-        try {
-            Cipher cipher = Cipher.getInstance("AES");
-            byte[] encryptionKey = rightPad(substring(config.getKeyForSecurityTokenEncryption(), 0, 16), 16)
-                    .getBytes(StandardCharsets.UTF_8);
+        SecretKeySpec keySpec = getKeySpec();
+        CipherHolder holder = mode == Cipher.ENCRYPT_MODE ? encryptCipher.get() : decryptCipher.get();
+        if (holder.keySpec != keySpec) {
+            try {
+                if (holder.cipher == null) {
+                    holder.cipher = Cipher.getInstance("AES");
+                }
+                holder.cipher.init(mode, keySpec);
+                holder.keySpec = keySpec;
+            } catch (Exception e) {
+                throw new RuntimeException("An error occurred while initiating encryption/decryption", e);
+            }
+        }
+        return holder.cipher;
+    }
 
-            SecretKeySpec sKeySpec = new SecretKeySpec(encryptionKey, "AES");
-            cipher.init(mode, sKeySpec);
-            return cipher;
-        } catch (Exception e) {
-            throw new RuntimeException("An error occurred while initiating encryption/decryption", e);
+    protected SecretKeySpec getKeySpec() {
+        String key = config.getKeyForSecurityTokenEncryption();
+        KeySpecHolder holder = keySpecHolder;
+        if (holder == null || !holder.key.equals(key)) {
+            byte[] encryptionKey = rightPad(substring(key, 0, 16), 16).getBytes(StandardCharsets.UTF_8);
+            holder = new KeySpecHolder(key, new SecretKeySpec(encryptionKey, "AES"));
+            keySpecHolder = holder;
+        }
+        return holder.keySpec;
+    }
+
+    protected static class KeySpecHolder {
+        protected final String key;
+        protected final SecretKeySpec keySpec;
+
+        protected KeySpecHolder(String key, SecretKeySpec keySpec) {
+            this.key = key;
+            this.keySpec = keySpec;
         }
     }
 
+    protected static class CipherHolder {
+        protected Cipher cipher;
+        protected SecretKeySpec keySpec;
+    }
+
     protected String[] parseJsonArrayAsStrings(JSONArray array) {
         List<String> result = new ArrayList<>();
         for (int i = 0; i < array.length(); i++) {
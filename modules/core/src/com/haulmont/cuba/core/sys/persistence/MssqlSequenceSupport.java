@@ -38,11 +38,23 @@ public class MssqlSequenceSupport implements SequenceSupport {
 
     @Override
     public String modifySequenceSql(String sequenceName, long startWith) {
+        return modifySequenceSql(sequenceName, startWith, 1);
+    }
+
+    @Override
+    public String modifySequenceSql(String sequenceName, long startWith, long increment) {
         SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
         return String.format("drop table %1$s ^ " +
-                        "create table %1$s (ID bigint identity(%2$d,1), CREATE_TS datetime) ^ " +
+                        "create table %1$s (ID bigint identity(%2$d,%4$d), CREATE_TS datetime) ^ " +
                         "insert into %1$s (CREATE_TS) values ({ts '%3$s'})",
-                sequenceName.toUpperCase(), startWith, dateFormat.format(AppBeans.get(TimeSource.class).currentTimestamp()));
+                sequenceName.toUpperCase(), startWith, dateFormat.format(AppBeans.get(TimeSource.class).currentTimestamp()),
+                increment);
+    }
+
+    @Override
+    public boolean isStartValueReturnedFirst() {
+        // the start value is taken by the row inserted on restart
+        return false;
     }
 
     @Override
@@ -59,4 +71,9 @@ public class MssqlSequenceSupport implements SequenceSupport {
     public String getCurrentValueSql(String sequenceName) {
         return String.format("select ident_current('%s') as CURR_VALUE", sequenceName.toUpperCase());
     }
-}
\ No newline at end of file
+
+    @Override
+    public String getIncrementSql(String sequenceName) {
+        return String.format("select ident_incr('%s')", sequenceName.toUpperCase());
+    }
+}
@@ -48,4 +48,9 @@ public class OracleSequenceSupport implements SequenceSupport {
     public String getCurrentValueSql(String sequenceName) {
         return "select GET_SEQ_VAL('" + sequenceName.toUpperCase() + "') from DUAL";
     }
-}
\ No newline at end of file
+
+    @Override
+    public String getIncrementSql(String sequenceName) {
+        return "select INCREMENT_BY from USER_SEQUENCES where SEQUENCE_NAME = '" + sequenceName.toUpperCase() + "'";
+    }
+}
@@ -40,6 +40,11 @@ public class PostgresSequenceSupport implements SequenceSupport {
         return "select setval('" + sequenceName.toLowerCase() + "', " + startWith + ")";
     }
 
+    @Override
+    public boolean isStartValueReturnedFirst() {
+        return false;
+    }
+
     @Override
     public String deleteSequenceSql(String sequenceName) {
         Preconditions.checkNotNullArgument(sequenceName, "sequenceName is null");
@@ -57,4 +62,11 @@ public class PostgresSequenceSupport implements SequenceSupport {
         Preconditions.checkNotNullArgument(sequenceName, "sequenceName is null");
         return "select last_value from " + sequenceName.toLowerCase();
     }
-}
\ No newline at end of file
+
+    @Override
+    public String getIncrementSql(String sequenceName) {
+        Preconditions.checkNotNullArgument(sequenceName, "sequenceName is null");
+        return "select increment from information_schema.sequences where sequence_name = '"
+                + sequenceName.toLowerCase() + "'";
+    }
+}
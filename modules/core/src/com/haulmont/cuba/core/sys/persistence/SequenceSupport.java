@@ -36,9 +36,33 @@ public interface SequenceSupport {
 
     String modifySequenceSql(String sequenceName, long startWith);
 
+    /**
+     * Returns SQL to restart the sequence keeping the given increment. Override this method if the DBMS-specific
+     * SQL returned by {@link #modifySequenceSql(String, long)} does not keep the increment of the sequence.
+     */
+    default String modifySequenceSql(String sequenceName, long startWith, long increment) {
+        return modifySequenceSql(sequenceName, startWith);
+    }
+
+    /**
+     * @return true if the first value returned by {@link #getNextValueSql(String)} after
+     * {@link #modifySequenceSql(String, long)} is the start value itself, false if it is the start value plus
+     * the increment
+     */
+    default boolean isStartValueReturnedFirst() {
+        return true;
+    }
+
     String deleteSequenceSql(String sequenceName);
 
     String getNextValueSql(String sequenceName);
 
     String getCurrentValueSql(String sequenceName);
+
+    /**
+     * @return SQL returning the increment of the existing sequence, or null if the DBMS doesn't provide it
+     */
+    default String getIncrementSql(String sequenceName) {
+        return null;
+    }
 }
@@ -17,6 +17,8 @@
 package com.haulmont.cuba.restapi;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.haulmont.cuba.core.EntityManager;
 import com.haulmont.cuba.core.Persistence;
 import com.haulmont.cuba.core.Transaction;
@@ -31,6 +33,7 @@ import com.haulmont.cuba.core.global.TimeSource;
 import com.haulmont.cuba.core.global.View;
 import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.core.sys.SecurityContext;
+import com.haulmont.cuba.core.sys.events.AppContextStoppedEvent;
 import com.haulmont.cuba.security.app.UserSessionsAPI;
 import com.haulmont.cuba.security.auth.AuthenticationManager;
 import com.haulmont.cuba.security.global.NoUserSessionException;
@@ -38,6 +41,7 @@ import com.haulmont.cuba.security.global.UserSession;
 import org.apache.commons.lang.LocaleUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Nullable;
@@ -45,17 +49,26 @@ import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.io.*;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.DelayQueue;
-import java.util.concurrent.Delayed;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Collectors;
 
+/**
+ * Keeps REST API tokens in memory, replicates them over the cluster and optionally stores them in the database.
+ * <p>
+ * Each token is kept as a single record, additionally indexed by authentication key, user login and refresh token.
+ * Token expiration times are kept in sorted sets, so cleanup only touches expired tokens. If
+ * {@link ServerConfig#getRestTokensDbFlushInterval()} is positive, changes are written to the database in batches
+ * by a background thread instead of the calling thread.
+ * <p>
+ * Joining cluster members receive the tokens in the compact binary form, or in the serialized maps format of
+ * previous versions if {@link ServerConfig#getRestTokenStoreCompactState()} is false. Both formats are readable.
+ */
 @Component(ServerTokenStore.NAME)
 public class ServerTokenStoreImpl implements ServerTokenStore {
 
+    protected static final int STATE_VERSION = 1;
+
     @Inject
     protected AuthenticationManager authenticationManager;
 
@@ -79,26 +92,62 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
 
     protected Logger log = LoggerFactory.getLogger(ServerTokenStoreImpl.class);
 
+    /**
+     * Guards modifications of records together with their indexes. Reads do not require the lock.
+     */
     protected ReadWriteLock lock = new ReentrantReadWriteLock();
 
-    private ConcurrentHashMap<String, byte[]> accessTokenValueToAccessTokenStore = new ConcurrentHashMap<>();
-    private ConcurrentHashMap<String, byte[]> accessTokenValueToAuthenticationStore = new ConcurrentHashMap<>();
-    private ConcurrentHashMap<String, byte[]> authenticationToAccessTokenStore = new ConcurrentHashMap<>();
-    private ConcurrentHashMap<String, RestUserSessionInfo> accessTokenValueToSessionInfoStore = new ConcurrentHashMap<>();
-    private ConcurrentHashMap<String, String> accessTokenValueToAuthenticationKeyStore = new ConcurrentHashMap<>();
-    private ConcurrentHashMap<String, String> accessTokenValueToUserLoginStore = new ConcurrentHashMap<>();
+    protected final ConcurrentMap<String, AccessTokenRecord> accessTokens = new ConcurrentHashMap<>();
+    protected final ConcurrentMap<String, String> accessTokenValueByAuthenticationKey = new ConcurrentHashMap<>();
+    protected final ConcurrentMap<String, String> accessTokenValueByRefreshTokenValue = new ConcurrentHashMap<>();
+    protected final ConcurrentMap<String, Set<String>> accessTokenValuesByUserLogin = new ConcurrentHashMap<>();
 
-    private ConcurrentHashMap<String, byte[]> refreshTokenValueToRefreshTokenStore = new ConcurrentHashMap<>();
-    private ConcurrentHashMap<String, byte[]> refreshTokenValueToAuthenticationStore = new ConcurrentHashMap<>();
-    private ConcurrentHashMap<String, String> refreshTokenValueToAccessTokenValueStore = new ConcurrentHashMap<>();
-    private ConcurrentHashMap<String, String> refreshTokenValueToUserLoginStore = new ConcurrentHashMap<>();
+    protected final ConcurrentMap<String, RefreshTokenRecord> refreshTokens = new ConcurrentHashMap<>();
+    protected final ConcurrentMap<String, Set<String>> refreshTokenValuesByUserLogin = new ConcurrentHashMap<>();
 
-    private final DelayQueue<TokenExpiry> accessTokensExpiryQueue = new DelayQueue<>();
-    private final DelayQueue<TokenExpiry> refreshTokensExpiryQueue = new DelayQueue<>();
+    protected final ConcurrentSkipListSet<TokenExpiry> accessTokensExpiry = new ConcurrentSkipListSet<>();
+    protected final ConcurrentSkipListSet<TokenExpiry> refreshTokensExpiry = new ConcurrentSkipListSet<>();
+
+    /**
+     * Database changes not written yet by the background writer, by token value. A change without record is removal.
+     */
+    protected final ConcurrentMap<String, PendingTokenChange<AccessTokenRecord>> pendingAccessTokenChanges =
+            new ConcurrentHashMap<>();
+    protected final ConcurrentMap<String, PendingTokenChange<RefreshTokenRecord>> pendingRefreshTokenChanges =
+            new ConcurrentHashMap<>();
+
+    protected volatile ScheduledExecutorService dbWriter;
 
     @PostConstruct
     public void init() {
         initClusterListeners();
+        initDbWriter();
+    }
+
+    protected void initDbWriter() {
+        int flushInterval = serverConfig.getRestTokensDbFlushInterval();
+        if (flushInterval > 0) {
+            dbWriter = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("ServerTokenStoreDbWriter-%d").setDaemon(true).build());
+            dbWriter.scheduleWithFixedDelay(this::flushPendingChanges, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @EventListener(AppContextStoppedEvent.class)
+    protected void applicationStopped() {
+        if (dbWriter != null) {
+            dbWriter.shutdown();
+            try {
+                dbWriter.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flushPendingChanges();
+        }
+    }
+
+    protected boolean isDbWriteBehind() {
+        return dbWriter != null && !dbWriter.isShutdown();
     }
 
     protected void initClusterListeners() {
@@ -116,16 +165,7 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
 
             @Override
             public byte[] getState() {
-                if (accessTokenValueToAccessTokenStore.isEmpty() &&
-                        accessTokenValueToAuthenticationStore.isEmpty() &&
-                        authenticationToAccessTokenStore.isEmpty() &&
-                        accessTokenValueToSessionInfoStore.isEmpty() &&
-                        accessTokenValueToAuthenticationKeyStore.isEmpty() &&
-                        accessTokenValueToUserLoginStore.isEmpty() &&
-                        refreshTokenValueToRefreshTokenStore.isEmpty() &&
-                        refreshTokenValueToAuthenticationStore.isEmpty() &&
-                        refreshTokenValueToAccessTokenValueStore.isEmpty() &&
-                        refreshTokenValueToUserLoginStore.isEmpty()) {
+                if (accessTokens.isEmpty() && refreshTokens.isEmpty()) {
                     return new byte[0];
                 }
 
@@ -133,17 +173,11 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
 
                 lock.readLock().lock();
                 try {
-                    ObjectOutputStream oos = new ObjectOutputStream(bos);
-                    oos.writeObject(accessTokenValueToAccessTokenStore);
-                    oos.writeObject(accessTokenValueToAuthenticationStore);
-                    oos.writeObject(authenticationToAccessTokenStore);
-                    oos.writeObject(accessTokenValueToSessionInfoStore);
-                    oos.writeObject(accessTokenValueToAuthenticationKeyStore);
-                    oos.writeObject(accessTokenValueToUserLoginStore);
-                    oos.writeObject(refreshTokenValueToRefreshTokenStore);
-                    oos.writeObject(refreshTokenValueToAuthenticationStore);
-                    oos.writeObject(refreshTokenValueToAccessTokenValueStore);
-                    oos.writeObject(refreshTokenValueToUserLoginStore);
+                    if (serverConfig.getRestTokenStoreCompactState()) {
+                        writeState(new DataOutputStream(bos));
+                    } else {
+                        writeLegacyState(new ObjectOutputStream(bos));
+                    }
                 } catch (IOException e) {
                     throw new RuntimeException("Unable to serialize ServerTokenStore fields for cluster state", e);
                 } finally {
@@ -153,31 +187,20 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
                 return bos.toByteArray();
             }
 
-            @SuppressWarnings("unchecked")
             @Override
             public void setState(byte[] state) {
                 if (state == null || state.length == 0) {
                     return;
                 }
 
-                ByteArrayInputStream bis = new ByteArrayInputStream(state);
-                lock.writeLock().lock();
                 try {
-                    ObjectInputStream ois = new ObjectInputStream(bis);
-                    accessTokenValueToAccessTokenStore = (ConcurrentHashMap<String, byte[]>) ois.readObject();
-                    accessTokenValueToAuthenticationStore = (ConcurrentHashMap<String, byte[]>) ois.readObject();
-                    authenticationToAccessTokenStore = (ConcurrentHashMap<String, byte[]>) ois.readObject();
-                    accessTokenValueToSessionInfoStore = (ConcurrentHashMap<String, RestUserSessionInfo>) ois.readObject();
-                    accessTokenValueToAuthenticationKeyStore = (ConcurrentHashMap<String, String>) ois.readObject();
-                    accessTokenValueToUserLoginStore = (ConcurrentHashMap<String, String>) ois.readObject();
-                    refreshTokenValueToRefreshTokenStore = (ConcurrentHashMap<String, byte[]>) ois.readObject();
-                    refreshTokenValueToAuthenticationStore = (ConcurrentHashMap<String, byte[]>) ois.readObject();
-                    refreshTokenValueToAccessTokenValueStore = (ConcurrentHashMap<String, String>) ois.readObject();
-                    refreshTokenValueToUserLoginStore = (ConcurrentHashMap<String, String>) ois.readObject();
+                    if (isLegacyState(state)) {
+                        readLegacyState(new ObjectInputStream(new ByteArrayInputStream(state)));
+                    } else {
+                        readState(new DataInputStream(new ByteArrayInputStream(state)));
+                    }
                 } catch (IOException | ClassNotFoundException e) {
                     log.error("Error receiving state", e);
-                } finally {
-                    lock.writeLock().unlock();
                 }
             }
         });
@@ -210,18 +233,239 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
         clusterManagerAPI.addListener(TokenStoreRemoveRefreshTokenMsg.class, new ClusterListenerAdapter<TokenStoreRemoveRefreshTokenMsg>() {
             @Override
             public void receive(TokenStoreRemoveRefreshTokenMsg message) {
-                removeAccessTokenFromMemory(message.getTokenValue());
+                removeRefreshTokenFromMemory(message.getTokenValue());
             }
         });
     }
 
+    /**
+     * Writes all token records in a compact binary form for the cluster state transfer.
+     */
+    protected void writeState(DataOutputStream out) throws IOException {
+        List<AccessTokenRecord> accessTokenRecords = new ArrayList<>(accessTokens.values());
+        List<RefreshTokenRecord> refreshTokenRecords = new ArrayList<>(refreshTokens.values());
+
+        out.writeInt(STATE_VERSION);
+        out.writeInt(accessTokenRecords.size());
+        for (AccessTokenRecord record : accessTokenRecords) {
+            out.writeUTF(record.tokenValue);
+            writeBytes(out, record.tokenBytes);
+            writeString(out, record.authenticationKey);
+            writeBytes(out, record.authenticationBytes);
+            out.writeLong(record.expiry != null ? record.expiry.getTime() : -1);
+            writeString(out, record.userLogin);
+            writeString(out, record.refreshTokenValue);
+            RestUserSessionInfo sessionInfo = record.sessionInfo;
+            out.writeBoolean(sessionInfo != null);
+            if (sessionInfo != null) {
+                out.writeBoolean(sessionInfo.getId() != null);
+                if (sessionInfo.getId() != null) {
+                    out.writeLong(sessionInfo.getId().getMostSignificantBits());
+                    out.writeLong(sessionInfo.getId().getLeastSignificantBits());
+                }
+                writeString(out, sessionInfo.getLocale() != null ? sessionInfo.getLocale().toString() : null);
+            }
+        }
+        out.writeInt(refreshTokenRecords.size());
+        for (RefreshTokenRecord record : refreshTokenRecords) {
+            out.writeUTF(record.tokenValue);
+            writeBytes(out, record.tokenBytes);
+            writeBytes(out, record.authenticationBytes);
+            out.writeLong(record.expiry != null ? record.expiry.getTime() : -1);
+            writeString(out, record.userLogin);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads token records written by {@link #writeState(DataOutputStream)} and adds them to the store.
+     */
+    protected void readState(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != STATE_VERSION) {
+            throw new IOException("Unsupported ServerTokenStore state version: " + version);
+        }
+
+        int accessTokensCount = in.readInt();
+        for (int i = 0; i < accessTokensCount; i++) {
+            String tokenValue = in.readUTF();
+            byte[] tokenBytes = readBytes(in);
+            String authenticationKey = readString(in);
+            byte[] authenticationBytes = readBytes(in);
+            long expiry = in.readLong();
+            String userLogin = readString(in);
+            String refreshTokenValue = readString(in);
+            RestUserSessionInfo sessionInfo = null;
+            if (in.readBoolean()) {
+                UUID sessionId = in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+                String localeStr = readString(in);
+                sessionInfo = new RestUserSessionInfo(sessionId,
+                        !Strings.isNullOrEmpty(localeStr) ? LocaleUtils.toLocale(localeStr) : null);
+            }
+            AccessTokenRecord record = new AccessTokenRecord(tokenValue, tokenBytes, authenticationKey,
+                    authenticationBytes, expiry >= 0 ? new Date(expiry) : null, userLogin, refreshTokenValue);
+            record.sessionInfo = sessionInfo;
+            putAccessTokenRecord(record);
+        }
+
+        int refreshTokensCount = in.readInt();
+        for (int i = 0; i < refreshTokensCount; i++) {
+            String tokenValue = in.readUTF();
+            byte[] tokenBytes = readBytes(in);
+            byte[] authenticationBytes = readBytes(in);
+            long expiry = in.readLong();
+            String userLogin = readString(in);
+            putRefreshTokenRecord(new RefreshTokenRecord(tokenValue, tokenBytes, authenticationBytes,
+                    expiry >= 0 ? new Date(expiry) : null, userLogin));
+        }
+    }
+
+    /**
+     * @return true if the state is written by {@link #writeLegacyState(ObjectOutputStream)}, i.e. starts with the
+     * Java serialization stream header
+     */
+    protected boolean isLegacyState(byte[] state) {
+        return state.length >= 2
+                && state[0] == (byte) (ObjectStreamConstants.STREAM_MAGIC >>> 8)
+                && state[1] == (byte) ObjectStreamConstants.STREAM_MAGIC;
+    }
+
+    /**
+     * Writes token records as the serialized maps used by servers of previous versions. This format contains no
+     * token expiration times.
+     */
+    protected void writeLegacyState(ObjectOutputStream out) throws IOException {
+        ConcurrentHashMap<String, byte[]> accessTokenValueToAccessToken = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, byte[]> accessTokenValueToAuthentication = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, byte[]> authenticationToAccessToken = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, RestUserSessionInfo> accessTokenValueToSessionInfo = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, String> accessTokenValueToAuthenticationKey = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, String> accessTokenValueToUserLogin = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, byte[]> refreshTokenValueToRefreshToken = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, byte[]> refreshTokenValueToAuthentication = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, String> refreshTokenValueToAccessTokenValue = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, String> refreshTokenValueToUserLogin = new ConcurrentHashMap<>();
+
+        for (AccessTokenRecord record : accessTokens.values()) {
+            accessTokenValueToAccessToken.put(record.tokenValue, record.tokenBytes);
+            if (record.authenticationBytes != null) {
+                accessTokenValueToAuthentication.put(record.tokenValue, record.authenticationBytes);
+            }
+            if (record.authenticationKey != null) {
+                authenticationToAccessToken.put(record.authenticationKey, record.tokenBytes);
+                accessTokenValueToAuthenticationKey.put(record.tokenValue, record.authenticationKey);
+            }
+            RestUserSessionInfo sessionInfo = record.sessionInfo;
+            if (sessionInfo != null) {
+                accessTokenValueToSessionInfo.put(record.tokenValue, sessionInfo);
+            }
+            if (record.userLogin != null) {
+                accessTokenValueToUserLogin.put(record.tokenValue, record.userLogin);
+            }
+            if (!Strings.isNullOrEmpty(record.refreshTokenValue)) {
+                refreshTokenValueToAccessTokenValue.put(record.refreshTokenValue, record.tokenValue);
+            }
+        }
+        for (RefreshTokenRecord record : refreshTokens.values()) {
+            refreshTokenValueToRefreshToken.put(record.tokenValue, record.tokenBytes);
+            if (record.authenticationBytes != null) {
+                refreshTokenValueToAuthentication.put(record.tokenValue, record.authenticationBytes);
+            }
+            if (record.userLogin != null) {
+                refreshTokenValueToUserLogin.put(record.tokenValue, record.userLogin);
+            }
+        }
+
+        out.writeObject(accessTokenValueToAccessToken);
+        out.writeObject(accessTokenValueToAuthentication);
+        out.writeObject(authenticationToAccessToken);
+        out.writeObject(accessTokenValueToSessionInfo);
+        out.writeObject(accessTokenValueToAuthenticationKey);
+        out.writeObject(accessTokenValueToUserLogin);
+        out.writeObject(refreshTokenValueToRefreshToken);
+        out.writeObject(refreshTokenValueToAuthentication);
+        out.writeObject(refreshTokenValueToAccessTokenValue);
+        out.writeObject(refreshTokenValueToUserLogin);
+        out.flush();
+    }
+
+    /**
+     * Reads token records written by {@link #writeLegacyState(ObjectOutputStream)} or by servers of previous
+     * versions and adds them to the store. Such tokens have no expiration time in memory.
+     */
+    @SuppressWarnings("unchecked")
+    protected void readLegacyState(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        Map<String, byte[]> accessTokenValueToAccessToken = (Map<String, byte[]>) in.readObject();
+        Map<String, byte[]> accessTokenValueToAuthentication = (Map<String, byte[]>) in.readObject();
+        in.readObject(); // authentication key to access token bytes, restored from the access tokens
+        Map<String, RestUserSessionInfo> accessTokenValueToSessionInfo = (Map<String, RestUserSessionInfo>) in.readObject();
+        Map<String, String> accessTokenValueToAuthenticationKey = (Map<String, String>) in.readObject();
+        Map<String, String> accessTokenValueToUserLogin = (Map<String, String>) in.readObject();
+        Map<String, byte[]> refreshTokenValueToRefreshToken = (Map<String, byte[]>) in.readObject();
+        Map<String, byte[]> refreshTokenValueToAuthentication = (Map<String, byte[]>) in.readObject();
+        Map<String, String> refreshTokenValueToAccessTokenValue = (Map<String, String>) in.readObject();
+        Map<String, String> refreshTokenValueToUserLogin = (Map<String, String>) in.readObject();
+
+        Map<String, String> refreshTokenValueByAccessTokenValue = new HashMap<>();
+        for (Map.Entry<String, String> entry : refreshTokenValueToAccessTokenValue.entrySet()) {
+            refreshTokenValueByAccessTokenValue.put(entry.getValue(), entry.getKey());
+        }
+
+        for (Map.Entry<String, byte[]> entry : accessTokenValueToAccessToken.entrySet()) {
+            String tokenValue = entry.getKey();
+            AccessTokenRecord record = new AccessTokenRecord(tokenValue, entry.getValue(),
+                    accessTokenValueToAuthenticationKey.get(tokenValue),
+                    accessTokenValueToAuthentication.get(tokenValue), null,
+                    accessTokenValueToUserLogin.get(tokenValue),
+                    refreshTokenValueByAccessTokenValue.get(tokenValue));
+            record.sessionInfo = accessTokenValueToSessionInfo.get(tokenValue);
+            putAccessTokenRecord(record);
+        }
+        for (Map.Entry<String, byte[]> entry : refreshTokenValueToRefreshToken.entrySet()) {
+            String tokenValue = entry.getKey();
+            putRefreshTokenRecord(new RefreshTokenRecord(tokenValue, entry.getValue(),
+                    refreshTokenValueToAuthentication.get(tokenValue), null,
+                    refreshTokenValueToUserLogin.get(tokenValue)));
+        }
+    }
+
+    protected void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    @Nullable
+    protected String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    protected void writeBytes(DataOutputStream out, @Nullable byte[] value) throws IOException {
+        out.writeInt(value != null ? value.length : -1);
+        if (value != null) {
+            out.write(value);
+        }
+    }
+
+    @Nullable
+    protected byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+
     @Override
     public byte[] getAccessTokenByAuthentication(String authenticationKey) {
         byte[] accessTokenBytes;
         accessTokenBytes = getAccessTokenByAuthenticationFromMemory(authenticationKey);
         if (accessTokenBytes == null && serverConfig.getRestStoreTokensInDb()) {
             AccessToken accessToken = getAccessTokenByAuthenticationKeyFromDatabase(authenticationKey);
-            if (accessToken != null) {
+            if (accessToken != null && !isAccessTokenRemovalPending(accessToken.getTokenValue())) {
                 accessTokenBytes = accessToken.getTokenBytes();
                 restoreAccessTokenIntoMemory(accessToken);
             }
@@ -230,23 +474,27 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
     }
 
     protected byte[] getAccessTokenByAuthenticationFromMemory(String authenticationKey) {
-        return authenticationToAccessTokenStore.get(authenticationKey);
+        String tokenValue = accessTokenValueByAuthenticationKey.get(authenticationKey);
+        AccessTokenRecord record = tokenValue != null ? accessTokens.get(tokenValue) : null;
+        return record != null ? record.tokenBytes : null;
     }
 
     @Override
     public Set<String> getAccessTokenValuesByUserLogin(String userLogin) {
         Set<String> tokenValues = getAccessTokenValuesByUserLoginFromMemory(userLogin);
         if (serverConfig.getRestStoreTokensInDb()) {
-            tokenValues.addAll(getAccessTokenValuesByUserLoginFromDatabase(userLogin));
+            for (String tokenValue : getAccessTokenValuesByUserLoginFromDatabase(userLogin)) {
+                if (!isAccessTokenRemovalPending(tokenValue)) {
+                    tokenValues.add(tokenValue);
+                }
+            }
         }
         return tokenValues;
     }
 
     protected Set<String> getAccessTokenValuesByUserLoginFromMemory(String userLogin) {
-        return accessTokenValueToUserLoginStore.entrySet().stream()
-                .filter(entry -> userLogin.equals(entry.getValue()))
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toSet());
+        Set<String> tokenValues = accessTokenValuesByUserLogin.get(userLogin);
+        return tokenValues != null ? new HashSet<>(tokenValues) : new HashSet<>();
     }
 
     protected Set<String> getAccessTokenValuesByUserLoginFromDatabase(String userLogin) {
@@ -264,16 +512,18 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
     public Set<String> getRefreshTokenValuesByUserLogin(String userLogin) {
         Set<String> tokenValues = getRefreshTokenValuesByUserLoginFromMemory(userLogin);
         if (serverConfig.getRestStoreTokensInDb()) {
-            tokenValues.addAll(getRefreshTokenValuesByUserLoginFromDatabase(userLogin));
+            for (String tokenValue : getRefreshTokenValuesByUserLoginFromDatabase(userLogin)) {
+                if (!isRefreshTokenRemovalPending(tokenValue)) {
+                    tokenValues.add(tokenValue);
+                }
+            }
         }
         return tokenValues;
     }
 
     protected Set<String> getRefreshTokenValuesByUserLoginFromMemory(String userLogin) {
-        return refreshTokenValueToUserLoginStore.entrySet().stream()
-                .filter(entry -> userLogin.equals(entry.getValue()))
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toSet());
+        Set<String> tokenValues = refreshTokenValuesByUserLogin.get(userLogin);
+        return tokenValues != null ? new HashSet<>(tokenValues) : new HashSet<>();
     }
 
     protected Set<String> getRefreshTokenValuesByUserLoginFromDatabase(String userLogin) {
@@ -296,45 +546,91 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
                                  String userLogin,
                                  Locale locale,
                                  String refreshTokenValue) {
-        storeAccessTokenToMemory(tokenValue, accessTokenBytes, authenticationKey, authenticationBytes, tokenExpiry,
-                userLogin, refreshTokenValue);
+        AccessTokenRecord record = storeAccessTokenToMemory(tokenValue, accessTokenBytes, authenticationKey,
+                authenticationBytes, tokenExpiry, userLogin, refreshTokenValue);
         if (serverConfig.getRestStoreTokensInDb()) {
-            try (Transaction tx = persistence.getTransaction()) {
-                removeAccessTokenFromDatabase(tokenValue);
-                storeAccessTokenToDatabase(tokenValue, accessTokenBytes, authenticationKey, authenticationBytes,
-                        tokenExpiry, userLogin, locale, refreshTokenValue);
-                tx.commit();
+            if (isDbWriteBehind()) {
+                pendingAccessTokenChanges.put(tokenValue, new PendingTokenChange<>(record, locale));
+            } else {
+                try (Transaction tx = persistence.getTransaction()) {
+                    removeAccessTokenFromDatabase(tokenValue);
+                    storeAccessTokenToDatabase(tokenValue, accessTokenBytes, authenticationKey, authenticationBytes,
+                            tokenExpiry, userLogin, locale, refreshTokenValue);
+                    tx.commit();
+                }
             }
         }
         clusterManagerAPI.send(new TokenStoreAddAccessTokenMsg(tokenValue, accessTokenBytes, authenticationKey,
                 authenticationBytes, tokenExpiry, userLogin, refreshTokenValue));
     }
 
-    protected void storeAccessTokenToMemory(String accessTokenValue,
-                                            byte[] accessTokenBytes,
-                                            String authenticationKey,
-                                            byte[] authenticationBytes,
-                                            Date tokenExpiry,
-                                            String userLogin,
-                                            @Nullable String refreshTokenValue) {
+    protected AccessTokenRecord storeAccessTokenToMemory(String accessTokenValue,
+                                                         byte[] accessTokenBytes,
+                                                         String authenticationKey,
+                                                         byte[] authenticationBytes,
+                                                         Date tokenExpiry,
+                                                         String userLogin,
+                                                         @Nullable String refreshTokenValue) {
+        AccessTokenRecord record = new AccessTokenRecord(accessTokenValue, accessTokenBytes, authenticationKey,
+                authenticationBytes, tokenExpiry, userLogin, refreshTokenValue);
+        putAccessTokenRecord(record);
+        return record;
+    }
+
+    /**
+     * Adds the record to the store replacing the record with the same token value and updates the indexes.
+     */
+    protected void putAccessTokenRecord(AccessTokenRecord record) {
         lock.writeLock().lock();
         try {
-            accessTokenValueToAccessTokenStore.put(accessTokenValue, accessTokenBytes);
-            authenticationToAccessTokenStore.put(authenticationKey, accessTokenBytes);
-            accessTokenValueToAuthenticationStore.put(accessTokenValue, authenticationBytes);
-            accessTokenValueToAuthenticationKeyStore.put(accessTokenValue, authenticationKey);
-            accessTokenValueToUserLoginStore.put(accessTokenValue, userLogin);
-            if (!Strings.isNullOrEmpty(refreshTokenValue)) {
-                refreshTokenValueToAccessTokenValueStore.put(refreshTokenValue, accessTokenValue);
+            AccessTokenRecord oldRecord = accessTokens.put(record.tokenValue, record);
+            if (oldRecord != null) {
+                if (record.sessionInfo == null) {
+                    record.sessionInfo = oldRecord.sessionInfo;
+                }
+                unindexAccessTokenRecord(oldRecord);
+            }
+            if (record.authenticationKey != null) {
+                accessTokenValueByAuthenticationKey.put(record.authenticationKey, record.tokenValue);
+            }
+            if (!Strings.isNullOrEmpty(record.refreshTokenValue)) {
+                accessTokenValueByRefreshTokenValue.put(record.refreshTokenValue, record.tokenValue);
+            }
+            if (record.userLogin != null) {
+                addToIndex(accessTokenValuesByUserLogin, record.userLogin, record.tokenValue);
+            }
+            if (record.expiry != null) {
+                accessTokensExpiry.add(new TokenExpiry(record.tokenValue, record.expiry));
             }
         } finally {
             lock.writeLock().unlock();
         }
+    }
 
-        if (tokenExpiry != null) {
-            TokenExpiry expiry = new TokenExpiry(accessTokenValue, tokenExpiry);
-            this.accessTokensExpiryQueue.put(expiry);
+    protected void unindexAccessTokenRecord(AccessTokenRecord record) {
+        if (record.authenticationKey != null) {
+            accessTokenValueByAuthenticationKey.remove(record.authenticationKey, record.tokenValue);
+        }
+        if (!Strings.isNullOrEmpty(record.refreshTokenValue)) {
+            accessTokenValueByRefreshTokenValue.remove(record.refreshTokenValue, record.tokenValue);
         }
+        if (record.userLogin != null) {
+            removeFromIndex(accessTokenValuesByUserLogin, record.userLogin, record.tokenValue);
+        }
+        if (record.expiry != null) {
+            accessTokensExpiry.remove(new TokenExpiry(record.tokenValue, record.expiry));
+        }
+    }
+
+    protected void addToIndex(ConcurrentMap<String, Set<String>> index, String key, String tokenValue) {
+        index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(tokenValue);
+    }
+
+    protected void removeFromIndex(ConcurrentMap<String, Set<String>> index, String key, String tokenValue) {
+        index.computeIfPresent(key, (k, tokenValues) -> {
+            tokenValues.remove(tokenValue);
+            return tokenValues.isEmpty() ? null : tokenValues;
+        });
     }
 
     protected void storeAccessTokenToDatabase(String tokenValue,
@@ -368,29 +664,60 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
                                   byte[] authenticationBytes,
                                   Date tokenExpiry,
                                   String userLogin) {
-        storeRefreshTokenToMemory(refreshTokenValue, refreshTokenBytes, authenticationBytes, tokenExpiry, userLogin);
+        RefreshTokenRecord record = storeRefreshTokenToMemory(refreshTokenValue, refreshTokenBytes,
+                authenticationBytes, tokenExpiry, userLogin);
         if (serverConfig.getRestStoreTokensInDb()) {
-            try (Transaction tx = persistence.getTransaction()) {
-                removeRefreshTokenFromDatabase(refreshTokenValue);
-                storeRefreshTokenToDatabase(refreshTokenValue, refreshTokenBytes, authenticationBytes,
-                        tokenExpiry, userLogin);
-                tx.commit();
+            if (isDbWriteBehind()) {
+                pendingRefreshTokenChanges.put(refreshTokenValue, new PendingTokenChange<>(record, null));
+            } else {
+                try (Transaction tx = persistence.getTransaction()) {
+                    removeRefreshTokenFromDatabase(refreshTokenValue);
+                    storeRefreshTokenToDatabase(refreshTokenValue, refreshTokenBytes, authenticationBytes,
+                            tokenExpiry, userLogin);
+                    tx.commit();
+                }
             }
         }
     }
 
-    protected void storeRefreshTokenToMemory(String refreshTokenValue,
-                                             byte[] refreshTokenBytes,
-                                             byte[] authenticationBytes,
-                                             Date tokenExpiry,
-                                             String userLogin) {
-        refreshTokenValueToRefreshTokenStore.put(refreshTokenValue, refreshTokenBytes);
-        refreshTokenValueToAuthenticationStore.put(refreshTokenValue, authenticationBytes);
-        refreshTokenValueToUserLoginStore.put(refreshTokenValue, userLogin);
+    protected RefreshTokenRecord storeRefreshTokenToMemory(String refreshTokenValue,
+                                                           byte[] refreshTokenBytes,
+                                                           byte[] authenticationBytes,
+                                                           Date tokenExpiry,
+                                                           String userLogin) {
+        RefreshTokenRecord record = new RefreshTokenRecord(refreshTokenValue, refreshTokenBytes, authenticationBytes,
+                tokenExpiry, userLogin);
+        putRefreshTokenRecord(record);
+        return record;
+    }
+
+    /**
+     * Adds the record to the store replacing the record with the same token value and updates the indexes.
+     */
+    protected void putRefreshTokenRecord(RefreshTokenRecord record) {
+        lock.writeLock().lock();
+        try {
+            RefreshTokenRecord oldRecord = refreshTokens.put(record.tokenValue, record);
+            if (oldRecord != null) {
+                unindexRefreshTokenRecord(oldRecord);
+            }
+            if (record.userLogin != null) {
+                addToIndex(refreshTokenValuesByUserLogin, record.userLogin, record.tokenValue);
+            }
+            if (record.expiry != null) {
+                refreshTokensExpiry.add(new TokenExpiry(record.tokenValue, record.expiry));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
-        if (tokenExpiry != null) {
-            TokenExpiry expiry = new TokenExpiry(refreshTokenValue, tokenExpiry);
-            this.refreshTokensExpiryQueue.put(expiry);
+    protected void unindexRefreshTokenRecord(RefreshTokenRecord record) {
+        if (record.userLogin != null) {
+            removeFromIndex(refreshTokenValuesByUserLogin, record.userLogin, record.tokenValue);
+        }
+        if (record.expiry != null) {
+            refreshTokensExpiry.remove(new TokenExpiry(record.tokenValue, record.expiry));
         }
     }
 
@@ -417,7 +744,8 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
     public byte[] getAccessTokenByTokenValue(String accessTokenValue) {
         byte[] accessTokenBytes;
         accessTokenBytes = getAccessTokenByTokenValueFromMemory(accessTokenValue);
-        if (accessTokenBytes == null && serverConfig.getRestStoreTokensInDb()) {
+        if (accessTokenBytes == null && serverConfig.getRestStoreTokensInDb()
+                && !isAccessTokenRemovalPending(accessTokenValue)) {
             AccessToken accessToken = getAccessTokenByTokenValueFromDatabase(accessTokenValue);
             if (accessToken != null) {
                 accessTokenBytes = accessToken.getTokenBytes();
@@ -428,14 +756,16 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
     }
 
     protected byte[] getAccessTokenByTokenValueFromMemory(String tokenValue) {
-        return accessTokenValueToAccessTokenStore.get(tokenValue);
+        AccessTokenRecord record = accessTokens.get(tokenValue);
+        return record != null ? record.tokenBytes : null;
     }
 
     @Override
     public byte[] getAuthenticationByTokenValue(String tokenValue) {
         byte[] authenticationBytes;
         authenticationBytes = getAuthenticationByTokenValueFromMemory(tokenValue);
-        if (authenticationBytes == null && serverConfig.getRestStoreTokensInDb()) {
+        if (authenticationBytes == null && serverConfig.getRestStoreTokensInDb()
+                && !isAccessTokenRemovalPending(tokenValue)) {
             AccessToken accessToken = getAccessTokenByTokenValueFromDatabase(tokenValue);
             if (accessToken != null) {
                 authenticationBytes = accessToken.getAuthenticationBytes();
@@ -446,7 +776,8 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
     }
 
     protected byte[] getAuthenticationByTokenValueFromMemory(String tokenValue) {
-        return accessTokenValueToAuthenticationStore.get(tokenValue);
+        AccessTokenRecord record = accessTokens.get(tokenValue);
+        return record != null ? record.authenticationBytes : null;
     }
 
     @Nullable
@@ -494,7 +825,7 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
     @Override
     public byte[] getRefreshTokenByTokenValue(String tokenValue) {
         byte[] tokenBytes = getRefreshTokenByTokenValueFromMemory(tokenValue);
-        if (tokenBytes == null && serverConfig.getRestStoreTokensInDb()) {
+        if (tokenBytes == null && serverConfig.getRestStoreTokensInDb() && !isRefreshTokenRemovalPending(tokenValue)) {
             RefreshToken refreshToken = getRefreshTokenByTokenValueFromDatabase(tokenValue);
             if (refreshToken != null) {
                 tokenBytes = refreshToken.getTokenBytes();
@@ -508,36 +839,24 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
      * Method fills in-memory maps from the {@link AccessToken} object got from the database
      */
     protected void restoreAccessTokenIntoMemory(AccessToken accessToken) {
-        lock.writeLock().lock();
-        try {
-            accessTokenValueToAccessTokenStore.put(accessToken.getTokenValue(), accessToken.getTokenBytes());
-            authenticationToAccessTokenStore.put(accessToken.getAuthenticationKey(), accessToken.getTokenBytes());
-            accessTokenValueToAuthenticationStore.put(accessToken.getTokenValue(), accessToken.getAuthenticationBytes());
-            accessTokenValueToAuthenticationKeyStore.put(accessToken.getTokenValue(), accessToken.getAuthenticationKey());
-        } finally {
-            lock.writeLock().unlock();
-        }
+        putAccessTokenRecord(new AccessTokenRecord(accessToken.getTokenValue(), accessToken.getTokenBytes(),
+                accessToken.getAuthenticationKey(), accessToken.getAuthenticationBytes(), accessToken.getExpiry(),
+                accessToken.getUserLogin(), accessToken.getRefreshTokenValue()));
     }
 
     /**
      * Method fills in-memory maps from the {@link RefreshToken} object got from the database
      */
     protected void restoreRefreshTokenIntoMemory(RefreshToken refreshToken) {
-        lock.writeLock().lock();
-        try {
-            refreshTokenValueToRefreshTokenStore.put(refreshToken.getTokenValue(), refreshToken.getTokenBytes());
-            refreshTokenValueToAuthenticationStore.put(refreshToken.getTokenValue(), refreshToken.getAuthenticationBytes());
-
-
-        } finally {
-            lock.writeLock().unlock();
-        }
+        putRefreshTokenRecord(new RefreshTokenRecord(refreshToken.getTokenValue(), refreshToken.getTokenBytes(),
+                refreshToken.getAuthenticationBytes(), refreshToken.getExpiry(), refreshToken.getUserLogin()));
     }
 
     @Override
     public RestUserSessionInfo getSessionInfoByTokenValue(String tokenValue) {
-        RestUserSessionInfo sessionInfo = accessTokenValueToSessionInfoStore.get(tokenValue);
-        if (sessionInfo == null && serverConfig.getRestStoreTokensInDb()) {
+        AccessTokenRecord record = accessTokens.get(tokenValue);
+        RestUserSessionInfo sessionInfo = record != null ? record.sessionInfo : null;
+        if (sessionInfo == null && serverConfig.getRestStoreTokensInDb() && !isAccessTokenRemovalPending(tokenValue)) {
             AccessToken accessToken = getAccessTokenByTokenValueFromDatabase(tokenValue);
             if (accessToken != null) {
                 String localeStr = accessToken.getLocale();
@@ -561,7 +880,14 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
     protected RestUserSessionInfo _putSessionInfo(String tokenValue, RestUserSessionInfo sessionInfo) {
         lock.writeLock().lock();
         try {
-            return accessTokenValueToSessionInfoStore.put(tokenValue, sessionInfo);
+            AccessTokenRecord record = accessTokens.get(tokenValue);
+            if (record == null) {
+                log.debug("Session info is not stored: access token {} is not found", tokenValue);
+                return null;
+            }
+            RestUserSessionInfo oldSessionInfo = record.sessionInfo;
+            record.sessionInfo = sessionInfo;
+            return oldSessionInfo;
         } finally {
             lock.writeLock().unlock();
         }
@@ -571,26 +897,27 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
     public void removeAccessToken(String tokenValue) {
         removeAccessTokenFromMemory(tokenValue);
         if (serverConfig.getRestStoreTokensInDb()) {
-            removeAccessTokenFromDatabase(tokenValue);
+            if (isDbWriteBehind()) {
+                pendingAccessTokenChanges.put(tokenValue, new PendingTokenChange<>(null, null));
+            } else {
+                removeAccessTokenFromDatabase(tokenValue);
+            }
         }
         clusterManagerAPI.send(new TokenStoreRemoveAccessTokenMsg(tokenValue));
     }
 
     protected void removeAccessTokenFromMemory(String tokenValue) {
-        RestUserSessionInfo sessionInfo;
+        AccessTokenRecord record;
         lock.writeLock().lock();
         try {
-            accessTokenValueToAccessTokenStore.remove(tokenValue);
-            accessTokenValueToAuthenticationStore.remove(tokenValue);
-            accessTokenValueToUserLoginStore.remove(tokenValue);
-            String authenticationKey = accessTokenValueToAuthenticationKeyStore.remove(tokenValue);
-            if (authenticationKey != null) {
-                authenticationToAccessTokenStore.remove(authenticationKey);
-            }
-            sessionInfo = accessTokenValueToSessionInfoStore.remove(tokenValue);
+            record = accessTokens.remove(tokenValue);
+            if (record != null) {
+                unindexAccessTokenRecord(record);
+            }
         } finally {
             lock.writeLock().unlock();
         }
+        RestUserSessionInfo sessionInfo = record != null ? record.sessionInfo : null;
         if (sessionInfo != null) {
             try {
                 UserSession session = userSessions.get(sessionInfo.getId());
@@ -622,16 +949,22 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
         removeRefreshTokenFromMemory(refreshTokenValue);
 
         if (serverConfig.getRestStoreTokensInDb()) {
-            removeRefreshTokenFromDatabase(refreshTokenValue);
+            if (isDbWriteBehind()) {
+                pendingRefreshTokenChanges.put(refreshTokenValue, new PendingTokenChange<>(null, null));
+            } else {
+                removeRefreshTokenFromDatabase(refreshTokenValue);
+            }
         }
     }
 
     protected void removeRefreshTokenFromMemory(String refreshTokenValue) {
         lock.writeLock().lock();
         try {
-            refreshTokenValueToRefreshTokenStore.remove(refreshTokenValue);
-            refreshTokenValueToAuthenticationStore.remove(refreshTokenValue);
-            refreshTokenValueToAccessTokenValueStore.remove(refreshTokenValue);
+            RefreshTokenRecord record = refreshTokens.remove(refreshTokenValue);
+            if (record != null) {
+                unindexRefreshTokenRecord(record);
+            }
+            accessTokenValueByRefreshTokenValue.remove(refreshTokenValue);
         } finally {
             lock.writeLock().unlock();
         }
@@ -647,6 +980,100 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
         }
     }
 
+    protected boolean isAccessTokenRemovalPending(String tokenValue) {
+        PendingTokenChange<AccessTokenRecord> change = pendingAccessTokenChanges.get(tokenValue);
+        return change != null && change.isRemoval();
+    }
+
+    protected boolean isRefreshTokenRemovalPending(String tokenValue) {
+        PendingTokenChange<RefreshTokenRecord> change = pendingRefreshTokenChanges.get(tokenValue);
+        return change != null && change.isRemoval();
+    }
+
+    /**
+     * Writes token changes accumulated since the last call to the database. Invoked by the background writer if
+     * {@link ServerConfig#getRestTokensDbFlushInterval()} is positive.
+     */
+    protected void flushPendingChanges() {
+        if (pendingAccessTokenChanges.isEmpty() && pendingRefreshTokenChanges.isEmpty()) {
+            return;
+        }
+        try {
+            flushPendingAccessTokenChanges();
+            flushPendingRefreshTokenChanges();
+        } catch (Throwable e) {
+            log.error("Unable to write REST API tokens to the database", e);
+        }
+    }
+
+    protected void flushPendingAccessTokenChanges() {
+        List<String> tokenValues = new ArrayList<>(pendingAccessTokenChanges.keySet());
+        for (List<String> batch : Lists.partition(tokenValues, getDbFlushBatchSize())) {
+            Map<String, PendingTokenChange<AccessTokenRecord>> changes = collectChanges(pendingAccessTokenChanges, batch);
+            if (changes.isEmpty()) {
+                continue;
+            }
+            try (Transaction tx = persistence.createTransaction()) {
+                EntityManager em = persistence.getEntityManager();
+                em.createQuery("delete from sys$AccessToken t where t.tokenValue in :tokenValues")
+                        .setParameter("tokenValues", new ArrayList<>(changes.keySet()))
+                        .executeUpdate();
+                for (PendingTokenChange<AccessTokenRecord> change : changes.values()) {
+                    if (!change.isRemoval()) {
+                        AccessTokenRecord record = change.record;
+                        storeAccessTokenToDatabase(record.tokenValue, record.tokenBytes, record.authenticationKey,
+                                record.authenticationBytes, record.expiry, record.userLogin, change.locale,
+                                record.refreshTokenValue);
+                    }
+                }
+                tx.commit();
+            }
+            // keep changes made while writing the batch
+            changes.forEach(pendingAccessTokenChanges::remove);
+        }
+    }
+
+    protected void flushPendingRefreshTokenChanges() {
+        List<String> tokenValues = new ArrayList<>(pendingRefreshTokenChanges.keySet());
+        for (List<String> batch : Lists.partition(tokenValues, getDbFlushBatchSize())) {
+            Map<String, PendingTokenChange<RefreshTokenRecord>> changes = collectChanges(pendingRefreshTokenChanges, batch);
+            if (changes.isEmpty()) {
+                continue;
+            }
+            try (Transaction tx = persistence.createTransaction()) {
+                EntityManager em = persistence.getEntityManager();
+                em.createQuery("delete from sys$RefreshToken t where t.tokenValue in :tokenValues")
+                        .setParameter("tokenValues", new ArrayList<>(changes.keySet()))
+                        .executeUpdate();
+                for (PendingTokenChange<RefreshTokenRecord> change : changes.values()) {
+                    if (!change.isRemoval()) {
+                        RefreshTokenRecord record = change.record;
+                        storeRefreshTokenToDatabase(record.tokenValue, record.tokenBytes, record.authenticationBytes,
+                                record.expiry, record.userLogin);
+                    }
+                }
+                tx.commit();
+            }
+            changes.forEach(pendingRefreshTokenChanges::remove);
+        }
+    }
+
+    protected <T> Map<String, PendingTokenChange<T>> collectChanges(Map<String, PendingTokenChange<T>> pendingChanges,
+                                                                   List<String> tokenValues) {
+        Map<String, PendingTokenChange<T>> changes = new LinkedHashMap<>();
+        for (String tokenValue : tokenValues) {
+            PendingTokenChange<T> change = pendingChanges.get(tokenValue);
+            if (change != null) {
+                changes.put(tokenValue, change);
+            }
+        }
+        return changes;
+    }
+
+    protected int getDbFlushBatchSize() {
+        return Math.max(1, serverConfig.getRestTokensDbFlushBatchSize());
+    }
+
     @Override
     public void deleteExpiredTokens() {
         deleteExpiredAccessTokensInMemory();
@@ -658,12 +1085,14 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
     }
 
     protected byte[] getRefreshTokenByTokenValueFromMemory(String tokenValue) {
-        return refreshTokenValueToRefreshTokenStore.get(tokenValue);
+        RefreshTokenRecord record = refreshTokens.get(tokenValue);
+        return record != null ? record.tokenBytes : null;
     }
 
     @Override
     public byte[] getAuthenticationByRefreshTokenValue(String tokenValue) {
-        return refreshTokenValueToAuthenticationStore.get(tokenValue);
+        RefreshTokenRecord record = refreshTokens.get(tokenValue);
+        return record != null ? record.authenticationBytes : null;
     }
 
     @Override
@@ -674,9 +1103,12 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
     }
 
     protected String getAccessTokenValueByRefreshTokenValue(String refreshTokenValue) {
-        String accessTokenValue = refreshTokenValueToAccessTokenValueStore.get(refreshTokenValue);
+        String accessTokenValue = accessTokenValueByRefreshTokenValue.get(refreshTokenValue);
         if (accessTokenValue == null && serverConfig.getRestStoreTokensInDb()) {
             accessTokenValue = getAccessTokenValueByRefreshTokenValueFromDatabase(refreshTokenValue);
+            if (accessTokenValue != null && isAccessTokenRemovalPending(accessTokenValue)) {
+                accessTokenValue = null;
+            }
         }
         return accessTokenValue;
     }
@@ -694,22 +1126,33 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
         }
     }
 
+    /**
+     * Removes expired access tokens from memory. Every cluster member expires tokens on its own, the database is
+     * cleaned up by the master in {@link #deleteExpiredAccessTokensInDatabase()}.
+     */
     protected void deleteExpiredAccessTokensInMemory() {
-        TokenExpiry expiry = accessTokensExpiryQueue.poll();
-        while (expiry != null) {
-            removeAccessToken(expiry.getValue());
-            expiry = accessTokensExpiryQueue.poll();
+        for (TokenExpiry expiry : getExpired(accessTokensExpiry)) {
+            accessTokensExpiry.remove(expiry);
+            removeAccessTokenFromMemory(expiry.getValue());
         }
     }
 
+    /**
+     * Removes expired refresh tokens from memory. Every cluster member expires tokens on its own, the database is
+     * cleaned up by the master in {@link #deleteExpiredRefreshTokensInDatabase()}.
+     */
     protected void deleteExpiredRefreshTokensInMemory() {
-        TokenExpiry expiry = refreshTokensExpiryQueue.poll();
-        while (expiry != null) {
-            removeRefreshToken(expiry.getValue());
-            expiry = refreshTokensExpiryQueue.poll();
+        for (TokenExpiry expiry : getExpired(refreshTokensExpiry)) {
+            refreshTokensExpiry.remove(expiry);
+            removeRefreshTokenFromMemory(expiry.getValue());
         }
     }
 
+    protected List<TokenExpiry> getExpired(ConcurrentSkipListSet<TokenExpiry> expirySet) {
+        TokenExpiry bound = new TokenExpiry("", timeSource.currentTimeMillis() + 1);
+        return new ArrayList<>(expirySet.headSet(bound));
+    }
+
     protected void deleteExpiredAccessTokensInDatabase() {
         try (Transaction tx = persistence.createTransaction()) {
             EntityManager em = persistence.getEntityManager();
@@ -728,33 +1171,109 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
         }
     }
 
-    protected static class TokenExpiry implements Delayed {
+    /**
+     * In-memory state of an access token.
+     */
+    protected static class AccessTokenRecord {
+
+        protected final String tokenValue;
+        protected final byte[] tokenBytes;
+        protected final String authenticationKey;
+        protected final byte[] authenticationBytes;
+        protected final Date expiry;
+        protected final String userLogin;
+        protected final String refreshTokenValue;
+
+        protected volatile RestUserSessionInfo sessionInfo;
+
+        public AccessTokenRecord(String tokenValue, byte[] tokenBytes, String authenticationKey,
+                                 byte[] authenticationBytes, @Nullable Date expiry, String userLogin,
+                                 @Nullable String refreshTokenValue) {
+            this.tokenValue = tokenValue;
+            this.tokenBytes = tokenBytes;
+            this.authenticationKey = authenticationKey;
+            this.authenticationBytes = authenticationBytes;
+            this.expiry = expiry;
+            this.userLogin = userLogin;
+            this.refreshTokenValue = refreshTokenValue;
+        }
+    }
+
+    /**
+     * In-memory state of a refresh token.
+     */
+    protected static class RefreshTokenRecord {
+
+        protected final String tokenValue;
+        protected final byte[] tokenBytes;
+        protected final byte[] authenticationBytes;
+        protected final Date expiry;
+        protected final String userLogin;
+
+        public RefreshTokenRecord(String tokenValue, byte[] tokenBytes, byte[] authenticationBytes,
+                                  @Nullable Date expiry, String userLogin) {
+            this.tokenValue = tokenValue;
+            this.tokenBytes = tokenBytes;
+            this.authenticationBytes = authenticationBytes;
+            this.expiry = expiry;
+            this.userLogin = userLogin;
+        }
+    }
+
+    /**
+     * Token change waiting to be written to the database. Contains no record if the token is removed.
+     */
+    protected static class PendingTokenChange<T> {
+
+        protected final T record;
+        protected final Locale locale;
+
+        public PendingTokenChange(@Nullable T record, @Nullable Locale locale) {
+            this.record = record;
+            this.locale = locale;
+        }
+
+        public boolean isRemoval() {
+            return record == null;
+        }
+    }
+
+    protected static class TokenExpiry implements Comparable<TokenExpiry> {
 
         private final long expiry;
 
         private final String value;
 
         public TokenExpiry(String value, Date date) {
+            this(value, date.getTime());
+        }
+
+        public TokenExpiry(String value, long expiry) {
             this.value = value;
-            this.expiry = date.getTime();
+            this.expiry = expiry;
         }
 
         @Override
-        public int compareTo(Delayed other) {
-            if (this == other) {
-                return 0;
-            }
-            long diff = getDelay(TimeUnit.MILLISECONDS) - other.getDelay(TimeUnit.MILLISECONDS);
-            return (diff == 0 ? 0 : ((diff < 0) ? -1 : 1));
+        public int compareTo(TokenExpiry other) {
+            int result = Long.compare(expiry, other.expiry);
+            return result != 0 ? result : value.compareTo(other.value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            TokenExpiry that = (TokenExpiry) o;
+            return expiry == that.expiry && value.equals(that.value);
         }
 
         @Override
-        public long getDelay(TimeUnit unit) {
-            return expiry - System.currentTimeMillis();
+        public int hashCode() {
+            return 31 * value.hashCode() + Long.hashCode(expiry);
         }
 
         public String getValue() {
             return value;
         }
     }
-}
\ No newline at end of file
+}
@@ -16,6 +16,8 @@
  */
 package com.haulmont.cuba.security.app;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.haulmont.bali.db.QueryRunner;
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.chile.core.datatypes.Datatypes;
 import com.haulmont.chile.core.model.Instance;
@@ -30,19 +32,28 @@ import com.haulmont.cuba.core.entity.*;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.core.sys.EntityManagerContext;
+import com.haulmont.cuba.core.sys.events.AppContextStoppedEvent;
+import com.haulmont.cuba.core.sys.persistence.DbTypeConverter;
 import com.haulmont.cuba.core.sys.persistence.EntityAttributeChanges;
 import com.haulmont.cuba.security.entity.*;
 import org.apache.commons.lang.BooleanUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
 import javax.annotation.concurrent.GuardedBy;
 import javax.inject.Inject;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
@@ -51,6 +62,11 @@ public class EntityLog implements EntityLogAPI {
 
     private final Logger log = LoggerFactory.getLogger(EntityLog.class);
 
+    protected static final String INSERT_ITEM_SQL = "insert into SEC_ENTITY_LOG (ID, EVENT_TS, USER_ID, CHANGE_TYPE, " +
+            "ENTITY, ENTITY_ID, STRING_ENTITY_ID, INT_ENTITY_ID, LONG_ENTITY_ID, CHANGES) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    protected static final long ASYNC_RETRY_INITIAL_DELAY_MS = 100;
+
     @Inject
     protected TimeSource timeSource;
     @Inject
@@ -81,11 +97,47 @@ public class EntityLog implements EntityLogAPI {
     protected ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
     protected ThreadLocal<Boolean> entityLogSwitchedOn = new ThreadLocal<>();
 
+    // not null if the asynchronous writing is enabled
+    protected BlockingQueue<QueuedItem> asyncQueue;
+    protected ExecutorService asyncWriter;
+    protected volatile boolean asyncWriterStopped;
+
+    protected final AtomicLong asyncWrittenCount = new AtomicLong();
+    protected final AtomicLong asyncFailedCount = new AtomicLong();
+
     @Inject
     public EntityLog(Configuration configuration) {
         config = configuration.getConfig(EntityLogConfig.class);
     }
 
+    @PostConstruct
+    protected void init() {
+        if (config.getAsyncWriting()) {
+            asyncQueue = new ArrayBlockingQueue<>(Math.max(1, config.getAsyncQueueCapacity()));
+            asyncWriter = Executors.newSingleThreadExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("EntityLogWriter-%d").setDaemon(true).build());
+            asyncWriter.execute(this::processAsyncQueue);
+        }
+    }
+
+    @EventListener(AppContextStoppedEvent.class)
+    protected void applicationStopped() {
+        if (asyncWriter != null) {
+            asyncWriterStopped = true;
+            asyncWriter.shutdown();
+            try {
+                asyncWriter.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            List<QueuedItem> items = new ArrayList<>();
+            asyncQueue.drainTo(items);
+            if (!items.isEmpty()) {
+                writeQueuedItems(items);
+            }
+        }
+    }
+
     @Override
     public void processLoggingForCurrentThread(boolean enabled) {
         entityLogSwitchedOn.set(enabled);
@@ -103,13 +155,24 @@ public class EntityLog implements EntityLogAPI {
         if (items == null || items.isEmpty())
             return;
 
+        Map<Object, List<EntityLogItem>> itemsByEntityId = new LinkedHashMap<>();
         for (EntityLogItem item : items) {
-            List<EntityLogItem> sameEntityList = items.stream()
-                    .filter(entityLogItem -> entityLogItem.getObjectEntityId().equals(item.getObjectEntityId()))
-                    .collect(Collectors.toList());
+            itemsByEntityId.computeIfAbsent(item.getObjectEntityId(), id -> new ArrayList<>()).add(item);
+        }
+
+        List<EntityLogItem> itemsToSave = new ArrayList<>(itemsByEntityId.size());
+        for (List<EntityLogItem> sameEntityList : itemsByEntityId.values()) {
             EntityLogItem itemToSave = sameEntityList.get(0);
             computeChanges(itemToSave, sameEntityList);
-            saveItem(itemToSave);
+            itemsToSave.add(itemToSave);
+        }
+
+        if (asyncQueue != null) {
+            enqueueAfterCommit(itemsToSave);
+        } else {
+            for (EntityLogItem itemToSave : itemsToSave) {
+                saveItem(itemToSave);
+            }
         }
     }
 
@@ -131,31 +194,13 @@ public class EntityLog implements EntityLogAPI {
                     .ifPresent(entityLogAttr -> setAttributeNewValue(entityLogAttr, itemToSave));
         }
 
-        Properties properties = new Properties();
-
-        for (EntityLogAttr attr : itemToSave.getAttributes()) {
-            properties.setProperty(attr.getName(), attr.getValue());
-            if (attr.getValueId() != null) {
-                properties.setProperty(attr.getName() + EntityLogAttr.VALUE_ID_SUFFIX, attr.getValueId());
-            }
-            if (attr.getOldValue() != null) {
-                properties.setProperty(attr.getName() + EntityLogAttr.OLD_VALUE_SUFFIX, attr.getOldValue());
-            }
-            if (attr.getOldValueId() != null) {
-                properties.setProperty(attr.getName() + EntityLogAttr.OLD_VALUE_ID_SUFFIX, attr.getOldValueId());
-            }
-            if (attr.getMessagesPack() != null) {
-                properties.setProperty(attr.getName() + EntityLogAttr.MP_SUFFIX, attr.getMessagesPack() );
-            }
-        }
-
         if (itemToSave.getType() == EntityLogItem.Type.MODIFY) {
             sameEntityList.stream()
                     .filter(entityLogItem -> entityLogItem.getType() == EntityLogItem.Type.CREATE)
                     .findFirst()
                     .ifPresent(entityLogItem -> itemToSave.setType(EntityLogItem.Type.CREATE));
         }
-        itemToSave.setChanges(getChanges(properties));
+        itemToSave.setChanges(getChanges(itemToSave.getAttributes()));
     }
 
     private void setAttributeOldValue(EntityLogAttr entityLogAttr, EntityLogItem itemToSave) {
@@ -198,13 +243,256 @@ public class EntityLog implements EntityLogAPI {
         }
     }
 
+    /**
+     * Hands the items over to the asynchronous writer when the current transaction is committed.
+     */
+    protected void enqueueAfterCommit(List<EntityLogItem> items) {
+        DbTypeConverter converter = persistence.getDbTypeConverter();
+        List<QueuedItem> queuedItems = new ArrayList<>(items.size());
+        for (EntityLogItem item : items) {
+            queuedItems.add(new QueuedItem(createInsertParams(item, converter)));
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                offerQueuedItems(queuedItems);
+            }
+        });
+    }
+
+    protected void offerQueuedItems(List<QueuedItem> items) {
+        List<QueuedItem> rejected = null;
+        long ts = timeSource.currentTimeMillis();
+        for (QueuedItem item : items) {
+            item.enqueueTs = ts;
+            if (asyncWriterStopped || !asyncQueue.offer(item)) {
+                if (rejected == null) {
+                    rejected = new ArrayList<>();
+                }
+                rejected.add(item);
+            }
+        }
+        if (rejected != null) {
+            log.debug("EntityLog queue is full, writing {} items synchronously", rejected.size());
+            writeQueuedItems(rejected);
+        }
+    }
+
+    protected void processAsyncQueue() {
+        int batchSize = Math.max(1, config.getAsyncBatchSize());
+        List<QueuedItem> batch = new ArrayList<>(batchSize);
+        while (!asyncWriterStopped) {
+            QueuedItem item;
+            try {
+                item = asyncQueue.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (item == null) {
+                continue;
+            }
+            batch.add(item);
+            asyncQueue.drainTo(batch, batchSize - 1);
+            writeQueuedItems(batch, Math.max(1, config.getAsyncWriteAttempts()));
+            batch.clear();
+        }
+    }
+
+    protected void writeQueuedItems(List<QueuedItem> items) {
+        writeQueuedItems(items, 1);
+    }
+
+    /**
+     * Writes the items to the main database using JDBC batch. A failed batch is retried with a growing delay,
+     * then the items are written one by one, so that a single bad item or a short database outage does not
+     * discard the whole batch.
+     */
+    protected void writeQueuedItems(List<QueuedItem> items, int attempts) {
+        long delay = ASYNC_RETRY_INITIAL_DELAY_MS;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                insertQueuedItems(items);
+                asyncWrittenCount.addAndGet(items.size());
+                return;
+            } catch (Exception e) {
+                if (attempt >= attempts) {
+                    log.warn("Unable to write a batch of {} entity log items, writing them one by one", items.size(), e);
+                    break;
+                }
+                log.debug("Unable to write a batch of {} entity log items, attempt {} of {}", items.size(), attempt, attempts, e);
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            delay *= 2;
+        }
+
+        for (QueuedItem item : items) {
+            try {
+                insertQueuedItems(Collections.singletonList(item));
+                asyncWrittenCount.incrementAndGet();
+            } catch (Exception e) {
+                asyncFailedCount.incrementAndGet();
+                log.error("Unable to write entity log item {}", item.params[0], e);
+            }
+        }
+    }
+
+    /**
+     * Inserts the items using JDBC batch in a separate transaction.
+     */
+    protected void insertQueuedItems(List<QueuedItem> items) throws SQLException {
+        try (Transaction tx = persistence.createTransaction()) {
+            EntityManager em = persistence.getEntityManager();
+            Object[][] params = new Object[items.size()][];
+            for (int i = 0; i < items.size(); i++) {
+                params[i] = items.get(i).params;
+            }
+            QueryRunner runner = new QueryRunner();
+            runner.batch(em.getConnection(), INSERT_ITEM_SQL, params, getInsertParamTypes(persistence.getDbTypeConverter()));
+            tx.commit();
+        }
+    }
+
+    protected Object[] createInsertParams(EntityLogItem item, DbTypeConverter converter) {
+        ReferenceToEntity entityRef = item.getEntityRef();
+        return new Object[]{
+                converter.getSqlObject(item.getId()),
+                item.getEventTs() != null ? converter.getSqlObject(item.getEventTs()) : null,
+                item.getUser() != null ? converter.getSqlObject(item.getUser().getId()) : null,
+                item.getType().getId(),
+                item.getEntity(),
+                entityRef.getEntityId() != null ? converter.getSqlObject(entityRef.getEntityId()) : null,
+                entityRef.getStringEntityId(),
+                entityRef.getIntEntityId(),
+                entityRef.getLongEntityId(),
+                item.getChanges()
+        };
+    }
+
+    protected int[] getInsertParamTypes(DbTypeConverter converter) {
+        int uuidType = converter.getSqlType(UUID.class);
+        int stringType = converter.getSqlType(String.class);
+        return new int[]{
+                uuidType,
+                converter.getSqlType(Date.class),
+                uuidType,
+                stringType,
+                stringType,
+                uuidType,
+                stringType,
+                converter.getSqlType(Integer.class),
+                converter.getSqlType(Long.class),
+                stringType
+        };
+    }
+
+    @Override
+    public int getAsyncQueueSize() {
+        return asyncQueue != null ? asyncQueue.size() : 0;
+    }
+
+    @Override
+    public long getAsyncQueueLag() {
+        QueuedItem head = asyncQueue != null ? asyncQueue.peek() : null;
+        return head != null ? Math.max(0, timeSource.currentTimeMillis() - head.enqueueTs) : 0;
+    }
+
+    @Override
+    public long getAsyncWrittenCount() {
+        return asyncWrittenCount.get();
+    }
+
+    @Override
+    public long getAsyncFailedCount() {
+        return asyncFailedCount.get();
+    }
+
+    @Override
+    public List<EntityLogItem> getEntityHistory(Entity entity, int firstResult, int maxResults) {
+        Preconditions.checkNotNullArgument(entity, "entity is null");
+        MetaClass metaClass = metadata.getExtendedEntities().getOriginalOrThisMetaClass(entity.getMetaClass());
+        String idPropertyName = referenceToEntitySupport.getReferenceIdPropertyName(metaClass);
+        try (Transaction tx = persistence.createTransaction()) {
+            EntityManager em = persistence.getEntityManager();
+            TypedQuery<EntityLogItem> query = em.createQuery(
+                    "select e from sec$EntityLog e where e.entityRef." + idPropertyName + " = :entityId " +
+                            "and e.entity = :entity order by e.eventTs desc", EntityLogItem.class);
+            query.setParameter("entityId", referenceToEntitySupport.getReferenceId(entity));
+            query.setParameter("entity", getEntityName(entity));
+            query.setViewName("logView");
+            query.setFirstResult(firstResult);
+            query.setMaxResults(maxResults);
+            List<EntityLogItem> items = query.getResultList();
+            tx.commit();
+            return items;
+        }
+    }
+
+    @Override
+    public int convertChangesToCompactFormat(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        int converted = 0;
+        UUID lastId = null;
+        while (true) {
+            try (Transaction tx = persistence.createTransaction()) {
+                EntityManager em = persistence.getEntityManager();
+                Query query = em.createQuery("select e.id, e.changes from sec$EntityLog e" +
+                        (lastId != null ? " where e.id > :lastId" : "") + " order by e.id");
+                if (lastId != null) {
+                    query.setParameter("lastId", lastId);
+                }
+                query.setMaxResults(batchSize);
+                @SuppressWarnings("unchecked")
+                List<Object[]> rows = query.getResultList();
+                if (rows.isEmpty()) {
+                    tx.commit();
+                    break;
+                }
+
+                DbTypeConverter converter = persistence.getDbTypeConverter();
+                List<Object[]> params = new ArrayList<>();
+                for (Object[] row : rows) {
+                    String changes = (String) row[1];
+                    if (changes != null && !EntityLogChangesFormat.isCompact(changes)) {
+                        Set<EntityLogAttr> attributes = EntityLogChangesFormat.decode(null, changes);
+                        params.add(new Object[]{
+                                EntityLogChangesFormat.encodeCompact(attributes),
+                                converter.getSqlObject(row[0])
+                        });
+                    }
+                }
+                if (!params.isEmpty()) {
+                    QueryRunner runner = new QueryRunner();
+                    runner.batch(em.getConnection(), "update SEC_ENTITY_LOG set CHANGES = ? where ID = ?",
+                            params.toArray(new Object[params.size()][]),
+                            new int[]{converter.getSqlType(String.class), converter.getSqlType(UUID.class)});
+                }
+                tx.commit();
+
+                converted += params.size();
+                lastId = (UUID) rows.get(rows.size() - 1)[0];
+                log.debug("Converted {} entity log items to the compact format", converted);
+            } catch (SQLException e) {
+                throw new RuntimeException("Error converting entity log items", e);
+            }
+        }
+        log.info("Converted {} entity log items to the compact format", converted);
+        return converted;
+    }
+
     @Override
-    public synchronized boolean isEnabled() {
+    public boolean isEnabled() {
         return config.getEnabled() && isLoggingForCurrentThread();
     }
 
     @Override
-    public synchronized void setEnabled(boolean enabled) {
+    public void setEnabled(boolean enabled) {
         if (enabled != config.getEnabled()) {
             config.setEnabled(enabled);
         }
@@ -596,6 +884,31 @@ public class EntityLog implements EntityLogAPI {
         return result;
     }
 
+    protected String getChanges(Set<EntityLogAttr> attributes) {
+        if (config.getCompactChangesFormat()) {
+            return EntityLogChangesFormat.encodeCompact(attributes);
+        }
+
+        Properties properties = new Properties();
+
+        for (EntityLogAttr attr : attributes) {
+            properties.setProperty(attr.getName(), attr.getValue());
+            if (attr.getValueId() != null) {
+                properties.setProperty(attr.getName() + EntityLogAttr.VALUE_ID_SUFFIX, attr.getValueId());
+            }
+            if (attr.getOldValue() != null) {
+                properties.setProperty(attr.getName() + EntityLogAttr.OLD_VALUE_SUFFIX, attr.getOldValue());
+            }
+            if (attr.getOldValueId() != null) {
+                properties.setProperty(attr.getName() + EntityLogAttr.OLD_VALUE_ID_SUFFIX, attr.getOldValueId());
+            }
+            if (attr.getMessagesPack() != null) {
+                properties.setProperty(attr.getName() + EntityLogAttr.MP_SUFFIX, attr.getMessagesPack() );
+            }
+        }
+        return getChanges(properties);
+    }
+
     protected String getChanges(Properties properties) {
         try {
             StringWriter writer = new StringWriter();
@@ -755,4 +1068,16 @@ public class EntityLog implements EntityLogAPI {
     protected void logError(Entity entity, Exception e) {
         log.warn("Unable to log entity {}, id={}", entity, entity.getId(), e);
     }
-}
\ No newline at end of file
+
+    /**
+     * Insert statement parameters of an item waiting for the asynchronous writer.
+     */
+    protected static class QueuedItem {
+        protected final Object[] params;
+        protected volatile long enqueueTs;
+
+        public QueuedItem(Object[] params) {
+            this.params = params;
+        }
+    }
+}
@@ -18,8 +18,10 @@ package com.haulmont.cuba.security.app;
 
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.sys.persistence.EntityAttributeChanges;
+import com.haulmont.cuba.security.entity.EntityLogItem;
 
 import javax.annotation.Nullable;
+import java.util.List;
 
 /**
  * Allows to log entity lifecycle events: create, modify, delete.
@@ -101,4 +103,46 @@ public interface EntityLogAPI {
      * to the database.
      */
     void flush();
+
+    /**
+     * @return number of items waiting to be written if the asynchronous writing is enabled
+     * @see EntityLogConfig#getAsyncWriting()
+     */
+    int getAsyncQueueSize();
+
+    /**
+     * @return time in milliseconds the oldest waiting item spent in the queue if the asynchronous writing is enabled
+     */
+    long getAsyncQueueLag();
+
+    /**
+     * @return number of items written by the asynchronous writer since the application start
+     */
+    long getAsyncWrittenCount();
+
+    /**
+     * @return number of items the asynchronous writer failed to write since the application start
+     */
+    long getAsyncFailedCount();
+
+    /**
+     * Loads a page of the log items of the given entity instance, the most recent first.
+     * Attributes of the returned items are decoded on first access to {@link EntityLogItem#getAttributes()}.
+     *
+     * @param entity      entity instance
+     * @param firstResult index of the first item
+     * @param maxResults  maximum number of items
+     * @return list of log items
+     */
+    List<EntityLogItem> getEntityHistory(Entity entity, int firstResult, int maxResults);
+
+    /**
+     * Converts the attribute changes of items stored in the legacy format to the compact format.
+     * Items are processed in separate transactions by batches of the given size.
+     *
+     * @param batchSize number of items processed in one transaction
+     * @return number of converted items
+     * @see EntityLogConfig#getCompactChangesFormat()
+     */
+    int convertChangesToCompactFormat(int batchSize);
 }
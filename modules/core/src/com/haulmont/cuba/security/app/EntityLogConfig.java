@@ -21,6 +21,7 @@ import com.haulmont.cuba.core.config.Property;
 import com.haulmont.cuba.core.config.Source;
 import com.haulmont.cuba.core.config.SourceType;
 import com.haulmont.cuba.core.config.defaults.DefaultBoolean;
+import com.haulmont.cuba.core.config.defaults.DefaultInt;
 
 /**
  * {@link com.haulmont.cuba.security.app.EntityLog} configuration parameters
@@ -35,4 +36,48 @@ public interface EntityLogConfig extends Config {
     @DefaultBoolean(true)
     boolean getEnabled();
     void setEnabled(boolean value);
-}
\ No newline at end of file
+
+    /**
+     * @return Whether the EntityLog items are written to the database by a background thread after the
+     * transaction commit instead of being persisted in the transaction. Requires restart.
+     */
+    @Property("cuba.entityLog.asyncWriting")
+    @Source(type = SourceType.APP)
+    @DefaultBoolean(false)
+    boolean getAsyncWriting();
+
+    /**
+     * @return Maximum number of EntityLog items waiting to be written in the asynchronous mode. If the queue is full,
+     * items are written synchronously after the transaction commit.
+     */
+    @Property("cuba.entityLog.asyncQueueCapacity")
+    @Source(type = SourceType.APP)
+    @DefaultInt(10000)
+    int getAsyncQueueCapacity();
+
+    /**
+     * @return Maximum number of EntityLog items written in one JDBC batch in the asynchronous mode
+     */
+    @Property("cuba.entityLog.asyncBatchSize")
+    @Source(type = SourceType.APP)
+    @DefaultInt(100)
+    int getAsyncBatchSize();
+
+    /**
+     * @return How many times the asynchronous writer tries to insert a batch of EntityLog items before it falls back
+     * to writing the items one by one. The delay between the attempts doubles each time.
+     */
+    @Property("cuba.entityLog.asyncWriteAttempts")
+    @Source(type = SourceType.APP)
+    @DefaultInt(3)
+    int getAsyncWriteAttempts();
+
+    /**
+     * @return Whether the attribute changes are stored in the compact format, see
+     * {@link com.haulmont.cuba.security.entity.EntityLogChangesFormat}. Items stored in the legacy format are read
+     * regardless of this setting and can be converted by {@link EntityLogAPI#convertChangesToCompactFormat(int)}.
+     */
+    @Property("cuba.entityLog.compactChangesFormat")
+    @DefaultBoolean(false)
+    boolean getCompactChangesFormat();
+}
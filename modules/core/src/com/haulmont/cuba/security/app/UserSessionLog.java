@@ -39,7 +39,8 @@ public interface UserSessionLog {
      * @param action      session action, like login, logout, etc
      * @param params      additional params for log entry, like client's address and other info.
      *                    Use id property of SessionParams entry to pass in params map.
-     * @return created log entry or null if session is not logged
+     * @return created log entry or null if session is not logged. The entry is not saved yet if records are
+     * written asynchronously.
      * @see com.haulmont.cuba.security.global.SessionParams
      */
     @Nullable
@@ -53,7 +54,8 @@ public interface UserSessionLog {
      * @param substitutedSession session that was substituted by new session from {@code userSession} param
      * @param params             additional params for log entry, like client's address and other info.
      *                           Use id property of SessionParams entry to pass in params map
-     * @return created log entry or null if session is not logged
+     * @return created log entry or null if session is not logged. The entry is not saved yet if records are
+     * written asynchronously.
      * @see com.haulmont.cuba.security.global.SessionParams
      */
     @Nullable
@@ -61,6 +63,8 @@ public interface UserSessionLog {
 
     /**
      * Updates params on provided session log record.
+     * <p>If the records are written asynchronously, returns null for all actions except
+     * {@link SessionAction#SUBSTITUTION}.</p>
      *
      * @param userSession update log record for this session
      * @param action      last session action
@@ -84,4 +88,19 @@ public interface UserSessionLog {
      * @return list of log records sorted by <code>startedTs</code> asc
      */
     List<SessionLogEntry> getAllSessionLogRecords(UUID userSessionId);
+
+    /**
+     * @return number of session log records waiting to be written to the database asynchronously
+     */
+    int getPendingRecordsCount();
+
+    /**
+     * @return time since the oldest pending session log record was queued, in milliseconds
+     */
+    long getPendingRecordsLag();
+
+    /**
+     * @return number of session log records dropped because the queue was full or the write failed
+     */
+    long getDroppedRecordsCount();
 }
@@ -16,26 +16,29 @@
 
 package com.haulmont.cuba.security.app;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.cuba.core.app.ClusterManagerAPI;
+import com.haulmont.cuba.core.app.ServerConfig;
 import com.haulmont.cuba.core.app.ServerInfoAPI;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.events.AppContextStoppedEvent;
 import com.haulmont.cuba.security.entity.SessionAction;
 import com.haulmont.cuba.security.entity.SessionLogEntry;
 import com.haulmont.cuba.security.global.SessionParams;
 import com.haulmont.cuba.security.global.UserSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import static com.haulmont.cuba.core.global.LoadContext.createQuery;
@@ -60,8 +63,56 @@ public class UserSessionLogBean implements UserSessionLog {
     @Inject
     protected Authentication authentication;
 
+    @Inject
+    protected ServerConfig serverConfig;
+
     private Logger log = LoggerFactory.getLogger(UserSessionLogBean.class);
 
+    protected static final int FLUSH_BATCH_SIZE = 100;
+
+    /**
+     * Session log change waiting to be written by the asynchronous writer: either a new record
+     * or an update of the latest record of the session.
+     */
+    protected static class PendingRecord {
+        protected final SessionLogEntry newEntry;
+        protected final UUID sessionId;
+        protected final String clientInfo;
+        protected final String address;
+        protected final SessionAction action;
+        protected final Date finishedTs;
+        protected final long queuedTs = System.currentTimeMillis();
+
+        protected PendingRecord(SessionLogEntry newEntry) {
+            this.newEntry = newEntry;
+            this.sessionId = newEntry.getSessionId();
+            this.clientInfo = null;
+            this.address = null;
+            this.action = null;
+            this.finishedTs = null;
+        }
+
+        protected PendingRecord(UUID sessionId, String clientInfo, String address, SessionAction action,
+                                Date finishedTs) {
+            this.newEntry = null;
+            this.sessionId = sessionId;
+            this.clientInfo = clientInfo;
+            this.address = address;
+            this.action = action;
+            this.finishedTs = finishedTs;
+        }
+    }
+
+    protected volatile BlockingQueue<PendingRecord> pendingRecords;
+
+    protected volatile ScheduledExecutorService writer;
+
+    protected final Object flushLock = new Object();
+
+    protected final LongAdder droppedRecordsCount = new LongAdder();
+
+    protected volatile boolean dropWarned;
+
     @Override
     @Nullable
     public SessionLogEntry createSessionLogRecord(UserSession userSession, SessionAction action, Map<String, Object> params) {
@@ -106,6 +157,10 @@ public class UserSessionLogBean implements UserSessionLog {
                 sessionLogEntry.setAddress(userSession.getAddress());
             }
 
+            if (isAsync()) {
+                enqueue(new PendingRecord(sessionLogEntry));
+                return sessionLogEntry;
+            }
             return dataManager.commit(sessionLogEntry, "sessionLogEntry-view");
         });
     }
@@ -118,6 +173,17 @@ public class UserSessionLogBean implements UserSessionLog {
             return null;
         }
 
+        if (isAsync()) {
+            if (action != SessionAction.SUBSTITUTION) {
+                Date finishedTs = action != null && action != SessionAction.LOGIN ? timeSource.currentTimestamp() : null;
+                enqueue(new PendingRecord(userSession.getId(), userSession.getClientInfo(), userSession.getAddress(),
+                        action, finishedTs));
+                return null;
+            }
+            // the caller needs the saved record
+            flushPendingRecords();
+        }
+
         return authentication.withSystemUser(() -> {
             SessionLogEntry sessionLogEntry = getLastSessionLogRecord(userSession.getId());
             if (sessionLogEntry != null) {
@@ -166,6 +232,136 @@ public class UserSessionLogBean implements UserSessionLog {
         });
     }
 
+    @Override
+    public int getPendingRecordsCount() {
+        BlockingQueue<PendingRecord> queue = pendingRecords;
+        return queue != null ? queue.size() : 0;
+    }
+
+    @Override
+    public long getPendingRecordsLag() {
+        BlockingQueue<PendingRecord> queue = pendingRecords;
+        PendingRecord record = queue != null ? queue.peek() : null;
+        return record != null ? System.currentTimeMillis() - record.queuedTs : 0;
+    }
+
+    @Override
+    public long getDroppedRecordsCount() {
+        return droppedRecordsCount.sum();
+    }
+
+    @PostConstruct
+    protected void initAsyncWriter() {
+        int capacity = serverConfig.getUserSessionLogQueueCapacity();
+        if (capacity > 0) {
+            pendingRecords = new ArrayBlockingQueue<>(capacity);
+            int flushInterval = serverConfig.getUserSessionLogFlushInterval();
+            writer = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("UserSessionLogWriter-%d").setDaemon(true).build());
+            writer.scheduleWithFixedDelay(this::flushPendingRecords, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @EventListener(AppContextStoppedEvent.class)
+    protected void applicationStopped() {
+        if (writer != null) {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flushPendingRecords();
+        }
+    }
+
+    protected boolean isAsync() {
+        return writer != null && !writer.isShutdown();
+    }
+
+    protected void enqueue(PendingRecord record) {
+        if (!pendingRecords.offer(record)) {
+            droppedRecordsCount.increment();
+            if (!dropWarned) {
+                dropWarned = true;
+                log.warn("Session log queue is full, records are dropped");
+            }
+        }
+    }
+
+    /**
+     * Writes queued records to the database in batches. Inserts of new records in a batch are committed before
+     * updates, so an update is applied to the latest record of the session even if it is inserted by the same batch.
+     */
+    protected void flushPendingRecords() {
+        synchronized (flushLock) {
+            List<PendingRecord> batch = new ArrayList<>(FLUSH_BATCH_SIZE);
+            while (pendingRecords.drainTo(batch, FLUSH_BATCH_SIZE) > 0) {
+                try {
+                    authentication.withSystemUser(() -> {
+                        writeRecords(batch);
+                        return null;
+                    });
+                } catch (Exception e) {
+                    droppedRecordsCount.add(batch.size());
+                    log.error("Error writing {} session log records", batch.size(), e);
+                }
+                batch.clear();
+            }
+            dropWarned = false;
+        }
+    }
+
+    protected void writeRecords(List<PendingRecord> records) {
+        CommitContext insertContext = new CommitContext();
+        Set<UUID> updatedSessionIds = new HashSet<>();
+        for (PendingRecord record : records) {
+            if (record.newEntry != null) {
+                insertContext.addInstanceToCommit(record.newEntry);
+            } else {
+                updatedSessionIds.add(record.sessionId);
+            }
+        }
+        if (!insertContext.getCommitInstances().isEmpty()) {
+            dataManager.commit(insertContext);
+        }
+        if (updatedSessionIds.isEmpty()) {
+            return;
+        }
+
+        LoadContext<SessionLogEntry> loadContext = LoadContext.create(SessionLogEntry.class)
+                .setView(SessionLogEntry.DEFAULT_VIEW)
+                .setQuery(createQuery("select e from sec$SessionLogEntry e where e.sessionId in :ids order by e.startedTs")
+                        .setParameter("ids", updatedSessionIds));
+        Map<UUID, SessionLogEntry> lastEntries = new HashMap<>();
+        for (SessionLogEntry entry : dataManager.loadList(loadContext)) {
+            lastEntries.put(entry.getSessionId(), entry);
+        }
+
+        CommitContext updateContext = new CommitContext();
+        for (PendingRecord record : records) {
+            SessionLogEntry entry = record.newEntry == null ? lastEntries.get(record.sessionId) : null;
+            if (entry != null) {
+                if (record.clientInfo != null) {
+                    entry.setClientInfo(record.clientInfo);
+                }
+                if (record.address != null) {
+                    entry.setAddress(record.address);
+                }
+                if (record.action != null) {
+                    entry.setLastAction(record.action);
+                    if (record.finishedTs != null) {
+                        entry.setFinishedTs(record.finishedTs);
+                    }
+                }
+                updateContext.addInstanceToCommit(entry);
+            }
+        }
+        if (!updateContext.getCommitInstances().isEmpty()) {
+            dataManager.commit(updateContext);
+        }
+    }
+
     /**
      * Set <code>finishedTs</code> to all sessions that were interrupted by server reboot
      */
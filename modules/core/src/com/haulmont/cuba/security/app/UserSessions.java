@@ -17,6 +17,7 @@ package com.haulmont.cuba.security.app;
 
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.cuba.core.app.ClusterListener;
+import com.haulmont.cuba.core.app.ClusterListenerAdapter;
 import com.haulmont.cuba.core.app.ClusterManagerAPI;
 import com.haulmont.cuba.core.app.ServerConfig;
 import com.haulmont.cuba.core.global.Configuration;
@@ -28,6 +29,7 @@ import com.haulmont.cuba.security.entity.User;
 import com.haulmont.cuba.security.entity.UserSessionEntity;
 import com.haulmont.cuba.security.global.NoUserSessionException;
 import com.haulmont.cuba.security.global.UserSession;
+import com.haulmont.cuba.security.sys.UserSessionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -107,6 +109,9 @@ public class UserSessions implements UserSessionsAPI {
     @Inject
     protected UserSessionLog userSessionLog;
 
+    @Inject
+    protected UserSessionManager userSessionManager;
+
     public UserSessions() {
         User noUser = new User();
         noUser.setLogin("server");
@@ -150,6 +155,15 @@ public class UserSessions implements UserSessionsAPI {
                     }
                 }
         );
+        this.clusterManager.addListener(
+                FullSessionRequestMsg.class,
+                new ClusterListenerAdapter<FullSessionRequestMsg>() {
+                    @Override
+                    public void receive(FullSessionRequestMsg message) {
+                        receiveFullSessionRequest(message);
+                    }
+                }
+        );
     }
 
     protected void receiveClusterMessage(UserSessionInfo message) {
@@ -160,11 +174,43 @@ public class UserSessions implements UserSessionsAPI {
         } else {
             UserSessionInfo usi = getSessionInfo(id);
             if (usi == null || usi.lastUsedTs < message.lastUsedTs) {
+                shareReceivedData(message.session, usi != null ? usi.session : null);
+                if (message.session.isSharedDataOmitted()) {
+                    log.debug("Requesting full session, as shared permissions or constraints differ: {}", message);
+                    clusterManager.send(new FullSessionRequestMsg(id));
+                    return;
+                }
                 putSessionInfo(id, message);
             }
         }
     }
 
+    /**
+     * Makes the session received from cluster use the permissions and constraints of the previous version of the
+     * session or the ones shared on this server, if they are equal to the received ones. The sessions are sent with
+     * the hashes of shared permissions and constraints, and the full session is requested if this server has
+     * different ones, e.g. compiled from another state of the database.
+     */
+    protected void shareReceivedData(UserSession session, @Nullable UserSession previous) {
+        if (previous != null) {
+            session.shareEqualPermissions(previous);
+            session.shareEqualConstraints(previous);
+        }
+        userSessionManager.shareReceivedData(session);
+    }
+
+    /**
+     * Sends the full session to the cluster in response to a server which could not use the permissions
+     * or constraints sent as hashes. The session is sent by each server having it.
+     */
+    protected void receiveFullSessionRequest(FullSessionRequestMsg message) {
+        UserSessionInfo usi = getSessionInfo(message.sessionId);
+        if (usi != null) {
+            log.debug("Sending full session on request: {}", usi);
+            clusterManager.send(usi);
+        }
+    }
+
     protected void receiveClusterState(byte[] state) {
         if (state == null || state.length == 0)
             return;
@@ -206,9 +252,10 @@ public class UserSessions implements UserSessionsAPI {
         putSessionInfo(session.getId(), usi);
         if (!session.isSystem()) {
             if (serverConfig.getSyncNewUserSessionReplication())
+                // sent in full, so the session can be used on other servers right after the login
                 clusterManager.sendSync(usi);
             else
-                clusterManager.send(usi);
+                sendSessionInfo(usi);
         }
     }
 
@@ -219,7 +266,7 @@ public class UserSessions implements UserSessionsAPI {
             log.debug("Removed session: {}", usi);
             if (!session.isSystem()) {
                 usi.lastUsedTs = 0;
-                clusterManager.send(usi);
+                sendSessionInfo(usi);
             }
         }
     }
@@ -282,7 +329,7 @@ public class UserSessions implements UserSessionsAPI {
                 if (propagate && !usi.session.isSystem()) {
                     if (now > (usi.lastSentTs + sendTimeout * 1000)) {
                         usi.lastSentTs = now;
-                        clusterManager.send(usi);
+                        sendSessionInfo(usi);
                     }
                 }
             }
@@ -299,7 +346,7 @@ public class UserSessions implements UserSessionsAPI {
             usi.lastUsedTs = now;
             usi.lastSentTs = now;
             putSessionInfo(id, usi);
-            clusterManager.send(usi);
+            sendSessionInfo(usi);
         }
     }
 
@@ -362,7 +409,7 @@ public class UserSessions implements UserSessionsAPI {
             log.debug("Killed session: {}", usi);
 
             usi.lastUsedTs = 0;
-            clusterManager.send(usi);
+            sendSessionInfo(usi);
         }
     }
 
@@ -400,6 +447,23 @@ public class UserSessions implements UserSessionsAPI {
             it.remove();
 
             usi.lastUsedTs = 0;
+            sendSessionInfo(usi);
+        }
+    }
+
+    /**
+     * Sends the session to the cluster. Shared permissions and constraints of the session are replaced by their
+     * keys and hashes, as the receiving servers usually have the same ones.
+     */
+    protected void sendSessionInfo(UserSessionInfo usi) {
+        UserSession session = usi.session;
+        if (serverConfig.getUserSessionCompactReplication()
+                && (session.getPermissionsKey() != null || session.getConstraintsKey() != null)) {
+            UserSessionInfo message = new UserSessionInfo(session.copyWithoutSharedData(), usi.since);
+            message.lastUsedTs = usi.lastUsedTs;
+            message.lastSentTs = usi.lastSentTs;
+            clusterManager.send(message);
+        } else {
             clusterManager.send(usi);
         }
     }
@@ -420,4 +484,14 @@ public class UserSessions implements UserSessionsAPI {
     protected Stream<UserSessionInfo> getSessionInfoStream() {
         return cache.values().stream();
     }
-}
\ No newline at end of file
+
+    protected static class FullSessionRequestMsg implements Serializable {
+        private static final long serialVersionUID = -2907329530385342108L;
+
+        protected final UUID sessionId;
+
+        public FullSessionRequestMsg(UUID sessionId) {
+            this.sessionId = sessionId;
+        }
+    }
+}
@@ -19,6 +19,7 @@ package com.haulmont.cuba.security.jmx;
 
 import com.haulmont.cuba.security.app.Authenticated;
 import com.haulmont.cuba.security.app.EntityLogAPI;
+import org.apache.commons.lang.exception.ExceptionUtils;
 
 import org.springframework.stereotype.Component;
 import javax.inject.Inject;
@@ -44,4 +45,35 @@ public class EntityLog implements EntityLogMBean {
     public void invalidateCache() {
         entityLog.invalidateCache();
     }
-}
\ No newline at end of file
+
+    @Override
+    public int getAsyncQueueSize() {
+        return entityLog.getAsyncQueueSize();
+    }
+
+    @Override
+    public long getAsyncQueueLag() {
+        return entityLog.getAsyncQueueLag();
+    }
+
+    @Override
+    public long getAsyncWrittenCount() {
+        return entityLog.getAsyncWrittenCount();
+    }
+
+    @Override
+    public long getAsyncFailedCount() {
+        return entityLog.getAsyncFailedCount();
+    }
+
+    @Authenticated
+    @Override
+    public String convertChangesToCompactFormat(int batchSize) {
+        try {
+            int count = entityLog.convertChangesToCompactFormat(batchSize);
+            return "Converted " + count + " items";
+        } catch (Exception e) {
+            return ExceptionUtils.getStackTrace(e);
+        }
+    }
+}
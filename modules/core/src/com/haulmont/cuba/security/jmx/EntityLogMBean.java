@@ -16,6 +16,9 @@
  */
 package com.haulmont.cuba.security.jmx;
 
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedOperationParameters;
+
 /**
  * JMX interface for {@link com.haulmont.cuba.security.app.EntityLogAPI}
  *
@@ -36,4 +39,30 @@ public interface EntityLogMBean {
      * The configuration will be recreated from the database on next lifecycle event.
      */
     void invalidateCache();
+
+    /**
+     * Number of items waiting to be written in the asynchronous mode
+     */
+    int getAsyncQueueSize();
+
+    /**
+     * Time in milliseconds the oldest waiting item spent in the queue in the asynchronous mode
+     */
+    long getAsyncQueueLag();
+
+    /**
+     * Number of items written by the asynchronous writer since the application start
+     */
+    long getAsyncWrittenCount();
+
+    /**
+     * Number of items the asynchronous writer failed to write since the application start
+     */
+    long getAsyncFailedCount();
+
+    /**
+     * Converts the attribute changes of existing items from the legacy format to the compact format
+     */
+    @ManagedOperationParameters({@ManagedOperationParameter(name = "batchSize", description = "Number of items processed in one transaction")})
+    String convertChangesToCompactFormat(int batchSize);
 }
@@ -17,6 +17,7 @@
 
 package com.haulmont.cuba.security.jmx;
 
+import com.haulmont.cuba.security.app.UserSessionLog;
 import com.haulmont.cuba.security.app.UserSessionsAPI;
 import com.haulmont.cuba.security.entity.UserSessionEntity;
 import org.springframework.stereotype.Component;
@@ -31,6 +32,9 @@ public class UserSessions implements UserSessionsMBean {
     @Inject
     protected UserSessionsAPI userSessions;
 
+    @Inject
+    protected UserSessionLog userSessionLog;
+
     @Override
     public int getExpirationTimeoutSec() {
         return userSessions.getExpirationTimeoutSec();
@@ -56,6 +60,21 @@ public class UserSessions implements UserSessionsMBean {
         return userSessions.getUserSessionInfo().size();
     }
 
+    @Override
+    public int getSessionLogPendingCount() {
+        return userSessionLog.getPendingRecordsCount();
+    }
+
+    @Override
+    public long getSessionLogLag() {
+        return userSessionLog.getPendingRecordsLag();
+    }
+
+    @Override
+    public long getSessionLogDroppedCount() {
+        return userSessionLog.getDroppedRecordsCount();
+    }
+
     @Override
     public String printSessions() {
         return userSessions.getUserSessionEntitiesStream()
@@ -52,6 +52,21 @@ public interface UserSessionsMBean {
 
     int getCount();
 
+    /**
+     * @return number of session log records waiting to be written to the database asynchronously
+     */
+    int getSessionLogPendingCount();
+
+    /**
+     * @return time since the oldest pending session log record was queued, in milliseconds
+     */
+    long getSessionLogLag();
+
+    /**
+     * @return number of session log records dropped because the queue was full or the write failed
+     */
+    long getSessionLogDroppedCount();
+
     String printSessions();
 
     void processEviction();
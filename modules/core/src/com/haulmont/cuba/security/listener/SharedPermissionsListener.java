@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.security.listener;
+
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.listener.AfterDeleteEntityListener;
+import com.haulmont.cuba.core.listener.AfterInsertEntityListener;
+import com.haulmont.cuba.core.listener.AfterUpdateEntityListener;
+import com.haulmont.cuba.core.sys.listener.EntityListenerManager;
+import com.haulmont.cuba.security.entity.Constraint;
+import com.haulmont.cuba.security.entity.GroupHierarchy;
+import com.haulmont.cuba.security.entity.Permission;
+import com.haulmont.cuba.security.entity.Role;
+import com.haulmont.cuba.security.entity.SessionAttribute;
+import com.haulmont.cuba.security.sys.UserSessionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.sql.Connection;
+
+/**
+ * Clears permissions, constraints and session attributes shared by user sessions after a transaction changing roles,
+ * permissions, constraints, session attributes or the group hierarchy is committed.
+ */
+@Component(SharedPermissionsListener.NAME)
+public class SharedPermissionsListener implements AfterInsertEntityListener<Entity>,
+        AfterUpdateEntityListener<Entity>, AfterDeleteEntityListener<Entity> {
+
+    public static final String NAME = "cuba_SharedPermissionsListener";
+
+    protected static final Object TX_RESOURCE_KEY = new Object();
+
+    @Inject
+    protected EntityListenerManager entityListenerManager;
+
+    @Inject
+    protected UserSessionManager userSessionManager;
+
+    @PostConstruct
+    public void init() {
+        entityListenerManager.addListener(Role.class, NAME);
+        entityListenerManager.addListener(Permission.class, NAME);
+        entityListenerManager.addListener(Constraint.class, NAME);
+        entityListenerManager.addListener(GroupHierarchy.class, NAME);
+        entityListenerManager.addListener(SessionAttribute.class, NAME);
+    }
+
+    @Override
+    public void onAfterInsert(Entity entity, Connection connection) {
+        clearAfterCommit();
+    }
+
+    @Override
+    public void onAfterUpdate(Entity entity, Connection connection) {
+        clearAfterCommit();
+    }
+
+    @Override
+    public void onAfterDelete(Entity entity, Connection connection) {
+        clearAfterCommit();
+    }
+
+    protected void clearAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            userSessionManager.clearSharedPermissions();
+            return;
+        }
+        // clear once per transaction
+        if (TransactionSynchronizationManager.hasResource(TX_RESOURCE_KEY)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(TX_RESOURCE_KEY, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                userSessionManager.clearSharedPermissions();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(TX_RESOURCE_KEY);
+            }
+        });
+    }
+}
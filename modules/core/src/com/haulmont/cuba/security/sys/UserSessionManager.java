@@ -23,6 +23,9 @@ import com.haulmont.cuba.core.EntityManager;
 import com.haulmont.cuba.core.Persistence;
 import com.haulmont.cuba.core.Transaction;
 import com.haulmont.cuba.core.TypedQuery;
+import com.haulmont.cuba.core.app.ClusterListenerAdapter;
+import com.haulmont.cuba.core.app.ClusterManagerAPI;
+import com.haulmont.cuba.core.app.ServerConfig;
 import com.haulmont.cuba.core.global.Metadata;
 import com.haulmont.cuba.core.global.PersistenceHelper;
 import com.haulmont.cuba.core.global.UserSessionSource;
@@ -32,17 +35,20 @@ import com.haulmont.cuba.security.app.UserSessionsAPI;
 import com.haulmont.cuba.security.entity.*;
 import com.haulmont.cuba.security.global.NoUserSessionException;
 import com.haulmont.cuba.security.global.UserSession;
+import org.apache.commons.lang.SerializationUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
 import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.text.ParseException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Locale;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 /**
  * INTERNAL.
@@ -56,6 +62,10 @@ public class UserSessionManager {
 
     public static final String NAME = "cuba_UserSessionManager";
 
+    protected static final Set<Class<?>> IMMUTABLE_ATTRIBUTE_TYPES = new HashSet<>(Arrays.asList(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+            Float.class, Double.class, BigDecimal.class, BigInteger.class, UUID.class));
+
     @Inject
     protected UuidSource uuidSource;
 
@@ -74,6 +84,42 @@ public class UserSessionManager {
     @Inject
     protected DefaultPermissionValuesConfig defaultPermissionValuesConfig;
 
+    @Inject
+    protected ServerConfig serverConfig;
+
+    protected ClusterManagerAPI clusterManager;
+
+    /**
+     * Sessions holding compiled permissions by the combination of role ids.
+     */
+    protected Map<String, UserSession> sharedPermissions = new ConcurrentHashMap<>();
+
+    /**
+     * Sessions holding compiled constraints by the group id.
+     */
+    protected Map<String, UserSession> sharedConstraints = new ConcurrentHashMap<>();
+
+    /**
+     * Session attributes compiled for the group id. A null value means that the attribute must be removed.
+     */
+    protected Map<UUID, Map<String, Serializable>> sharedSessionAttributes = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on each clearing of the shared data. Data compiled before the clearing must not be shared.
+     */
+    protected final AtomicLong sharedDataGeneration = new AtomicLong();
+
+    @Inject
+    public void setClusterManager(ClusterManagerAPI clusterManager) {
+        this.clusterManager = clusterManager;
+        clusterManager.addListener(ClearSharedPermissionsMsg.class, new ClusterListenerAdapter<ClearSharedPermissionsMsg>() {
+            @Override
+            public void receive(ClearSharedPermissionsMsg message) {
+                doClearSharedPermissions();
+            }
+        });
+    }
+
     /**
      * Create a new session and fill it with security data. Must be called inside a transaction.
      * @param user      user instance
@@ -101,10 +147,9 @@ public class UserSessionManager {
             }
         }
         UserSession session = new UserSession(sessionId, user, roles, locale, system);
-        compilePermissions(session, roles);
         if (user.getGroup() == null)
             throw new IllegalStateException("User is not in a Group");
-        compileConstraints(session, user.getGroup());
+        compilePermissionsAndConstraints(session, roles, user.getGroup());
         compileSessionAttributes(session, user.getGroup());
         return session;
     }
@@ -124,14 +169,122 @@ public class UserSessionManager {
             }
         }
         UserSession session = new UserSession(src, user, roles, src.getLocale());
-        compilePermissions(session, roles);
         if (user.getGroup() == null)
             throw new IllegalStateException("User is not in a Group");
-        compileConstraints(session, user.getGroup());
+        compilePermissionsAndConstraints(session, roles, user.getGroup());
         compileSessionAttributes(session, user.getGroup());
         return session;
     }
 
+    protected void compilePermissionsAndConstraints(UserSession session, List<Role> roles, Group group) {
+        if (!serverConfig.getUserSessionSharedPermissions()) {
+            compilePermissions(session, roles);
+            compileConstraints(session, group);
+            return;
+        }
+
+        String permissionsKey = getPermissionsKey(roles);
+        UserSession permissionsHolder = sharedPermissions.get(permissionsKey);
+        if (permissionsHolder == null) {
+            long generation = sharedDataGeneration.get();
+            permissionsHolder = createSharedDataHolder(roles);
+            compilePermissions(permissionsHolder, roles);
+            // the holder gets the key too, so sessions received from cluster can be compared with it
+            permissionsHolder.setSharedPermissions(permissionsKey, permissionsHolder);
+            permissionsHolder = publishSharedData(sharedPermissions, permissionsKey, permissionsHolder, generation);
+        }
+        session.setSharedPermissions(permissionsKey, permissionsHolder);
+
+        String constraintsKey = group.getId().toString();
+        UserSession constraintsHolder = sharedConstraints.get(constraintsKey);
+        if (constraintsHolder == null) {
+            long generation = sharedDataGeneration.get();
+            constraintsHolder = createSharedDataHolder(Collections.emptyList());
+            compileConstraints(constraintsHolder, group);
+            constraintsHolder.setSharedConstraints(constraintsKey, constraintsHolder);
+            constraintsHolder = publishSharedData(sharedConstraints, constraintsKey, constraintsHolder, generation);
+        }
+        session.setSharedConstraints(constraintsKey, constraintsHolder);
+    }
+
+    /**
+     * Puts the compiled data to the shared map unless the shared data has been cleared since the compilation
+     * started, as the data can be compiled from the state before the change that caused the clearing.
+     *
+     * @param generation value of {@link #sharedDataGeneration} before the compilation
+     * @return the data to use: the one already shared or the given one
+     */
+    protected <K, V> V publishSharedData(Map<K, V> map, K key, V value, long generation) {
+        V existing = map.putIfAbsent(key, value);
+        if (existing != null) {
+            return existing;
+        }
+        if (sharedDataGeneration.get() != generation) {
+            map.remove(key, value);
+        }
+        return value;
+    }
+
+    protected String getPermissionsKey(List<Role> roles) {
+        return roles.stream()
+                .map(role -> role.getId().toString())
+                .sorted()
+                .distinct()
+                .collect(Collectors.joining(","));
+    }
+
+    protected UserSession createSharedDataHolder(List<Role> roles) {
+        User user = metadata.create(User.class);
+        user.setLogin("shared");
+        return new UserSession(uuidSource.createUuid(), user, roles, Locale.ENGLISH, true);
+    }
+
+    /**
+     * Makes a session received from another server of the cluster use the permissions and constraints shared
+     * on this server if they are equal to the ones granted by the sender. The session can be received with
+     * the hashes of its permissions and constraints only, see {@link UserSession#copyWithoutSharedData()}.
+     */
+    public void shareReceivedData(UserSession session) {
+        String permissionsKey = session.getPermissionsKey();
+        if (permissionsKey != null) {
+            UserSession permissionsHolder = sharedPermissions.get(permissionsKey);
+            if (permissionsHolder != null) {
+                session.shareEqualPermissions(permissionsHolder);
+            }
+        }
+        String constraintsKey = session.getConstraintsKey();
+        if (constraintsKey != null) {
+            UserSession constraintsHolder = sharedConstraints.get(constraintsKey);
+            if (constraintsHolder != null) {
+                session.shareEqualConstraints(constraintsHolder);
+            }
+        }
+    }
+
+    /**
+     * Clears permissions, constraints and session attributes shared by user sessions on all servers of the cluster.
+     * Sessions created after that get them compiled anew.
+     */
+    public void clearSharedPermissions() {
+        doClearSharedPermissions();
+        clusterManager.send(new ClearSharedPermissionsMsg());
+    }
+
+    protected void doClearSharedPermissions() {
+        log.debug("Clearing shared permissions and constraints");
+        sharedDataGeneration.incrementAndGet();
+        sharedPermissions.clear();
+        sharedConstraints.clear();
+        sharedSessionAttributes.clear();
+    }
+
+    /**
+     * @return number of shared combinations of permissions and constraints compiled on this server
+     */
+    public int getSharedPermissionsCount() {
+        return sharedPermissions.size() + sharedConstraints.size() + sharedSessionAttributes.size();
+    }
+
     protected void compilePermissions(UserSession session, List<Role> roles) {
         for (Role role : roles) {
             if (RoleType.SUPER.equals(role.getType())) {
@@ -191,6 +344,46 @@ public class UserSessionManager {
     }
 
     protected void compileSessionAttributes(UserSession session, Group group) {
+        Map<String, Serializable> attributes;
+        boolean shared = serverConfig.getUserSessionSharedPermissions();
+        if (shared) {
+            attributes = sharedSessionAttributes.get(group.getId());
+            if (attributes == null) {
+                long generation = sharedDataGeneration.get();
+                attributes = loadSessionAttributes(group);
+                attributes = publishSharedData(sharedSessionAttributes, group.getId(), attributes, generation);
+            }
+        } else {
+            attributes = loadSessionAttributes(group);
+        }
+
+        for (Map.Entry<String, Serializable> entry : attributes.entrySet()) {
+            if (entry.getValue() != null)
+                session.setAttribute(entry.getKey(), shared ? copySessionAttributeValue(entry.getValue()) : entry.getValue());
+            else
+                session.removeAttribute(entry.getKey());
+        }
+    }
+
+    /**
+     * @return the value itself if it is immutable, or its copy, so sessions sharing the compiled attributes
+     * cannot change the value of each other
+     */
+    protected Serializable copySessionAttributeValue(Serializable value) {
+        if (IMMUTABLE_ATTRIBUTE_TYPES.contains(value.getClass()) || value instanceof Enum) {
+            return value;
+        }
+        if (value instanceof Date) {
+            return (Serializable) ((Date) value).clone();
+        }
+        return (Serializable) SerializationUtils.clone(value);
+    }
+
+    /**
+     * @return values of session attributes defined in the group hierarchy, null values are the attributes
+     * to remove from the session
+     */
+    protected Map<String, Serializable> loadSessionAttributes(Group group) {
         List<SessionAttribute> list = new ArrayList<>(group.getSessionAttributes());
 
         EntityManager em = persistence.getEntityManager();
@@ -200,21 +393,20 @@ public class UserSessionManager {
         List<SessionAttribute> attributes = q.getResultList();
         list.addAll(attributes);
 
+        Map<String, Serializable> result = new LinkedHashMap<>();
         for (SessionAttribute attribute : list) {
             Datatype datatype = Datatypes.get(attribute.getDatatype());
             try {
-                if (session.getAttributeNames().contains(attribute.getName())) {
+                if (result.get(attribute.getName()) != null) {
                     log.warn("Duplicate definition of '{}' session attribute in the group hierarchy", attribute.getName());
                 }
                 Serializable value = (Serializable) datatype.parse(attribute.getStringValue());
-                if (value != null)
-                    session.setAttribute(attribute.getName(), value);
-                else
-                    session.removeAttribute(attribute.getName());
+                result.put(attribute.getName(), value);
             } catch (ParseException e) {
                 throw new RuntimeException("Unable to set session attribute " + attribute.getName(), e);
             }
         }
+        return Collections.unmodifiableMap(result);
     }
 
     /**
@@ -296,4 +488,8 @@ public class UserSessionManager {
             }
         }
     }
+
+    private static class ClearSharedPermissionsMsg implements Serializable {
+        private static final long serialVersionUID = 3719471251208352624L;
+    }
 }
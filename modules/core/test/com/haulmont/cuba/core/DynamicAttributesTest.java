@@ -23,6 +23,7 @@ import com.haulmont.cuba.core.app.dynamicattributes.PropertyType;
 import com.haulmont.cuba.core.entity.Category;
 import com.haulmont.cuba.core.entity.CategoryAttribute;
 import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.security.entity.Group;
 import com.haulmont.cuba.security.entity.Role;
 import com.haulmont.cuba.security.entity.User;
@@ -30,9 +31,11 @@ import com.haulmont.cuba.security.entity.UserRole;
 import com.haulmont.cuba.testsupport.TestContainer;
 import org.junit.*;
 
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class DynamicAttributesTest {
@@ -263,4 +266,44 @@ public class DynamicAttributesTest {
         });
         loadedUser.setValue("+userAttribute", "newName");
     }
+
+    @Test
+    public void testFetchInBatchesWithCodes() {
+        LoadContext<User> ctx = LoadContext.create(User.class).setView(View.LOCAL);
+        ctx.setQueryString("select u from sec$User u where u.login like 'user%' order by u.login");
+        List<User> users = dataManager.loadList(ctx);
+        assertEquals(2, users.size());
+
+        AppContext.setProperty("cuba.dynamicAttributesFetchBatchSize", "1");
+        try {
+            long queriesCount = dynamicAttributesManagerAPI.getFetchQueriesCount();
+            dynamicAttributesManagerAPI.fetchDynamicAttributes(users, Collections.emptySet(),
+                    Collections.singleton("userAttribute"));
+            // one query per entity
+            assertEquals(queriesCount + 2, dynamicAttributesManagerAPI.getFetchQueriesCount());
+            for (User loadedUser : users) {
+                assertEquals(Collections.singleton("userAttribute"), loadedUser.getDynamicAttributes().keySet());
+                assertEquals("userName", loadedUser.getValue("+userAttribute"));
+            }
+
+            queriesCount = dynamicAttributesManagerAPI.getFetchQueriesCount();
+            dynamicAttributesManagerAPI.fetchDynamicAttributes(users, Collections.emptySet(), Collections.emptySet());
+            assertEquals(queriesCount, dynamicAttributesManagerAPI.getFetchQueriesCount());
+            for (User loadedUser : users) {
+                assertTrue(loadedUser.getDynamicAttributes().isEmpty());
+            }
+        } finally {
+            AppContext.setProperty("cuba.dynamicAttributesFetchBatchSize", null);
+        }
+    }
+
+    @Test
+    public void testLoadContextDynamicAttributeCodes() {
+        User loadedUser = dataManager.load(LoadContext.create(User.class).setId(user.getId())
+                .setLoadDynamicAttributes(true)
+                .setDynamicAttributeCodes(Collections.singletonList("userGroupAttribute")));
+        assertEquals(group, loadedUser.getValue("+userGroupAttribute"));
+        assertNull(loadedUser.getValue("+userAttribute"));
+        assertNull(loadedUser.getValue("+userGroupCollectionAttribute"));
+    }
 }
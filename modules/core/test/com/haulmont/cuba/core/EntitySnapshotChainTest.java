@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.core;
+
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.cuba.core.app.EntitySnapshotAPI;
+import com.haulmont.cuba.core.app.EntitySnapshotFormat;
+import com.haulmont.cuba.core.entity.EntitySnapshot;
+import com.haulmont.cuba.core.entity.Server;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.View;
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.apache.commons.lang.RandomStringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EntitySnapshotChainTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private static final String CHAIN_LENGTH_PROPERTY = "cuba.entitySnapshot.chainLength";
+
+    private EntitySnapshotAPI snapshotAPI;
+    private MetaClass metaClass;
+    private View view;
+    private Server server;
+    private long time;
+
+    @Before
+    public void setUp() throws Exception {
+        snapshotAPI = AppBeans.get(EntitySnapshotAPI.NAME);
+        metaClass = cont.metadata().getClassNN(Server.class);
+        view = cont.metadata().getViewRepository().getView(Server.class, View.LOCAL);
+
+        server = cont.metadata().create(Server.class);
+        server.setName("v0");
+        // large unchanged content makes a delta shorter than the compressed snapshot
+        server.setData(RandomStringUtils.randomAlphanumeric(2000));
+        cont.persistence().runInTransaction(em -> em.persist(server));
+
+        time = System.currentTimeMillis();
+        AppContext.setProperty(CHAIN_LENGTH_PROPERTY, "3");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        AppContext.setProperty(CHAIN_LENGTH_PROPERTY, null);
+        cont.persistence().runInTransaction(em -> {
+            em.createQuery("delete from sys$EntitySnapshot s where s.entity.entityId = :entityId")
+                    .setParameter("entityId", server.getId())
+                    .executeUpdate();
+        });
+        cont.deleteRecord(server);
+    }
+
+    @Test
+    public void testChains() throws Exception {
+        createSnapshots(7);
+
+        List<EntitySnapshot> snapshots = loadSnapshots();
+        assertEquals(7, snapshots.size());
+        for (int i = 0; i < snapshots.size(); i++) {
+            EntitySnapshot snapshot = snapshots.get(i);
+            if (i % 3 == 0) {
+                assertTrue(EntitySnapshotFormat.isCompressed(snapshot.getSnapshotXml()));
+            } else {
+                assertBasedOn(snapshots.get(i - i % 3), snapshot);
+            }
+        }
+        assertRestored(snapshots, 0, 1, 2, 3, 4, 5, 6);
+    }
+
+    @Test
+    public void testRemoveFullSnapshot() throws Exception {
+        createSnapshots(7);
+        List<EntitySnapshot> snapshots = loadSnapshots();
+
+        removeSnapshot(snapshots.get(0));
+        removeSnapshot(snapshots.get(4));
+        removeSnapshot(snapshots.get(3));
+
+        snapshots = loadSnapshots();
+        assertEquals(4, snapshots.size());
+        // the deltas of the removed full snapshots start new chains
+        assertTrue(EntitySnapshotFormat.isCompressed(snapshots.get(0).getSnapshotXml()));
+        assertBasedOn(snapshots.get(0), snapshots.get(1));
+        assertTrue(EntitySnapshotFormat.isCompressed(snapshots.get(2).getSnapshotXml()));
+        assertRestored(snapshots, 1, 2, 5, 6);
+    }
+
+    @Test
+    public void testRebuildChains() throws Exception {
+        createSnapshots(7);
+
+        AppContext.setProperty(CHAIN_LENGTH_PROPERTY, "2");
+        assertEquals(7, snapshotAPI.rebuildSnapshotChains(metaClass, server.getId()));
+
+        List<EntitySnapshot> snapshots = loadSnapshots();
+        for (int i = 0; i < snapshots.size(); i++) {
+            if (i % 2 == 0) {
+                assertTrue(EntitySnapshotFormat.isCompressed(snapshots.get(i).getSnapshotXml()));
+            } else {
+                assertBasedOn(snapshots.get(i - 1), snapshots.get(i));
+            }
+        }
+        assertRestored(snapshots, 0, 1, 2, 3, 4, 5, 6);
+
+        removeSnapshot(snapshots.get(2));
+        assertRestored(loadSnapshots(), 0, 1, 3, 4, 5, 6);
+    }
+
+    @Test
+    public void testCompressPlainSnapshots() throws Exception {
+        AppContext.setProperty(CHAIN_LENGTH_PROPERTY, "0");
+        createSnapshots(3);
+        assertFalse(EntitySnapshotFormat.isCompressed(loadSnapshots().get(0).getSnapshotXml()));
+
+        assertTrue(snapshotAPI.compressSnapshots(2) >= 3);
+
+        List<EntitySnapshot> snapshots = loadSnapshots();
+        for (EntitySnapshot snapshot : snapshots) {
+            assertTrue(EntitySnapshotFormat.isCompressed(snapshot.getSnapshotXml()));
+            assertTrue(EntitySnapshotFormat.isCompressed(snapshot.getViewXml()));
+        }
+        assertRestored(snapshots, 0, 1, 2);
+
+        // compressed snapshots are not the base of existing chains, so new snapshots can follow them
+        AppContext.setProperty(CHAIN_LENGTH_PROPERTY, "3");
+        createSnapshots(1);
+        snapshots = loadSnapshots();
+        assertBasedOn(snapshots.get(2), snapshots.get(3));
+        assertRestored(snapshots, 0, 1, 2, 3);
+    }
+
+    private void createSnapshots(int count) {
+        int first = loadSnapshots().size();
+        for (int i = first; i < first + count; i++) {
+            server.setName("v" + i);
+            snapshotAPI.createSnapshot(server, view, new Date(time + i * 1000L));
+        }
+    }
+
+    private List<EntitySnapshot> loadSnapshots() {
+        List<EntitySnapshot> snapshots = new ArrayList<>();
+        cont.persistence().runInTransaction(em -> {
+            snapshots.addAll(em.createQuery("select s from sys$EntitySnapshot s where s.entity.entityId = :entityId " +
+                    "order by s.snapshotDate", EntitySnapshot.class)
+                    .setParameter("entityId", server.getId())
+                    .getResultList());
+        });
+        return snapshots;
+    }
+
+    private void removeSnapshot(EntitySnapshot snapshot) {
+        cont.persistence().runInTransaction(em -> em.remove(em.find(EntitySnapshot.class, snapshot.getId())));
+    }
+
+    private void assertBasedOn(EntitySnapshot base, EntitySnapshot snapshot) {
+        assertTrue(EntitySnapshotFormat.isDelta(snapshot.getSnapshotXml()));
+        assertEquals(base.getId(), EntitySnapshotFormat.getBaseId(snapshot.getSnapshotXml()));
+    }
+
+    /**
+     * Checks that the snapshots loaded from the database restore the names they were created with.
+     */
+    private void assertRestored(List<EntitySnapshot> snapshots, int... versions) {
+        assertEquals(versions.length, snapshots.size());
+        for (int i = 0; i < versions.length; i++) {
+            Server restored = (Server) snapshotAPI.extractEntity(snapshots.get(i));
+            assertEquals("v" + versions[i], restored.getName());
+            assertEquals(server.getData(), restored.getData());
+            assertNotNull(snapshotAPI.extractView(snapshots.get(i)));
+        }
+    }
+}
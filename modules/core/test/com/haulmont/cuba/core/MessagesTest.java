@@ -163,6 +163,20 @@ public class MessagesTest {
         assertEquals(0, getSearchMessagesCount());
     }
 
+    @Test
+    public void testCachingEnum() {
+        Messages messages = prepareCachingTest();
+
+        String msg = messages.getMessage(MpTestNestedObj.InternalEnum.FIRST, Locale.forLanguageTag("en"));
+        assertEquals("First", msg);
+
+        appender.getMessages().clear();
+
+        msg = messages.getMessage(MpTestNestedObj.InternalEnum.FIRST, Locale.forLanguageTag("en"));
+        assertEquals("First", msg);
+        assertEquals(0, getSearchMessagesCount());
+    }
+
     private Messages prepareCachingTest() {
         Messages messages = AppBeans.get(Messages.class);
         messages.clearCache();
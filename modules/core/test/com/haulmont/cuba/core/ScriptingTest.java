@@ -18,7 +18,9 @@
 package com.haulmont.cuba.core;
 
 import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.ScriptExecutionPolicy;
 import com.haulmont.cuba.core.global.Scripting;
+import com.haulmont.cuba.core.jmx.ScriptingManagerMBean;
 import com.haulmont.cuba.security.entity.User;
 import com.haulmont.cuba.testsupport.TestContainer;
 import groovy.lang.Binding;
@@ -26,6 +28,8 @@ import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
 
+import java.util.UUID;
+
 import static org.junit.Assert.*;
 
 public class ScriptingTest {
@@ -74,4 +78,75 @@ public class ScriptingTest {
                                        "return PersistenceHelper.isNew(instance)", binding);
         assertTrue(result);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCompiledClassCache() {
+        String text = uniqueExpression("a + 1");
+        Class compiledClass = scripting.compileGroovy(text);
+        assertSame(compiledClass, scripting.compileGroovy(text));
+        assertNotSame(compiledClass, scripting.compileGroovy(uniqueExpression("a + 1")));
+
+        Binding binding = new Binding();
+        binding.setVariable("a", 1);
+        Integer result = scripting.evaluateGroovy(text, binding);
+        assertEquals((Integer) 2, result);
+        binding.setVariable("a", 2);
+        result = scripting.evaluateGroovy(text, binding);
+        assertEquals((Integer) 3, result);
+    }
+
+    @Test
+    public void testDoNotUseCompileCache() {
+        ScriptingManagerMBean scriptingManager = AppBeans.get(ScriptingManagerMBean.class);
+        long compilationCount = scriptingManager.getCompilationCount();
+        long hitCount = scriptingManager.getCompilationCacheHitCount();
+
+        String text = uniqueExpression("2 + 2");
+        for (int i = 0; i < 2; i++) {
+            Integer result = scripting.evaluateGroovy(text, new Binding(), ScriptExecutionPolicy.DO_NOT_USE_COMPILE_CACHE);
+            assertEquals((Integer) 4, result);
+        }
+
+        assertEquals(compilationCount, scriptingManager.getCompilationCount());
+        assertEquals(hitCount, scriptingManager.getCompilationCacheHitCount());
+    }
+
+    @Test
+    public void testClearCache() {
+        String text = uniqueExpression("2 + 2");
+        Class compiledClass = scripting.compileGroovy(text);
+
+        scripting.clearCache();
+
+        Class recompiledClass = scripting.compileGroovy(text);
+        assertNotSame(compiledClass, recompiledClass);
+        assertSame(recompiledClass, scripting.compileGroovy(text));
+    }
+
+    @Test
+    public void testStatistics() {
+        ScriptingManagerMBean scriptingManager = AppBeans.get(ScriptingManagerMBean.class);
+        long compilationCount = scriptingManager.getCompilationCount();
+        long hitCount = scriptingManager.getCompilationCacheHitCount();
+        long evaluationCount = scriptingManager.getEvaluationCount();
+        long compiledScriptsCount = scriptingManager.getCompiledScriptsCount();
+
+        String text = uniqueExpression("2 + 2");
+        for (int i = 0; i < 3; i++) {
+            scripting.evaluateGroovy(text, new Binding());
+        }
+
+        assertEquals(compilationCount + 1, scriptingManager.getCompilationCount());
+        assertEquals(hitCount + 2, scriptingManager.getCompilationCacheHitCount());
+        assertEquals(evaluationCount + 3, scriptingManager.getEvaluationCount());
+        assertEquals(compiledScriptsCount + 1, scriptingManager.getCompiledScriptsCount());
+        assertTrue(scriptingManager.getEvaluationTime() >= 0);
+    }
+
+    /**
+     * @return expression not compiled by other tests
+     */
+    private String uniqueExpression(String expression) {
+        return "// " + UUID.randomUUID() + "\n" + expression;
+    }
+}
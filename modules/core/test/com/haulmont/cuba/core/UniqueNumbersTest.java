@@ -18,8 +18,11 @@
 package com.haulmont.cuba.core;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.haulmont.cuba.core.app.ServerConfig;
+import com.haulmont.cuba.core.app.UniqueNumbers;
 import com.haulmont.cuba.core.app.UniqueNumbersAPI;
 import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.Configuration;
 import com.haulmont.cuba.testsupport.TestContainer;
 import org.apache.commons.lang.StringUtils;
 import org.junit.ClassRule;
@@ -33,6 +36,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class UniqueNumbersTest {
 
@@ -59,6 +63,145 @@ public class UniqueNumbersTest {
         uniqueNumbersAPI.getCurrentNumber("s1");
     }
 
+    @Test
+    public void testBlockAllocation() throws Exception {
+        UniqueNumbers uniqueNumbers = createBlockUniqueNumbers();
+        uniqueNumbers.getCurrentNumber("b1");
+        uniqueNumbers.deleteSequence("b1");
+
+        long fetchCount = uniqueNumbers.getSequenceFetchCount();
+        for (int i = 1; i <= 25; i++) {
+            assertEquals(i, uniqueNumbers.getNextNumber("b1"));
+        }
+        assertEquals(fetchCount + 3, uniqueNumbers.getSequenceFetchCount());
+        assertEquals(25, uniqueNumbers.getNumbersServedCount());
+        assertEquals(25, uniqueNumbers.getCurrentNumber("b1"));
+
+        uniqueNumbers.setCurrentNumber("b1", 100);
+        assertEquals(101, uniqueNumbers.getNextNumber("b1"));
+
+        uniqueNumbers.deleteSequence("b1");
+    }
+
+    @Test
+    public void testBlockAllocationAfterRestart() throws Exception {
+        UniqueNumbers uniqueNumbers = createBlockUniqueNumbers();
+        uniqueNumbers.getCurrentNumber("b2");
+        uniqueNumbers.deleteSequence("b2");
+
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(i, uniqueNumbers.getNextNumber("b2"));
+        }
+
+        // another server with its own blocks
+        UniqueNumbers otherUniqueNumbers = createBlockUniqueNumbers();
+
+        uniqueNumbers.setCurrentNumber("b2", 100);
+        for (int i = 101; i <= 110; i++) {
+            assertEquals(i, uniqueNumbers.getNextNumber("b2"));
+        }
+        assertEquals(111, otherUniqueNumbers.getNextNumber("b2"));
+        assertEquals(121, uniqueNumbers.getNextNumber("b2"));
+
+        uniqueNumbers.deleteSequence("b2");
+    }
+
+    @Test
+    public void testExistingSequenceWithOtherIncrement() throws Exception {
+        UniqueNumbersAPI uniqueNumbersAPI = AppBeans.get(UniqueNumbersAPI.NAME);
+        uniqueNumbersAPI.getCurrentNumber("b3");
+        uniqueNumbersAPI.deleteSequence("b3");
+        // created with increment 1
+        uniqueNumbersAPI.getNextNumber("b3");
+
+        UniqueNumbers uniqueNumbers = createBlockUniqueNumbers();
+        try {
+            uniqueNumbers.getNextNumber("b3");
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("increment 1"));
+        }
+
+        uniqueNumbers.deleteSequence("b3");
+        uniqueNumbers.setCurrentNumber("b3", 100);
+        assertEquals(101, uniqueNumbers.getNextNumber("b3"));
+
+        uniqueNumbers.deleteSequence("b3");
+    }
+
+    @Test
+    public void testDifferentBlockSizes() throws Exception {
+        UniqueNumbers uniqueNumbers = createBlockUniqueNumbers();
+        uniqueNumbers.getCurrentNumber("b4");
+        uniqueNumbers.deleteSequence("b4");
+        assertEquals(1, uniqueNumbers.getNextNumber("b4"));
+
+        UniqueNumbers otherUniqueNumbers = createBlockUniqueNumbers(20);
+        try {
+            otherUniqueNumbers.getNextNumber("b4");
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("increment 10"));
+        }
+
+        uniqueNumbers.deleteSequence("b4");
+    }
+
+    @Test
+    public void testIncrementCheckedByFetches() throws Exception {
+        UniqueNumbersAPI uniqueNumbersAPI = AppBeans.get(UniqueNumbersAPI.NAME);
+        uniqueNumbersAPI.getCurrentNumber("b5");
+        uniqueNumbersAPI.deleteSequence("b5");
+        uniqueNumbersAPI.getNextNumber("b5");
+
+        // the DBMS doesn't provide the increment
+        UniqueNumbers uniqueNumbers = new UniqueNumbers() {
+            {
+                persistence = AppBeans.get(Persistence.class);
+                serverConfig = AppBeans.get(Configuration.class).getConfig(ServerConfig.class);
+            }
+
+            @Override
+            protected int getBlockSize(String domain) {
+                return 10;
+            }
+
+            @Override
+            protected Long getSequenceIncrement(String domain) {
+                return null;
+            }
+        };
+        for (int i = 0; i < 10; i++) {
+            uniqueNumbers.getNextNumber("b5");
+        }
+        try {
+            uniqueNumbers.getNextNumber("b5");
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("increment 1"));
+        }
+
+        uniqueNumbers.deleteSequence("b5");
+    }
+
+    protected UniqueNumbers createBlockUniqueNumbers() {
+        return createBlockUniqueNumbers(10);
+    }
+
+    protected UniqueNumbers createBlockUniqueNumbers(int blockSize) {
+        return new UniqueNumbers() {
+            {
+                persistence = AppBeans.get(Persistence.class);
+                serverConfig = AppBeans.get(Configuration.class).getConfig(ServerConfig.class);
+            }
+
+            @Override
+            protected int getBlockSize(String domain) {
+                return blockSize;
+            }
+        };
+    }
+
     @Test
     public void testConcurrentModification() throws Exception {
         int threadCnt = 8;
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.core.app;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ConsistentHashRingTest {
+
+    private static final int KEYS = 10000;
+
+    @Test
+    public void testEmpty() throws Exception {
+        ConsistentHashRing ring = new ConsistentHashRing(Collections.emptyList());
+        assertNull(ring.getOwner("sys$Server/1"));
+    }
+
+    @Test
+    public void testDistribution() throws Exception {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("node1", "node2", "node3"));
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            String owner = ring.getOwner("sys$Server/" + UUID.randomUUID());
+            counts.merge(owner, 1, Integer::sum);
+        }
+        assertEquals(3, counts.size());
+        for (Integer count : counts.values()) {
+            assertTrue("Uneven distribution: " + counts, count > KEYS / 3 / 2);
+        }
+    }
+
+    @Test
+    public void testMembershipChange() throws Exception {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("node1", "node2", "node3"));
+        ConsistentHashRing newRing = new ConsistentHashRing(Arrays.asList("node1", "node2", "node3", "node4"));
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "sys$Server/" + i;
+            String owner = ring.getOwner(key);
+            String newOwner = newRing.getOwner(key);
+            if (!owner.equals(newOwner)) {
+                assertEquals("Key moved between remaining nodes", "node4", newOwner);
+                moved++;
+            }
+        }
+        assertTrue("Too many keys moved: " + moved, moved < KEYS / 2);
+    }
+}
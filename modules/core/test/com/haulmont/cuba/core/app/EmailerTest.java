@@ -24,15 +24,19 @@ import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.sys.CubaMailSender;
 import com.haulmont.cuba.testsupport.TestContainer;
 import com.haulmont.cuba.testsupport.TestMailSender;
+import com.sun.mail.smtp.SMTPAddressFailedException;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.time.DateUtils;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
+import org.springframework.mail.MailSendException;
 
 import javax.mail.Address;
 import javax.mail.MessagingException;
 import javax.mail.Part;
+import javax.mail.SendFailedException;
+import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeMultipart;
@@ -164,6 +168,74 @@ public class EmailerTest {
         assertEquals(SendingStatus.SENT, sendingMsg.getStatus());
     }
 
+    @Test
+    public void testClaimedMessagesAreNotClaimedAgain() throws Exception {
+        List<SendingMessage> messages = new ArrayList<>();
+        messages.addAll(emailer.sendEmailAsync(new EmailInfo("recipient1@example.com", "Test", "Test Body")));
+        messages.addAll(emailer.sendEmailAsync(new EmailInfo("recipient2@example.com", "Test", "Test Body")));
+        try {
+            List<SendingMessage> claimed = ((Emailer) emailer).loadEmailsToSend();
+            assertEquals(2, claimed.size());
+            for (SendingMessage message : messages) {
+                assertTrue(claimed.contains(message));
+                assertEquals(SendingStatus.SENDING, reload(message).getStatus());
+            }
+
+            List<SendingMessage> claimedAgain = ((Emailer) emailer).loadEmailsToSend();
+            for (SendingMessage message : messages) {
+                assertFalse(claimedAgain.contains(message));
+            }
+        } finally {
+            cont.deleteRecord(messages.toArray(new SendingMessage[0]));
+        }
+        assertTrue(testMailSender.isEmpty());
+    }
+
+    @Test
+    public void testClaimMessagesSql() throws Exception {
+        Emailer emailerBean = (Emailer) emailer;
+
+        String postgresSql = emailerBean.getClaimMessagesSql("postgres", 10);
+        assertNotNull(postgresSql);
+        assertTrue(postgresSql.endsWith(" order by CREATE_TS limit 10 for update skip locked"));
+
+        String oracleSql = emailerBean.getClaimMessagesSql("oracle", 10);
+        assertNotNull(oracleSql);
+        assertTrue(oracleSql.endsWith(" order by CREATE_TS for update skip locked"));
+        assertFalse(oracleSql.contains("rownum"));
+        assertFalse(oracleSql.contains("fetch first"));
+
+        String mssqlSql = emailerBean.getClaimMessagesSql("mssql", 10);
+        assertNotNull(mssqlSql);
+        assertTrue(mssqlSql.startsWith("select top (10) ID from SYS_SENDING_MESSAGE with (updlock, rowlock, readpast)"));
+        assertTrue(mssqlSql.endsWith(" order by CREATE_TS"));
+
+        for (String sql : Arrays.asList(postgresSql, oracleSql, mssqlSql)) {
+            assertTrue(sql.contains(" where DELETE_TS is null and (STATUS = ? or (STATUS = ? and UPDATE_TS < ?))"));
+        }
+
+        assertNull(emailerBean.getClaimMessagesSql("hsql", 10));
+        assertNull(emailerBean.getClaimMessagesSql("mysql", 10));
+    }
+
+    @Test
+    public void testAddressFailureIsNotRetried() throws Exception {
+        Emailer emailerBean = (Emailer) emailer;
+
+        SMTPAddressFailedException addressFailed = new SMTPAddressFailedException(
+                new InternetAddress("nobody@example.com"), "RCPT TO", 550, "No such user");
+        SendFailedException sendFailed = new SendFailedException("Invalid Addresses", addressFailed);
+
+        // the batched sending wraps the exception of each failed message
+        assertFalse(emailerBean.isNeedToRetry(new MailSendException("Failed to send message", sendFailed)));
+        assertFalse(emailerBean.isNeedToRetry(new MailSendException(Collections.singletonMap(new Object(), sendFailed))));
+        assertFalse(emailerBean.isNeedToRetry(new MailSendException("Failed to send message", addressFailed)));
+
+        assertTrue(emailerBean.isNeedToRetry(new MailSendException("Mail server connection failed",
+                new MessagingException("Connection refused"))));
+        assertTrue(emailerBean.isNeedToRetry(new RuntimeException("Unexpected error")));
+    }
+
     @Test
     public void testHtmlContent() throws Exception {
         testMailSender.clearBuffer();
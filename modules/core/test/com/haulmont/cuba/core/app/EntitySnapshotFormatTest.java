@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class EntitySnapshotFormatTest {
+
+    private static final String BASE = "{\"_entityName\":\"test$Order\",\"id\":\"1\",\"number\":\"001\"," +
+            "\"amount\":10,\"customer\":{\"_entityName\":\"test$Customer\",\"id\":\"2\",\"name\":\"Smith\"}," +
+            "\"lines\":[{\"id\":\"3\",\"quantity\":1}],\"description\":\"first\"}";
+
+    @Test
+    public void testCompressed() throws Exception {
+        String content = EntitySnapshotFormat.encodeCompressed(BASE);
+        assertTrue(EntitySnapshotFormat.isCompressed(content));
+        assertFalse(EntitySnapshotFormat.isDelta(content));
+        assertEquals(BASE, EntitySnapshotFormat.decodeData(content));
+    }
+
+    @Test
+    public void testDelta() throws Exception {
+        String target = "{\"_entityName\":\"test$Order\",\"id\":\"1\",\"number\":\"001\"," +
+                "\"amount\":12,\"customer\":{\"_entityName\":\"test$Customer\",\"id\":\"2\",\"name\":\"Jones\"}," +
+                "\"lines\":[{\"id\":\"3\",\"quantity\":1},{\"id\":\"4\",\"quantity\":5}],\"comment\":\"new\"}";
+
+        String delta = EntitySnapshotFormat.createDelta(BASE, target);
+        assertNotNull(delta);
+        assertTrue(delta.length() < target.length());
+
+        UUID baseId = UUID.randomUUID();
+        String content = EntitySnapshotFormat.encodeDelta(baseId, 3, delta);
+        assertTrue(EntitySnapshotFormat.isDelta(content));
+        assertEquals(baseId, EntitySnapshotFormat.getBaseId(content));
+        assertEquals(3, EntitySnapshotFormat.getSequence(content));
+
+        String restored = EntitySnapshotFormat.applyDelta(BASE, EntitySnapshotFormat.decodeData(content));
+        assertEquals(new JsonParser().parse(target), new JsonParser().parse(restored));
+    }
+
+    @Test
+    public void testEmptyDelta() throws Exception {
+        String delta = EntitySnapshotFormat.createDelta(BASE, BASE);
+        assertEquals(new JsonParser().parse(BASE), new JsonParser().parse(EntitySnapshotFormat.applyDelta(BASE, delta)));
+    }
+
+    @Test
+    public void testReference() throws Exception {
+        UUID baseId = UUID.randomUUID();
+        String content = EntitySnapshotFormat.encodeReference(baseId);
+        assertTrue(EntitySnapshotFormat.isReference(content));
+        assertEquals(baseId, EntitySnapshotFormat.getBaseId(content));
+    }
+}
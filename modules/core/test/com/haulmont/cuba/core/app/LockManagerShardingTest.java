@@ -0,0 +1,447 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.haulmont.cuba.core.entity.LockDescriptor;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.LockInfo;
+import com.haulmont.cuba.core.global.TimeSource;
+import com.haulmont.cuba.core.global.UserSessionSource;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.apache.commons.lang.SerializationUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the sharded protocol of {@link LockManager} running several instances over an in-memory cluster.
+ */
+public class LockManagerShardingTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private static final String ENTITY = "sys$Server";
+
+    private Map<String, FakeNode> nodes = new LinkedHashMap<>();
+    private Map<String, LockManager> lockManagers = new HashMap<>();
+    private long viewId;
+
+    @Before
+    public void setUp() throws Exception {
+        cont.persistence().runInTransaction(em -> {
+            LockDescriptor lockDescriptor = cont.metadata().create(LockDescriptor.class);
+            lockDescriptor.setName(ENTITY);
+            lockDescriptor.setTimeoutSec(300);
+            em.persist(lockDescriptor);
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (FakeNode node : nodes.values()) {
+            node.executor.shutdownNow();
+        }
+        cont.persistence().runInTransaction(em -> {
+            em.createQuery("delete from sys$LockDescriptor d").executeUpdate();
+        });
+    }
+
+    @Test
+    public void testRequestsAreServedByOwner() throws Exception {
+        changeView("a", "b", "c");
+        String id = findId("b", "a", "b", "c");
+
+        assertNull(lock("a").lock(ENTITY, id));
+        LockInfo existing = lock("c").lock(ENTITY, id);
+        assertNotNull(existing);
+        assertEquals(existing, lock("a").getLockInfo(ENTITY, id));
+
+        assertEquals(1, lock("b").getCurrentLocks().size());
+        assertTrue(lock("a").getCurrentLocks().isEmpty());
+        assertTrue(lock("c").getCurrentLocks().isEmpty());
+    }
+
+    @Test
+    public void testUnlockIsAcknowledged() throws Exception {
+        changeView("a", "b");
+        String id = findId("b", "a", "b");
+
+        assertNull(lock("a").lock(ENTITY, id));
+        lock("a").unlock(ENTITY, id);
+
+        // the owner has removed the lock when unlock returns
+        assertTrue(lock("b").getCurrentLocks().isEmpty());
+        assertNull(lock("b").lock(ENTITY, id));
+    }
+
+    @Test
+    public void testLocksAreHandedOverOnJoin() throws Exception {
+        changeView("a", "b");
+        String id = findId("c", "a", "b", "c");
+        assertNull(lock("a").lock(ENTITY, id));
+
+        changeView("a", "b", "c");
+
+        assertEquals(1, lock("c").getCurrentLocks().size());
+        assertTrue(lock("a").getCurrentLocks().isEmpty());
+        assertTrue(lock("b").getCurrentLocks().isEmpty());
+        assertNotNull(lock("b").lock(ENTITY, id));
+    }
+
+    @Test
+    public void testLockIsNotGrantedBeforeHandover() throws Exception {
+        changeView("a", "b");
+        String id = findId("c", Arrays.asList("a", "b", "c"), "a", Arrays.asList("a", "b"));
+        assertNull(lock("a").lock(ENTITY, id));
+
+        // "a" doesn't process the new view yet, so its locks are not handed over to "c"
+        node("a").holdViews = true;
+        changeView("a", "b", "c");
+
+        Future<LockInfo> result = Executors.newSingleThreadExecutor().submit(() -> lock("b").lock(ENTITY, id));
+        Thread.sleep(300);
+        assertFalse(result.isDone());
+
+        node("a").releaseViews();
+        LockInfo existing = result.get(5, TimeUnit.SECONDS);
+        assertNotNull(existing);
+        assertEquals(1, lock("c").getCurrentLocks().size());
+    }
+
+    @Test
+    public void testStaleEpochIsRejected() throws Exception {
+        changeView("a", "b");
+        String id = findId("c", Arrays.asList("a", "b", "c"), "b", Arrays.asList("a", "b"));
+
+        node("a").holdViews = true;
+        changeView("a", "b", "c");
+
+        // "a" sends the request to the previous owner, which has left that view and must not grant it
+        Future<LockInfo> result = Executors.newSingleThreadExecutor().submit(() -> lock("a").lock(ENTITY, id));
+        Thread.sleep(300);
+        assertFalse(result.isDone());
+        assertTrue(lock("b").getCurrentLocks().isEmpty());
+
+        node("a").releaseViews();
+        assertNull(result.get(5, TimeUnit.SECONDS));
+        assertEquals(1, lock("c").getCurrentLocks().size());
+        assertNotNull(lock("b").lock(ENTITY, id));
+    }
+
+    @Test
+    public void testConflictingLocksAreReconciled() throws Exception {
+        changeView("a", "b");
+        String id = findId("b", "a", "b");
+        User user = AppBeans.get(UserSessionSource.class).getUserSession().getUser();
+
+        LockInfo older = new LockInfo(user, ENTITY, id);
+        Thread.sleep(10);
+        assertNull(lock("a").lock(ENTITY, id));
+        LockInfo granted = lock("b").getLockInfo(ENTITY, id);
+        Thread.sleep(10);
+        LockInfo newer = new LockInfo(user, ENTITY, id);
+
+        // a lock of the same key granted by another node after the view change doesn't replace the existing one
+        node("a").sendSync(new LockShardMessage(LockShardMessage.Type.FORWARD, 0, "a", "b", viewId)
+                .setLocks(Collections.singletonList(newer)), "b");
+        awaitQuiet();
+        assertEquals(granted, lock("b").getLockInfo(ENTITY, id));
+
+        // a lock handed over late wins over the lock granted after it
+        node("a").sendSync(new LockShardMessage(LockShardMessage.Type.TRANSFER, 0, "a", "b", viewId)
+                .setLocks(Collections.singletonList(older)), "b");
+        awaitQuiet();
+        assertEquals(older, lock("b").getLockInfo(ENTITY, id));
+        assertNotNull(lock("a").lock(ENTITY, id));
+    }
+
+    @Test
+    public void testNodeLeave() throws Exception {
+        changeView("a", "b", "c");
+        String keptId = findId("a", "a", "b", "c");
+        String lostId = findId("c", "a", "b", "c");
+        assertNull(lock("b").lock(ENTITY, keptId));
+        assertNull(lock("b").lock(ENTITY, lostId));
+
+        nodes.remove("c").executor.shutdownNow();
+        changeView("a", "b");
+
+        assertNotNull(lock("b").lock(ENTITY, keptId));
+        // the locks kept by the failed node are lost, the remaining nodes don't wait for its handover
+        assertNull(lock("a").lock(ENTITY, lostId));
+    }
+
+    private LockManager lock(String member) {
+        return lockManagers.get(member);
+    }
+
+    private FakeNode node(String member) {
+        return nodes.get(member);
+    }
+
+    private void changeView(String... members) throws Exception {
+        List<String> list = Arrays.asList(members);
+        for (String member : members) {
+            if (!nodes.containsKey(member)) {
+                FakeNode node = new FakeNode(member);
+                nodes.put(member, node);
+                lockManagers.put(member, createLockManager(node));
+            }
+        }
+        viewId++;
+        for (String member : members) {
+            nodes.get(member).deliverView(viewId, list);
+        }
+        awaitQuiet();
+    }
+
+    private LockManager createLockManager(FakeNode node) {
+        LockManager lockManager = new LockManager();
+        lockManager.persistence = cont.persistence();
+        lockManager.metadata = cont.metadata();
+        lockManager.userSessionSource = AppBeans.get(UserSessionSource.class);
+        lockManager.timeSource = AppBeans.get(TimeSource.class);
+        lockManager.clusterConfig = (ClusterConfig) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{ClusterConfig.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getLockSharding":
+                            return true;
+                        case "getLockRequestTimeout":
+                            return 5000L;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        lockManager.setClusterManager(node);
+        return lockManager;
+    }
+
+    private String findId(String owner, String... members) {
+        return findId(owner, Arrays.asList(members), owner, Arrays.asList(members));
+    }
+
+    /**
+     * @return id of an entity owned by the given nodes in the current and the previous view
+     */
+    private String findId(String owner, List<String> members, String previousOwner, List<String> previousMembers) {
+        ConsistentHashRing ring = new ConsistentHashRing(members);
+        ConsistentHashRing previousRing = new ConsistentHashRing(previousMembers);
+        for (int i = 0; ; i++) {
+            String id = UUID.nameUUIDFromBytes(String.valueOf(i).getBytes()).toString();
+            if (owner.equals(ring.getOwner(ENTITY + "/" + id))
+                    && previousOwner.equals(previousRing.getOwner(ENTITY + "/" + id))) {
+                return id;
+            }
+        }
+    }
+
+    private void awaitQuiet() throws Exception {
+        for (FakeNode node : nodes.values()) {
+            node.executor.submit(() -> {}).get(5, TimeUnit.SECONDS);
+        }
+        for (FakeNode node : nodes.values()) {
+            node.executor.submit(() -> {}).get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Cluster node delivering messages to other nodes in a single inbound thread per node, like JGroups does.
+     */
+    private class FakeNode implements ClusterManagerAPI {
+
+        private final String name;
+        private final ExecutorService executor = Executors.newSingleThreadExecutor();
+        private final Map<Class, List<ClusterListener>> listeners = new ConcurrentHashMap<>();
+        private final List<Runnable> heldViews = new ArrayList<>();
+        private volatile boolean holdViews;
+
+        private FakeNode(String name) {
+            this.name = name;
+        }
+
+        private void deliverView(long viewId, List<String> members) {
+            Runnable task = () -> {
+                for (List<ClusterListener> list : listeners.values()) {
+                    for (ClusterListener listener : list) {
+                        listener.membersChanged(viewId, members);
+                    }
+                }
+            };
+            synchronized (heldViews) {
+                if (holdViews) {
+                    heldViews.add(task);
+                    return;
+                }
+            }
+            executor.submit(task);
+        }
+
+        private void releaseViews() {
+            synchronized (heldViews) {
+                holdViews = false;
+                heldViews.forEach(executor::submit);
+                heldViews.clear();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void deliver(Serializable message) {
+            Serializable copy = (Serializable) SerializationUtils.clone(message);
+            executor.submit(() -> {
+                List<ClusterListener> list = listeners.get(copy.getClass());
+                if (list != null) {
+                    for (ClusterListener listener : list) {
+                        listener.receive(copy);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void send(Serializable message) {
+            for (FakeNode node : nodes.values()) {
+                if (node != this) {
+                    node.deliver(message);
+                }
+            }
+        }
+
+        @Override
+        public void sendSync(Serializable message) {
+            send(message);
+        }
+
+        @Override
+        public void send(Serializable message, String member) {
+            FakeNode node = nodes.get(member);
+            if (node != null) {
+                node.deliver(message);
+            }
+        }
+
+        @Override
+        public void sendSync(Serializable message, String member) {
+            send(message, member);
+        }
+
+        @Override
+        public List<String> getCurrentMembers() {
+            return new ArrayList<>(nodes.keySet());
+        }
+
+        @Override
+        public String getLocalMember() {
+            return name;
+        }
+
+        @Override
+        public boolean getSyncSendingForCurrentThread() {
+            return false;
+        }
+
+        @Override
+        public void setSyncSendingForCurrentThread(boolean sync) {
+        }
+
+        @Override
+        public void addListener(Class messageClass, ClusterListener listener) {
+            listeners.computeIfAbsent(messageClass, k -> new CopyOnWriteArrayList<>()).add(listener);
+        }
+
+        @Override
+        public void removeListener(Class messageClass, ClusterListener listener) {
+            List<ClusterListener> list = listeners.get(messageClass);
+            if (list != null) {
+                list.remove(listener);
+            }
+        }
+
+        @Override
+        public boolean isMaster() {
+            return false;
+        }
+
+        @Override
+        public String getCurrentView() {
+            return nodes.keySet().toString();
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public boolean isStarted() {
+            return true;
+        }
+
+        @Override
+        public int getActiveThreadsCount() {
+            return 0;
+        }
+
+        @Override
+        public int getMessagesCount() {
+            return 0;
+        }
+
+        @Override
+        public String printSharedStateStat() {
+            return "";
+        }
+
+        @Override
+        public String printMessagesStat() {
+            return "";
+        }
+
+        @Override
+        public long getSentMessages(String className) {
+            return 0;
+        }
+
+        @Override
+        public long getSentBytes(String className) {
+            return 0;
+        }
+
+        @Override
+        public long getReceivedMessages(String className) {
+            return 0;
+        }
+
+        @Override
+        public long getReceivedBytes(String className) {
+            return 0;
+        }
+    }
+}
@@ -20,6 +20,7 @@ package com.haulmont.cuba.core.app.scheduling;
 import com.haulmont.cuba.core.entity.ScheduledTask;
 import com.haulmont.cuba.core.entity.SchedulingType;
 import com.haulmont.cuba.core.global.TimeSource;
+import com.haulmont.cuba.security.global.UserSession;
 import com.haulmont.cuba.testsupport.TestContainer;
 import junit.framework.Assert;
 import org.junit.ClassRule;
@@ -32,6 +33,7 @@ import java.util.TimeZone;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 
 public class SchedulingTest {
@@ -137,4 +139,73 @@ public class SchedulingTest {
         assertTrue(scheduling.setRunning(scheduledTask, true));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testNextCheckTime() {
+        Scheduling scheduling = new Scheduling() {
+            @Override
+            protected TimeZone getCurrentTimeZone() {
+                return TimeZone.getTimeZone("GMT-0");
+            }
+
+            @Override
+            protected long getSchedulingInterval() {
+                return 1000;
+            }
+        };
+
+        long now = date("2013-11-13 15:30:00").getTime();
+
+        ScheduledTask scheduledTask = new ScheduledTask();
+        scheduledTask.setSchedulingType(SchedulingType.PERIOD);
+        scheduledTask.setSingleton(true);
+        scheduledTask.setPeriod(3600);
+
+        //task has never run, so it should be checked on the next tick
+        assertEquals(now + 1000, scheduling.calculateNextCheckTime(scheduledTask, now));
+
+        //task should be checked when the period is over
+        scheduledTask.setLastStartTime(date("2013-11-13 15:00:00"));
+        assertEquals(date("2013-11-13 16:00:00").getTime(), scheduling.calculateNextCheckTime(scheduledTask, now));
+
+        //period is over but the task has not started yet
+        scheduledTask.setLastStartTime(date("2013-11-13 14:00:00"));
+        assertEquals(now + 1000, scheduling.calculateNextCheckTime(scheduledTask, now));
+
+        scheduledTask.setSchedulingType(SchedulingType.CRON);
+        scheduledTask.setCron("0 0 0 * * FRI");
+
+        //task should be checked in next friday
+        assertEquals(date("2013-11-15 00:00:00").getTime(), scheduling.calculateNextCheckTime(scheduledTask, now));
+    }
+
+    @Test
+    public void testRejectedRunDoesNotRecordStart() throws Exception {
+        Scheduling scheduling = new Scheduling();
+        scheduling.runner = new Runner() {
+            @Override
+            public void runTask(ScheduledTask task, long now, UserSession userSession) {
+                Assert.fail("Rejected task must not be run");
+            }
+
+            @Override
+            public boolean acceptTask(ScheduledTask task) {
+                return false;
+            }
+        };
+
+        long now = date("2013-11-13 15:30:00").getTime();
+
+        ScheduledTask scheduledTask = new ScheduledTask();
+        scheduledTask.setSchedulingType(SchedulingType.PERIOD);
+        scheduledTask.setPeriod(3600);
+
+        scheduling.runTask(scheduledTask, now);
+        assertFalse(scheduling.lastStartCache.containsKey(scheduledTask));
+
+        scheduledTask.setSingleton(true);
+        scheduling.runSingletonTask(scheduledTask, now, "localhost:8080/cuba");
+        assertNull(scheduledTask.getLastStartTime());
+        assertNull(scheduledTask.getLastStartServer());
+    }
+}
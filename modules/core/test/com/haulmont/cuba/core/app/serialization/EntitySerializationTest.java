@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.core.app.serialization;
+
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.View;
+import com.haulmont.cuba.security.entity.Group;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that prepared {@code Gson} instances and serialization plans cached by {@link EntitySerialization}
+ * produce the same results on repeated calls.
+ */
+public class EntitySerializationTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private EntitySerialization entitySerialization;
+
+    @Before
+    public void setUp() throws Exception {
+        entitySerialization = AppBeans.get(EntitySerializationAPI.NAME);
+    }
+
+    @Test
+    public void testRoundTripWithCachedSerializers() throws Exception {
+        View view = new View(User.class, "userWithGroup", false)
+                .addProperty("login")
+                .addProperty("name")
+                .addProperty("group", new View(Group.class, false).addProperty("name"));
+
+        User user = createUser("jdoe");
+        long serializersCount = entitySerialization.serializationGsonCache.size();
+
+        String json = entitySerialization.toJson(user, view);
+        assertEquals(json, entitySerialization.toJson(user, view));
+        assertEquals(serializersCount + 1, entitySerialization.serializationGsonCache.size());
+
+        MetaClass metaClass = cont.metadata().getClassNN(User.class);
+        for (int i = 0; i < 2; i++) {
+            User copy = (User) entitySerialization.entityFromJson(json, metaClass);
+            assertEquals(user.getId(), copy.getId());
+            assertEquals("jdoe", copy.getLogin());
+            assertEquals("John Doe", copy.getName());
+            assertEquals(user.getGroup().getId(), copy.getGroup().getId());
+            assertEquals("Company", copy.getGroup().getName());
+            assertNull(copy.getEmail());
+        }
+
+        EntitySerialization.MetaClassSerializationPlan plan = entitySerialization.serializationPlans.get(metaClass);
+        assertNotNull(plan);
+        assertSame(metaClass.getProperty("id"), plan.primaryKeyProperty);
+        assertFalse(plan.compositePrimaryKey);
+        assertTrue(plan.properties.stream().noneMatch(metaProperty -> "id".equals(metaProperty.getName())));
+    }
+
+    @Test
+    public void testCollectionRoundTrip() throws Exception {
+        List<Entity> users = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            users.add(createUser("user" + i));
+        }
+        users.add(users.get(0).getValue("group"));
+
+        String json = entitySerialization.toJson(users, null, EntitySerializationOption.COMPACT_REPEATED_ENTITIES);
+        assertEquals(json, entitySerialization.toJson(users, null, EntitySerializationOption.COMPACT_REPEATED_ENTITIES));
+
+        for (int i = 0; i < 2; i++) {
+            Collection<Entity> copies = entitySerialization.entitiesCollectionFromJson(json, null,
+                    EntitySerializationOption.COMPACT_REPEATED_ENTITIES);
+            assertEquals(users.size(), copies.size());
+            List<Entity> copyList = new ArrayList<>(copies);
+            for (int j = 0; j < 3; j++) {
+                User copy = (User) copyList.get(j);
+                assertEquals("user" + j, copy.getLogin());
+                assertEquals("Company", copy.getGroup().getName());
+            }
+            Group group = (Group) copyList.get(3);
+            assertEquals("Company", group.getName());
+        }
+    }
+
+    @Test
+    public void testViewsAreDistinguishedByIdentity() throws Exception {
+        // equal by View.equals(), which compares only the entity class and the name
+        View loginView = new View(User.class, "sameName", false).addProperty("login");
+        View nameView = new View(User.class, "sameName", false).addProperty("name");
+        assertEquals(loginView, nameView);
+
+        User user = createUser("jdoe");
+        String loginJson = entitySerialization.toJson(user, loginView);
+        String nameJson = entitySerialization.toJson(user, nameView);
+
+        assertTrue(loginJson.contains("jdoe"));
+        assertFalse(loginJson.contains("John Doe"));
+        assertTrue(nameJson.contains("John Doe"));
+        assertFalse(nameJson.contains("jdoe"));
+    }
+
+    @Test
+    public void testOptionsAreDistinguished() throws Exception {
+        View view = new View(User.class, false).addProperty("login").addProperty("email");
+        User user = createUser("jdoe");
+
+        String json = entitySerialization.toJson(user, view);
+        String jsonWithNulls = entitySerialization.toJson(user, view, EntitySerializationOption.SERIALIZE_NULLS);
+        String jsonWithInstanceName = entitySerialization.toJson(user, view,
+                EntitySerializationOption.SERIALIZE_INSTANCE_NAME, EntitySerializationOption.SERIALIZE_NULLS);
+
+        assertFalse(json.contains("\"email\""));
+        assertFalse(json.contains(EntitySerialization.INSTANCE_NAME_PROP));
+        assertTrue(jsonWithNulls.contains("\"email\""));
+        assertFalse(jsonWithNulls.contains(EntitySerialization.INSTANCE_NAME_PROP));
+        assertTrue(jsonWithInstanceName.contains("\"email\""));
+        assertTrue(jsonWithInstanceName.contains(EntitySerialization.INSTANCE_NAME_PROP));
+
+        // the order of options does not matter
+        assertEquals(jsonWithInstanceName, entitySerialization.toJson(user, view,
+                EntitySerializationOption.SERIALIZE_NULLS, EntitySerializationOption.SERIALIZE_INSTANCE_NAME));
+        assertEquals(Arrays.asList(json, jsonWithNulls), Arrays.asList(entitySerialization.toJson(user, view),
+                entitySerialization.toJson(user, view, EntitySerializationOption.SERIALIZE_NULLS)));
+    }
+
+    private User createUser(String login) {
+        Group group = cont.metadata().create(Group.class);
+        group.setName("Company");
+
+        User user = cont.metadata().create(User.class);
+        user.setLogin(login);
+        user.setName("John Doe");
+        user.setGroup(group);
+        return user;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.google.common.cache.CacheStats;
+import com.haulmont.cuba.core.Transaction;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.View;
+import com.haulmont.cuba.security.entity.Group;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.jpa.JpaQuery;
+import org.eclipse.persistence.queries.AttributeGroup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FetchGroupManagerTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private FetchGroupManager fetchGroupManager;
+    private Transaction tx;
+
+    @Before
+    public void setUp() throws Exception {
+        fetchGroupManager = AppBeans.get(FetchGroupManager.NAME);
+        fetchGroupManager.clearFetchPlanCache();
+        tx = cont.persistence().createTransaction();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tx.end();
+    }
+
+    @Test
+    public void testRestrictedCopiesShareFetchPlan() throws Exception {
+        String queryString = "select u from sec$User u where u.login like 'fgm%'";
+        View view = new View(User.class, "fgmUser", false)
+                .addProperty("login")
+                .addProperty("name")
+                .addProperty("group", new View(Group.class).addProperty("name"));
+        // copies created for each request when attributes are restricted by security
+        View copy1 = View.copy(new View(view, "fgmUser_restricted", false));
+        View copy2 = View.copy(new View(view, "fgmUser_restricted", false));
+
+        CacheStats stats = fetchGroupManager.getFetchPlanCacheStats();
+        assertNotNull(stats);
+
+        fetchGroupManager.setView(createQuery(queryString), queryString, copy1, false);
+        fetchGroupManager.setView(createQuery(queryString), queryString, copy2, false);
+
+        CacheStats delta = fetchGroupManager.getFetchPlanCacheStats().minus(stats);
+        assertEquals(1, delta.missCount());
+        assertEquals(1, delta.hitCount());
+        assertEquals(1, fetchGroupManager.getFetchPlanCacheSize());
+
+        // a copy with fewer attributes has its own plan
+        View copy3 = new View(User.class, "fgmUser_restricted", false)
+                .addProperty("login")
+                .addProperty("group", new View(Group.class).addProperty("name"));
+        JpaQuery query = createQuery(queryString);
+        fetchGroupManager.setView(query, queryString, copy3, false);
+
+        assertEquals(2, fetchGroupManager.getFetchPlanCacheSize());
+        AttributeGroup attributeGroup = getAttributeGroup(query);
+        assertTrue(attributeGroup.containsAttribute("login"));
+        assertFalse(attributeGroup.containsAttribute("name"));
+    }
+
+    @Test
+    public void testAddViewMergesIntoExistingGroup() throws Exception {
+        String queryString = "select u from sec$User u where u.login like 'fgmAdd%'";
+        View view1 = new View(User.class, false)
+                .addProperty("login");
+        View view2 = new View(User.class, false)
+                .addProperty("name")
+                .addProperty("group", new View(Group.class).addProperty("name"));
+
+        JpaQuery query = createQuery(queryString);
+        fetchGroupManager.setView(query, queryString, view1, false);
+        AttributeGroup attributeGroup = getAttributeGroup(query);
+        assertTrue(attributeGroup.containsAttribute("login"));
+        assertFalse(attributeGroup.containsAttribute("name"));
+
+        fetchGroupManager.addView(query, queryString, view2, false);
+        assertSame(attributeGroup, getAttributeGroup(query));
+        assertTrue(attributeGroup.containsAttribute("login"));
+        assertTrue(attributeGroup.containsAttribute("name"));
+        assertTrue(attributeGroup.containsAttribute("group.name"));
+
+        // the cached plan of the first view is not changed by merging
+        JpaQuery otherQuery = createQuery(queryString);
+        fetchGroupManager.setView(otherQuery, queryString, view1, false);
+        assertFalse(getAttributeGroup(otherQuery).containsAttribute("name"));
+    }
+
+    @Test
+    public void testQueriesGetIndependentAttributeGroups() throws Exception {
+        String queryString = "select u from sec$User u where u.login like 'fgmCopy%'";
+        View view = new View(User.class, false)
+                .addProperty("login")
+                .addProperty("name");
+
+        JpaQuery query1 = createQuery(queryString);
+        fetchGroupManager.setView(query1, queryString, view, false);
+        JpaQuery query2 = createQuery(queryString);
+        fetchGroupManager.setView(query2, queryString, view, false);
+
+        AttributeGroup attributeGroup1 = getAttributeGroup(query1);
+        AttributeGroup attributeGroup2 = getAttributeGroup(query2);
+        assertNotSame(attributeGroup1, attributeGroup2);
+
+        attributeGroup1.addAttribute("email");
+        assertFalse(attributeGroup2.containsAttribute("email"));
+
+        JpaQuery query3 = createQuery(queryString);
+        fetchGroupManager.setView(query3, queryString, view, false);
+        assertFalse(getAttributeGroup(query3).containsAttribute("email"));
+        assertEquals(1, fetchGroupManager.getFetchPlanCacheSize());
+    }
+
+    private JpaQuery createQuery(String queryString) {
+        return (JpaQuery) cont.persistence().getEntityManager().getDelegate().createQuery(queryString);
+    }
+
+    private AttributeGroup getAttributeGroup(JpaQuery query) {
+        AttributeGroup attributeGroup = (AttributeGroup) query.getHints().get(QueryHints.LOAD_GROUP);
+        assertNotNull(attributeGroup);
+        return attributeGroup;
+    }
+}
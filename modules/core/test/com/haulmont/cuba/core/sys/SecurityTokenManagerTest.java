@@ -18,6 +18,7 @@
 package com.haulmont.cuba.core.sys;
 
 import com.haulmont.cuba.core.entity.BaseEntityInternalAccess;
+import com.haulmont.cuba.core.entity.SecurityState;
 import com.haulmont.cuba.core.global.AppBeans;
 import com.haulmont.cuba.security.entity.User;
 import com.haulmont.cuba.testsupport.TestContainer;
@@ -58,4 +59,25 @@ public class SecurityTokenManagerTest {
         Assert.assertEquals(id3, userRoles.get(2));
         Assert.assertEquals(id4, userRoles.get(3));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSecurityAttributes() throws Exception {
+        SecurityTokenManager securityTokenManager = AppBeans.get(SecurityTokenManager.class);
+        User user = new User();
+        SecurityState securityState = BaseEntityInternalAccess.getOrCreateSecurityState(user);
+        BaseEntityInternalAccess.setReadonlyAttributes(securityState, new String[]{"login"});
+        BaseEntityInternalAccess.setHiddenAttributes(securityState, new String[]{"password", "email"});
+
+        securityTokenManager.writeSecurityToken(user);
+
+        User restored = new User();
+        SecurityState restoredState = BaseEntityInternalAccess.getOrCreateSecurityState(restored);
+        BaseEntityInternalAccess.setSecurityToken(restoredState, BaseEntityInternalAccess.getSecurityToken(securityState));
+        securityTokenManager.readSecurityToken(restored);
+
+        Assert.assertArrayEquals(new String[]{"login"}, BaseEntityInternalAccess.getReadonlyAttributes(restoredState));
+        Assert.assertArrayEquals(new String[]{"password", "email"},
+                BaseEntityInternalAccess.getHiddenAttributes(restoredState));
+        Assert.assertNull(BaseEntityInternalAccess.getRequiredAttributes(restoredState));
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.restapi;
+
+import com.haulmont.cuba.core.app.ClusterListener;
+import com.haulmont.cuba.core.app.ClusterManagerAPI;
+import com.haulmont.cuba.core.app.ServerConfig;
+import com.haulmont.cuba.core.global.TimeSource;
+import com.haulmont.cuba.security.app.UserSessionsAPI;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ServerTokenStoreImplTest {
+
+    private long currentTime = 1_000_000L;
+    private boolean compactState = true;
+
+    private ServerTokenStoreImpl store;
+    private ClusterListener stateListener;
+
+    @Before
+    public void setUp() throws Exception {
+        store = createStore();
+    }
+
+    @Test
+    public void testIndexes() throws Exception {
+        store.storeAccessToken("access1", bytes("access1"), "auth1", bytes("authentication1"),
+                new Date(currentTime + 1000), "admin", Locale.ENGLISH, "refresh1");
+        store.storeAccessToken("access2", bytes("access2"), "auth2", bytes("authentication2"),
+                new Date(currentTime + 1000), "admin", Locale.ENGLISH, null);
+        store.storeAccessToken("access3", bytes("access3"), "auth3", bytes("authentication3"),
+                new Date(currentTime + 1000), "user", Locale.ENGLISH, null);
+        store.storeRefreshToken("refresh1", bytes("refresh1"), bytes("authentication1"),
+                new Date(currentTime + 5000), "admin");
+
+        assertArrayEquals(bytes("access1"), store.getAccessTokenByAuthentication("auth1"));
+        assertArrayEquals(bytes("authentication2"), store.getAuthenticationByTokenValue("access2"));
+        assertEquals(new HashSet<>(Arrays.asList("access1", "access2")), store.getAccessTokenValuesByUserLogin("admin"));
+        assertEquals(Collections.singleton("access3"), store.getAccessTokenValuesByUserLogin("user"));
+        assertEquals(Collections.singleton("refresh1"), store.getRefreshTokenValuesByUserLogin("admin"));
+        assertEquals("access1", store.getAccessTokenValueByRefreshTokenValue("refresh1"));
+
+        store.removeAccessTokenUsingRefreshToken("refresh1");
+
+        assertNull(store.getAccessTokenByAuthentication("auth1"));
+        assertNull(store.getAccessTokenValueByRefreshTokenValue("refresh1"));
+        assertEquals(Collections.singleton("access2"), store.getAccessTokenValuesByUserLogin("admin"));
+        assertArrayEquals(bytes("refresh1"), store.getRefreshTokenByTokenValue("refresh1"));
+
+        // storing a token with the same value replaces the previous indexes
+        store.storeAccessToken("access2", bytes("access2"), "auth2a", bytes("authentication2"),
+                new Date(currentTime + 1000), "user", Locale.ENGLISH, null);
+
+        assertNull(store.getAccessTokenByAuthentication("auth2"));
+        assertArrayEquals(bytes("access2"), store.getAccessTokenByAuthentication("auth2a"));
+        assertTrue(store.getAccessTokenValuesByUserLogin("admin").isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList("access2", "access3")), store.getAccessTokenValuesByUserLogin("user"));
+
+        store.removeRefreshToken("refresh1");
+        store.removeAccessToken("access2");
+        store.removeAccessToken("access3");
+
+        assertTrue(store.accessTokenValueByAuthenticationKey.isEmpty());
+        assertTrue(store.accessTokenValuesByUserLogin.isEmpty());
+        assertTrue(store.refreshTokenValuesByUserLogin.isEmpty());
+        assertTrue(store.accessTokensExpiry.isEmpty());
+        assertTrue(store.refreshTokensExpiry.isEmpty());
+    }
+
+    @Test
+    public void testExpiryOrder() throws Exception {
+        store.storeAccessToken("access3", bytes("access3"), "auth3", bytes("authentication3"),
+                new Date(currentTime + 3000), "admin", Locale.ENGLISH, null);
+        store.storeAccessToken("access1", bytes("access1"), "auth1", bytes("authentication1"),
+                new Date(currentTime + 1000), "admin", Locale.ENGLISH, null);
+        store.storeAccessToken("access2", bytes("access2"), "auth2", bytes("authentication2"),
+                new Date(currentTime + 2000), "admin", Locale.ENGLISH, null);
+        store.storeRefreshToken("refresh2", bytes("refresh2"), bytes("authentication2"),
+                new Date(currentTime + 2000), "admin");
+        store.storeRefreshToken("refresh1", bytes("refresh1"), bytes("authentication1"),
+                new Date(currentTime + 1000), "admin");
+
+        List<String> expiryOrder = new ArrayList<>();
+        store.accessTokensExpiry.forEach(expiry -> expiryOrder.add(expiry.getValue()));
+        assertEquals(Arrays.asList("access1", "access2", "access3"), expiryOrder);
+
+        currentTime += 999;
+        store.deleteExpiredTokens();
+
+        assertEquals(3, store.accessTokens.size());
+        assertEquals(2, store.refreshTokens.size());
+
+        currentTime += 1;
+        store.deleteExpiredTokens();
+
+        assertNull(store.getAccessTokenByTokenValue("access1"));
+        assertNull(store.getRefreshTokenByTokenValue("refresh1"));
+        assertEquals(new HashSet<>(Arrays.asList("access2", "access3")), store.getAccessTokenValuesByUserLogin("admin"));
+        assertEquals(Collections.singleton("refresh2"), store.getRefreshTokenValuesByUserLogin("admin"));
+
+        currentTime += 1500;
+        store.deleteExpiredTokens();
+
+        assertEquals(Collections.singleton("access3"), store.accessTokens.keySet());
+        assertTrue(store.refreshTokens.isEmpty());
+        assertEquals(1, store.accessTokensExpiry.size());
+        assertTrue(store.refreshTokensExpiry.isEmpty());
+    }
+
+    @Test
+    public void testStateRoundTrip() throws Exception {
+        fillStore();
+
+        byte[] state = stateListener.getState();
+        assertFalse(store.isLegacyState(state));
+
+        ServerTokenStoreImpl otherStore = createStore();
+        stateListener.setState(state);
+
+        checkCopy(otherStore);
+        assertEquals(2, otherStore.accessTokensExpiry.size());
+        assertEquals(1, otherStore.refreshTokensExpiry.size());
+
+        currentTime += 1500;
+        otherStore.deleteExpiredTokens();
+        assertEquals(Collections.singleton("access2"), otherStore.accessTokens.keySet());
+    }
+
+    @Test
+    public void testLegacyStateRoundTrip() throws Exception {
+        fillStore();
+
+        compactState = false;
+        byte[] state = stateListener.getState();
+        assertTrue(store.isLegacyState(state));
+
+        ServerTokenStoreImpl otherStore = createStore();
+        stateListener.setState(state);
+
+        checkCopy(otherStore);
+        // the legacy format contains no expiration times
+        assertTrue(otherStore.accessTokensExpiry.isEmpty());
+        assertTrue(otherStore.refreshTokensExpiry.isEmpty());
+    }
+
+    private void fillStore() {
+        store.storeAccessToken("access1", bytes("access1"), "auth1", bytes("authentication1"),
+                new Date(currentTime + 1000), "admin", Locale.ENGLISH, "refresh1");
+        store.storeAccessToken("access2", bytes("access2"), "auth2", bytes("authentication2"),
+                new Date(currentTime + 2000), "user", Locale.ENGLISH, null);
+        store.storeRefreshToken("refresh1", bytes("refresh1"), bytes("authentication1"),
+                new Date(currentTime + 5000), "admin");
+        store.putSessionInfo("access1", new RestUserSessionInfo(UUID.randomUUID(), Locale.GERMAN));
+    }
+
+    private void checkCopy(ServerTokenStoreImpl otherStore) {
+        assertEquals(store.accessTokens.keySet(), otherStore.accessTokens.keySet());
+        assertEquals(store.refreshTokens.keySet(), otherStore.refreshTokens.keySet());
+        assertArrayEquals(bytes("access1"), otherStore.getAccessTokenByAuthentication("auth1"));
+        assertArrayEquals(bytes("authentication2"), otherStore.getAuthenticationByTokenValue("access2"));
+        assertArrayEquals(bytes("authentication1"), otherStore.getAuthenticationByRefreshTokenValue("refresh1"));
+        assertEquals(Collections.singleton("access1"), otherStore.getAccessTokenValuesByUserLogin("admin"));
+        assertEquals(Collections.singleton("refresh1"), otherStore.getRefreshTokenValuesByUserLogin("admin"));
+        assertEquals("access1", otherStore.getAccessTokenValueByRefreshTokenValue("refresh1"));
+
+        RestUserSessionInfo sessionInfo = otherStore.getSessionInfoByTokenValue("access1");
+        assertNotNull(sessionInfo);
+        assertEquals(store.getSessionInfoByTokenValue("access1").getId(), sessionInfo.getId());
+        assertEquals(Locale.GERMAN, sessionInfo.getLocale());
+        assertNull(otherStore.getSessionInfoByTokenValue("access2"));
+    }
+
+    private ServerTokenStoreImpl createStore() {
+        ServerTokenStoreImpl store = new ServerTokenStoreImpl();
+        store.serverConfig = (ServerConfig) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{ServerConfig.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getRestStoreTokensInDb":
+                            return false;
+                        case "getRestTokensDbFlushInterval":
+                            return 0;
+                        case "getRestTokenStoreCompactState":
+                            return compactState;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        store.timeSource = (TimeSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{TimeSource.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "currentTimeMillis":
+                            return currentTime;
+                        case "currentTimestamp":
+                            return new Date(currentTime);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        store.clusterManagerAPI = (ClusterManagerAPI) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{ClusterManagerAPI.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "addListener":
+                            if (args[0] == TokenStoreAddAccessTokenMsg.class) {
+                                stateListener = (ClusterListener) args[1];
+                            }
+                            return null;
+                        case "send":
+                            return null;
+                        case "isMaster":
+                            return true;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        store.userSessions = (UserSessionsAPI) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{UserSessionsAPI.class}, (proxy, method, args) -> {
+                    if ("get".equals(method.getName())) {
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        store.init();
+        return store;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes();
+    }
+}
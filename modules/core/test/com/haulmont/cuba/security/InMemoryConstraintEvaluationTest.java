@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.security;
+
+import com.haulmont.cuba.core.PersistenceSecurity;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.PersistenceSecurityImpl;
+import com.haulmont.cuba.security.entity.*;
+import com.haulmont.cuba.security.global.UserSession;
+import com.haulmont.cuba.testsupport.TestContainer;
+import com.haulmont.cuba.testsupport.TestUserSessionSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks evaluation of in-memory constraints by compiled scripts, in the calling thread and in parallel.
+ */
+public class InMemoryConstraintEvaluationTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private static final String PARALLEL_THRESHOLD_PROPERTY = "cuba.inMemoryConstraintsParallelThreshold";
+
+    private TestUserSessionSource userSessionSource;
+    private UserSession savedUserSession;
+    private UserSession userSession;
+
+    @Before
+    public void setUp() throws Exception {
+        userSessionSource = (TestUserSessionSource) AppBeans.get(UserSessionSource.class);
+        savedUserSession = userSessionSource.getUserSession();
+
+        userSession = new UserSession(UUID.randomUUID(), savedUserSession.getUser(), Collections.emptyList(),
+                Locale.ENGLISH, false);
+        userSessionSource.setUserSession(userSession);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        userSessionSource.setUserSession(savedUserSession);
+        AppContext.setProperty(PARALLEL_THRESHOLD_PROPERTY, null);
+    }
+
+    @Test
+    public void testChangedScriptIsRecompiled() throws Exception {
+        Security security = AppBeans.get(Security.class);
+        Scripting scripting = AppBeans.get(Scripting.class);
+
+        User user = cont.metadata().create(User.class);
+        user.setLogin("admin");
+
+        Constraint constraint = createConstraint("{E}.login.startsWith('a')");
+        userSession.addConstraint(constraint);
+        assertTrue(security.isPermitted(user, ConstraintOperationType.READ));
+        assertTrue(security.isPermitted(user, ConstraintOperationType.READ));
+
+        userSession.removeConstraint(constraint);
+        constraint.setGroovyScript("{E}.login.startsWith('b')");
+        userSession.addConstraint(constraint);
+        assertFalse(security.isPermitted(user, ConstraintOperationType.READ));
+
+        assertSame(scripting.compileGroovy("__entity__.login.startsWith('a')"),
+                scripting.compileGroovy("__entity__.login.startsWith('a')"));
+        assertNotSame(scripting.compileGroovy("__entity__.login.startsWith('a')"),
+                scripting.compileGroovy("__entity__.login.startsWith('b')"));
+    }
+
+    @Test
+    public void testParallelFilterRemovesSameEntities() throws Exception {
+        PersistenceSecurity persistenceSecurity = AppBeans.get(PersistenceSecurity.class);
+        userSession.addConstraint(createConstraint("{E}.login.endsWith('0') || {E}.login.endsWith('7')"));
+
+        List<Entity> serial = createUsers(100);
+        assertTrue(persistenceSecurity.filterByConstraints(serial));
+
+        AppContext.setProperty(PARALLEL_THRESHOLD_PROPERTY, "10");
+        List<Entity> parallel = createUsers(100);
+        assertTrue(persistenceSecurity.filterByConstraints(parallel));
+
+        List<String> logins = getLogins(serial);
+        assertEquals(20, logins.size());
+        assertEquals(logins, getLogins(parallel));
+
+        List<Entity> permitted = createUsers(100);
+        permitted.removeIf(entity -> !logins.contains(((User) entity).getLogin()));
+        assertFalse(persistenceSecurity.filterByConstraints(permitted));
+        assertEquals(logins, getLogins(permitted));
+    }
+
+    @Test
+    public void testWorkerExceptionPropagates() throws Exception {
+        List<Entity> users = createUsers(100);
+        Entity failing = users.get(users.size() - 1);
+
+        PersistenceSecurityImpl persistenceSecurity = new PersistenceSecurityImpl() {
+            {
+                configuration = AppBeans.get(Configuration.class);
+            }
+
+            @Override
+            protected boolean isPermittedInMemory(Entity entity) {
+                if (entity == failing) {
+                    throw new IllegalStateException("constraint failure");
+                }
+                return true;
+            }
+        };
+
+        AppContext.setProperty(PARALLEL_THRESHOLD_PROPERTY, "10");
+        try {
+            persistenceSecurity.filterByConstraints(users);
+            fail("exception of the worker thread is not propagated");
+        } catch (IllegalStateException e) {
+            assertEquals("constraint failure", e.getMessage());
+        }
+        assertEquals(100, users.size());
+    }
+
+    private Constraint createConstraint(String groovyScript) {
+        Constraint constraint = cont.metadata().create(Constraint.class);
+        constraint.setEntityName("sec$User");
+        constraint.setCheckType(ConstraintCheckType.MEMORY);
+        constraint.setOperationType(ConstraintOperationType.READ);
+        constraint.setGroovyScript(groovyScript);
+        return constraint;
+    }
+
+    private List<String> getLogins(List<Entity> users) {
+        List<String> logins = new ArrayList<>(users.size());
+        for (Entity user : users) {
+            logins.add(((User) user).getLogin());
+        }
+        return logins;
+    }
+
+    private List<Entity> createUsers(int count) {
+        List<Entity> users = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            User user = cont.metadata().create(User.class);
+            user.setLogin("user" + i);
+            users.add(user);
+        }
+        return users;
+    }
+}
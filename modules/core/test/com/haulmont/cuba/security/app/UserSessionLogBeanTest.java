@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.security.app;
+
+import com.haulmont.cuba.core.app.ServerConfig;
+import com.haulmont.cuba.core.app.ServerInfoAPI;
+import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.core.sys.events.AppContextStoppedEvent;
+import com.haulmont.cuba.security.entity.SessionAction;
+import com.haulmont.cuba.security.entity.SessionLogEntry;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.security.global.UserSession;
+import com.haulmont.cuba.testsupport.TestContainer;
+import com.haulmont.cuba.testsupport.TestUserSessionSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.springframework.context.event.EventListener;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the asynchronous writer of {@link UserSessionLogBean}. The writer is not scheduled, records are written
+ * by explicit flushes.
+ */
+public class UserSessionLogBeanTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private static final int QUEUE_CAPACITY = 3;
+
+    private UserSessionLogBean userSessionLog;
+    private User user;
+    private List<UUID> sessionIds = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        user = cont.persistence().callInTransaction(em ->
+                em.find(User.class, UUID.fromString(TestUserSessionSource.USER_ID)));
+
+        userSessionLog = new UserSessionLogBean();
+        userSessionLog.dataManager = AppBeans.get(DataManager.class);
+        userSessionLog.metadata = cont.metadata();
+        userSessionLog.timeSource = AppBeans.get(TimeSource.class);
+        userSessionLog.serverInfoAPI = AppBeans.get(ServerInfoAPI.NAME);
+        userSessionLog.authentication = new Authentication() {
+            @Override
+            public <T> T withSystemUser(AuthenticatedOperation<T> operation) {
+                return operation.call();
+            }
+        };
+        userSessionLog.globalConfig = (GlobalConfig) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{GlobalConfig.class}, (proxy, method, args) -> {
+                    if ("getUserSessionLogEnabled".equals(method.getName())) {
+                        return true;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        userSessionLog.serverConfig = (ServerConfig) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{ServerConfig.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getUserSessionLogQueueCapacity":
+                            return QUEUE_CAPACITY;
+                        case "getUserSessionLogFlushInterval":
+                            return Integer.MAX_VALUE;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        userSessionLog.initAsyncWriter();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        userSessionLog.writer.shutdownNow();
+        for (UUID sessionId : sessionIds) {
+            cont.deleteRecord("SEC_SESSION_LOG", "SESSION_ID", sessionId);
+        }
+    }
+
+    @Test
+    public void testInsertAndUpdateInOneBatch() throws Exception {
+        UserSession session = createSession();
+        userSessionLog.createSessionLogRecord(session, SessionAction.LOGIN, Collections.emptyMap());
+        session.setAddress("127.0.0.2");
+        userSessionLog.updateSessionLogRecord(session, SessionAction.LOGOUT);
+
+        assertEquals(2, userSessionLog.getPendingRecordsCount());
+        assertNull(userSessionLog.getLastSessionLogRecord(session.getId()));
+
+        userSessionLog.flushPendingRecords();
+
+        assertEquals(0, userSessionLog.getPendingRecordsCount());
+        List<SessionLogEntry> entries = userSessionLog.getAllSessionLogRecords(session.getId());
+        assertEquals(1, entries.size());
+        SessionLogEntry entry = entries.get(0);
+        assertEquals(SessionAction.LOGOUT, entry.getLastAction());
+        assertEquals("127.0.0.2", entry.getAddress());
+        assertNotNull(entry.getFinishedTs());
+    }
+
+    @Test
+    public void testSubstitutionFlushesSynchronously() throws Exception {
+        UserSession session = createSession();
+        userSessionLog.createSessionLogRecord(session, SessionAction.LOGIN, Collections.emptyMap());
+        assertEquals(1, userSessionLog.getPendingRecordsCount());
+
+        SessionLogEntry entry = userSessionLog.updateSessionLogRecord(session, SessionAction.SUBSTITUTION);
+
+        assertNotNull(entry);
+        assertEquals(SessionAction.SUBSTITUTION, entry.getLastAction());
+        assertEquals(0, userSessionLog.getPendingRecordsCount());
+        assertEquals(SessionAction.SUBSTITUTION, userSessionLog.getLastSessionLogRecord(session.getId()).getLastAction());
+    }
+
+    @Test
+    public void testDroppedRecordsAreCounted() throws Exception {
+        List<UserSession> sessions = new ArrayList<>();
+        for (int i = 0; i < QUEUE_CAPACITY + 2; i++) {
+            UserSession session = createSession();
+            sessions.add(session);
+            userSessionLog.createSessionLogRecord(session, SessionAction.LOGIN, Collections.emptyMap());
+        }
+
+        assertEquals(QUEUE_CAPACITY, userSessionLog.getPendingRecordsCount());
+        assertEquals(2, userSessionLog.getDroppedRecordsCount());
+
+        userSessionLog.flushPendingRecords();
+
+        for (int i = 0; i < sessions.size(); i++) {
+            SessionLogEntry entry = userSessionLog.getLastSessionLogRecord(sessions.get(i).getId());
+            if (i < QUEUE_CAPACITY) {
+                assertNotNull(entry);
+            } else {
+                assertNull(entry);
+            }
+        }
+        assertEquals(2, userSessionLog.getDroppedRecordsCount());
+    }
+
+    @Test
+    public void testFlushOnApplicationStop() throws Exception {
+        Method method = UserSessionLogBean.class.getDeclaredMethod("applicationStopped");
+        EventListener eventListener = method.getAnnotation(EventListener.class);
+        assertNotNull(eventListener);
+        assertArrayEquals(new Class[]{AppContextStoppedEvent.class}, eventListener.value());
+
+        UserSession session = createSession();
+        userSessionLog.createSessionLogRecord(session, SessionAction.LOGIN, Collections.emptyMap());
+        assertEquals(1, userSessionLog.getPendingRecordsCount());
+
+        userSessionLog.applicationStopped();
+
+        assertTrue(userSessionLog.writer.isShutdown());
+        assertEquals(0, userSessionLog.getPendingRecordsCount());
+        assertNotNull(userSessionLog.getLastSessionLogRecord(session.getId()));
+
+        // records are written synchronously after the writer is stopped
+        userSessionLog.updateSessionLogRecord(session, SessionAction.LOGOUT);
+        assertEquals(0, userSessionLog.getPendingRecordsCount());
+        assertEquals(SessionAction.LOGOUT, userSessionLog.getLastSessionLogRecord(session.getId()).getLastAction());
+    }
+
+    private UserSession createSession() {
+        UserSession session = new UserSession(UUID.randomUUID(), user, Collections.emptyList(), Locale.ENGLISH, false);
+        session.setAddress("127.0.0.1");
+        session.setClientInfo("test");
+        sessionIds.add(session.getId());
+        return session;
+    }
+}
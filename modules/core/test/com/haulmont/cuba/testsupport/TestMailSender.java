@@ -57,6 +57,13 @@ public class TestMailSender extends CubaMailSender {
         myMessages.add(mimeMessage);
     }
 
+    @Override
+    public void send(MimeMessage... mimeMessages) throws MailException {
+        for (MimeMessage mimeMessage : mimeMessages) {
+            send(mimeMessage);
+        }
+    }
+
     public boolean isEmpty() {
         return myMessages.isEmpty();
     }
@@ -18,6 +18,8 @@
 package com.haulmont.cuba.core.app.serialization;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
 import com.google.gson.*;
@@ -47,6 +49,9 @@ import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 import static com.haulmont.cuba.core.entity.BaseEntityInternalAccess.*;
@@ -59,6 +64,11 @@ public class EntitySerialization implements EntitySerializationAPI {
     protected static final String ENTITY_NAME_PROP = "_entityName";
     protected static final String INSTANCE_NAME_PROP = "_instanceName";
 
+    /**
+     * Max number of prepared {@code Gson} instances kept for distinct (view, options) and (metaClass, options) pairs.
+     */
+    protected static final int GSON_CACHE_MAX_SIZE = 500;
+
     @Inject
     protected MetadataTools metadataTools;
 
@@ -71,6 +81,20 @@ public class EntitySerialization implements EntitySerializationAPI {
     protected ThreadLocal<EntitySerializationContext> context =
             ThreadLocal.withInitial(EntitySerializationContext::new);
 
+    /**
+     * {@code Gson} instances are thread-safe and the serializers registered in them keep no per-call state
+     * (it lives in {@link #context}), so they are built once and reused.
+     */
+    protected Cache<GsonCacheKey, Gson> serializationGsonCache =
+            CacheBuilder.newBuilder().maximumSize(GSON_CACHE_MAX_SIZE).build();
+
+    protected Cache<GsonCacheKey, Gson> deserializationGsonCache =
+            CacheBuilder.newBuilder().maximumSize(GSON_CACHE_MAX_SIZE).build();
+
+    protected ConcurrentMap<MetaClass, MetaClassSerializationPlan> serializationPlans = new ConcurrentHashMap<>();
+
+    protected ConcurrentMap<Class, List<Field>> clearableFields = new ConcurrentHashMap<>();
+
     /**
      * Class is used for storing a collection of entities already processed during the serialization.
      */
@@ -82,6 +106,61 @@ public class EntitySerialization implements EntitySerializationAPI {
         }
     }
 
+    /**
+     * Key of the prepared {@code Gson} caches. Views and metaclasses are compared by identity because
+     * {@link View#equals(Object)} takes into account only the entity class and the view name.
+     */
+    protected static class GsonCacheKey {
+        protected final Object target;
+        protected final int optionsMask;
+
+        public GsonCacheKey(@Nullable Object target, EntitySerializationOption... options) {
+            this.target = target;
+            int mask = 0;
+            if (options != null) {
+                for (EntitySerializationOption option : options) {
+                    mask |= 1 << option.ordinal();
+                }
+            }
+            this.optionsMask = mask;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            GsonCacheKey that = (GsonCacheKey) o;
+            return target == that.target && optionsMask == that.optionsMask;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(target) + optionsMask;
+        }
+    }
+
+    /**
+     * Instance-independent serialization data of an entity class: the properties to write and the primary key
+     * handling. Dynamic attributes are not included as they can be changed at runtime.
+     */
+    protected static class MetaClassSerializationPlan {
+        protected final boolean embeddable;
+        protected final MetaProperty primaryKeyProperty;
+        protected final boolean compositePrimaryKey;
+        protected final Datatype idDatatype;
+        protected final List<MetaProperty> properties;
+
+        public MetaClassSerializationPlan(boolean embeddable, @Nullable MetaProperty primaryKeyProperty,
+                                          boolean compositePrimaryKey, @Nullable Datatype idDatatype,
+                                          List<MetaProperty> properties) {
+            this.embeddable = embeddable;
+            this.primaryKeyProperty = primaryKeyProperty;
+            this.compositePrimaryKey = compositePrimaryKey;
+            this.idDatatype = idDatatype;
+            this.properties = properties;
+        }
+    }
+
     @Override
     public String toJson(Entity entity) {
         return toJson(entity, null);
@@ -92,7 +171,7 @@ public class EntitySerialization implements EntitySerializationAPI {
                          @Nullable View view,
                          EntitySerializationOption... options) {
         context.remove();
-        return createGsonForSerialization(view, options).toJson(entity);
+        return getGsonForSerialization(view, options).toJson(entity);
     }
 
     @Override
@@ -105,13 +184,13 @@ public class EntitySerialization implements EntitySerializationAPI {
                          @Nullable View view,
                          EntitySerializationOption... options) {
         context.remove();
-        return createGsonForSerialization(view, options).toJson(entities);
+        return getGsonForSerialization(view, options).toJson(entities);
     }
 
     @Override
     public String objectToJson(Object object, EntitySerializationOption... options) {
         context.remove();
-        return createGsonForSerialization(null, options).toJson(object);
+        return getGsonForSerialization(null, options).toJson(object);
     }
 
     @Override
@@ -119,7 +198,7 @@ public class EntitySerialization implements EntitySerializationAPI {
                                  @Nullable MetaClass metaClass,
                                  EntitySerializationOption... options) {
         context.remove();
-        return createGsonForDeserialization(metaClass, options).fromJson(json, Entity.class);
+        return getGsonForDeserialization(metaClass, options).fromJson(json, Entity.class);
     }
 
     @Override
@@ -129,13 +208,31 @@ public class EntitySerialization implements EntitySerializationAPI {
         context.remove();
         Type collectionType = new TypeToken<Collection<Entity>>() {
         }.getType();
-        return createGsonForDeserialization(metaClass, options).fromJson(json, collectionType);
+        return getGsonForDeserialization(metaClass, options).fromJson(json, collectionType);
     }
 
     @Override
     public <T> T objectFromJson(String json, Class<T> clazz, EntitySerializationOption... options) {
         context.remove();
-        return createGsonForDeserialization(null, options).fromJson(json, clazz);
+        return getGsonForDeserialization(null, options).fromJson(json, clazz);
+    }
+
+    protected Gson getGsonForSerialization(@Nullable View view, EntitySerializationOption... options) {
+        try {
+            return serializationGsonCache.get(new GsonCacheKey(view, options),
+                    () -> createGsonForSerialization(view, options));
+        } catch (ExecutionException e) {
+            throw new EntitySerializationException(e.getCause());
+        }
+    }
+
+    protected Gson getGsonForDeserialization(@Nullable MetaClass metaClass, EntitySerializationOption... options) {
+        try {
+            return deserializationGsonCache.get(new GsonCacheKey(metaClass, options),
+                    () -> createGsonForDeserialization(metaClass, options));
+        } catch (ExecutionException e) {
+            throw new EntitySerializationException(e.getCause());
+        }
     }
 
     protected Gson createGsonForSerialization(@Nullable View view, EntitySerializationOption... options) {
@@ -160,6 +257,40 @@ public class EntitySerialization implements EntitySerializationAPI {
                 .create();
     }
 
+    protected MetaClassSerializationPlan getSerializationPlan(MetaClass metaClass) {
+        return serializationPlans.computeIfAbsent(metaClass, this::createSerializationPlan);
+    }
+
+    protected MetaClassSerializationPlan createSerializationPlan(MetaClass metaClass) {
+        MetaProperty primaryKeyProperty = AbstractNotPersistentEntity.class.isAssignableFrom(metaClass.getJavaClass()) ?
+                metaClass.getProperty("id") :
+                metadataTools.getPrimaryKeyProperty(metaClass);
+        boolean compositePrimaryKey = metadataTools.hasCompositePrimaryKey(metaClass);
+        Datatype idDatatype = primaryKeyProperty != null && !compositePrimaryKey ?
+                Datatypes.get(primaryKeyProperty.getJavaType()) : null;
+        List<MetaProperty> properties = metaClass.getProperties().stream()
+                .filter(metaProperty -> !"id".equals(metaProperty.getName()))
+                .collect(Collectors.toList());
+        return new MetaClassSerializationPlan(metadataTools.isEmbeddable(metaClass), primaryKeyProperty,
+                compositePrimaryKey, idDatatype, Collections.unmodifiableList(properties));
+    }
+
+    protected List<Field> getClearableFields(Entity entity) {
+        return clearableFields.computeIfAbsent(entity.getClass(), entityClass -> {
+            List<Field> fields = new ArrayList<>();
+            for (MetaProperty metaProperty : entity.getMetaClass().getProperties()) {
+                if ("id".equals(metaProperty.getName()) ||
+                        (entity instanceof HasUuid && "uuid".equals(metaProperty.getName()))) continue;
+                Field field = getField(entityClass, metaProperty.getName());
+                if (field != null) {
+                    makeFieldAccessible(field);
+                    fields.add(field);
+                }
+            }
+            return Collections.unmodifiableList(fields);
+        });
+    }
+
     @Nullable
     protected Field getField(@Nullable Class clazz, String fieldName) {
         try {
@@ -204,7 +335,8 @@ public class EntitySerialization implements EntitySerializationAPI {
         protected JsonObject serializeEntity(Entity entity, @Nullable View view, Set<Entity> cyclicReferences) {
             JsonObject jsonObject = new JsonObject();
             MetaClass metaClass = entity.getMetaClass();
-            if (!metadataTools.isEmbeddable(metaClass)) {
+            MetaClassSerializationPlan plan = getSerializationPlan(metaClass);
+            if (!plan.embeddable) {
                 jsonObject.addProperty(ENTITY_NAME_PROP, metaClass.getName());
                 if (serializeInstanceName) {
                     String instanceName = null;
@@ -214,21 +346,21 @@ public class EntitySerialization implements EntitySerializationAPI {
                     }
                     jsonObject.addProperty(INSTANCE_NAME_PROP, instanceName);
                 }
-                writeIdField(entity, jsonObject);
+                writeIdField(entity, jsonObject, plan);
                 if (compactRepeatedEntities) {
                     Table<Object, MetaClass, Entity> processedObjects = context.get().getProcessedEntities();
                     if (processedObjects.get(entity.getId(), metaClass) == null) {
                         processedObjects.put(entity.getId(), metaClass, entity);
-                        writeFields(entity, jsonObject, view, cyclicReferences);
+                        writeFields(entity, jsonObject, view, cyclicReferences, plan);
                     }
                 } else {
                     if (!cyclicReferences.contains(entity)) {
                         cyclicReferences.add(entity);
-                        writeFields(entity, jsonObject, view, cyclicReferences);
+                        writeFields(entity, jsonObject, view, cyclicReferences, plan);
                     }
                 }
             } else {
-                writeFields(entity, jsonObject, view, cyclicReferences);
+                writeFields(entity, jsonObject, view, cyclicReferences, plan);
             }
 
             if (entity instanceof BaseGenericIdEntity || entity instanceof EmbeddableEntity) {
@@ -245,16 +377,19 @@ public class EntitySerialization implements EntitySerializationAPI {
         }
 
         protected void writeIdField(Entity entity, JsonObject jsonObject) {
-            MetaProperty primaryKeyProperty = entity instanceof AbstractNotPersistentEntity ?
-                    entity.getMetaClass().getProperty("id") :
-                    metadataTools.getPrimaryKeyProperty(entity.getMetaClass());
+            writeIdField(entity, jsonObject, getSerializationPlan(entity.getMetaClass()));
+        }
+
+        protected void writeIdField(Entity entity, JsonObject jsonObject, MetaClassSerializationPlan plan) {
+            MetaProperty primaryKeyProperty = plan.primaryKeyProperty;
             if (primaryKeyProperty == null)
                 throw new EntitySerializationException("Primary key property not found for entity " + entity.getMetaClass());
-            if (metadataTools.hasCompositePrimaryKey(entity.getMetaClass())) {
+            if (plan.compositePrimaryKey) {
                 JsonObject serializedIdEntity = serializeEntity((Entity) entity.getId(), null, Collections.emptySet());
                 jsonObject.add("id", serializedIdEntity);
             } else {
-                Datatype idDatatype = Datatypes.getNN(primaryKeyProperty.getJavaType());
+                Datatype idDatatype = plan.idDatatype != null ?
+                        plan.idDatatype : Datatypes.getNN(primaryKeyProperty.getJavaType());
                 jsonObject.addProperty("id", idDatatype.format(entity.getId()));
             }
         }
@@ -268,8 +403,14 @@ public class EntitySerialization implements EntitySerializationAPI {
         }
 
         protected void writeFields(Entity entity, JsonObject jsonObject, @Nullable View view, Set<Entity> cyclicReferences) {
-            Collection<MetaProperty> properties = new ArrayList<>(entity.getMetaClass().getProperties());
+            writeFields(entity, jsonObject, view, cyclicReferences, getSerializationPlan(entity.getMetaClass()));
+        }
+
+        protected void writeFields(Entity entity, JsonObject jsonObject, @Nullable View view, Set<Entity> cyclicReferences,
+                                   MetaClassSerializationPlan plan) {
+            Collection<MetaProperty> properties = plan.properties;
             if (entity instanceof BaseGenericIdEntity && ((BaseGenericIdEntity) entity).getDynamicAttributes() != null) {
+                properties = new ArrayList<>(plan.properties);
                 List<MetaProperty> dynamicProperties = dynamicAttributes.getAttributesForMetaClass(entity.getMetaClass()).stream()
                         .map(categoryAttribute -> DynamicAttributesUtils.getMetaPropertyPath(entity.getMetaClass(), categoryAttribute).getMetaProperty())
                         .collect(Collectors.toList());
@@ -608,17 +749,11 @@ public class EntitySerialization implements EntitySerializationAPI {
         }
 
         protected void clearFields(Entity entity) {
-            for (MetaProperty metaProperty : entity.getMetaClass().getProperties()) {
-                if ("id".equals(metaProperty.getName()) ||
-                        (entity instanceof HasUuid && "uuid".equals(metaProperty.getName()))) continue;
-                Field field = getField(entity.getClass(), metaProperty.getName());
-                if (field != null) {
-                    makeFieldAccessible(field);
-                    try {
-                        field.set(entity, null);
-                    } catch (IllegalAccessException e) {
-                        throw new EntitySerializationException("Can't get access to field " + field.getName() + " of class " + entity.getClass().getName(), e);
-                    }
+            for (Field field : getClearableFields(entity)) {
+                try {
+                    field.set(entity, null);
+                } catch (IllegalAccessException e) {
+                    throw new EntitySerializationException("Can't get access to field " + field.getName() + " of class " + entity.getClass().getName(), e);
                 }
             }
         }
@@ -20,9 +20,11 @@
 package com.haulmont.cuba.core.config;
 
 import com.haulmont.cuba.core.config.type.TypeFactory;
+import org.apache.commons.lang.ClassUtils;
 
 import java.lang.reflect.Method;
 import java.util.NoSuchElementException;
+import java.util.UUID;
 
 /**
  * Implementation of configuration getter methods.
@@ -38,6 +40,8 @@ public class ConfigGetter extends ConfigAccessorMethod {
 
     private TypeFactory factory;
 
+    private final boolean immutableType;
+
     /**
      * Create a new ConfigGetter instance.
      *
@@ -51,6 +55,17 @@ public class ConfigGetter extends ConfigAccessorMethod {
         sourceType = ConfigUtil.getSourceType(configInterface, method);
 //        if (!String.class.equals(method.getReturnType()))
         factory = TypeFactory.getInstance(configInterface, method);
+
+        Class<?> returnType = method.getReturnType();
+        immutableType = returnType.isPrimitive() || ClassUtils.wrapperToPrimitive(returnType) != null
+                || String.class.equals(returnType) || UUID.class.equals(returnType) || returnType.isEnum();
+    }
+
+    /**
+     * @return true if the value returned by this getter without a run-time default can be cached
+     */
+    public boolean isCacheable(ConfigPersister persister) {
+        return immutableType && persister.isCacheable(sourceType);
     }
 
     /**
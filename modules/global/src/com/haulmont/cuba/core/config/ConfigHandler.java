@@ -21,12 +21,34 @@ package com.haulmont.cuba.core.config;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Configuration interface method handler.
+ * <p>Values returned by getters of immutable types are cached if the persister allows caching of their source
+ * type, see {@link ConfigPersister#isCacheable(SourceType)}. Cached values are invalidated by
+ * {@link #invalidateCachedValues()} and when the Java system property with the name of the config property changes.</p>
  *
  */
 public class ConfigHandler implements InvocationHandler {
+
+    private static final AtomicLong cachedValuesVersion = new AtomicLong();
+
+    private static class CachedValue {
+        private final long version;
+        private final String systemValue;
+        private final Object value;
+
+        private CachedValue(long version, String systemValue, Object value) {
+            this.version = version;
+            this.systemValue = systemValue;
+            this.value = value;
+        }
+    }
+
     /**
      * The configuration source.
      */
@@ -36,6 +58,10 @@ public class ConfigHandler implements InvocationHandler {
      */
     private final Class<?> configInterface;
 
+    private final Map<Method, ConfigMethod> configMethods = new ConcurrentHashMap<>();
+
+    private final Map<Method, CachedValue> cachedValues = new ConcurrentHashMap<>();
+
     /**
      * Create a new ConfigHandler instance.
      *
@@ -75,7 +101,37 @@ public class ConfigHandler implements InvocationHandler {
      */
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        ConfigMethod configMethod = ConfigMethods.getInstance(configInterface, method);
+        ConfigMethod configMethod = configMethods.get(method);
+        if (configMethod == null) {
+            configMethod = ConfigMethods.getInstance(configInterface, method);
+            configMethods.put(method, configMethod);
+        }
+        if ((args == null || args.length == 0) && configMethod instanceof ConfigGetter
+                && ((ConfigGetter) configMethod).isCacheable(persister)) {
+            return getCachedValue(method, (ConfigGetter) configMethod);
+        }
         return configMethod.invoke(this, args);
-  }
+    }
+
+    private Object getCachedValue(Method method, ConfigGetter getter) {
+        // the version is read before the value, so a value loaded concurrently with invalidation is not reused
+        long version = cachedValuesVersion.get();
+        String systemValue = System.getProperty(getter.getPropertyName());
+        CachedValue cachedValue = cachedValues.get(method);
+        if (cachedValue != null && cachedValue.version == version
+                && Objects.equals(cachedValue.systemValue, systemValue)) {
+            return cachedValue.value;
+        }
+        Object value = getter.invoke(this, null);
+        cachedValues.put(method, new CachedValue(version, systemValue, value));
+        return value;
+    }
+
+    /**
+     * Invalidates values cached by all configuration interface proxies. Must be invoked when values of
+     * application properties or properties stored in the database change.
+     */
+    public static void invalidateCachedValues() {
+        cachedValuesVersion.incrementAndGet();
+    }
 }
\ No newline at end of file
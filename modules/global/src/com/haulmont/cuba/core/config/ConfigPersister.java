@@ -20,4 +20,12 @@ public interface ConfigPersister {
     String getProperty(SourceType sourceType, String name);
 
     void setProperty(SourceType sourceType, String name, String value);
+
+    /**
+     * @return true if values of the source type can be cached by configuration interface proxies until
+     * {@link ConfigHandler#invalidateCachedValues()} is invoked
+     */
+    default boolean isCacheable(SourceType sourceType) {
+        return false;
+    }
 }
\ No newline at end of file
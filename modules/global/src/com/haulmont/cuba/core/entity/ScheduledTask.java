@@ -126,6 +126,9 @@ public class ScheduledTask extends BaseUuidEntity implements Creatable, Updatabl
     @Column(name = "LOG_FINISH")
     protected Boolean logFinish;
 
+    @Column(name = "PRIORITY")
+    protected Integer priority;
+
     @Column(name = "LAST_START_TIME")
     protected Date lastStartTime;
 
@@ -311,6 +314,17 @@ public class ScheduledTask extends BaseUuidEntity implements Creatable, Updatabl
         this.logFinish = logFinish;
     }
 
+    /**
+     * @return priority of the task in the queue of tasks waiting for a free thread. Tasks with greater values run first.
+     */
+    public Integer getPriority() {
+        return priority;
+    }
+
+    public void setPriority(Integer priority) {
+        this.priority = priority;
+    }
+
     public Date getLastStartTime() {
         return lastStartTime;
     }
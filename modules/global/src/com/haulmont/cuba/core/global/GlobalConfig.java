@@ -176,15 +176,33 @@ public interface GlobalConfig extends Config {
     /**
      * @return the maximum number of idle instances of compiled groovy expressions in {@code Scripting.evaluateGroovy()}
      * @see GenericKeyedObjectPoolConfig#setMaxIdlePerKey(int)
+     * @deprecated expressions are evaluated by new instances of cached compiled classes,
+     * see {@link #getGroovyEvaluationCacheMaxSize()}
      */
+    @Deprecated
     @Property("cuba.groovyEvaluationPoolMaxIdle")
     @DefaultInt(8)
     int getGroovyEvaluationPoolMaxIdle();
 
+    /**
+     * @return the maximum number of compiled classes of groovy expressions cached by {@code Scripting.evaluateGroovy()}
+     */
+    @Property("cuba.groovyEvaluationCacheMaxSize")
+    @DefaultInt(1000)
+    int getGroovyEvaluationCacheMaxSize();
+
     @Property("cuba.numberIdCacheSize")
     @DefaultInt(100)
     int getNumberIdCacheSize();
 
+    /**
+     * @return number of cached identifiers left in the current block of an entity at which the next block is
+     * requested in background. 0 disables prefetching.
+     */
+    @Property("cuba.numberIdCachePrefetchThreshold")
+    @DefaultInt(20)
+    int getNumberIdCachePrefetchThreshold();
+
     @Property("cuba.anonymousSessionId")
     @Factory(factory = UuidTypeFactory.class)
     UUID getAnonymousSessionId();
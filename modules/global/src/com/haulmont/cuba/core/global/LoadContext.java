@@ -20,6 +20,7 @@ import com.haulmont.bali.util.Preconditions;
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.cuba.core.entity.Entity;
 
+import javax.annotation.Nullable;
 import javax.persistence.TemporalType;
 import java.io.Serializable;
 import java.util.*;
@@ -50,6 +51,7 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
     protected int queryKey;
 
     protected boolean loadDynamicAttributes = false;
+    protected List<String> dynamicAttributeCodes;
     protected boolean loadPartialEntities = true;
 
     protected Map<String, Object> dbHints; // lazy initialized map
@@ -230,6 +232,25 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
         return this;
     }
 
+    /**
+     * @return codes of the dynamic attributes to load, or null if all dynamic attributes are loaded
+     */
+    @Nullable
+    public List<String> getDynamicAttributeCodes() {
+        return dynamicAttributeCodes;
+    }
+
+    /**
+     * Restricts loading of dynamic attributes to the attributes with the given codes, for example to the attributes
+     * actually displayed. Has effect only if {@link #setLoadDynamicAttributes(boolean)} is set to true.
+     *
+     * @param dynamicAttributeCodes codes of the dynamic attributes to load, or null to load all attributes
+     */
+    public LoadContext<E> setDynamicAttributeCodes(@Nullable Collection<String> dynamicAttributeCodes) {
+        this.dynamicAttributeCodes = dynamicAttributeCodes != null ? new ArrayList<>(dynamicAttributeCodes) : null;
+        return this;
+    }
+
     /**
      * @return whether to load partial entities. When true (which is by default), some local attributes can be unfetched
      * according to {@link #setView(View)}.
@@ -270,6 +291,9 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
             ctx.getDbHints().putAll(dbHints);
         }
         ctx.loadDynamicAttributes = loadDynamicAttributes;
+        if (dynamicAttributeCodes != null) {
+            ctx.dynamicAttributeCodes = new ArrayList<>(dynamicAttributeCodes);
+        }
         return ctx;
     }
 
@@ -18,6 +18,7 @@
 package com.haulmont.cuba.core.global;
 
 import groovy.lang.Binding;
+import groovy.lang.Script;
 
 import javax.annotation.Nullable;
 import java.util.Map;
@@ -61,6 +62,16 @@ public interface Scripting {
      */
     <T> T evaluateGroovy(String text, Map<String, Object> context);
 
+    /**
+     * Compiles Groovy expression into a script class. Compiled classes are cached by the expression text, so
+     * repeated evaluations of the same expression can instantiate the class instead of compiling or borrowing
+     * a shared {@link Script} instance, e.g. by {@code InvokerHelper.createScript(scriptClass, binding).run()}.
+     * <p>The cache is cleared by {@link #clearCache()}.</p>
+     * @param text      expression text
+     * @return          compiled script class
+     */
+    Class<? extends Script> compileGroovy(String text);
+
     /**
      * Runs Groovy script.
      * The script must be located as file under <em>conf</em> directory, or as a classpath resource.
@@ -22,6 +22,7 @@ import com.google.common.cache.CacheBuilder;
 import com.haulmont.chile.core.datatypes.FormatStrings;
 import com.haulmont.chile.core.datatypes.FormatStringsRegistry;
 import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.core.sys.events.MessagesCacheClearedEvent;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
@@ -66,6 +67,9 @@ public abstract class AbstractMessages implements Messages {
     @Inject
     protected FormatStringsRegistry formatStringsRegistry;
 
+    @Inject
+    protected Events events;
+
     protected Pattern enumSubclassPattern = Pattern.compile("\\$[1-9]");
 
     protected GlobalConfig globalConfig;
@@ -74,8 +78,53 @@ public abstract class AbstractMessages implements Messages {
 
     protected String mainMessagePack;
 
+    protected String lastMainMessagePack;
+
     protected Map<String, String> strCache = new ConcurrentHashMap<>();
 
+    // Resolved results of getMessage() and getMainMessage() by requested locale, pack names and key.
+    // Nested maps are used to avoid building composite cache keys on each call.
+    protected Map<Locale, Map<String, Map<String, String>>> messagesCache = new ConcurrentHashMap<>();
+    protected Map<Locale, Map<String, String>> mainMessagesCache = new ConcurrentHashMap<>();
+
+    // Pack names split by spaces, in the search order
+    protected Map<String, List<String>> packChains = new ConcurrentHashMap<>();
+
+    protected ClassValue<String> packNames = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            String className = type.getName();
+            int pos = className.lastIndexOf(".");
+            if (pos > 0)
+                return className.substring(0, pos);
+            else
+                return "";
+        }
+    };
+
+    // Message keys of enum constants by ordinal
+    protected ClassValue<String[]> enumMessageKeys = new ClassValue<String[]>() {
+        @Override
+        protected String[] computeValue(Class<?> type) {
+            String className = type.getName();
+            int i = className.lastIndexOf('.');
+            if (i > -1)
+                className = className.substring(i + 1);
+            // If enum has inner subclasses, its class name ends with "$1", "$2", ... suffixes. Cut them off.
+            Matcher matcher = enumSubclassPattern.matcher(className);
+            if (matcher.find()) {
+                className = className.substring(0, matcher.start());
+            }
+
+            Object[] constants = type.getEnumConstants();
+            String[] keys = new String[constants.length];
+            for (int j = 0; j < constants.length; j++) {
+                keys[j] = className + "." + ((Enum) constants[j]).name();
+            }
+            return keys;
+        }
+    };
+
     // Using ConcurrentHashMap instead of synchronized Set for better parallelism
     protected Map<String, String> notFoundCache = new ConcurrentHashMap<>();
 
@@ -103,6 +152,9 @@ public abstract class AbstractMessages implements Messages {
 
         log.debug("Main message pack: " + mainMessagePack);
 
+        String[] split = mainMessagePack.split(" ");
+        lastMainMessagePack = split[split.length - 1];
+
         for (Locale locale : globalConfig.getAvailableLocales().values()) {
             String numberDecimalSeparator = getMainMessage("numberDecimalSeparator", locale);
             String numberGroupingSeparator = getMainMessage("numberGroupingSeparator", locale);
@@ -194,19 +246,10 @@ public abstract class AbstractMessages implements Messages {
     public String getMessage(Enum caller, Locale locale) {
         checkNotNullArgument(caller, "Enum parameter 'caller' is null");
 
-        String className = caller.getClass().getName();
-        int i = className.lastIndexOf('.');
-        if (i > -1)
-            className = className.substring(i + 1);
-        // If enum has inner subclasses, its class name ends with "$1", "$2", ... suffixes. Cut them off.
-        Matcher matcher = enumSubclassPattern.matcher(className);
-        if (matcher.find()) {
-            className = className.substring(0, matcher.start());
-        }
-
+        Class<?> enumClass = caller.getDeclaringClass();
         return getMessage(
-                getPackName(caller.getClass()),
-                className + "." + caller.name(),
+                getPackName(enumClass),
+                enumMessageKeys.get(enumClass)[caller.ordinal()],
                 locale
         );
     }
@@ -225,7 +268,17 @@ public abstract class AbstractMessages implements Messages {
     @Override
     public String getMainMessage(String key, Locale locale) {
         checkNotNullArgument(key, "Message key is null");
-        return internalGetMessage(mainMessagePack, key, locale, key, false);
+
+        if (locale == null) {
+            return internalGetMessage(mainMessagePack, key, locale, key, false);
+        }
+        Map<String, String> messages = mainMessagesCache.computeIfAbsent(locale, l -> new ConcurrentHashMap<>());
+        String msg = messages.get(key);
+        if (msg == null) {
+            msg = internalGetMessage(mainMessagePack, key, locale, key, false);
+            messages.put(key, msg);
+        }
+        return msg;
     }
 
     @Override
@@ -251,6 +304,21 @@ public abstract class AbstractMessages implements Messages {
         checkNotNullArgument(packs, "Messages pack name is null");
         checkNotNullArgument(key, "Message key is null");
 
+        if (locale == null) {
+            return searchPackMessage(packs, key, locale);
+        }
+        Map<String, String> messages = messagesCache
+                .computeIfAbsent(locale, l -> new ConcurrentHashMap<>())
+                .computeIfAbsent(packs, p -> new ConcurrentHashMap<>());
+        String msg = messages.get(key);
+        if (msg == null) {
+            msg = searchPackMessage(packs, key, locale);
+            messages.put(key, msg);
+        }
+        return msg;
+    }
+
+    protected String searchPackMessage(String packs, String key, Locale locale) {
         String compositeKey = packs + "/" + key;
         String msg = internalGetMessage(mainMessagePack, compositeKey, locale, null, false);
         if (msg != null)
@@ -269,8 +337,6 @@ public abstract class AbstractMessages implements Messages {
             locale = getUserLocale();
 
         String compositeKey = packs + "/" + key;
-        String[] split = mainMessagePack.split(" ");
-        String lastMainMessagePack = split[split.length - 1];
         String msg = internalGetMessage(lastMainMessagePack, compositeKey, locale, null, false);
         if (msg != null)
             return msg;
@@ -298,6 +364,10 @@ public abstract class AbstractMessages implements Messages {
         resourcePropertiesCache.invalidateAll();
         strCache.clear();
         notFoundCache.clear();
+        messagesCache.clear();
+        mainMessagesCache.clear();
+
+        events.publish(new MessagesCacheClearedEvent(this));
     }
 
     protected String internalGetMessage(String packs, String key, Locale locale, String defaultValue,
@@ -335,10 +405,7 @@ public abstract class AbstractMessages implements Messages {
 
     @Nullable
     protected String searchMessage(String packs, String key, Locale locale, Locale truncatedLocale, Set<String> passedPacks) {
-        StrTokenizer tokenizer = new StrTokenizer(packs);
-        //noinspection unchecked
-        List<String> list = tokenizer.getTokenList();
-        Collections.reverse(list);
+        List<String> list = getPackChain(packs);
         for (String pack : list) {
             if (!enterPack(pack, locale, truncatedLocale, passedPacks))
                 continue;
@@ -362,6 +429,22 @@ public abstract class AbstractMessages implements Messages {
         return null;
     }
 
+    /**
+     * @return pack names from the given space-separated list in the search order, i.e. the last pack comes first
+     */
+    protected List<String> getPackChain(String packs) {
+        List<String> list = packChains.get(packs);
+        if (list == null) {
+            StrTokenizer tokenizer = new StrTokenizer(packs);
+            //noinspection unchecked
+            list = new ArrayList<>(tokenizer.getTokenList());
+            Collections.reverse(list);
+            list = Collections.unmodifiableList(list);
+            packChains.put(packs, list);
+        }
+        return list;
+    }
+
     private Locale truncateLocale(Locale locale) {
         if (locale == null || StringUtils.isEmpty(locale.getCountry()))
             return null;
@@ -564,11 +647,6 @@ public abstract class AbstractMessages implements Messages {
     }
 
     protected String getPackName(Class c) {
-        String className = c.getName();
-        int pos = className.lastIndexOf(".");
-        if (pos > 0)
-            return className.substring(0, pos);
-        else
-            return "";
+        return packNames.get(c);
     }
 }
\ No newline at end of file
@@ -17,6 +17,9 @@
 
 package com.haulmont.cuba.core.sys;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.haulmont.cuba.core.global.Configuration;
 import com.haulmont.cuba.core.global.GlobalConfig;
 import com.haulmont.cuba.core.global.ScriptExecutionPolicy;
@@ -38,6 +41,7 @@ import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
 import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
 import org.codehaus.groovy.control.CompilationFailedException;
 import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +52,10 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -65,8 +73,20 @@ public abstract class AbstractScripting implements Scripting {
 
     protected volatile GroovyScriptEngine gse;
     protected volatile CubaGroovyClassLoader gcl;
+    /**
+     * @deprecated expressions are evaluated by new instances of classes from {@link #compiledScripts}. The pool is
+     * created only if a subclass calls {@link #getPool()}.
+     */
+    @Deprecated
     protected GenericKeyedObjectPool<String, Script> pool;
 
+    protected Cache<String, Class<? extends Script>> compiledScripts;
+
+    protected Map<String, Class<?>> classpathScripts = new ConcurrentHashMap<>();
+
+    protected LongAdder evaluationCount = new LongAdder();
+    protected LongAdder evaluationTime = new LongAdder();
+
     protected GlobalConfig globalConfig;
 
     public AbstractScripting(JavaClassLoader javaClassLoader, Configuration configuration, SpringBeanLoader springBeanLoader) {
@@ -74,6 +94,10 @@ public abstract class AbstractScripting implements Scripting {
         this.springBeanLoader = springBeanLoader;
         globalConfig = configuration.getConfig(GlobalConfig.class);
         groovyClassPath = globalConfig.getConfDir() + File.pathSeparator;
+        compiledScripts = CacheBuilder.newBuilder()
+                .maximumSize(globalConfig.getGroovyEvaluationCacheMaxSize())
+                .recordStats()
+                .build();
 
         String classPathProp = AppContext.getProperty("cuba.groovyClassPath");
         if (StringUtils.isNotBlank(classPathProp)) {
@@ -120,7 +144,12 @@ public abstract class AbstractScripting implements Scripting {
         return gcl;
     }
 
-    private synchronized GenericKeyedObjectPool<String, Script> getPool() {
+    /**
+     * @deprecated expressions are evaluated by new instances of classes from {@link #compiledScripts},
+     * use {@link #compileGroovy(String)}
+     */
+    @Deprecated
+    protected synchronized GenericKeyedObjectPool<String, Script> getPool() {
         if (pool == null) {
             GenericKeyedObjectPoolConfig poolConfig = new GenericKeyedObjectPoolConfig();
             poolConfig.setMaxTotalPerKey(-1);
@@ -188,35 +217,34 @@ public abstract class AbstractScripting implements Scripting {
     public <T> T evaluateGroovy(String text, Binding binding, ScriptExecutionPolicy... policies) {
         boolean useCompilationCache = policies == null ||
                 !Arrays.asList(policies).contains(ScriptExecutionPolicy.DO_NOT_USE_COMPILE_CACHE);
-        Script script = null;
-        Object result;
+        long start = System.nanoTime();
         try {
-            script = useCompilationCache ? getPool().borrowObject(text) : createScript(text);
+            Script script = useCompilationCache
+                    ? InvokerHelper.createScript(compileGroovy(text), binding)
+                    : createScript(text);
             script.setBinding(binding);
-            result = script.run();
+            //noinspection unchecked
+            return (T) script.run();
+        } catch (RuntimeException e) {
+            throw e;
         } catch (Exception e) {
-            if (script != null && useCompilationCache) {
-                try {
-                    getPool().invalidateObject(text, script);
-                } catch (Exception e1) {
-                    log.warn("Error invalidating object in the pool", e1);
-                }
-            }
-            if (e instanceof RuntimeException)
-                throw ((RuntimeException) e);
-            else
-                throw new RuntimeException("Error evaluating Groovy expression", e);
+            throw new RuntimeException("Error evaluating Groovy expression", e);
+        } finally {
+            evaluationCount.increment();
+            evaluationTime.add(System.nanoTime() - start);
         }
-        if (useCompilationCache) {
-            try {
-                script.setBinding(null); // free memory
-                getPool().returnObject(text, script);
-            } catch (Exception e) {
-                log.warn("Error returning object into the pool", e);
-            }
+    }
+
+    @Override
+    public Class<? extends Script> compileGroovy(String text) {
+        try {
+            return compiledScripts.get(text, () -> createScript(text).getClass());
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            else
+                throw new RuntimeException("Error compiling Groovy expression", e.getCause());
         }
-        //noinspection unchecked
-        return (T) result;
     }
 
     @Override
@@ -233,28 +261,28 @@ public abstract class AbstractScripting implements Scripting {
 
     @Override
     public <T> T runGroovyScript(String name, Binding binding) {
+        Class<?> classpathScript = classpathScripts.get(name);
+        if (classpathScript != null) {
+            return runClasspathScript(classpathScript, binding);
+        }
         try {
+            // the engine caches compiled scripts and recompiles them only if their sources are modified
             //noinspection unchecked
             return (T) getGroovyScriptEngine().run(name, binding);
         } catch (ResourceException e) {
             // Perhaps the Groovy source not found - it is possible when we run tests. Let's try to find a
             // compiled script in the classpath
-            if (name.endsWith(".groovy"))
-                name = name.substring(0, name.length() - 7);
-            if (name.startsWith("/"))
-                name = name.substring(1);
-            name = name.replace("/", ".");
-
-            Class scriptClass = loadClass(name);
+            String className = name;
+            if (className.endsWith(".groovy"))
+                className = className.substring(0, className.length() - 7);
+            if (className.startsWith("/"))
+                className = className.substring(1);
+            className = className.replace("/", ".");
+
+            Class<?> scriptClass = loadClass(className);
             if (scriptClass != null && groovy.lang.Script.class.isAssignableFrom(scriptClass)) {
-                try {
-                    Script script = (Script) scriptClass.newInstance();
-                    script.setBinding(binding);
-                    //noinspection unchecked
-                    return (T) script.run();
-                } catch (InstantiationException | IllegalAccessException e1) {
-                    throw new RuntimeException("Error instantiating Script object", e1);
-                }
+                classpathScripts.put(name, scriptClass);
+                return runClasspathScript(scriptClass, binding);
             }
             throw new RuntimeException("Error running Groovy script", e);
         } catch (ScriptException e) {
@@ -262,6 +290,17 @@ public abstract class AbstractScripting implements Scripting {
         }
     }
 
+    protected <T> T runClasspathScript(Class<?> scriptClass, Binding binding) {
+        try {
+            Script script = (Script) scriptClass.newInstance();
+            script.setBinding(binding);
+            //noinspection unchecked
+            return (T) script.run();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new RuntimeException("Error instantiating Script object", e);
+        }
+    }
+
     @Override
     public <T> T runGroovyScript(String name, Map<String, Object> context) {
         Binding binding = createBinding(context);
@@ -301,7 +340,13 @@ public abstract class AbstractScripting implements Scripting {
     public void clearCache() {
         getGroovyClassLoader().clearCache();
         javaClassLoader.clearCache();
-        getPool().clear();
+        synchronized (this) {
+            if (pool != null) {
+                pool.clear();
+            }
+        }
+        compiledScripts.invalidateAll();
+        classpathScripts.clear();
         GroovyScriptEngine gse = getGroovyScriptEngine();
         try {
             Field scriptCacheField = gse.getClass().getDeclaredField("scriptCache");
@@ -313,6 +358,41 @@ public abstract class AbstractScripting implements Scripting {
         }
     }
 
+    /**
+     * @return number of compiled classes of Groovy expressions in the cache
+     */
+    public long getCompiledScriptsCount() {
+        return compiledScripts.size();
+    }
+
+    /**
+     * @return number of Groovy expressions compiled since the start
+     */
+    public long getCompilationCount() {
+        return compiledScripts.stats().loadCount();
+    }
+
+    /**
+     * @return number of Groovy expressions found in the compilation cache since the start
+     */
+    public long getCompilationCacheHitCount() {
+        return compiledScripts.stats().hitCount();
+    }
+
+    /**
+     * @return number of Groovy expressions evaluated since the start
+     */
+    public long getEvaluationCount() {
+        return evaluationCount.sum();
+    }
+
+    /**
+     * @return total time of Groovy expressions evaluation including compilation, in milliseconds
+     */
+    public long getEvaluationTime() {
+        return TimeUnit.NANOSECONDS.toMillis(evaluationTime.sum());
+    }
+
     protected class CubaResourceConnector implements ResourceConnector {
 
         /**
@@ -24,6 +24,7 @@ import com.haulmont.chile.core.model.MetaProperty;
 import com.haulmont.chile.core.model.Range;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.core.sys.events.ViewRepositoryReloadedEvent;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.text.StrTokenizer;
@@ -36,6 +37,7 @@ import org.perf4j.StopWatch;
 import org.perf4j.slf4j.Slf4JStopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -69,6 +71,8 @@ public class AbstractViewRepository implements ViewRepository {
 
     protected volatile boolean initialized;
 
+    protected volatile boolean reloadRequested;
+
     protected ReadWriteLock lock = new ReentrantReadWriteLock();
 
     protected void checkInitialized() {
@@ -80,6 +84,10 @@ public class AbstractViewRepository implements ViewRepository {
                     log.info("Initializing views");
                     init();
                     initialized = true;
+                    if (reloadRequested) {
+                        reloadRequested = false;
+                        publishReloadedEvent();
+                    }
                 }
             } finally {
                 lock.readLock().lock();
@@ -166,9 +174,17 @@ public class AbstractViewRepository implements ViewRepository {
     }
 
     public void reset() {
+        reloadRequested = true;
         initialized = false;
     }
 
+    protected void publishReloadedEvent() {
+        ApplicationContext applicationContext = AppContext.getApplicationContext();
+        if (applicationContext != null) {
+            applicationContext.publishEvent(new ViewRepositoryReloadedEvent(this));
+        }
+    }
+
     /**
      * Get View for an entity.
      *
@@ -16,6 +16,7 @@
  */
 package com.haulmont.cuba.core.sys;
 
+import com.haulmont.cuba.core.config.ConfigHandler;
 import com.haulmont.cuba.core.global.Events;
 import com.haulmont.cuba.core.sys.events.AppContextStartedEvent;
 import com.haulmont.cuba.core.sys.events.AppContextStoppedEvent;
@@ -130,6 +131,7 @@ public class AppContext {
         if (appProperties == null)
             throw new IllegalStateException("appProperties not initialized");
         appProperties.setProperty(key, value);
+        ConfigHandler.invalidateCachedValues();
     }
 
     /**
@@ -275,6 +277,7 @@ public class AppContext {
         public static void setAppComponents(AppComponents appComponents) {
             AppContext.appComponents = appComponents;
             AppContext.appProperties = new AppProperties(appComponents);
+            ConfigHandler.invalidateCachedValues();
         }
 
         /**
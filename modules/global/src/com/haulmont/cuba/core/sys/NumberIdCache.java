@@ -17,54 +17,222 @@
 
 package com.haulmont.cuba.core.sys;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.haulmont.cuba.core.global.GlobalConfig;
-
+import com.haulmont.cuba.core.sys.events.AppContextStoppedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
+
 import javax.inject.Inject;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Caches blocks of numeric identifiers obtained from {@link NumberIdSequence}.
+ * <p>
+ * When the number of identifiers left in the current block of an entity reaches
+ * {@link GlobalConfig#getNumberIdCachePrefetchThreshold()}, the next block is requested in background,
+ * so the thread which exhausts the block usually doesn't wait for the sequence. Only one fetch per entity
+ * is in progress at a time.
+ */
 @Component(NumberIdCache.NAME)
 public class NumberIdCache {
 
     public static final String NAME = "cuba_NumberIdCache";
 
-    protected class Generator {
-        protected AtomicLong counter;
-        protected long sequenceValue;
+    private final Logger log = LoggerFactory.getLogger(NumberIdCache.class);
 
-        protected Generator(String entityName, NumberIdSequence sequence) {
-            sequenceValue = sequence.createLongId(entityName);
+    /**
+     * Identifiers allocation statistics of an entity.
+     */
+    public static class Statistics {
+
+        protected final long allocatedCount;
+        protected final long fetchCount;
+        protected final long prefetchCount;
+        protected final long blockingFetchCount;
+
+        public Statistics(long allocatedCount, long fetchCount, long prefetchCount, long blockingFetchCount) {
+            this.allocatedCount = allocatedCount;
+            this.fetchCount = fetchCount;
+            this.prefetchCount = prefetchCount;
+            this.blockingFetchCount = blockingFetchCount;
+        }
+
+        /**
+         * @return number of identifiers returned by the cache
+         */
+        public long getAllocatedCount() {
+            return allocatedCount;
+        }
+
+        /**
+         * @return total number of blocks requested from the sequence
+         */
+        public long getFetchCount() {
+            return fetchCount;
+        }
+
+        /**
+         * @return number of blocks requested in background
+         */
+        public long getPrefetchCount() {
+            return prefetchCount;
+        }
+
+        /**
+         * @return number of times a thread waited for a block synchronously
+         */
+        public long getBlockingFetchCount() {
+            return blockingFetchCount;
+        }
+
+        @Override
+        public String toString() {
+            return "allocated=" + allocatedCount + ", fetches=" + fetchCount + ", prefetches=" + prefetchCount
+                    + ", blockingFetches=" + blockingFetchCount;
+        }
+    }
+
+    protected static class Block {
+        protected final AtomicLong counter;
+        protected final long last;
+
+        protected Block(long sequenceValue, int size) {
             counter = new AtomicLong(sequenceValue);
+            last = sequenceValue + size;
         }
 
         protected long getNext() {
             long next = counter.incrementAndGet();
-            if (next > sequenceValue + cacheSize)
+            if (next > last)
+                return -1;
+            return next;
+        }
+    }
+
+    protected class Generator {
+        protected final String entityName;
+        protected final NumberIdSequence sequence;
+
+        protected volatile Block block;
+        protected final AtomicReference<Future<Long>> prefetch = new AtomicReference<>();
+
+        protected final AtomicLong allocatedCount = new AtomicLong();
+        protected final AtomicLong fetchCount = new AtomicLong();
+        protected final AtomicLong prefetchCount = new AtomicLong();
+        protected final AtomicLong blockingFetchCount = new AtomicLong();
+
+        protected Generator(String entityName, NumberIdSequence sequence) {
+            this.entityName = entityName;
+            this.sequence = sequence;
+        }
+
+        protected long getNext() {
+            long next = getNextFromBlock(block);
+            if (next == -1) {
+                synchronized (this) {
+                    while ((next = getNextFromBlock(block)) == -1) {
+                        block = new Block(takeSequenceValue(), cacheSize);
+                    }
+                }
+            }
+            allocatedCount.incrementAndGet();
+            return next;
+        }
+
+        protected long getNextFromBlock(Block current) {
+            if (current == null)
                 return -1;
+            long next = current.getNext();
+            if (next != -1 && prefetchThreshold > 0 && current.last - next <= prefetchThreshold
+                    && prefetch.get() == null) {
+                startPrefetch();
+            }
             return next;
         }
+
+        protected void startPrefetch() {
+            FutureTask<Long> task = new FutureTask<>(new SecurityContextAwareCallable<>(this::fetchSequenceValue));
+            if (prefetch.compareAndSet(null, task)) {
+                try {
+                    prefetchExecutor.execute(task);
+                    prefetchCount.incrementAndGet();
+                } catch (RejectedExecutionException e) {
+                    prefetch.compareAndSet(task, null);
+                }
+            }
+        }
+
+        protected long takeSequenceValue() {
+            Future<Long> future = prefetch.getAndSet(null);
+            if (future != null) {
+                if (!future.isDone()) {
+                    blockingFetchCount.incrementAndGet();
+                }
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for ID sequence of " + entityName, e);
+                } catch (ExecutionException e) {
+                    log.warn("Unable to prefetch ID sequence value of {}: {}", entityName, e.getCause().toString());
+                }
+            } else {
+                blockingFetchCount.incrementAndGet();
+            }
+            return fetchSequenceValue();
+        }
+
+        protected Long fetchSequenceValue() {
+            fetchCount.incrementAndGet();
+            return sequence.createLongId(entityName);
+        }
+
+        protected Statistics getStatistics() {
+            return new Statistics(allocatedCount.get(), fetchCount.get(), prefetchCount.get(),
+                    blockingFetchCount.get());
+        }
     }
 
     protected ConcurrentMap<String, Generator> cache = new ConcurrentHashMap<>();
 
     protected int cacheSize;
 
+    protected int prefetchThreshold;
+
+    protected ExecutorService prefetchExecutor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder()
+                    .setNameFormat("NumberIdPrefetch-%d")
+                    .setDaemon(true)
+                    .build()
+    );
+
     @Inject
     protected void setConfig(GlobalConfig config) {
         cacheSize = config.getNumberIdCacheSize();
+        prefetchThreshold = config.getNumberIdCachePrefetchThreshold();
     }
 
     public Long createLongId(String entityName, NumberIdSequence sequence) {
-        Generator gen = getGenerator(entityName, sequence);
-        long next = gen.getNext();
-        if (next == -1) {
-            cache.remove(entityName);
-            gen = getGenerator(entityName, sequence);
-            next = gen.getNext();
-        }
-        return next;
+        return getGenerator(entityName, sequence).getNext();
+    }
+
+    /**
+     * @return identifiers allocation statistics by entity name
+     */
+    public Map<String, Statistics> getStatistics() {
+        Map<String, Statistics> result = new TreeMap<>();
+        for (Generator gen : cache.values()) {
+            result.put(gen.entityName, gen.getStatistics());
+        }
+        return Collections.unmodifiableMap(result);
     }
 
     protected Generator getGenerator(String entityName, NumberIdSequence sequence) {
@@ -78,4 +246,9 @@ public class NumberIdCache {
         }
         return gen;
     }
-}
\ No newline at end of file
+
+    @EventListener(AppContextStoppedEvent.class)
+    protected void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+}
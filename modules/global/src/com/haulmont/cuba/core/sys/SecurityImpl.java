@@ -30,7 +30,10 @@ import com.haulmont.cuba.security.entity.EntityOp;
 import com.haulmont.cuba.security.entity.PermissionType;
 import com.haulmont.cuba.security.global.ConstraintData;
 import com.haulmont.cuba.security.global.UserSession;
+import groovy.lang.Binding;
+import groovy.lang.Script;
 import org.apache.commons.lang.StringUtils;
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.codehaus.groovy.runtime.MethodClosure;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -66,6 +69,8 @@ public class SecurityImpl implements Security {
     @Inject
     protected Scripting scripting;
 
+    protected final MethodClosure parseValueClosure = new MethodClosure(this, "parseValue");
+
     @Override
     public boolean isScreenPermitted(String windowAlias) {
         return userSessionSource.getUserSession().isScreenPermitted(windowAlias);
@@ -89,6 +94,10 @@ public class SecurityImpl implements Security {
 
     @Override
     public boolean isEntityAttrPermitted(MetaClass metaClass, String property, EntityAttrAccess access) {
+        // avoid creating MetaPropertyPath for a simple property
+        if (property.indexOf('.') < 0 && metaClass.getProperty(property) != null) {
+            return isPropertyPermitted(metaClass, property, access);
+        }
         MetaPropertyPath mpp = metadataTools.resolveMetaPropertyPath(metaClass, property);
         return mpp != null && isEntityAttrPermitted(metaClass, mpp, access);
     }
@@ -129,13 +138,15 @@ public class SecurityImpl implements Security {
     }
 
     protected boolean isEntityAttrPermitted(MetaClass metaClass, MetaPropertyPath propertyPath, EntityAttrAccess access) {
+        return isPropertyPermitted(metaClass, propertyPath.getMetaProperty().getName(), access);
+    }
+
+    protected boolean isPropertyPermitted(MetaClass metaClass, String propertyName, EntityAttrAccess access) {
         MetaClass originalMetaClass = extendedEntities.getOriginalMetaClass(metaClass);
         if (originalMetaClass != null) {
             metaClass = originalMetaClass;
         }
-
-        return userSessionSource.getUserSession()
-                .isEntityAttrPermitted(metaClass, propertyPath.getMetaProperty().getName(), access);
+        return userSessionSource.getUserSession().isEntityAttrPermitted(metaClass, propertyName, access);
     }
 
     protected boolean isEntityAttrUpdatePermitted(MetaPropertyPath mpp) {
@@ -234,14 +245,21 @@ public class SecurityImpl implements Security {
         return true;
     }
 
+    /**
+     * Evaluates the constraint script using its compiled class cached by {@link Scripting#compileGroovy(String)}.
+     * A new script instance is created for each evaluation, so concurrent evaluations don't contend for
+     * pooled script instances.
+     */
     @Override
     public Object evaluateConstraintScript(Entity entity, String groovyScript) {
         Map<String, Object> context = new HashMap<>();
         context.put("__entity__", entity);
-        context.put("parse", new MethodClosure(this, "parseValue"));
+        context.put("parse", parseValueClosure);
         context.put("userSession", userSessionSource.getUserSession());
         fillGroovyConstraintsContext(context);
-        return scripting.evaluateGroovy(groovyScript.replace("{E}", "__entity__"), context);
+
+        Class<? extends Script> scriptClass = scripting.compileGroovy(groovyScript.replace("{E}", "__entity__"));
+        return InvokerHelper.createScript(scriptClass, new Binding(context)).run();
     }
 
     /**
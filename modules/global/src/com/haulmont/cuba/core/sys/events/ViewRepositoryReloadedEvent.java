@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.haulmont.cuba.core.sys.events;
+
+import com.haulmont.cuba.core.global.ViewRepository;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Event that is published when views are deployed anew after {@code reset()} of the {@link ViewRepository}.
+ * Components that cache data built from views should drop it on this event.
+ */
+public class ViewRepositoryReloadedEvent extends ApplicationEvent {
+
+    public ViewRepositoryReloadedEvent(ViewRepository source) {
+        super(source);
+    }
+
+    @Override
+    public ViewRepository getSource() {
+        return (ViewRepository) super.getSource();
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.security.entity;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.*;
+
+import static com.haulmont.cuba.security.entity.EntityLogAttr.*;
+
+/**
+ * Encodes and decodes the {@link EntityLogItem#getChanges()} field.
+ * <p>
+ * Two formats are supported:
+ * <ul>
+ *     <li>legacy - {@link Properties} text where each attribute is stored as a set of keys
+ *     with {@link EntityLogAttr#VALUE_ID_SUFFIX} and other suffixes</li>
+ *     <li>compact - JSON object containing a dictionary of message packs and an array of attributes:
+ *     <pre>{"v":1,"p":["com.company.sample.entity"],"a":[["name","value","valueId","oldValue","oldValueId",0]]}</pre>
+ *     Each attribute is an array of name, value, value id, old value, old value id and the index of its message pack
+ *     in the dictionary. Trailing nulls are omitted.</li>
+ * </ul>
+ */
+public final class EntityLogChangesFormat {
+
+    private static final Logger log = LoggerFactory.getLogger(EntityLogChangesFormat.class);
+
+    public static final int COMPACT_FORMAT_VERSION = 1;
+
+    private static final String VERSION_KEY = "v";
+    private static final String MESSAGE_PACKS_KEY = "p";
+    private static final String ATTRIBUTES_KEY = "a";
+
+    private static final String[] SKIP_NAMES = new String[]{VALUE_ID_SUFFIX,
+            MP_SUFFIX, OLD_VALUE_SUFFIX, OLD_VALUE_ID_SUFFIX};
+
+    private EntityLogChangesFormat() {
+    }
+
+    /**
+     * @return true if the changes are stored in the compact format
+     */
+    public static boolean isCompact(@Nullable String changes) {
+        return changes != null && changes.startsWith("{");
+    }
+
+    /**
+     * Encodes the attributes to the compact format.
+     */
+    public static String encodeCompact(Collection<EntityLogAttr> attributes) {
+        List<String> messagePacks = new ArrayList<>();
+        Map<String, Integer> messagePackIndexes = new HashMap<>();
+        for (EntityLogAttr attr : attributes) {
+            String messagesPack = attr.getMessagesPack();
+            if (messagesPack != null && !messagePackIndexes.containsKey(messagesPack)) {
+                messagePackIndexes.put(messagesPack, messagePacks.size());
+                messagePacks.add(messagesPack);
+            }
+        }
+
+        StringWriter stringWriter = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(stringWriter)) {
+            writer.setSerializeNulls(true);
+            writer.beginObject();
+            writer.name(VERSION_KEY).value(COMPACT_FORMAT_VERSION);
+            if (!messagePacks.isEmpty()) {
+                writer.name(MESSAGE_PACKS_KEY).beginArray();
+                for (String messagesPack : messagePacks) {
+                    writer.value(messagesPack);
+                }
+                writer.endArray();
+            }
+            writer.name(ATTRIBUTES_KEY).beginArray();
+            for (EntityLogAttr attr : attributes) {
+                Object[] fields = new Object[]{
+                        attr.getName(),
+                        attr.getValue(),
+                        attr.getValueId(),
+                        attr.getOldValue(),
+                        attr.getOldValueId(),
+                        attr.getMessagesPack() != null ? messagePackIndexes.get(attr.getMessagesPack()) : null
+                };
+                int length = fields.length;
+                while (length > 1 && fields[length - 1] == null) {
+                    length--;
+                }
+                writer.beginArray();
+                for (int i = 0; i < length; i++) {
+                    if (fields[i] instanceof Integer) {
+                        writer.value((Integer) fields[i]);
+                    } else {
+                        writer.value((String) fields[i]);
+                    }
+                }
+                writer.endArray();
+            }
+            writer.endArray();
+            writer.endObject();
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing entity log attributes", e);
+        }
+        return stringWriter.toString();
+    }
+
+    /**
+     * Decodes the attributes from either compact or legacy format.
+     *
+     * @param item    log item to set to the created attributes, can be null
+     * @param changes encoded changes
+     * @return attributes sorted by name
+     */
+    public static Set<EntityLogAttr> decode(@Nullable EntityLogItem item, @Nullable String changes) {
+        List<EntityLogAttr> attributes;
+        if (StringUtils.isEmpty(changes)) {
+            attributes = Collections.emptyList();
+        } else {
+            try {
+                attributes = isCompact(changes) ? decodeCompact(item, changes) : decodeProperties(item, changes);
+            } catch (IOException | RuntimeException e) {
+                log.error("Unable to read entity log attributes for {}", item, e);
+                attributes = new ArrayList<>();
+            }
+        }
+        attributes.sort(Comparator.comparing(EntityLogAttr::getName));
+        return new LinkedHashSet<>(attributes);
+    }
+
+    private static List<EntityLogAttr> decodeCompact(@Nullable EntityLogItem item, String changes) throws IOException {
+        List<EntityLogAttr> attributes = new ArrayList<>();
+        List<String> messagePacks = Collections.emptyList();
+        List<String[]> rows = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new StringReader(changes))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (MESSAGE_PACKS_KEY.equals(key)) {
+                    messagePacks = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        messagePacks.add(reader.nextString());
+                    }
+                    reader.endArray();
+                } else if (ATTRIBUTES_KEY.equals(key)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        String[] row = new String[6];
+                        int i = 0;
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            if (reader.peek() == JsonToken.NULL) {
+                                reader.nextNull();
+                                i++;
+                            } else if (i < row.length) {
+                                row[i++] = reader.nextString();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endArray();
+                        rows.add(row);
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        for (String[] row : rows) {
+            EntityLogAttr attr = new EntityLogAttr();
+            attr.setLogItem(item);
+            attr.setName(row[0]);
+            attr.setValue(row[1]);
+            attr.setValueId(row[2]);
+            attr.setOldValue(row[3]);
+            attr.setOldValueId(row[4]);
+            if (row[5] != null) {
+                attr.setMessagesPack(messagePacks.get(Integer.parseInt(row[5])));
+            }
+            attributes.add(attr);
+        }
+        return attributes;
+    }
+
+    private static List<EntityLogAttr> decodeProperties(@Nullable EntityLogItem item, String changes) throws IOException {
+        List<EntityLogAttr> attributes = new ArrayList<>();
+        Properties properties = new Properties();
+        properties.load(new StringReader(changes));
+        Enumeration<?> names = properties.propertyNames();
+        while (names.hasMoreElements()) {
+            String name = (String) names.nextElement();
+            if (StringUtils.endsWithAny(name, SKIP_NAMES))
+                continue;
+
+            EntityLogAttr attr = new EntityLogAttr();
+            attr.setLogItem(item);
+            attr.setName(name);
+            attr.setValue(properties.getProperty(name));
+            attr.setValueId(properties.getProperty(name + VALUE_ID_SUFFIX));
+            attr.setOldValue(properties.getProperty(name + OLD_VALUE_SUFFIX));
+            attr.setOldValueId(properties.getProperty(name + OLD_VALUE_ID_SUFFIX));
+            attr.setMessagesPack(properties.getProperty(name + MP_SUFFIX));
+
+            attributes.add(attr);
+        }
+        return attributes;
+    }
+}
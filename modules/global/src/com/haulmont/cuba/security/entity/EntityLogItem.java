@@ -21,7 +21,6 @@ import com.haulmont.chile.core.datatypes.impl.EnumClass;
 import com.haulmont.cuba.core.entity.BaseUuidEntity;
 import com.haulmont.cuba.core.entity.ReferenceToEntity;
 import com.haulmont.cuba.core.entity.annotation.EmbeddedParameters;
-import com.haulmont.cuba.core.entity.annotation.Listeners;
 import com.haulmont.cuba.core.entity.annotation.SystemLevel;
 import com.haulmont.cuba.core.global.AppBeans;
 import com.haulmont.cuba.core.global.Metadata;
@@ -38,7 +37,6 @@ import java.util.UUID;
  */
 @Entity(name = "sec$EntityLog")
 @Table(name = "SEC_ENTITY_LOG")
-@Listeners("cuba_EntityLogItemDetachListener")
 @SystemLevel
 public class EntityLogItem extends BaseUuidEntity {
 
@@ -137,7 +135,14 @@ public class EntityLogItem extends BaseUuidEntity {
         this.user = user;
     }
 
+    /**
+     * @return changed attributes. If the item is loaded from the database, they are decoded from
+     * {@link #getChanges()} on first access.
+     */
     public Set<EntityLogAttr> getAttributes() {
+        if (attributes == null && changes != null) {
+            attributes = EntityLogChangesFormat.decode(this, changes);
+        }
         return attributes;
     }
 
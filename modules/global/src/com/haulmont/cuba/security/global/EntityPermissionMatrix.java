@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.security.global;
+
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.chile.core.model.MetaProperty;
+import com.haulmont.cuba.security.entity.EntityAttrAccess;
+import com.haulmont.cuba.security.entity.EntityOp;
+import com.haulmont.cuba.security.entity.Permission;
+import com.haulmont.cuba.security.entity.PermissionType;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Entity operation and attribute permissions of a {@link UserSession} compiled for each meta-class on first check.
+ * Subsequent checks do not build permission targets and do not allocate memory.
+ * <p>
+ * An instance is bound to a particular permissions array of the session and must be replaced when the permissions
+ * are modified.
+ */
+class EntityPermissionMatrix {
+
+    private static final EntityOp[] ENTITY_OPS = EntityOp.values();
+
+    private static final EntityAttrAccess[] ATTR_ACCESS_DESC = {EntityAttrAccess.MODIFY, EntityAttrAccess.VIEW};
+
+    protected static class Entry {
+
+        protected final boolean[] ops;
+
+        /**
+         * Maximum permitted {@link EntityAttrAccess} id by property name.
+         */
+        protected final Map<String, Integer> attrAccess;
+
+        protected Entry(boolean[] ops, Map<String, Integer> attrAccess) {
+            this.ops = ops;
+            this.attrAccess = attrAccess;
+        }
+    }
+
+    protected final Map<String, Integer>[] permissions;
+
+    protected final Map<MetaClass, Entry> entries = new ConcurrentHashMap<>();
+
+    EntityPermissionMatrix(Map<String, Integer>[] permissions) {
+        this.permissions = permissions;
+    }
+
+    boolean isEntityOpPermitted(UserSession session, MetaClass metaClass, EntityOp entityOp) {
+        return getEntry(session, metaClass).ops[entityOp.ordinal()];
+    }
+
+    /**
+     * @return true if permitted, false if denied, null if the property is unknown and must be checked by the target
+     */
+    Boolean isEntityAttrPermitted(UserSession session, MetaClass metaClass, String property, EntityAttrAccess access) {
+        Integer maxAccess = getEntry(session, metaClass).attrAccess.get(property);
+        if (maxAccess == null) {
+            return null;
+        }
+        return access.getId() <= maxAccess ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    protected Entry getEntry(UserSession session, MetaClass metaClass) {
+        Entry entry = entries.get(metaClass);
+        if (entry == null) {
+            entry = compile(session, metaClass);
+            entries.put(metaClass, entry);
+        }
+        return entry;
+    }
+
+    protected Entry compile(UserSession session, MetaClass metaClass) {
+        String prefix = metaClass.getName() + Permission.TARGET_PATH_DELIMETER;
+
+        boolean[] ops = new boolean[ENTITY_OPS.length];
+        for (EntityOp entityOp : ENTITY_OPS) {
+            ops[entityOp.ordinal()] = session.isPermitted(PermissionType.ENTITY_OP, prefix + entityOp.getId());
+        }
+
+        Map<String, Integer> attrAccess = new HashMap<>();
+        for (MetaProperty property : metaClass.getProperties()) {
+            String target = prefix + property.getName();
+            int maxAccess = EntityAttrAccess.DENY.getId();
+            for (EntityAttrAccess access : ATTR_ACCESS_DESC) {
+                if (session.isPermitted(PermissionType.ENTITY_ATTR, target, access.getId())) {
+                    maxAccess = access.getId();
+                    break;
+                }
+            }
+            attrAccess.put(property.getName(), maxAccess);
+        }
+        return new Entry(ops, attrAccess);
+    }
+}
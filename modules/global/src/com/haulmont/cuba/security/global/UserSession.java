@@ -19,6 +19,7 @@ package com.haulmont.cuba.security.global;
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.cuba.core.sys.UserInvocationContext;
 import com.haulmont.cuba.security.entity.*;
+import org.apache.commons.codec.digest.DigestUtils;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
@@ -54,6 +55,14 @@ public class UserSession implements Serializable {
     protected Map<String, Integer>[] permissions;
     protected Map<String, List<ConstraintData>> constraints;
 
+    protected String permissionsKey;
+    protected String constraintsKey;
+
+    protected String permissionsHash;
+    protected String constraintsHash;
+
+    protected transient volatile EntityPermissionMatrix entityPermissionMatrix;
+
     protected Map<String, Serializable> attributes;
 
     protected transient Map<String, Object> localAttributes;
@@ -117,6 +126,11 @@ public class UserSession implements Serializable {
         timeZone = src.timeZone;
         permissions = src.permissions;
         constraints = src.constraints;
+        permissionsKey = src.permissionsKey;
+        constraintsKey = src.constraintsKey;
+        permissionsHash = src.permissionsHash;
+        constraintsHash = src.constraintsHash;
+        entityPermissionMatrix = src.entityPermissionMatrix;
         attributes = src.attributes;
         roleTypes = src.roleTypes;
         localAttributes = src.localAttributes;
@@ -255,15 +269,232 @@ public class UserSession implements Serializable {
         this.clientInfo = clientInfo;
     }
 
+    /**
+     * INTERNAL.
+     * Makes this session use the permissions of the source session. The permissions are shared by all sessions
+     * having the same key, so they are copied on first modification.
+     *
+     * @param key    key of the shared permissions, e.g. a combination of roles
+     * @param source session holding the compiled permissions
+     */
+    public void setSharedPermissions(String key, UserSession source) {
+        permissionsKey = key;
+        permissions = source.permissions;
+        permissionsHash = source.permissionsHash;
+        entityPermissionMatrix = source.getEntityPermissionMatrix();
+    }
+
+    /**
+     * INTERNAL.
+     * Makes this session use the constraints of the source session. The constraints are shared by all sessions
+     * having the same key, so they are copied on first modification.
+     *
+     * @param key    key of the shared constraints, e.g. a group
+     * @param source session holding the compiled constraints
+     */
+    public void setSharedConstraints(String key, UserSession source) {
+        constraintsKey = key;
+        constraints = source.constraints;
+        constraintsHash = source.constraintsHash;
+    }
+
+    /**
+     * INTERNAL.
+     * @return key of the shared permissions or null if the session has its own permissions
+     */
+    @Nullable
+    public String getPermissionsKey() {
+        return permissionsKey;
+    }
+
+    /**
+     * INTERNAL.
+     * @return key of the shared constraints or null if the session has its own constraints
+     */
+    @Nullable
+    public String getConstraintsKey() {
+        return constraintsKey;
+    }
+
+    /**
+     * INTERNAL.
+     * @return hash of the permissions content, equal on all servers of the cluster for equal permissions
+     */
+    public String getPermissionsHash() {
+        String hash = permissionsHash;
+        if (hash == null) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < permissions.length; i++) {
+                appendToHash(sb, permissions[i].size());
+                for (Map.Entry<String, Integer> entry : new TreeMap<>(permissions[i]).entrySet()) {
+                    appendToHash(sb, entry.getKey());
+                    appendToHash(sb, entry.getValue());
+                }
+            }
+            hash = DigestUtils.sha256Hex(sb.toString());
+            permissionsHash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * INTERNAL.
+     * @return hash of the constraints content, equal on all servers of the cluster for equal constraints
+     */
+    public String getConstraintsHash() {
+        String hash = constraintsHash;
+        if (hash == null) {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, List<ConstraintData>> entry : new TreeMap<>(constraints).entrySet()) {
+                appendToHash(sb, entry.getKey());
+                appendToHash(sb, entry.getValue().size());
+                for (ConstraintData constraint : entry.getValue()) {
+                    appendToHash(sb, constraint.getId());
+                    appendToHash(sb, constraint.getCode());
+                    appendToHash(sb, constraint.getOperationType());
+                    appendToHash(sb, constraint.getCheckType());
+                    appendToHash(sb, constraint.getJoin());
+                    appendToHash(sb, constraint.getWhereClause());
+                    appendToHash(sb, constraint.getGroovyScript());
+                }
+            }
+            hash = DigestUtils.sha256Hex(sb.toString());
+            constraintsHash = hash;
+        }
+        return hash;
+    }
+
+    protected void appendToHash(StringBuilder sb, @Nullable Object value) {
+        if (value == null) {
+            sb.append("-;");
+        } else {
+            String str = value.toString();
+            sb.append(str.length()).append(':').append(str);
+        }
+    }
+
+    /**
+     * INTERNAL.
+     * Creates a copy of the session to send to other servers of the cluster. Shared permissions and constraints
+     * are replaced by their hashes: the receiver uses its own equal ones or requests the full session.
+     *
+     * @see #isSharedDataOmitted()
+     */
+    public UserSession copyWithoutSharedData() {
+        UserSession copy = new UserSession(this);
+        if (permissionsKey != null) {
+            copy.permissionsHash = getPermissionsHash();
+            copy.permissions = null;
+            copy.entityPermissionMatrix = null;
+        }
+        if (constraintsKey != null) {
+            copy.constraintsHash = getConstraintsHash();
+            copy.constraints = null;
+        }
+        return copy;
+    }
+
+    /**
+     * INTERNAL.
+     * @return true if the session has been created by {@link #copyWithoutSharedData()} and has not got
+     * the permissions or constraints yet, so it cannot be used
+     */
+    public boolean isSharedDataOmitted() {
+        return permissions == null || constraints == null;
+    }
+
+    /**
+     * INTERNAL.
+     * Makes this session use the permissions of the source session if they have the same key and are equal,
+     * e.g. when the session is received from another server of the cluster with its own copy of the permissions
+     * or with the hash of them only.
+     *
+     * @return true if the session uses the permissions of the source session
+     */
+    public boolean shareEqualPermissions(UserSession source) {
+        if (source.permissions == null) {
+            return false;
+        }
+        if (permissions == source.permissions) {
+            return true;
+        }
+        if (permissionsKey != null && permissionsKey.equals(source.permissionsKey)
+                && (permissions != null ? Arrays.equals(permissions, source.permissions)
+                        : permissionsHash.equals(source.getPermissionsHash()))) {
+            setSharedPermissions(permissionsKey, source);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * INTERNAL.
+     * Makes this session use the constraints of the source session if they have the same key and are equal,
+     * e.g. when the session is received from another server of the cluster with its own copy of the constraints
+     * or with the hash of them only.
+     *
+     * @return true if the session uses the constraints of the source session
+     */
+    public boolean shareEqualConstraints(UserSession source) {
+        if (source.constraints == null) {
+            return false;
+        }
+        if (constraints == source.constraints) {
+            return true;
+        }
+        if (constraintsKey != null && constraintsKey.equals(source.constraintsKey)
+                && (constraints != null ? constraints.equals(source.constraints)
+                        : constraintsHash.equals(source.getConstraintsHash()))) {
+            setSharedConstraints(constraintsKey, source);
+            return true;
+        }
+        return false;
+    }
+
+    protected void ensureOwnPermissions() {
+        // called before each modification, so the hash is computed again
+        permissionsHash = null;
+        if (permissionsKey != null) {
+            //noinspection unchecked
+            Map<String, Integer>[] copy = new Map[permissions.length];
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = new HashMap<>(permissions[i]);
+            }
+            permissions = copy;
+            permissionsKey = null;
+        }
+    }
+
+    protected EntityPermissionMatrix getEntityPermissionMatrix() {
+        EntityPermissionMatrix matrix = entityPermissionMatrix;
+        if (matrix == null || matrix.permissions != permissions) {
+            matrix = new EntityPermissionMatrix(permissions);
+            entityPermissionMatrix = matrix;
+        }
+        return matrix;
+    }
+
+    protected void ensureOwnConstraints() {
+        constraintsHash = null;
+        if (constraintsKey != null) {
+            Map<String, List<ConstraintData>> copy = new HashMap<>();
+            constraints.forEach((entityName, list) -> copy.put(entityName, new ArrayList<>(list)));
+            constraints = copy;
+            constraintsKey = null;
+        }
+    }
+
     /**
      * INTERNAL
      */
     public void addPermission(PermissionType type, String target, @Nullable String extTarget, int value) {
+        ensureOwnPermissions();
         Integer currentValue = permissions[type.ordinal()].get(target);
         if (currentValue == null || currentValue < value) {
             permissions[type.ordinal()].put(target, value);
             if (extTarget != null)
                 permissions[type.ordinal()].put(extTarget, value);
+            entityPermissionMatrix = null;
         }
     }
 
@@ -271,7 +502,9 @@ public class UserSession implements Serializable {
      * INTERNAL
      */
     public void removePermission(PermissionType type, String target) {
+        ensureOwnPermissions();
         permissions[type.ordinal()].remove(target);
+        entityPermissionMatrix = null;
     }
 
     /**
@@ -299,14 +532,21 @@ public class UserSession implements Serializable {
      * Check user permission for the entity operation
      */
     public boolean isEntityOpPermitted(MetaClass metaClass, EntityOp entityOp) {
-        return isPermitted(PermissionType.ENTITY_OP,
-                metaClass.getName() + Permission.TARGET_PATH_DELIMETER + entityOp.getId());
+        if (roleTypes.contains(RoleType.SUPER))
+            return true;
+        return getEntityPermissionMatrix().isEntityOpPermitted(this, metaClass, entityOp);
     }
 
     /**
      * Check user permission for the entity attribute
      */
     public boolean isEntityAttrPermitted(MetaClass metaClass, String property, EntityAttrAccess access) {
+        if (roleTypes.contains(RoleType.SUPER))
+            return true;
+        Boolean permitted = getEntityPermissionMatrix().isEntityAttrPermitted(this, metaClass, property, access);
+        if (permitted != null) {
+            return permitted;
+        }
         return isPermitted(PermissionType.ENTITY_ATTR,
                 metaClass.getName() + Permission.TARGET_PATH_DELIMETER + property,
                 access.getId());
@@ -373,6 +613,7 @@ public class UserSession implements Serializable {
      * INTERNAL
      */
     public void addConstraint(Constraint constraint) {
+        ensureOwnConstraints();
         String entityName = constraint.getEntityName();
         List<ConstraintData> list = constraints.computeIfAbsent(entityName, k -> new ArrayList<>());
         list.add(new ConstraintData(constraint));
@@ -382,6 +623,7 @@ public class UserSession implements Serializable {
      * INTERNAL
      */
     public void removeConstraint(Constraint constraintToRemove) {
+        ensureOwnConstraints();
         String entityName = constraintToRemove.getEntityName();
         List<ConstraintData> constraintDataList = this.constraints.get(entityName);
         if (constraintDataList != null && !constraintDataList.isEmpty()) {
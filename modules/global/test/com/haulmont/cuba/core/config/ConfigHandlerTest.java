@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.core.config;
+
+import com.haulmont.cuba.core.config.defaults.DefaultInt;
+import com.haulmont.cuba.core.config.type.Factory;
+import com.haulmont.cuba.core.config.type.StringListTypeFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ConfigHandlerTest {
+
+    @Source(type = SourceType.APP)
+    public interface CachedConfig extends Config {
+
+        @Property("cuba.test.cachedIntProp")
+        @DefaultInt(5)
+        int getIntProp();
+
+        @Property("cuba.test.cachedStringProp")
+        String getStringProp();
+
+        @Property("cuba.test.cachedListProp")
+        @Factory(factory = StringListTypeFactory.class)
+        List<String> getListProp();
+
+        @Property("cuba.test.cachedSystemProp")
+        @Source(type = SourceType.SYSTEM)
+        String getSystemProp();
+    }
+
+    private static class TestPersister implements ConfigPersister {
+
+        private Map<String, String> properties = new HashMap<>();
+        private int readCount;
+
+        @Override
+        public String getProperty(SourceType sourceType, String name) {
+            readCount++;
+            return sourceType == SourceType.SYSTEM ? System.getProperty(name) : properties.get(name);
+        }
+
+        @Override
+        public void setProperty(SourceType sourceType, String name, String value) {
+            properties.put(name, value);
+            ConfigHandler.invalidateCachedValues();
+        }
+
+        @Override
+        public boolean isCacheable(SourceType sourceType) {
+            return sourceType == SourceType.APP;
+        }
+    }
+
+    private TestPersister persister;
+    private CachedConfig config;
+
+    @Before
+    public void setUp() throws Exception {
+        persister = new TestPersister();
+        ConfigHandler handler = new ConfigHandler(persister, CachedConfig.class);
+        config = (CachedConfig) Proxy.newProxyInstance(CachedConfig.class.getClassLoader(),
+                new Class[]{CachedConfig.class}, handler);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        System.clearProperty("cuba.test.cachedStringProp");
+        System.clearProperty("cuba.test.cachedSystemProp");
+    }
+
+    @Test
+    public void testValuesAreCached() throws Exception {
+        assertEquals(5, config.getIntProp());
+        assertEquals(5, config.getIntProp());
+        assertNull(config.getStringProp());
+        assertNull(config.getStringProp());
+        assertEquals(2, persister.readCount);
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        assertEquals(5, config.getIntProp());
+
+        persister.setProperty(SourceType.APP, "cuba.test.cachedIntProp", "10");
+        assertEquals(10, config.getIntProp());
+
+        persister.properties.put("cuba.test.cachedIntProp", "20");
+        assertEquals(10, config.getIntProp());
+
+        ConfigHandler.invalidateCachedValues();
+        assertEquals(20, config.getIntProp());
+    }
+
+    @Test
+    public void testSystemPropertyChange() throws Exception {
+        persister.properties.put("cuba.test.cachedStringProp", "app_value");
+        assertEquals("app_value", config.getStringProp());
+
+        System.setProperty("cuba.test.cachedStringProp", "system_value");
+        persister.properties.put("cuba.test.cachedStringProp", "system_value");
+        assertEquals("system_value", config.getStringProp());
+    }
+
+    @Test
+    public void testNotCacheableValues() throws Exception {
+        persister.properties.put("cuba.test.cachedListProp", "a|b");
+        assertEquals(2, config.getListProp().size());
+        assertEquals(2, config.getListProp().size());
+        assertEquals(2, persister.readCount);
+
+        System.setProperty("cuba.test.cachedSystemProp", "value");
+        assertEquals("value", config.getSystemProp());
+        assertEquals("value", config.getSystemProp());
+        assertEquals(4, persister.readCount);
+    }
+}
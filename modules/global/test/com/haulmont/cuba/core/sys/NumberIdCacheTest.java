@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class NumberIdCacheTest {
+
+    private static final int CACHE_SIZE = 10;
+
+    private NumberIdCache cache;
+    private AtomicLong sequence;
+    private NumberIdSequence numberIdSequence;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new NumberIdCache();
+        cache.cacheSize = CACHE_SIZE;
+        cache.prefetchThreshold = 3;
+
+        sequence = new AtomicLong();
+        // emulates a database sequence incremented by the cache size
+        numberIdSequence = entityName -> sequence.getAndAdd(CACHE_SIZE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.shutdown();
+    }
+
+    @Test
+    public void testSequential() throws Exception {
+        for (long i = 1; i <= 35; i++) {
+            assertEquals(i, (long) cache.createLongId("test$Entity", numberIdSequence));
+        }
+
+        NumberIdCache.Statistics statistics = cache.getStatistics().get("test$Entity");
+        assertEquals(35, statistics.getAllocatedCount());
+        assertEquals(statistics.getFetchCount(), statistics.getPrefetchCount() + 1);
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        int threadCount = 8;
+        int idsPerThread = 1000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<List<Long>>> futures = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executor.submit(() -> {
+                    List<Long> ids = new ArrayList<>();
+                    for (int j = 0; j < idsPerThread; j++) {
+                        ids.add(cache.createLongId("test$Entity", numberIdSequence));
+                    }
+                    return ids;
+                }));
+            }
+
+            Set<Long> allIds = new HashSet<>();
+            for (Future<List<Long>> future : futures) {
+                allIds.addAll(future.get());
+            }
+            assertEquals(threadCount * idsPerThread, allIds.size());
+        } finally {
+            executor.shutdown();
+        }
+
+        NumberIdCache.Statistics statistics = cache.getStatistics().get("test$Entity");
+        assertEquals(threadCount * idsPerThread, statistics.getAllocatedCount());
+        assertTrue(statistics.getFetchCount() >= threadCount * idsPerThread / CACHE_SIZE);
+    }
+
+    @Test
+    public void testPrefetchDisabled() throws Exception {
+        cache.prefetchThreshold = 0;
+
+        for (long i = 1; i <= 25; i++) {
+            assertEquals(i, (long) cache.createLongId("test$Entity", numberIdSequence));
+        }
+
+        NumberIdCache.Statistics statistics = cache.getStatistics().get("test$Entity");
+        assertEquals(0, statistics.getPrefetchCount());
+        assertEquals(3, statistics.getBlockingFetchCount());
+    }
+}
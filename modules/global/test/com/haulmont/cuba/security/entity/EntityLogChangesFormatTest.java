@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2008-2016 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.haulmont.cuba.security.entity;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class EntityLogChangesFormatTest extends TestCase {
+
+    public void testCompactRoundTrip() {
+        EntityLogAttr name = createAttr("name", "new name", null, "old name", null, null);
+        EntityLogAttr group = createAttr("group", "Company", "0fa2b1a5-1d68-4d69-9fbd-dff348347f93",
+                null, null, "com.haulmont.cuba.security.entity");
+        EntityLogAttr type = createAttr("type", "A", null, "B", null, "com.haulmont.cuba.security.entity");
+
+        String changes = EntityLogChangesFormat.encodeCompact(Arrays.asList(name, group, type));
+        assertTrue(EntityLogChangesFormat.isCompact(changes));
+        assertEquals(1, changes.split("com.haulmont.cuba.security.entity", -1).length - 1);
+
+        List<EntityLogAttr> attributes = new ArrayList<>(EntityLogChangesFormat.decode(null, changes));
+        assertEquals(3, attributes.size());
+        assertAttr(attributes.get(0), group);
+        assertAttr(attributes.get(1), name);
+        assertAttr(attributes.get(2), type);
+    }
+
+    public void testLegacyFormat() {
+        String changes = "name=new name\n" +
+                "name-oldVl=old name\n" +
+                "group=Company\n" +
+                "group-id=0fa2b1a5-1d68-4d69-9fbd-dff348347f93\n" +
+                "group-mp=com.haulmont.cuba.security.entity\n";
+        assertFalse(EntityLogChangesFormat.isCompact(changes));
+
+        List<EntityLogAttr> attributes = new ArrayList<>(EntityLogChangesFormat.decode(null, changes));
+        assertEquals(2, attributes.size());
+        assertAttr(attributes.get(0), createAttr("group", "Company", "0fa2b1a5-1d68-4d69-9fbd-dff348347f93",
+                null, null, "com.haulmont.cuba.security.entity"));
+        assertAttr(attributes.get(1), createAttr("name", "new name", null, "old name", null, null));
+    }
+
+    public void testEmpty() {
+        assertTrue(EntityLogChangesFormat.decode(null, null).isEmpty());
+        assertTrue(EntityLogChangesFormat.decode(null, "").isEmpty());
+    }
+
+    private EntityLogAttr createAttr(String name, String value, String valueId, String oldValue, String oldValueId,
+                                     String messagesPack) {
+        EntityLogAttr attr = new EntityLogAttr();
+        attr.setName(name);
+        attr.setValue(value);
+        attr.setValueId(valueId);
+        attr.setOldValue(oldValue);
+        attr.setOldValueId(oldValueId);
+        attr.setMessagesPack(messagesPack);
+        return attr;
+    }
+
+    private void assertAttr(EntityLogAttr actual, EntityLogAttr expected) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getValue(), actual.getValue());
+        assertEquals(expected.getValueId(), actual.getValueId());
+        assertEquals(expected.getOldValue(), actual.getOldValue());
+        assertEquals(expected.getOldValueId(), actual.getOldValueId());
+        assertEquals(expected.getMessagesPack(), actual.getMessagesPack());
+    }
+}
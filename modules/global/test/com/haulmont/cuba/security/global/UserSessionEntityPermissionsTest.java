@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.security.global;
+
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.chile.core.model.impl.MetaClassImpl;
+import com.haulmont.chile.core.model.impl.MetaModelImpl;
+import com.haulmont.chile.core.model.impl.MetaPropertyImpl;
+import com.haulmont.chile.core.model.impl.SessionImpl;
+import com.haulmont.cuba.security.entity.EntityAttrAccess;
+import com.haulmont.cuba.security.entity.EntityOp;
+import com.haulmont.cuba.security.entity.PermissionType;
+import com.haulmont.cuba.security.entity.User;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class UserSessionEntityPermissionsTest {
+
+    private MetaClass metaClass;
+
+    @Before
+    public void setUp() throws Exception {
+        MetaModelImpl model = new MetaModelImpl(new SessionImpl(), "test");
+        MetaClassImpl metaClass = new MetaClassImpl(model, "test$Order");
+        new MetaPropertyImpl(metaClass, "number");
+        new MetaPropertyImpl(metaClass, "amount");
+        new MetaPropertyImpl(metaClass, "customer");
+        this.metaClass = metaClass;
+    }
+
+    @Test
+    public void testEntityOp() throws Exception {
+        UserSession session = createSession();
+        session.addPermission(PermissionType.ENTITY_OP, "test$Order:delete", null, 0);
+
+        assertTrue(session.isEntityOpPermitted(metaClass, EntityOp.READ));
+        assertFalse(session.isEntityOpPermitted(metaClass, EntityOp.DELETE));
+
+        session.removePermission(PermissionType.ENTITY_OP, "test$Order:delete");
+        assertTrue(session.isEntityOpPermitted(metaClass, EntityOp.DELETE));
+
+        session.addPermission(PermissionType.ENTITY_OP, "test$Order:read", null, 0);
+        assertFalse(session.isEntityOpPermitted(metaClass, EntityOp.READ));
+    }
+
+    @Test
+    public void testEntityAttr() throws Exception {
+        UserSession session = createSession();
+        session.addPermission(PermissionType.ENTITY_ATTR, "test$Order:amount", null, EntityAttrAccess.VIEW.getId());
+        session.addPermission(PermissionType.ENTITY_ATTR, "test$Order:customer", null, EntityAttrAccess.DENY.getId());
+
+        assertTrue(session.isEntityAttrPermitted(metaClass, "number", EntityAttrAccess.MODIFY));
+
+        assertTrue(session.isEntityAttrPermitted(metaClass, "amount", EntityAttrAccess.VIEW));
+        assertFalse(session.isEntityAttrPermitted(metaClass, "amount", EntityAttrAccess.MODIFY));
+
+        assertTrue(session.isEntityAttrPermitted(metaClass, "customer", EntityAttrAccess.DENY));
+        assertFalse(session.isEntityAttrPermitted(metaClass, "customer", EntityAttrAccess.VIEW));
+
+        // unknown properties are checked by the permission target
+        session.addPermission(PermissionType.ENTITY_ATTR, "test$Order:+attr", null, EntityAttrAccess.VIEW.getId());
+        assertTrue(session.isEntityAttrPermitted(metaClass, "+attr", EntityAttrAccess.VIEW));
+        assertFalse(session.isEntityAttrPermitted(metaClass, "+attr", EntityAttrAccess.MODIFY));
+    }
+
+    @Test
+    public void testSharedPermissions() throws Exception {
+        UserSession holder = createSession();
+        holder.addPermission(PermissionType.ENTITY_OP, "test$Order:update", null, 0);
+        assertFalse(holder.isEntityOpPermitted(metaClass, EntityOp.UPDATE));
+
+        UserSession session = createSession();
+        session.setSharedPermissions("role1", holder);
+        assertFalse(session.isEntityOpPermitted(metaClass, EntityOp.UPDATE));
+
+        session.removePermission(PermissionType.ENTITY_OP, "test$Order:update");
+        assertTrue(session.isEntityOpPermitted(metaClass, EntityOp.UPDATE));
+        assertFalse(holder.isEntityOpPermitted(metaClass, EntityOp.UPDATE));
+    }
+
+    private UserSession createSession() {
+        return new UserSession(UUID.randomUUID(), new User(), Collections.emptyList(), Locale.ENGLISH, false);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.security.global;
+
+import com.haulmont.cuba.security.entity.Constraint;
+import com.haulmont.cuba.security.entity.ConstraintCheckType;
+import com.haulmont.cuba.security.entity.ConstraintOperationType;
+import com.haulmont.cuba.security.entity.PermissionType;
+import com.haulmont.cuba.security.entity.User;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class UserSessionSharedPermissionsTest {
+
+    @Test
+    public void testCopyOnWrite() throws Exception {
+        UserSession holder = createSession();
+        holder.addPermission(PermissionType.SCREEN, "sec$User.browse", null, 0);
+
+        UserSession session1 = createSession();
+        session1.setSharedPermissions("role1", holder);
+        UserSession session2 = createSession();
+        session2.setSharedPermissions("role1", holder);
+
+        assertFalse(session1.isScreenPermitted("sec$User.browse"));
+        assertFalse(session2.isScreenPermitted("sec$User.browse"));
+
+        session1.addPermission(PermissionType.SCREEN, "sec$User.browse", null, 1);
+        assertNull(session1.getPermissionsKey());
+        assertTrue(session1.isScreenPermitted("sec$User.browse"));
+
+        assertEquals("role1", session2.getPermissionsKey());
+        assertFalse(session2.isScreenPermitted("sec$User.browse"));
+        assertFalse(holder.isScreenPermitted("sec$User.browse"));
+    }
+
+    @Test
+    public void testShareEqualPermissions() throws Exception {
+        UserSession holder = createSession();
+        holder.addPermission(PermissionType.SCREEN, "sec$User.browse", null, 0);
+        holder.setSharedPermissions("role1", holder);
+
+        UserSession sender = createSession();
+        sender.setSharedPermissions("role1", holder);
+
+        // the received session has its own copy of the permissions granted by the sender
+        UserSession received = createSession();
+        received.addPermission(PermissionType.SCREEN, "sec$User.browse", null, 0);
+        received.setSharedPermissions("role1", received);
+        assertTrue(received.shareEqualPermissions(holder));
+        assertEquals("role1", received.getPermissionsKey());
+
+        UserSession changed = createSession();
+        changed.addPermission(PermissionType.SCREEN, "sec$User.browse", null, 1);
+        changed.setSharedPermissions("role1", changed);
+        assertFalse(changed.shareEqualPermissions(holder));
+        assertTrue(changed.isScreenPermitted("sec$User.browse"));
+
+        UserSession otherKey = createSession();
+        otherKey.addPermission(PermissionType.SCREEN, "sec$User.browse", null, 0);
+        otherKey.setSharedPermissions("role2", otherKey);
+        assertFalse(otherKey.shareEqualPermissions(sender));
+    }
+
+    @Test
+    public void testShareEqualPermissionsByHash() throws Exception {
+        UserSession holder = createSession();
+        holder.addPermission(PermissionType.SCREEN, "sec$User.browse", null, 0);
+        holder.setSharedPermissions("role1", holder);
+
+        UserSession sender = createSession();
+        sender.setSharedPermissions("role1", holder);
+
+        UserSession received = sender.copyWithoutSharedData();
+        assertTrue(received.isSharedDataOmitted());
+        assertFalse(sender.isSharedDataOmitted());
+        assertEquals("role1", received.getPermissionsKey());
+        assertEquals(holder.getPermissionsHash(), received.getPermissionsHash());
+
+        // the receiving server has compiled equal permissions
+        UserSession equalHolder = createSession();
+        equalHolder.addPermission(PermissionType.SCREEN, "sec$User.browse", null, 0);
+        equalHolder.setSharedPermissions("role1", equalHolder);
+
+        assertTrue(received.shareEqualPermissions(equalHolder));
+        assertFalse(received.isSharedDataOmitted());
+        assertFalse(received.isScreenPermitted("sec$User.browse"));
+
+        // the receiving server has compiled different permissions
+        UserSession changedHolder = createSession();
+        changedHolder.addPermission(PermissionType.SCREEN, "sec$User.browse", null, 1);
+        changedHolder.setSharedPermissions("role1", changedHolder);
+
+        UserSession receivedAgain = sender.copyWithoutSharedData();
+        assertFalse(receivedAgain.shareEqualPermissions(changedHolder));
+        assertTrue(receivedAgain.isSharedDataOmitted());
+
+        // a session without the permissions cannot be a source
+        assertFalse(changedHolder.shareEqualPermissions(receivedAgain));
+    }
+
+    @Test
+    public void testShareEqualConstraintsByHash() throws Exception {
+        Constraint constraint = createConstraint("{E}.login <> 'admin'");
+
+        UserSession holder = createSession();
+        holder.addConstraint(constraint);
+        holder.setSharedConstraints("group1", holder);
+
+        UserSession sender = createSession();
+        sender.setSharedConstraints("group1", holder);
+
+        UserSession equalHolder = createSession();
+        equalHolder.addConstraint(constraint);
+        equalHolder.setSharedConstraints("group1", equalHolder);
+
+        UserSession received = sender.copyWithoutSharedData();
+        assertTrue(received.isSharedDataOmitted());
+        assertTrue(received.shareEqualConstraints(equalHolder));
+        assertFalse(received.isSharedDataOmitted());
+        assertTrue(received.hasConstraints("sec$User"));
+
+        Constraint changedConstraint = createConstraint("{E}.login <> 'anonymous'");
+        changedConstraint.setId(constraint.getId());
+
+        UserSession changedHolder = createSession();
+        changedHolder.addConstraint(changedConstraint);
+        changedHolder.setSharedConstraints("group1", changedHolder);
+
+        UserSession receivedAgain = sender.copyWithoutSharedData();
+        assertFalse(receivedAgain.shareEqualConstraints(changedHolder));
+        assertTrue(receivedAgain.isSharedDataOmitted());
+    }
+
+    @Test
+    public void testHashOfModifiedPermissions() throws Exception {
+        UserSession session1 = createSession();
+        session1.addPermission(PermissionType.SCREEN, "sec$User.browse", null, 0);
+        session1.addPermission(PermissionType.ENTITY_OP, "sec$User:read", null, 1);
+
+        // the hash does not depend on the order of adding
+        UserSession session2 = createSession();
+        session2.addPermission(PermissionType.ENTITY_OP, "sec$User:read", null, 1);
+        session2.addPermission(PermissionType.SCREEN, "sec$User.browse", null, 0);
+
+        String hash = session1.getPermissionsHash();
+        assertEquals(hash, session2.getPermissionsHash());
+
+        session1.removePermission(PermissionType.SCREEN, "sec$User.browse");
+        assertNotEquals(hash, session1.getPermissionsHash());
+    }
+
+    private Constraint createConstraint(String whereClause) {
+        Constraint constraint = new Constraint();
+        constraint.setEntityName("sec$User");
+        constraint.setOperationType(ConstraintOperationType.READ);
+        constraint.setCheckType(ConstraintCheckType.DATABASE);
+        constraint.setWhereClause(whereClause);
+        return constraint;
+    }
+
+    private UserSession createSession() {
+        return new UserSession(UUID.randomUUID(), new User(), Collections.emptyList(), Locale.ENGLISH, false);
+    }
+}
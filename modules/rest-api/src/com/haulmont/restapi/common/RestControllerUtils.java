@@ -25,10 +25,14 @@ import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.entity.SecurityState;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.restapi.config.RestJsonTransformations;
+import com.haulmont.restapi.data.JsonResponse;
 import com.haulmont.restapi.exception.RestAPIException;
 import com.haulmont.restapi.transform.JsonTransformationDirection;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.inject.Inject;
 import java.util.Arrays;
@@ -99,6 +103,27 @@ public class RestControllerUtils {
             restJsonTransformations.getTransformer(entityName, modelVersion, direction).transformJson(json);
     }
 
+    /**
+     * Creates a response entity with the JSON body and the ETag header. If the request has the If-None-Match header
+     * matching the ETag, a "304 Not Modified" response without body is returned, and the JSON is not built.
+     */
+    public ResponseEntity<String> toResponseEntity(JsonResponse response, WebRequest request) {
+        String eTag = response.getETag();
+        if (eTag == null) {
+            return ResponseEntity.ok(response.getJson());
+        }
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .cacheControl(CacheControl.noCache())
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache())
+                .body(response.getJson());
+    }
+
     private class FillingInaccessibleAttributesVisitor implements EntityAttributeVisitor {
 
         @Override
@@ -117,6 +117,26 @@ public class RestParseUtils {
         return deserialize(value, clazz);
     }
 
+    /**
+     * Returns the class of the datatype that parses parameter values of the given type. Integer datatype is used for
+     * byte and short values, Double datatype is used for float values.
+     *
+     * @param clazz parameter type
+     * @return datatype class or null if values of the given type are not parsed by a single datatype
+     */
+    @Nullable
+    public Class<?> getParamDatatypeClass(Class<?> clazz) {
+        if (Integer.class == clazz || Integer.TYPE == clazz
+                || Byte.class == clazz || Byte.TYPE == clazz
+                || Short.class == clazz || Short.TYPE == clazz) return Integer.class;
+        if (BigDecimal.class == clazz) return BigDecimal.class;
+        if (Boolean.class == clazz || Boolean.TYPE == clazz) return Boolean.class;
+        if (Long.class == clazz || Long.TYPE == clazz) return Long.class;
+        if (Double.class == clazz || Double.TYPE == clazz
+                || Float.class == clazz || Float.TYPE == clazz) return Double.class;
+        return null;
+    }
+
     public Object deserialize(String json, Class clazz) {
         return entitySerializationAPI.objectFromJson(json, clazz);
     }
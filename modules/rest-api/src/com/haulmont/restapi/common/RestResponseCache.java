@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.restapi.common;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.haulmont.cuba.core.global.UserSessionSource;
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.events.MessagesCacheClearedEvent;
+import com.haulmont.cuba.core.sys.events.ViewRepositoryReloadedEvent;
+import com.haulmont.restapi.config.RestApiConfig;
+import com.haulmont.restapi.data.JsonResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+/**
+ * Cache of serialized REST API responses that depend only on the application metadata, messages and the user
+ * locale: entities metadata, views, enums and localized messages. Cached responses have an ETag computed from the
+ * JSON, so clients can use conditional requests.
+ * <p>
+ * The number of cached responses is limited by {@link RestApiConfig#getResponseCacheMaxSize()}. The cache is cleared
+ * when the messages cache is cleared or the views are reloaded, see
+ * {@link MessagesCacheClearedEvent} and {@link ViewRepositoryReloadedEvent}.
+ */
+@Component("cuba_RestResponseCache")
+public class RestResponseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(RestResponseCache.class);
+
+    @Inject
+    protected UserSessionSource userSessionSource;
+
+    @Inject
+    protected RestApiConfig restApiConfig;
+
+    protected ObjectMapper objectMapper = new ObjectMapper();
+
+    protected Cache<String, JsonResponse> responses;
+
+    /**
+     * Returns a cached response for the given key and the current user locale. If there is no such response,
+     * the object returned by the supplier is serialized to JSON and cached.
+     *
+     * @param key             unique key of the response, e.g. the request path
+     * @param payloadSupplier creates an object to be serialized to JSON
+     */
+    public JsonResponse getResponse(String key, Supplier<Object> payloadSupplier) {
+        return getJsonResponse(key, () -> {
+            try {
+                return objectMapper.writeValueAsString(payloadSupplier.get());
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException("Unable to serialize REST API response " + key, e);
+            }
+        });
+    }
+
+    /**
+     * Returns a cached response for the given key and the current user locale. If there is no such response,
+     * the JSON returned by the supplier is cached.
+     *
+     * @param key          unique key of the response, e.g. the request path
+     * @param jsonSupplier creates a JSON string
+     */
+    public JsonResponse getJsonResponse(String key, Supplier<String> jsonSupplier) {
+        String localizedKey = userSessionSource.getLocale() + "/" + key;
+        JsonResponse response = responses.getIfPresent(localizedKey);
+        if (response == null) {
+            String json = jsonSupplier.get();
+            response = new JsonResponse(json, createETag(json));
+            JsonResponse existing = responses.asMap().putIfAbsent(localizedKey, response);
+            if (existing != null) {
+                response = existing;
+            }
+        }
+        return response;
+    }
+
+    /**
+     * @return a strong ETag value computed from the JSON content
+     */
+    public String createETag(String json) {
+        return "\"" + Hashing.murmur3_128().hashString(json, StandardCharsets.UTF_8).toString() + "\"";
+    }
+
+    public int getSize() {
+        return (int) responses.size();
+    }
+
+    public void clear() {
+        log.debug("Clearing REST API response cache");
+        responses.invalidateAll();
+    }
+
+    @PostConstruct
+    protected void init() {
+        responses = CacheBuilder.newBuilder()
+                .maximumSize(restApiConfig.getResponseCacheMaxSize())
+                .build();
+
+        // the event is published in the main application context, which doesn't propagate events
+        // to the REST API dispatcher context this bean belongs to
+        ApplicationContext applicationContext = AppContext.getApplicationContext();
+        if (applicationContext instanceof ConfigurableApplicationContext) {
+            ConfigurableApplicationContext context = (ConfigurableApplicationContext) applicationContext;
+            context.addApplicationListener(
+                    new ApplicationListener<MessagesCacheClearedEvent>() {
+                        @Override
+                        public void onApplicationEvent(MessagesCacheClearedEvent event) {
+                            clear();
+                        }
+                    });
+            context.addApplicationListener(
+                    new ApplicationListener<ViewRepositoryReloadedEvent>() {
+                        @Override
+                        public void onApplicationEvent(ViewRepositoryReloadedEvent event) {
+                            clear();
+                        }
+                    });
+        }
+    }
+}
@@ -21,6 +21,7 @@ import com.haulmont.cuba.core.config.Property;
 import com.haulmont.cuba.core.config.Source;
 import com.haulmont.cuba.core.config.SourceType;
 import com.haulmont.cuba.core.config.defaults.DefaultBoolean;
+import com.haulmont.cuba.core.config.defaults.DefaultInt;
 import com.haulmont.cuba.core.config.type.CommaSeparatedStringListTypeFactory;
 import com.haulmont.cuba.core.config.type.Factory;
 
@@ -51,4 +52,25 @@ public interface RestApiConfig extends Config {
     @Property("cuba.rest.standardAuthenticationUsers")
     @Factory(factory = CommaSeparatedStringListTypeFactory.class)
     List<String> getStandardAuthenticationUsers();
-}
\ No newline at end of file
+
+    /**
+     * @return default number of operations of a batch request that are applied together
+     */
+    @Property("cuba.rest.batchChunkSize")
+    @DefaultInt(100)
+    int getBatchChunkSize();
+
+    /**
+     * @return max number of operations in a batch request
+     */
+    @Property("cuba.rest.maxBatchSize")
+    @DefaultInt(50000)
+    int getMaxBatchSize();
+
+    /**
+     * @return max number of responses kept in the cache of metadata, messages and enums responses
+     */
+    @Property("cuba.rest.responseCacheMaxSize")
+    @DefaultInt(1000)
+    int getResponseCacheMaxSize();
+}
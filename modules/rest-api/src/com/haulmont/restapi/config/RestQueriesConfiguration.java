@@ -56,6 +56,8 @@ public class RestQueriesConfiguration {
 
     protected volatile boolean initialized;
 
+    protected volatile long version;
+
     protected ReadWriteLock lock = new ReentrantReadWriteLock();
 
     @Inject
@@ -113,6 +115,34 @@ public class RestQueriesConfiguration {
         }
     }
 
+    /**
+     * @return number of times the configuration has been loaded. Data derived from the configuration must be built
+     * again when the number changes.
+     */
+    public long getVersion() {
+        lock.readLock().lock();
+        try {
+            checkInitialized();
+            return version;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Discards the loaded configuration, so it is loaded again on the next access, e.g. after the configuration
+     * files are changed.
+     */
+    public void reset() {
+        lock.writeLock().lock();
+        try {
+            queries = new ArrayList<>();
+            initialized = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     protected void checkInitialized() {
         if (!initialized) {
             lock.readLock().unlock();
@@ -120,6 +150,7 @@ public class RestQueriesConfiguration {
             try {
                 if (!initialized) {
                     init();
+                    version++;
                     initialized = true;
                 }
             } finally {
@@ -64,6 +64,8 @@ public class RestServicesConfiguration {
 
     protected volatile boolean initialized;
 
+    protected volatile long version;
+
     protected ReadWriteLock lock = new ReentrantReadWriteLock();
 
     @Inject
@@ -119,6 +121,34 @@ public class RestServicesConfiguration {
         return CollectionUtils.isEqualCollection(paramInfosNames, paramNames);
     }
 
+    /**
+     * @return number of times the configuration has been loaded. Data derived from the configuration must be built
+     * again when the number changes.
+     */
+    public long getVersion() {
+        lock.readLock().lock();
+        try {
+            checkInitialized();
+            return version;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Discards the loaded configuration, so it is loaded again on the next access, e.g. after the configuration
+     * files are changed.
+     */
+    public void reset() {
+        lock.writeLock().lock();
+        try {
+            serviceInfosMap = new ConcurrentHashMap<>();
+            initialized = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     protected void checkInitialized() {
         if (!initialized) {
             lock.readLock().unlock();
@@ -126,6 +156,7 @@ public class RestServicesConfiguration {
             try {
                 if (!initialized) {
                     init();
+                    version++;
                     initialized = true;
                 }
             } finally {
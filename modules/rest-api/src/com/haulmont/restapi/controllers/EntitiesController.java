@@ -19,8 +19,10 @@ package com.haulmont.restapi.controllers;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
+import com.haulmont.restapi.common.RestControllerUtils;
 import com.haulmont.restapi.data.CreatedEntityInfo;
 import com.haulmont.restapi.data.EntitiesSearchResult;
+import com.haulmont.restapi.data.JsonResponse;
 import com.haulmont.restapi.service.EntitiesControllerManager;
 import org.apache.commons.lang.BooleanUtils;
 import org.springframework.http.HttpHeaders;
@@ -29,6 +31,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.util.UriComponents;
 import org.springframework.web.util.UriComponentsBuilder;
 
@@ -42,17 +45,25 @@ import javax.servlet.http.HttpServletRequest;
 @RequestMapping(value = "/v2/entities", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
 public class EntitiesController {
 
+    protected static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
     @Inject
     protected EntitiesControllerManager entitiesControllerManager;
 
+    @Inject
+    protected RestControllerUtils restControllerUtils;
+
     @GetMapping("/{entityName}/{entityId}")
-    public String loadEntity(@PathVariable String entityName,
-                             @PathVariable String entityId,
-                             @RequestParam(required = false) String view,
-                             @RequestParam(required = false) Boolean returnNulls,
-                             @RequestParam(required = false) Boolean dynamicAttributes,
-                             @RequestParam(required = false) String modelVersion) {
-        return entitiesControllerManager.loadEntity(entityName, entityId, view, returnNulls, dynamicAttributes, modelVersion);
+    public ResponseEntity<String> loadEntity(@PathVariable String entityName,
+                                             @PathVariable String entityId,
+                                             @RequestParam(required = false) String view,
+                                             @RequestParam(required = false) Boolean returnNulls,
+                                             @RequestParam(required = false) Boolean dynamicAttributes,
+                                             @RequestParam(required = false) String modelVersion,
+                                             WebRequest request) {
+        JsonResponse response = entitiesControllerManager.loadEntityResponse(entityName, entityId, view, returnNulls,
+                dynamicAttributes, modelVersion);
+        return restControllerUtils.toResponseEntity(response, request);
     }
 
     @GetMapping("/{entityName}")
@@ -123,6 +134,15 @@ public class EntitiesController {
         return new ResponseEntity<>(entityInfo.getJson(), httpHeaders, HttpStatus.CREATED);
     }
 
+    @PostMapping("/batch")
+    public String executeBatch(@RequestBody String requestBody,
+                               @RequestParam(required = false) Integer chunkSize,
+                               @RequestParam(required = false) String modelVersion,
+                               HttpServletRequest request) {
+        boolean ndjson = request.getContentType() != null && request.getContentType().startsWith(NDJSON_CONTENT_TYPE);
+        return entitiesControllerManager.executeBatch(requestBody, ndjson, chunkSize, modelVersion);
+    }
+
     @PutMapping("/{entityName}/{entityId}")
     public String updateEntity(@RequestBody String entityJson,
                                @PathVariable String entityName,
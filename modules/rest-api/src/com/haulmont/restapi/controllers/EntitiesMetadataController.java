@@ -16,16 +16,19 @@
 
 package com.haulmont.restapi.controllers;
 
-import com.haulmont.restapi.data.MetaClassInfo;
+import com.haulmont.restapi.common.RestControllerUtils;
+import com.haulmont.restapi.common.RestResponseCache;
+import com.haulmont.restapi.data.JsonResponse;
 import com.haulmont.restapi.service.EntitiesMetadataControllerManager;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.inject.Inject;
-import java.util.Collection;
 
 /**
  * Controller that is used for getting entities metadata. User permissions for entities access aren't taken into account
@@ -37,24 +40,39 @@ public class EntitiesMetadataController {
     @Inject
     protected EntitiesMetadataControllerManager controllerManager;
 
+    @Inject
+    protected RestResponseCache restResponseCache;
+
+    @Inject
+    protected RestControllerUtils restControllerUtils;
+
     @GetMapping("/entities/{entityName}")
-    public MetaClassInfo getMetaClassInfo(@PathVariable String entityName) {
-        return controllerManager.getMetaClassInfo(entityName);
+    public ResponseEntity<String> getMetaClassInfo(@PathVariable String entityName, WebRequest request) {
+        JsonResponse response = restResponseCache.getResponse("metadata/entities/" + entityName,
+                () -> controllerManager.getMetaClassInfo(entityName));
+        return restControllerUtils.toResponseEntity(response, request);
     }
 
     @GetMapping("/entities")
-    public Collection<MetaClassInfo> getAllMetaClassesInfo() {
-        return controllerManager.getAllMetaClassesInfo();
+    public ResponseEntity<String> getAllMetaClassesInfo(WebRequest request) {
+        JsonResponse response = restResponseCache.getResponse("metadata/entities",
+                () -> controllerManager.getAllMetaClassesInfo());
+        return restControllerUtils.toResponseEntity(response, request);
     }
 
     @GetMapping("/entities/{entityName}/views/{viewName}")
-    public String getView(@PathVariable String entityName,
-                          @PathVariable String viewName) {
-        return controllerManager.getView(entityName, viewName);
+    public ResponseEntity<String> getView(@PathVariable String entityName,
+                                          @PathVariable String viewName,
+                                          WebRequest request) {
+        JsonResponse response = restResponseCache.getJsonResponse("metadata/entities/" + entityName + "/views/" + viewName,
+                () -> controllerManager.getView(entityName, viewName));
+        return restControllerUtils.toResponseEntity(response, request);
     }
 
     @GetMapping("/entities/{entityName}/views")
-    public String getAllViewsForMetaClass(@PathVariable String entityName) {
-        return controllerManager.getAllViewsForMetaClass(entityName);
+    public ResponseEntity<String> getAllViewsForMetaClass(@PathVariable String entityName, WebRequest request) {
+        JsonResponse response = restResponseCache.getJsonResponse("metadata/entities/" + entityName + "/views",
+                () -> controllerManager.getAllViewsForMetaClass(entityName));
+        return restControllerUtils.toResponseEntity(response, request);
     }
 }
\ No newline at end of file
@@ -16,16 +16,19 @@
 
 package com.haulmont.restapi.controllers;
 
-import com.haulmont.restapi.data.EnumInfo;
+import com.haulmont.restapi.common.RestControllerUtils;
+import com.haulmont.restapi.common.RestResponseCache;
+import com.haulmont.restapi.data.JsonResponse;
 import com.haulmont.restapi.service.EnumsControllerManager;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.inject.Inject;
-import java.util.List;
 
 /**
  * REST controller that is used for getting an information about enums
@@ -36,13 +39,23 @@ public class EnumsController {
     @Inject
     protected EnumsControllerManager enumsControllerManager;
 
+    @Inject
+    protected RestResponseCache restResponseCache;
+
+    @Inject
+    protected RestControllerUtils restControllerUtils;
+
     @GetMapping
-    public List<EnumInfo> getAllEnumInfos() {
-        return enumsControllerManager.getAllEnumInfos();
+    public ResponseEntity<String> getAllEnumInfos(WebRequest request) {
+        JsonResponse response = restResponseCache.getResponse("metadata/enums",
+                () -> enumsControllerManager.getAllEnumInfos());
+        return restControllerUtils.toResponseEntity(response, request);
     }
 
     @GetMapping("/{enumClassName:.+}")
-    public EnumInfo getEnumInfo(@PathVariable String enumClassName) {
-        return enumsControllerManager.getEnumInfo(enumClassName);
+    public ResponseEntity<String> getEnumInfo(@PathVariable String enumClassName, WebRequest request) {
+        JsonResponse response = restResponseCache.getResponse("metadata/enums/" + enumClassName,
+                () -> enumsControllerManager.getEnumInfo(enumClassName));
+        return restControllerUtils.toResponseEntity(response, request);
     }
 }
\ No newline at end of file
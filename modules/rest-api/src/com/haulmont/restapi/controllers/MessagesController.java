@@ -16,15 +16,19 @@
 
 package com.haulmont.restapi.controllers;
 
+import com.haulmont.restapi.common.RestControllerUtils;
+import com.haulmont.restapi.common.RestResponseCache;
+import com.haulmont.restapi.data.JsonResponse;
 import com.haulmont.restapi.service.MessagesControllerManager;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.inject.Inject;
-import java.util.Map;
 
 /**
  * Controller that returns localized messages
@@ -36,23 +40,37 @@ public class MessagesController {
     @Inject
     protected MessagesControllerManager messagesControllerManager;
 
+    @Inject
+    protected RestResponseCache restResponseCache;
+
+    @Inject
+    protected RestControllerUtils restControllerUtils;
+
     @GetMapping("/entities/{entityName}")
-    public Map<String, String> getLocalizationForEntity(@PathVariable String entityName) {
-        return messagesControllerManager.getLocalizationForEntity(entityName);
+    public ResponseEntity<String> getLocalizationForEntity(@PathVariable String entityName, WebRequest request) {
+        JsonResponse response = restResponseCache.getResponse("messages/entities/" + entityName,
+                () -> messagesControllerManager.getLocalizationForEntity(entityName));
+        return restControllerUtils.toResponseEntity(response, request);
     }
 
     @GetMapping("/entities")
-    public Map<String, String> getLocalizationForAllEntities() {
-        return messagesControllerManager.getLocalizationForAllEntities();
+    public ResponseEntity<String> getLocalizationForAllEntities(WebRequest request) {
+        JsonResponse response = restResponseCache.getResponse("messages/entities",
+                () -> messagesControllerManager.getLocalizationForAllEntities());
+        return restControllerUtils.toResponseEntity(response, request);
     }
 
     @GetMapping("/enums/{enumClassName:.+}")
-    public Map<String, String> getLocalizationForEnum(@PathVariable String enumClassName) {
-        return messagesControllerManager.getLocalizationForEnum(enumClassName);
+    public ResponseEntity<String> getLocalizationForEnum(@PathVariable String enumClassName, WebRequest request) {
+        JsonResponse response = restResponseCache.getResponse("messages/enums/" + enumClassName,
+                () -> messagesControllerManager.getLocalizationForEnum(enumClassName));
+        return restControllerUtils.toResponseEntity(response, request);
     }
 
     @GetMapping("/enums")
-    public Map<String, String> getLocalizationForAllEnums() {
-        return messagesControllerManager.getLocalizationForAllEnums();
+    public ResponseEntity<String> getLocalizationForAllEnums(WebRequest request) {
+        JsonResponse response = restResponseCache.getResponse("messages/enums",
+                () -> messagesControllerManager.getLocalizationForAllEnums());
+        return restControllerUtils.toResponseEntity(response, request);
     }
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.restapi.data;
+
+import javax.annotation.Nullable;
+import java.util.function.Supplier;
+
+/**
+ * JSON response body with an optional ETag. The JSON may be built lazily, so that it is not serialized if the client
+ * already has the current representation.
+ */
+public class JsonResponse {
+    protected String json;
+    protected Supplier<String> jsonSupplier;
+    protected String eTag;
+
+    public JsonResponse(String json, @Nullable String eTag) {
+        this.json = json;
+        this.eTag = eTag;
+    }
+
+    public JsonResponse(Supplier<String> jsonSupplier, @Nullable String eTag) {
+        this.jsonSupplier = jsonSupplier;
+        this.eTag = eTag;
+    }
+
+    public String getJson() {
+        if (json == null && jsonSupplier != null) {
+            json = jsonSupplier.get();
+        }
+        return json;
+    }
+
+    @Nullable
+    public String getETag() {
+        return eTag;
+    }
+}
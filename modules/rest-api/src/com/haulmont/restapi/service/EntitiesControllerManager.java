@@ -17,9 +17,10 @@
 package com.haulmont.restapi.service;
 
 import com.google.common.base.Strings;
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import com.google.common.hash.Hashing;
+import com.google.gson.*;
 import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.chile.core.model.MetaProperty;
 import com.haulmont.cuba.client.sys.PersistenceManagerClient;
 import com.haulmont.cuba.core.app.importexport.EntityImportException;
 import com.haulmont.cuba.core.app.importexport.EntityImportExportService;
@@ -29,23 +30,33 @@ import com.haulmont.cuba.core.app.serialization.EntitySerializationAPI;
 import com.haulmont.cuba.core.app.serialization.EntitySerializationOption;
 import com.haulmont.cuba.core.entity.*;
 import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.core.global.validation.EntityValidationException;
 import com.haulmont.cuba.security.entity.EntityOp;
+import com.haulmont.cuba.security.entity.PermissionType;
+import com.haulmont.cuba.security.global.UserSession;
 import com.haulmont.restapi.common.RestControllerUtils;
+import com.haulmont.restapi.config.RestApiConfig;
 import com.haulmont.restapi.data.CreatedEntityInfo;
 import com.haulmont.restapi.data.EntitiesSearchResult;
+import com.haulmont.restapi.data.JsonResponse;
 import com.haulmont.restapi.exception.RestAPIException;
 import com.haulmont.restapi.service.filter.RestFilterParseException;
 import com.haulmont.restapi.service.filter.RestFilterParseResult;
 import com.haulmont.restapi.service.filter.RestFilterParser;
 import com.haulmont.restapi.transform.JsonTransformationDirection;
 import org.apache.commons.lang.BooleanUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * Class that executes business logic required by the {@link com.haulmont.restapi.controllers.EntitiesController}. It
@@ -54,6 +65,8 @@ import java.util.*;
 @Component("cuba_EntitiesControllerManager")
 public class EntitiesControllerManager {
 
+    private static final Logger log = LoggerFactory.getLogger(EntitiesControllerManager.class);
+
     @Inject
     protected DataManager dataManager;
 
@@ -84,15 +97,34 @@ public class EntitiesControllerManager {
     @Inject
     protected RestFilterParser restFilterParser;
 
+    @Inject
+    protected RestApiConfig restApiConfig;
+
+    @Inject
+    protected UserSessionSource userSessionSource;
+
     public String loadEntity(String entityName,
                              String entityId,
                              @Nullable String viewName,
                              @Nullable Boolean returnNulls,
                              @Nullable Boolean dynamicAttributes,
                              @Nullable String modelVersion) {
+        return loadEntityResponse(entityName, entityId, viewName, returnNulls, dynamicAttributes, modelVersion).getJson();
+    }
 
-        entityName = restControllerUtils.transformEntityNameIfRequired(entityName, modelVersion, JsonTransformationDirection.FROM_VERSION);
-        MetaClass metaClass = restControllerUtils.getMetaClass(entityName);
+    /**
+     * Loads an entity like {@link #loadEntity(String, String, String, Boolean, Boolean, String)} does. The result has
+     * an ETag computed from versions of all loaded entities, and the JSON is built only when it is requested.
+     */
+    public JsonResponse loadEntityResponse(String entityName,
+                                           String entityId,
+                                           @Nullable String viewName,
+                                           @Nullable Boolean returnNulls,
+                                           @Nullable Boolean dynamicAttributes,
+                                           @Nullable String modelVersion) {
+        String transformedEntityName = restControllerUtils.transformEntityNameIfRequired(entityName, modelVersion,
+                JsonTransformationDirection.FROM_VERSION);
+        MetaClass metaClass = restControllerUtils.getMetaClass(transformedEntityName);
         checkCanReadEntity(metaClass);
 
         LoadContext<Entity> ctx = new LoadContext<>(metaClass);
@@ -107,17 +139,112 @@ public class EntitiesControllerManager {
         ctx.setLoadDynamicAttributes(BooleanUtils.isTrue(dynamicAttributes));
 
         Entity entity = dataManager.load(ctx);
-        checkEntityIsNotNull(entityName, entityId, entity);
-
-        List<EntitySerializationOption> serializationOptions = new ArrayList<>();
-        serializationOptions.add(EntitySerializationOption.SERIALIZE_INSTANCE_NAME);
-        if (BooleanUtils.isTrue(returnNulls)) serializationOptions.add(EntitySerializationOption.SERIALIZE_NULLS);
+        checkEntityIsNotNull(transformedEntityName, entityId, entity);
 
         restControllerUtils.applyAttributesSecurity(entity);
 
-        String json = entitySerializationAPI.toJson(entity, null, serializationOptions.toArray(new EntitySerializationOption[0]));
-        json = restControllerUtils.transformJsonIfRequired(entityName, modelVersion, JsonTransformationDirection.TO_VERSION, json);
-        return json;
+        String eTag = BooleanUtils.isTrue(dynamicAttributes) ? null :
+                getEntityETag(entity, viewName, returnNulls, modelVersion);
+
+        return new JsonResponse(() -> {
+            List<EntitySerializationOption> serializationOptions = new ArrayList<>();
+            serializationOptions.add(EntitySerializationOption.SERIALIZE_INSTANCE_NAME);
+            if (BooleanUtils.isTrue(returnNulls)) serializationOptions.add(EntitySerializationOption.SERIALIZE_NULLS);
+
+            String json = entitySerializationAPI.toJson(entity, null, serializationOptions.toArray(new EntitySerializationOption[0]));
+            return restControllerUtils.transformJsonIfRequired(transformedEntityName, modelVersion, JsonTransformationDirection.TO_VERSION, json);
+        }, eTag);
+    }
+
+    /**
+     * Computes an ETag from the identifiers and versions of all entities of the loaded graph and the request
+     * parameters affecting the JSON. The locale and the security state of the current user are included as well,
+     * because localized values and the attributes the user is allowed to read depend on them. Returns null if some
+     * entity of the graph is neither {@link Versioned} nor {@link Updatable}, because then its changes cannot be
+     * detected, or if the user has row-level constraints for some entity of the graph or its view, because then
+     * the graph depends on the constraints and their parameters.
+     */
+    @Nullable
+    protected String getEntityETag(Entity entity,
+                                   @Nullable String viewName,
+                                   @Nullable Boolean returnNulls,
+                                   @Nullable String modelVersion) {
+        Set<Entity> graph = Collections.newSetFromMap(new IdentityHashMap<>());
+        graph.add(entity);
+        metadata.getTools().traverseAttributes(entity, new EntityAttributeVisitor() {
+            @Override
+            public void visit(Entity owner, MetaProperty property) {
+                graph.add(owner);
+            }
+        });
+
+        UserSession userSession = userSessionSource.getUserSession();
+        if (userSession.hasConstraints()) {
+            View view = Strings.isNullOrEmpty(viewName) ? null : restControllerUtils.getView(entity.getMetaClass(), viewName);
+            if (isAffectedByConstraints(userSession, entity.getMetaClass(), view,
+                    Collections.newSetFromMap(new IdentityHashMap<>()))) {
+                return null;
+            }
+            for (Entity graphEntity : graph) {
+                if (isAffectedByConstraints(userSession, graphEntity.getMetaClass(), null, Collections.emptySet())) {
+                    return null;
+                }
+            }
+        }
+
+        List<String> versions = new ArrayList<>(graph.size());
+        for (Entity graphEntity : graph) {
+            if (graphEntity instanceof EmbeddableEntity) {
+                continue;
+            }
+            Object version = null;
+            if (graphEntity instanceof Versioned) {
+                version = ((Versioned) graphEntity).getVersion();
+            }
+            if (version == null && graphEntity instanceof Updatable) {
+                Date updateTs = ((Updatable) graphEntity).getUpdateTs();
+                version = updateTs != null ? updateTs.getTime() : null;
+            }
+            if (version == null) {
+                return null;
+            }
+            versions.add(graphEntity.getMetaClass().getName() + "-" + graphEntity.getId() + "-" + version);
+        }
+        Collections.sort(versions);
+
+        int securityHash = Objects.hash(new HashSet<>(userSession.getRoles()),
+                userSession.getPermissionsByType(PermissionType.ENTITY_OP),
+                userSession.getPermissionsByType(PermissionType.ENTITY_ATTR));
+
+        String eTagSource = String.join(",", versions) + "|" + viewName + "|" + BooleanUtils.isTrue(returnNulls)
+                + "|" + modelVersion + "|" + userSession.getLocale() + "|" + securityHash;
+        return "\"" + Hashing.murmur3_128().hashString(eTagSource, StandardCharsets.UTF_8).toString() + "\"";
+    }
+
+    /**
+     * @return true if the user has constraints for the entity or for some entity loaded with the view
+     */
+    protected boolean isAffectedByConstraints(UserSession userSession, MetaClass metaClass, @Nullable View view,
+                                              Set<View> visitedViews) {
+        if (userSession.hasConstraints(metaClass.getName())) {
+            return true;
+        }
+        MetaClass originalMetaClass = metadata.getExtendedEntities().getOriginalMetaClass(metaClass);
+        if (originalMetaClass != null && userSession.hasConstraints(originalMetaClass.getName())) {
+            return true;
+        }
+        if (view == null || !visitedViews.add(view)) {
+            return false;
+        }
+        for (ViewProperty viewProperty : view.getProperties()) {
+            MetaProperty metaProperty = metaClass.getProperty(viewProperty.getName());
+            if (viewProperty.getView() != null && metaProperty != null && metaProperty.getRange().isClass()
+                    && isAffectedByConstraints(userSession, metaProperty.getRange().asClass(), viewProperty.getView(),
+                    visitedViews)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public EntitiesSearchResult loadEntitiesList(String entityName,
@@ -346,6 +473,371 @@ public class EntitiesControllerManager {
         dataManager.remove(entity);
     }
 
+    /**
+     * Applies a batch of create, update and delete operations. The request body is either a JSON array of operation
+     * objects or, if {@code ndjson} is true, a sequence of operation objects separated by line breaks. An operation
+     * object looks like:
+     * <pre>
+     * {"op": "update", "entityName": "sample$Customer", "id": "...", "entity": {"name": "..."}}
+     * </pre>
+     * Operations are processed in chunks of {@code chunkSize} items. Within a chunk, consecutive create and update
+     * operations having the same JSON structure are imported in one transaction and consecutive delete operations
+     * are committed in one {@link CommitContext}. Existing entities are loaded with one query per entity type right
+     * before such a group is applied, so the group sees the effect of the preceding operations. If
+     * such a group fails, its operations are re-applied one by one, so that only the failed items are reported as
+     * errors.
+     *
+     * @return JSON array with a result object for each operation, in the order of the request
+     */
+    public String executeBatch(String requestBody,
+                               boolean ndjson,
+                               @Nullable Integer chunkSize,
+                               @Nullable String modelVersion) {
+        List<JsonElement> operationElements = parseBatchOperations(requestBody, ndjson);
+        int maxBatchSize = restApiConfig.getMaxBatchSize();
+        if (operationElements.size() > maxBatchSize) {
+            throw new RestAPIException("Batch is too large",
+                    String.format("Batch contains %d operations, the maximum is %d", operationElements.size(), maxBatchSize),
+                    HttpStatus.BAD_REQUEST);
+        }
+        int effectiveChunkSize = chunkSize != null && chunkSize > 0 ? chunkSize : restApiConfig.getBatchChunkSize();
+
+        List<BatchOperation> operations = new ArrayList<>(operationElements.size());
+        for (int i = 0; i < operationElements.size(); i++) {
+            operations.add(prepareBatchOperation(i, operationElements.get(i), modelVersion));
+        }
+
+        for (int from = 0; from < operations.size(); from += effectiveChunkSize) {
+            List<BatchOperation> chunk = operations.subList(from, Math.min(from + effectiveChunkSize, operations.size()));
+            executeBatchChunk(chunk, modelVersion);
+        }
+
+        JsonArray resultArray = new JsonArray();
+        for (BatchOperation operation : operations) {
+            resultArray.add(operation.toResultJson());
+        }
+        return resultArray.toString();
+    }
+
+    protected List<JsonElement> parseBatchOperations(String requestBody, boolean ndjson) {
+        JsonParser jsonParser = new JsonParser();
+        List<JsonElement> result = new ArrayList<>();
+        try {
+            if (ndjson) {
+                for (String line : StringUtils.split(requestBody, "\r\n")) {
+                    if (StringUtils.isNotBlank(line)) {
+                        result.add(jsonParser.parse(line));
+                    }
+                }
+            } else {
+                JsonElement rootElement = jsonParser.parse(requestBody);
+                if (!rootElement.isJsonArray()) {
+                    throw new RestAPIException("Cannot parse batch request", "JSON array of operations expected",
+                            HttpStatus.BAD_REQUEST);
+                }
+                rootElement.getAsJsonArray().forEach(result::add);
+            }
+        } catch (JsonParseException e) {
+            throw new RestAPIException("Cannot parse batch request", e.getMessage(), HttpStatus.BAD_REQUEST, e);
+        }
+        return result;
+    }
+
+    protected BatchOperation prepareBatchOperation(int index, JsonElement operationElement, @Nullable String modelVersion) {
+        BatchOperation operation = new BatchOperation(index);
+        try {
+            if (!operationElement.isJsonObject()) {
+                throw new RestAPIException("Invalid batch operation", "JSON object expected", HttpStatus.BAD_REQUEST);
+            }
+            JsonObject operationObject = operationElement.getAsJsonObject();
+            operation.type = BatchOperationType.fromId(getStringMember(operationObject, "op"));
+            operation.entityName = getStringMember(operationObject, "entityName");
+            String transformedEntityName = restControllerUtils.transformEntityNameIfRequired(operation.entityName,
+                    modelVersion, JsonTransformationDirection.FROM_VERSION);
+            operation.metaClass = restControllerUtils.getMetaClass(transformedEntityName);
+
+            switch (operation.type) {
+                case CREATE:
+                    checkCanCreateEntity(operation.metaClass);
+                    break;
+                case UPDATE:
+                    checkCanUpdateEntity(operation.metaClass);
+                    break;
+                case DELETE:
+                    checkCanDeleteEntity(operation.metaClass);
+                    break;
+            }
+
+            if (operation.type != BatchOperationType.CREATE) {
+                operation.entityId = getStringMember(operationObject, "id");
+                operation.id = getIdFromString(operation.entityId, operation.metaClass);
+            }
+
+            if (operation.type != BatchOperationType.DELETE) {
+                JsonElement entityElement = operationObject.get("entity");
+                if (entityElement == null || !entityElement.isJsonObject()) {
+                    throw new RestAPIException("Invalid batch operation", "Entity JSON object is required",
+                            HttpStatus.BAD_REQUEST);
+                }
+                operation.entityJson = restControllerUtils.transformJsonIfRequired(operation.entityName, modelVersion,
+                        JsonTransformationDirection.FROM_VERSION, entityElement.toString());
+                try {
+                    operation.entity = entitySerializationAPI.entityFromJson(operation.entityJson, operation.metaClass);
+                } catch (Exception e) {
+                    throw new RestAPIException("Cannot deserialize an entity from JSON", "", HttpStatus.BAD_REQUEST, e);
+                }
+                if (operation.type == BatchOperationType.UPDATE && operation.entity instanceof BaseGenericIdEntity) {
+                    //noinspection unchecked
+                    ((BaseGenericIdEntity) operation.entity).setId(operation.id);
+                }
+                operation.importViewKey = operation.metaClass.getName() + ":"
+                        + getJsonStructureSignature(new JsonParser().parse(operation.entityJson));
+            }
+        } catch (Exception e) {
+            operation.fail(e);
+        }
+        return operation;
+    }
+
+    protected String getStringMember(JsonObject jsonObject, String memberName) {
+        JsonElement element = jsonObject.get(memberName);
+        if (element == null || !element.isJsonPrimitive()) {
+            throw new RestAPIException("Invalid batch operation",
+                    String.format("Property '%s' is required", memberName), HttpStatus.BAD_REQUEST);
+        }
+        return element.getAsString();
+    }
+
+    /**
+     * Returns a string that describes the structure of a JSON element. Entity JSON objects having the same structure
+     * produce the same {@link EntityImportView}, so they can be imported together.
+     */
+    protected String getJsonStructureSignature(JsonElement element) {
+        if (element.isJsonObject()) {
+            StringBuilder sb = new StringBuilder("{");
+            new TreeMap<>(element.getAsJsonObject().entrySet().stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)))
+                    .forEach((key, value) -> sb.append(key).append(':').append(getJsonStructureSignature(value)).append(','));
+            return sb.append('}').toString();
+        } else if (element.isJsonArray()) {
+            Set<String> itemSignatures = new TreeSet<>();
+            element.getAsJsonArray().forEach(item -> itemSignatures.add(getJsonStructureSignature(item)));
+            return "[" + String.join(",", itemSignatures) + "]";
+        } else if (element.isJsonNull()) {
+            return "n";
+        }
+        return "p";
+    }
+
+    protected void executeBatchChunk(List<BatchOperation> chunk, @Nullable String modelVersion) {
+        List<BatchOperation> pending = chunk.stream()
+                .filter(operation -> !operation.isCompleted())
+                .collect(Collectors.toList());
+
+        //consecutive operations of the same kind are applied together, so the relative order of
+        //create/update and delete operations is preserved
+        List<BatchOperation> segment = new ArrayList<>();
+        for (BatchOperation operation : pending) {
+            if (operation.isCompleted()) {
+                continue;
+            }
+            if (!segment.isEmpty() && (segment.get(0).type == BatchOperationType.DELETE) != (operation.type == BatchOperationType.DELETE)) {
+                executeBatchSegment(segment, modelVersion);
+                segment = new ArrayList<>();
+            }
+            segment.add(operation);
+        }
+        if (!segment.isEmpty()) {
+            executeBatchSegment(segment, modelVersion);
+        }
+    }
+
+    protected void executeBatchSegment(List<BatchOperation> segment, @Nullable String modelVersion) {
+        if (segment.get(0).type == BatchOperationType.DELETE) {
+            executeBatchDeletes(segment);
+        } else {
+            //only consecutive operations with the same JSON structure are imported together, so that an operation
+            //is never applied before the operations preceding it
+            List<BatchOperation> importGroup = new ArrayList<>();
+            for (BatchOperation operation : segment) {
+                if (!importGroup.isEmpty() && !importGroup.get(0).importViewKey.equals(operation.importViewKey)) {
+                    executeBatchImportGroup(importGroup, modelVersion);
+                    importGroup = new ArrayList<>();
+                }
+                importGroup.add(operation);
+            }
+            if (!importGroup.isEmpty()) {
+                executeBatchImportGroup(importGroup, modelVersion);
+            }
+        }
+    }
+
+    protected void executeBatchImportGroup(List<BatchOperation> importGroup, @Nullable String modelVersion) {
+        checkUpdatedEntitiesExist(importGroup);
+        List<BatchOperation> pending = importGroup.stream()
+                .filter(operation -> !operation.isCompleted())
+                .collect(Collectors.toList());
+        if (!pending.isEmpty()) {
+            executeBatchImports(pending, modelVersion);
+        }
+    }
+
+    /**
+     * Marks update operations whose entities don't exist as failed. Entities are checked with one query per
+     * entity type. Updates of entities created by preceding operations of the same group are not checked, because
+     * these entities are imported together with the updates.
+     */
+    protected void checkUpdatedEntitiesExist(List<BatchOperation> operations) {
+        Set<Object> createdIds = new HashSet<>();
+        List<BatchOperation> updates = new ArrayList<>();
+        for (BatchOperation operation : operations) {
+            if (operation.type == BatchOperationType.CREATE) {
+                Object id = operation.entity.getId();
+                if (id instanceof IdProxy) {
+                    id = ((IdProxy) id).get();
+                }
+                if (id != null) {
+                    createdIds.add(id);
+                }
+            } else if (operation.type == BatchOperationType.UPDATE && !createdIds.contains(unwrapId(operation.id))) {
+                updates.add(operation);
+            }
+        }
+        Map<MetaClass, List<BatchOperation>> updatesByMetaClass = updates.stream()
+                .collect(Collectors.groupingBy(operation -> operation.metaClass));
+        for (Map.Entry<MetaClass, List<BatchOperation>> entry : updatesByMetaClass.entrySet()) {
+            Map<Object, Entity> existingEntities;
+            try {
+                existingEntities = loadEntitiesByIds(entry.getKey(), entry.getValue(), View.MINIMAL);
+            } catch (Exception e) {
+                entry.getValue().forEach(operation -> operation.fail(e));
+                continue;
+            }
+            for (BatchOperation operation : entry.getValue()) {
+                if (!existingEntities.containsKey(unwrapId(operation.id))) {
+                    operation.fail(entityNotFoundException(operation));
+                }
+            }
+        }
+    }
+
+    protected void executeBatchDeletes(List<BatchOperation> operations) {
+        Map<MetaClass, List<BatchOperation>> deletesByMetaClass = operations.stream()
+                .collect(Collectors.groupingBy(operation -> operation.metaClass, LinkedHashMap::new, Collectors.toList()));
+
+        CommitContext commitContext = new CommitContext();
+        List<BatchOperation> toRemove = new ArrayList<>();
+        for (Map.Entry<MetaClass, List<BatchOperation>> entry : deletesByMetaClass.entrySet()) {
+            Map<Object, Entity> existingEntities;
+            try {
+                existingEntities = loadEntitiesByIds(entry.getKey(), entry.getValue(), View.LOCAL);
+            } catch (Exception e) {
+                entry.getValue().forEach(operation -> operation.fail(e));
+                continue;
+            }
+            for (BatchOperation operation : entry.getValue()) {
+                operation.entity = existingEntities.get(unwrapId(operation.id));
+                if (operation.entity == null) {
+                    operation.fail(entityNotFoundException(operation));
+                } else {
+                    commitContext.addInstanceToRemove(operation.entity);
+                    toRemove.add(operation);
+                }
+            }
+        }
+        if (toRemove.isEmpty()) {
+            return;
+        }
+
+        try {
+            dataManager.commit(commitContext);
+            toRemove.forEach(operation -> operation.succeed(HttpStatus.OK, null));
+        } catch (Exception e) {
+            log.debug("Batch deletion of {} entities failed, deleting them one by one", toRemove.size(), e);
+            for (BatchOperation operation : toRemove) {
+                try {
+                    dataManager.remove(operation.entity);
+                    operation.succeed(HttpStatus.OK, null);
+                } catch (Exception ex) {
+                    operation.fail(ex);
+                }
+            }
+        }
+    }
+
+    protected void executeBatchImports(List<BatchOperation> operations, @Nullable String modelVersion) {
+        BatchOperation first = operations.get(0);
+        try {
+            EntityImportView entityImportView = entityImportViewBuilderAPI.buildFromJson(first.entityJson, first.metaClass);
+            List<Entity> entities = operations.stream()
+                    .map(operation -> operation.entity)
+                    .collect(Collectors.toList());
+            Collection<Entity> importedEntities = entityImportExportService.importEntities(entities, entityImportView, true);
+            for (BatchOperation operation : operations) {
+                completeImportOperation(operation, importedEntities, modelVersion);
+            }
+        } catch (Exception e) {
+            if (operations.size() == 1) {
+                first.fail(e);
+                return;
+            }
+            log.debug("Batch import of {} entities failed, importing them one by one", operations.size(), e);
+            for (BatchOperation operation : operations) {
+                executeBatchImports(Collections.singletonList(operation), modelVersion);
+            }
+        }
+    }
+
+    protected void completeImportOperation(BatchOperation operation, Collection<Entity> importedEntities,
+                                           @Nullable String modelVersion) {
+        Entity importedEntity = importedEntities.stream()
+                .filter(entity -> entity.equals(operation.entity))
+                .findFirst()
+                .orElse(operation.entity);
+        if (operation.type == BatchOperationType.UPDATE) {
+            restControllerUtils.applyAttributesSecurity(importedEntity);
+        }
+        String json = entitySerializationAPI.toJson(importedEntity);
+        json = restControllerUtils.transformJsonIfRequired(operation.metaClass.getName(), modelVersion,
+                JsonTransformationDirection.TO_VERSION, json);
+        operation.succeed(operation.type == BatchOperationType.CREATE ? HttpStatus.CREATED : HttpStatus.OK, json);
+    }
+
+    protected Map<Object, Entity> loadEntitiesByIds(MetaClass metaClass, List<BatchOperation> operations, String viewName) {
+        List<Object> ids = operations.stream()
+                .map(operation -> unwrapId(operation.id))
+                .distinct()
+                .collect(Collectors.toList());
+        String primaryKeyName = metadata.getTools().getPrimaryKeyName(metaClass);
+        if (primaryKeyName == null || metadata.getTools().hasCompositePrimaryKey(metaClass)) {
+            //a composite id can't be passed to the "in" condition, so such entities are loaded one by one
+            Map<Object, Entity> result = new HashMap<>();
+            for (Object id : ids) {
+                Entity entity = dataManager.load(new LoadContext<>(metaClass).setId(id).setView(viewName));
+                if (entity != null) {
+                    result.put(id, entity);
+                }
+            }
+            return result;
+        }
+        LoadContext<Entity> ctx = new LoadContext<>(metaClass);
+        ctx.setQueryString(String.format("select e from %s e where e.%s in :ids", metaClass.getName(), primaryKeyName))
+                .setParameter("ids", ids);
+        ctx.setView(viewName);
+        return dataManager.loadList(ctx).stream()
+                .collect(Collectors.toMap(entity -> unwrapId(entity.getId()), entity -> entity, (e1, e2) -> e1));
+    }
+
+    protected Object unwrapId(Object id) {
+        return id instanceof IdProxy ? ((IdProxy) id).getNN() : id;
+    }
+
+    protected RestAPIException entityNotFoundException(BatchOperation operation) {
+        return new RestAPIException("Entity not found",
+                String.format("Entity %s with id %s not found", operation.entityName, operation.entityId),
+                HttpStatus.NOT_FOUND);
+    }
+
     private Object getIdFromString(String entityId, MetaClass metaClass) {
         try {
             if (BaseDbGeneratedIdEntity.class.isAssignableFrom(metaClass.getJavaClass())) {
@@ -458,6 +950,101 @@ public class EntitiesControllerManager {
         return null;
     }
 
+    protected enum BatchOperationType {
+        CREATE("create"),
+        UPDATE("update"),
+        DELETE("delete");
+
+        private final String id;
+
+        BatchOperationType(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public static BatchOperationType fromId(String id) {
+            for (BatchOperationType type : values()) {
+                if (type.id.equalsIgnoreCase(id)) {
+                    return type;
+                }
+            }
+            throw new RestAPIException("Invalid batch operation",
+                    String.format("Unknown operation '%s', expected create, update or delete", id), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * State of a single operation of a batch request.
+     */
+    protected static class BatchOperation {
+        protected final int index;
+        protected BatchOperationType type;
+        protected String entityName;
+        protected MetaClass metaClass;
+        protected String entityId;
+        protected Object id;
+        protected String entityJson;
+        protected Entity entity;
+        protected String importViewKey;
+
+        protected HttpStatus status;
+        protected String resultJson;
+        protected String error;
+        protected String details;
+
+        public BatchOperation(int index) {
+            this.index = index;
+        }
+
+        public boolean isCompleted() {
+            return status != null;
+        }
+
+        public void succeed(HttpStatus status, @Nullable String resultJson) {
+            this.status = status;
+            this.resultJson = resultJson;
+        }
+
+        public void fail(Exception e) {
+            if (e instanceof RestAPIException) {
+                RestAPIException restAPIException = (RestAPIException) e;
+                status = restAPIException.getHttpStatus();
+                error = restAPIException.getMessage();
+                details = restAPIException.getDetails();
+            } else if (e instanceof EntityImportException || e instanceof EntityValidationException) {
+                status = HttpStatus.BAD_REQUEST;
+                error = type == BatchOperationType.CREATE ? "Entity creation failed" : "Entity update failed";
+                details = e.getMessage();
+            } else {
+                log.error("Batch operation {} failed", index, e);
+                status = HttpStatus.INTERNAL_SERVER_ERROR;
+                error = "Server error";
+                details = "";
+            }
+        }
+
+        public JsonObject toResultJson() {
+            JsonObject result = new JsonObject();
+            result.addProperty("index", index);
+            if (type != null) {
+                result.addProperty("op", type.getId());
+            }
+            result.addProperty("status", status.value());
+            if (error != null) {
+                result.addProperty("error", error);
+                result.addProperty("details", details);
+            } else if (resultJson != null) {
+                result.add("entity", new JsonParser().parse(resultJson));
+            } else if (entityId != null) {
+                result.addProperty("id", entityId);
+            }
+            return result;
+        }
+    }
+
     protected class SearchEntitiesRequestDTO {
         protected JsonObject filter;
         protected String viewName;
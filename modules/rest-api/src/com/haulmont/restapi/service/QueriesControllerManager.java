@@ -20,6 +20,7 @@ import com.google.common.base.Strings;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
+import com.haulmont.chile.core.datatypes.Datatype;
 import com.haulmont.chile.core.datatypes.Datatypes;
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.cuba.client.sys.PersistenceManagerClient;
@@ -37,6 +38,8 @@ import com.haulmont.restapi.config.RestQueriesConfiguration;
 import com.haulmont.restapi.exception.RestAPIException;
 import com.haulmont.restapi.transform.JsonTransformationDirection;
 import org.apache.commons.lang.BooleanUtils;
+import org.perf4j.StopWatch;
+import org.perf4j.slf4j.Slf4JStopWatch;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.util.ClassUtils;
@@ -47,6 +50,8 @@ import java.math.BigDecimal;
 import java.sql.Time;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 @Component("cuba_QueriesControllerManager")
 public class QueriesControllerManager {
@@ -75,6 +80,12 @@ public class QueriesControllerManager {
     @Inject
     protected RestParseUtils restParseUtils;
 
+    /**
+     * Execution plans of predefined queries by entity and query names. A plan is created again if the queries
+     * configuration is reloaded.
+     */
+    protected ConcurrentMap<String, QueryExecutionPlan> queryPlans = new ConcurrentHashMap<>();
+
     public String executeQueryGet(String entityName,
                                   String queryName,
                                   @Nullable Integer limit,
@@ -116,7 +127,13 @@ public class QueriesControllerManager {
             restControllerUtils.getView(metaClass, viewName);
             ctx.setView(viewName);
         }
-        List<Entity> entities = dataManager.loadList(ctx);
+        List<Entity> entities;
+        StopWatch sw = new Slf4JStopWatch("RestQuery." + entityName + "." + queryName);
+        try {
+            entities = dataManager.loadList(ctx);
+        } finally {
+            sw.stop();
+        }
         entities.forEach(entity -> restControllerUtils.applyAttributesSecurity(entity));
 
         List<EntitySerializationOption> serializationOptions = new ArrayList<>();
@@ -151,8 +168,13 @@ public class QueriesControllerManager {
         } catch (ClassNotFoundException | ParseException e) {
             throw new RestAPIException("Error on executing the query", e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR, e);
         }
-        long count = dataManager.getCount(ctx);
-        return String.valueOf(count);
+        StopWatch sw = new Slf4JStopWatch("RestQueryCount." + entityName + "." + queryName);
+        try {
+            long count = dataManager.getCount(ctx);
+            return String.valueOf(count);
+        } finally {
+            sw.stop();
+        }
     }
 
     public List<RestQueriesConfiguration.QueryInfo> loadQueriesList(String entityName) {
@@ -169,15 +191,10 @@ public class QueriesControllerManager {
         MetaClass metaClass = restControllerUtils.getMetaClass(entityName);
         checkCanReadEntity(metaClass);
 
-        RestQueriesConfiguration.QueryInfo queryInfo = restQueriesConfiguration.getQuery(entityName, queryName);
-        if (queryInfo == null) {
-            throw new RestAPIException("Query not found",
-                    String.format("Query with name %s for entity %s not found", queryName, entityName),
-                    HttpStatus.NOT_FOUND);
-        }
+        QueryExecutionPlan plan = getQueryPlan(entityName, queryName);
 
         LoadContext<Entity> ctx = new LoadContext<>(metaClass);
-        LoadContext.Query query = new LoadContext.Query(queryInfo.getJpql());
+        LoadContext.Query query = new LoadContext.Query(plan.getJpql());
 
         if (limit != null) {
             query.setMaxResults(limit);
@@ -188,25 +205,81 @@ public class QueriesControllerManager {
             query.setFirstResult(offset);
         }
 
-        for (RestQueriesConfiguration.QueryParamInfo paramInfo : queryInfo.getParams()) {
-            String paramName = paramInfo.getName();
+        for (QueryParamBinder paramBinder : plan.getParamBinders()) {
+            String paramName = paramBinder.getName();
             String requestParamValue = params.get(paramName);
             if (requestParamValue == null) {
                 throw new RestAPIException("Query parameter not found",
                         String.format("Query parameter %s not found", paramName),
                         HttpStatus.BAD_REQUEST);
             }
-
-            Class<?> clazz = ClassUtils.forName(paramInfo.getType(), getClass().getClassLoader());
-            Object objectParamValue = toObject(clazz, requestParamValue);
-            query.setParameter(paramName, objectParamValue);
+            query.setParameter(paramName, paramBinder.getConverter().convert(requestParamValue));
         }
 
         ctx.setQuery(query);
-        ctx.setView(queryInfo.getViewName());
+        ctx.setView(plan.getViewName());
         return ctx;
     }
 
+    /**
+     * Returns the execution plan of the predefined query, creating it on the first request and after the
+     * configuration is reloaded.
+     */
+    protected QueryExecutionPlan getQueryPlan(String entityName, String queryName) throws ClassNotFoundException {
+        // the version is obtained before the query, so a plan created during reload is not used after it
+        long configVersion = restQueriesConfiguration.getVersion();
+        String key = entityName + "." + queryName;
+        QueryExecutionPlan plan = queryPlans.get(key);
+        if (plan == null || plan.getConfigVersion() != configVersion) {
+            RestQueriesConfiguration.QueryInfo queryInfo = restQueriesConfiguration.getQuery(entityName, queryName);
+            if (queryInfo == null) {
+                queryPlans.remove(key);
+                throw new RestAPIException("Query not found",
+                        String.format("Query with name %s for entity %s not found", queryName, entityName),
+                        HttpStatus.NOT_FOUND);
+            }
+            plan = createQueryPlan(queryInfo, configVersion);
+            queryPlans.put(key, plan);
+        }
+        return plan;
+    }
+
+    protected QueryExecutionPlan createQueryPlan(RestQueriesConfiguration.QueryInfo queryInfo, long configVersion)
+            throws ClassNotFoundException {
+        List<QueryParamBinder> paramBinders = new ArrayList<>();
+        for (RestQueriesConfiguration.QueryParamInfo paramInfo : queryInfo.getParams()) {
+            Class<?> clazz = ClassUtils.forName(paramInfo.getType(), getClass().getClassLoader());
+            paramBinders.add(new QueryParamBinder(paramInfo.getName(), createParamConverter(clazz)));
+        }
+        return new QueryExecutionPlan(queryInfo.getJpql(), queryInfo.getViewName(), paramBinders, configVersion);
+    }
+
+    protected QueryParamConverter createParamConverter(Class<?> clazz) {
+        if (clazz.isArray()) {
+            QueryParamConverter componentConverter = createParamConverter(clazz.getComponentType());
+            return value -> {
+                JsonArray jsonArray = new JsonParser().parse(value).getAsJsonArray();
+                List<Object> result = new ArrayList<>(jsonArray.size());
+                for (JsonElement jsonElement : jsonArray) {
+                    String stringValue = (jsonElement.isJsonPrimitive() && jsonElement.getAsJsonPrimitive().isString()) ?
+                            jsonElement.getAsJsonPrimitive().getAsString() :
+                            jsonElement.toString();
+                    result.add(componentConverter.convert(stringValue));
+                }
+                return result;
+            };
+        }
+        if (String.class == clazz) return value -> value;
+        if (UUID.class == clazz) return UUID::fromString;
+        if (Date.class == clazz) return value -> toObject(clazz, value);
+        Class<?> datatypeClass = restParseUtils.getParamDatatypeClass(clazz);
+        if (datatypeClass != null) {
+            Datatype<?> datatype = Datatypes.getNN(datatypeClass);
+            return datatype::parse;
+        }
+        throw new IllegalArgumentException("Parameters of type " + clazz.getName() + " are not supported");
+    }
+
     protected void checkCanReadEntity(MetaClass metaClass) {
         if (!security.isEntityOpPermitted(metaClass, EntityOp.READ)) {
             throw new RestAPIException("Reading forbidden",
@@ -254,4 +327,65 @@ public class QueriesControllerManager {
         throw new IllegalArgumentException("Parameters of type " + clazz.getName() + " are not supported");
     }
 
+    /**
+     * Converts a request parameter value to the value of a query parameter.
+     */
+    protected interface QueryParamConverter {
+        Object convert(String value) throws ParseException;
+    }
+
+    protected static class QueryParamBinder {
+        protected final String name;
+        protected final QueryParamConverter converter;
+
+        public QueryParamBinder(String name, QueryParamConverter converter) {
+            this.name = name;
+            this.converter = converter;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public QueryParamConverter getConverter() {
+            return converter;
+        }
+    }
+
+    /**
+     * Predefined query with parameter types resolved and converters created.
+     */
+    protected static class QueryExecutionPlan {
+        protected final String jpql;
+        protected final String viewName;
+        protected final List<QueryParamBinder> paramBinders;
+        protected final long configVersion;
+
+        public QueryExecutionPlan(String jpql, String viewName, List<QueryParamBinder> paramBinders,
+                                  long configVersion) {
+            this.jpql = jpql;
+            this.viewName = viewName;
+            this.paramBinders = paramBinders;
+            this.configVersion = configVersion;
+        }
+
+        public String getJpql() {
+            return jpql;
+        }
+
+        public String getViewName() {
+            return viewName;
+        }
+
+        public List<QueryParamBinder> getParamBinders() {
+            return paramBinders;
+        }
+
+        /**
+         * @return version of the queries configuration the plan is created from
+         */
+        public long getConfigVersion() {
+            return configVersion;
+        }
+    }
 }
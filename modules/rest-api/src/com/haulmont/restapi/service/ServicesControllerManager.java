@@ -33,6 +33,8 @@ import com.haulmont.restapi.common.RestParseUtils;
 import com.haulmont.restapi.config.RestServicesConfiguration;
 import com.haulmont.restapi.exception.RestAPIException;
 import com.haulmont.restapi.transform.JsonTransformationDirection;
+import org.perf4j.StopWatch;
+import org.perf4j.slf4j.Slf4JStopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -41,12 +43,16 @@ import org.springframework.stereotype.Component;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.validation.ValidationException;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 
@@ -74,6 +80,12 @@ public class ServicesControllerManager {
 
     protected Logger log = LoggerFactory.getLogger(ServicesControllerManager.class);
 
+    /**
+     * Invocation plans of service methods by service name, method name and sorted parameter names. A plan is created
+     * again if the services configuration is reloaded.
+     */
+    protected ConcurrentMap<String, ServiceMethodPlan> methodPlans = new ConcurrentHashMap<>();
+
     @Nullable
     public ServiceCallResult invokeServiceMethodGet(String serviceName, String methodName, Map<String, String> paramsMap, String modelVersion) {
         paramsMap.remove("modelVersion");
@@ -107,21 +119,15 @@ public class ServicesControllerManager {
     @Nullable
     protected ServiceCallResult _invokeServiceMethod(String serviceName, String methodName, List<String> paramNames,
                                                      List<String> paramValuesStr, String modelVersion) {
-        Object service = AppBeans.get(serviceName);
-        RestServicesConfiguration.RestMethodInfo restMethodInfo = restServicesConfiguration.getRestMethodInfo(serviceName, methodName, paramNames);
-        if (restMethodInfo == null) {
-            throw new RestAPIException("Service method not found",
-                    serviceName + "." + methodName + "(" + paramNames.stream().collect(Collectors.joining(",")) + ")",
-                    HttpStatus.NOT_FOUND);
-        }
-        Method serviceMethod = restMethodInfo.getMethod();
-        List<Object> paramValues = new ArrayList<>();
-        Type[] types = restMethodInfo.getMethod().getGenericParameterTypes();
-        for (int i = 0; i < types.length; i++) {
+        ServiceMethodPlan plan = getServiceMethodPlan(serviceName, methodName, paramNames);
+        List<RestServicesConfiguration.RestMethodParamInfo> paramInfos = plan.getMethodInfo().getParams();
+        ServiceParamConverter[] paramConverters = plan.getParamConverters();
+        Object[] paramValues = new Object[paramConverters.length];
+        for (int i = 0; i < paramConverters.length; i++) {
             int idx = i;
             try {
-                idx = paramNames.indexOf(restMethodInfo.getParams().get(i).getName());
-                paramValues.add(restParseUtils.toObject(types[i], paramValuesStr.get(idx), modelVersion));
+                idx = paramNames.indexOf(paramInfos.get(i).getName());
+                paramValues[i] = paramConverters[i].convert(paramValuesStr.get(idx), modelVersion);
             } catch (Exception e) {
                 log.error("Error on parsing service param value", e);
                 throw new RestAPIException("Invalid parameter value",
@@ -131,61 +137,143 @@ public class ServicesControllerManager {
         }
 
         Object methodResult;
+        StopWatch sw = new Slf4JStopWatch(plan.getStopWatchTag());
         try {
-            methodResult = serviceMethod.invoke(service, paramValues.toArray());
-        } catch (InvocationTargetException | IllegalAccessException ex) {
-            if (ex.getCause() instanceof ValidationException) {
-                throw (ValidationException) ex.getCause();
-            } else {
-                log.error("Error on service method invoke", ex.getCause());
-                throw new RestAPIException("Error on service method invoke", "", HttpStatus.INTERNAL_SERVER_ERROR);
-            }
+            methodResult = plan.getMethodHandle().invokeExact(paramValues);
+        } catch (ValidationException e) {
+            throw e;
+        } catch (Throwable e) {
+            log.error("Error on service method invoke", e);
+            throw new RestAPIException("Error on service method invoke", "", HttpStatus.INTERNAL_SERVER_ERROR);
+        } finally {
+            sw.stop();
         }
 
         if (methodResult == null) {
             return null;
         }
 
-        Class<?> methodReturnType = serviceMethod.getReturnType();
-        if (Entity.class.isAssignableFrom(methodReturnType)) {
-            Entity entity = (Entity) methodResult;
-            restControllerUtils.applyAttributesSecurity(entity);
-            String entityJson = entitySerializationAPI.toJson(entity,
-                    null,
-                    EntitySerializationOption.SERIALIZE_INSTANCE_NAME);
-            entityJson = restControllerUtils.transformJsonIfRequired(entity.getMetaClass().getName(),
-                    modelVersion, JsonTransformationDirection.TO_VERSION, entityJson);
-            return new ServiceCallResult(entityJson, true);
-        } else if (Collection.class.isAssignableFrom(methodReturnType)) {
-            Class returnTypeArgument = getMethodReturnTypeArgument(serviceMethod);
-            if ((returnTypeArgument != null && Entity.class.isAssignableFrom(returnTypeArgument))
-                    || isEntitiesCollection((Collection) methodResult)) {
-                Collection<? extends Entity> entities = (Collection<? extends Entity>) methodResult;
-                entities.forEach(entity -> restControllerUtils.applyAttributesSecurity(entity));
-                String entitiesJson = entitySerializationAPI.toJson(entities,
+        switch (plan.getResultKind()) {
+            case ENTITY: {
+                Entity entity = (Entity) methodResult;
+                restControllerUtils.applyAttributesSecurity(entity);
+                String entityJson = entitySerializationAPI.toJson(entity,
                         null,
                         EntitySerializationOption.SERIALIZE_INSTANCE_NAME);
-                if (returnTypeArgument != null) {
-                    MetaClass metaClass = metadata.getClass(returnTypeArgument);
-                    if (metaClass != null) {
-                        entitiesJson = restControllerUtils.transformJsonIfRequired(metaClass.getName(), modelVersion,
-                                JsonTransformationDirection.TO_VERSION, entitiesJson);
-                    } else {
-                        log.error("MetaClass for service collection parameter type {} not found", returnTypeArgument);
+                entityJson = restControllerUtils.transformJsonIfRequired(entity.getMetaClass().getName(),
+                        modelVersion, JsonTransformationDirection.TO_VERSION, entityJson);
+                return new ServiceCallResult(entityJson, true);
+            }
+            case COLLECTION: {
+                Class returnTypeArgument = plan.getReturnTypeArgument();
+                if ((returnTypeArgument != null && Entity.class.isAssignableFrom(returnTypeArgument))
+                        || isEntitiesCollection((Collection) methodResult)) {
+                    Collection<? extends Entity> entities = (Collection<? extends Entity>) methodResult;
+                    entities.forEach(entity -> restControllerUtils.applyAttributesSecurity(entity));
+                    String entitiesJson = entitySerializationAPI.toJson(entities,
+                            null,
+                            EntitySerializationOption.SERIALIZE_INSTANCE_NAME);
+                    if (returnTypeArgument != null) {
+                        MetaClass metaClass = metadata.getClass(returnTypeArgument);
+                        if (metaClass != null) {
+                            entitiesJson = restControllerUtils.transformJsonIfRequired(metaClass.getName(), modelVersion,
+                                    JsonTransformationDirection.TO_VERSION, entitiesJson);
+                        } else {
+                            log.error("MetaClass for service collection parameter type {} not found", returnTypeArgument);
+                        }
                     }
+                    return new ServiceCallResult(entitiesJson, true);
+                } else {
+                    return new ServiceCallResult(restParseUtils.serialize(methodResult), true);
                 }
-                return new ServiceCallResult(entitiesJson, true);
-            } else {
+            }
+            case DATATYPE:
+                return new ServiceCallResult(plan.getReturnDatatype().format(methodResult), false);
+            default:
                 return new ServiceCallResult(restParseUtils.serialize(methodResult), true);
+        }
+    }
+
+    /**
+     * Returns the invocation plan of the service method, creating it on the first request and after the
+     * configuration is reloaded.
+     */
+    protected ServiceMethodPlan getServiceMethodPlan(String serviceName, String methodName, List<String> paramNames) {
+        // the version is obtained before the method, so a plan created during reload is not used after it
+        long configVersion = restServicesConfiguration.getVersion();
+        List<String> sortedParamNames = new ArrayList<>(paramNames);
+        Collections.sort(sortedParamNames);
+        String key = serviceName + "." + methodName + "(" + String.join(",", sortedParamNames) + ")";
+        ServiceMethodPlan plan = methodPlans.get(key);
+        if (plan == null || plan.getConfigVersion() != configVersion) {
+            RestServicesConfiguration.RestMethodInfo restMethodInfo =
+                    restServicesConfiguration.getRestMethodInfo(serviceName, methodName, paramNames);
+            if (restMethodInfo == null) {
+                methodPlans.remove(key);
+                throw new RestAPIException("Service method not found",
+                        serviceName + "." + methodName + "(" + paramNames.stream().collect(Collectors.joining(",")) + ")",
+                        HttpStatus.NOT_FOUND);
             }
+            plan = createServiceMethodPlan(serviceName, restMethodInfo, configVersion);
+            methodPlans.put(key, plan);
+        }
+        return plan;
+    }
+
+    protected ServiceMethodPlan createServiceMethodPlan(String serviceName,
+                                                        RestServicesConfiguration.RestMethodInfo restMethodInfo,
+                                                        long configVersion) {
+        Object service = AppBeans.get(serviceName);
+        Method serviceMethod = restMethodInfo.getMethod();
+
+        MethodHandle methodHandle;
+        try {
+            methodHandle = MethodHandles.publicLookup().unreflect(serviceMethod)
+                    .bindTo(service)
+                    .asSpreader(Object[].class, serviceMethod.getParameterCount())
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (IllegalAccessException e) {
+            throw new RestAPIException("Service method is not accessible",
+                    serviceName + "." + serviceMethod.getName(),
+                    HttpStatus.INTERNAL_SERVER_ERROR, e);
+        }
+
+        Type[] types = serviceMethod.getGenericParameterTypes();
+        ServiceParamConverter[] paramConverters = new ServiceParamConverter[types.length];
+        for (int i = 0; i < types.length; i++) {
+            paramConverters[i] = createParamConverter(types[i]);
+        }
+
+        Class<?> methodReturnType = serviceMethod.getReturnType();
+        ServiceMethodResultKind resultKind;
+        Datatype<?> returnDatatype = null;
+        if (Entity.class.isAssignableFrom(methodReturnType)) {
+            resultKind = ServiceMethodResultKind.ENTITY;
+        } else if (Collection.class.isAssignableFrom(methodReturnType)) {
+            resultKind = ServiceMethodResultKind.COLLECTION;
         } else {
-            Datatype<?> datatype = Datatypes.get(methodReturnType);
-            if (datatype != null) {
-                return new ServiceCallResult(datatype.format(methodResult), false);
-            } else {
-                return new ServiceCallResult(restParseUtils.serialize(methodResult), true);
+            returnDatatype = Datatypes.get(methodReturnType);
+            resultKind = returnDatatype != null ? ServiceMethodResultKind.DATATYPE : ServiceMethodResultKind.OBJECT;
+        }
+
+        return new ServiceMethodPlan(restMethodInfo, methodHandle, paramConverters, resultKind, returnDatatype,
+                getMethodReturnTypeArgument(serviceMethod),
+                "RestService." + serviceName + "." + serviceMethod.getName(), configVersion);
+    }
+
+    protected ServiceParamConverter createParamConverter(Type type) {
+        if (type instanceof Class) {
+            Class<?> clazz = (Class<?>) type;
+            if (String.class == clazz) {
+                return (value, modelVersion) -> value;
+            }
+            Class<?> datatypeClass = restParseUtils.getParamDatatypeClass(clazz);
+            if (datatypeClass != null) {
+                Datatype<?> datatype = Datatypes.getNN(datatypeClass);
+                return (value, modelVersion) -> value != null ? datatype.parse(value) : null;
             }
         }
+        return (value, modelVersion) -> restParseUtils.toObject(type, value, modelVersion);
     }
 
     @Nullable
@@ -227,4 +315,90 @@ public class ServicesControllerManager {
             return stringValue;
         }
     }
+
+    /**
+     * Converts a request parameter value to the value of a service method argument.
+     */
+    protected interface ServiceParamConverter {
+        Object convert(String value, @Nullable String modelVersion) throws ParseException;
+    }
+
+    protected enum ServiceMethodResultKind {
+        ENTITY,
+        COLLECTION,
+        DATATYPE,
+        OBJECT
+    }
+
+    /**
+     * Service method with the invocation handle, argument converters and result handling resolved.
+     */
+    protected static class ServiceMethodPlan {
+        protected final RestServicesConfiguration.RestMethodInfo methodInfo;
+        protected final MethodHandle methodHandle;
+        protected final ServiceParamConverter[] paramConverters;
+        protected final ServiceMethodResultKind resultKind;
+        protected final Datatype returnDatatype;
+        protected final Class returnTypeArgument;
+        protected final String stopWatchTag;
+        protected final long configVersion;
+
+        public ServiceMethodPlan(RestServicesConfiguration.RestMethodInfo methodInfo,
+                                 MethodHandle methodHandle,
+                                 ServiceParamConverter[] paramConverters,
+                                 ServiceMethodResultKind resultKind,
+                                 @Nullable Datatype returnDatatype,
+                                 @Nullable Class returnTypeArgument,
+                                 String stopWatchTag,
+                                 long configVersion) {
+            this.methodInfo = methodInfo;
+            this.methodHandle = methodHandle;
+            this.paramConverters = paramConverters;
+            this.resultKind = resultKind;
+            this.returnDatatype = returnDatatype;
+            this.returnTypeArgument = returnTypeArgument;
+            this.stopWatchTag = stopWatchTag;
+            this.configVersion = configVersion;
+        }
+
+        public RestServicesConfiguration.RestMethodInfo getMethodInfo() {
+            return methodInfo;
+        }
+
+        /**
+         * @return handle bound to the service bean, accepting arguments as {@code Object[]} and returning {@code Object}
+         */
+        public MethodHandle getMethodHandle() {
+            return methodHandle;
+        }
+
+        public ServiceParamConverter[] getParamConverters() {
+            return paramConverters;
+        }
+
+        public ServiceMethodResultKind getResultKind() {
+            return resultKind;
+        }
+
+        @Nullable
+        public Datatype getReturnDatatype() {
+            return returnDatatype;
+        }
+
+        @Nullable
+        public Class getReturnTypeArgument() {
+            return returnTypeArgument;
+        }
+
+        public String getStopWatchTag() {
+            return stopWatchTag;
+        }
+
+        /**
+         * @return version of the services configuration the plan is created from
+         */
+        public long getConfigVersion() {
+            return configVersion;
+        }
+    }
 }
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.restapi.service;
+
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.cuba.client.testsupport.CubaClientTestCase;
+import com.haulmont.cuba.core.app.importexport.EntityImportException;
+import com.haulmont.cuba.core.app.importexport.EntityImportExportService;
+import com.haulmont.cuba.core.app.importexport.EntityImportView;
+import com.haulmont.cuba.core.app.importexport.EntityImportViewBuilderAPI;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.CommitContext;
+import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.restapi.service.EntitiesControllerManager.BatchOperation;
+import com.haulmont.restapi.service.EntitiesControllerManager.BatchOperationType;
+import com.haulmont.restapi.service.filter.testmodel.TestEntity;
+import mockit.Mock;
+import mockit.MockUp;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class EntitiesControllerManagerBatchTest extends CubaClientTestCase {
+
+    private EntitiesControllerManager manager;
+
+    private MetaClass metaClass;
+
+    // entities stored by the fake middleware
+    private Map<Object, TestEntity> store = new HashMap<>();
+
+    // values of stringField of the entities passed to each call of the fake middleware
+    private List<String> calls = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        addEntityPackage("com.haulmont.cuba");
+        addEntityPackage("com.haulmont.restapi.service.filter.testmodel");
+        setupInfrastructure();
+
+        metaClass = metadata.getClassNN(TestEntity.class);
+
+        manager = new EntitiesControllerManager() {
+            @Override
+            protected Map<Object, Entity> loadEntitiesByIds(MetaClass metaClass, List<BatchOperation> operations,
+                                                            String viewName) {
+                Map<Object, Entity> result = new HashMap<>();
+                for (BatchOperation operation : operations) {
+                    TestEntity entity = store.get(operation.id);
+                    if (entity != null) {
+                        result.put(operation.id, entity);
+                    }
+                }
+                return result;
+            }
+
+            @Override
+            protected void completeImportOperation(BatchOperation operation, Collection<Entity> importedEntities,
+                                                   String modelVersion) {
+                operation.succeed(operation.type == BatchOperationType.CREATE ? HttpStatus.CREATED : HttpStatus.OK, null);
+            }
+        };
+        manager.entityImportViewBuilderAPI = new MockUp<EntityImportViewBuilderAPI>() {
+            @Mock
+            EntityImportView buildFromJson(String json, MetaClass metaClass) {
+                //noinspection unchecked
+                return new EntityImportView(metaClass.getJavaClass());
+            }
+        }.getMockInstance();
+        manager.entityImportExportService = new MockUp<EntityImportExportService>() {
+            @Mock
+            Collection<Entity> importEntities(Collection<? extends Entity> entities, EntityImportView importView,
+                                              boolean validate) {
+                calls.add("import " + describe(entities));
+                for (Entity entity : entities) {
+                    if (((TestEntity) entity).getStringField().startsWith("invalid")) {
+                        throw new EntityImportException("Invalid entity " + ((TestEntity) entity).getStringField());
+                    }
+                }
+                for (Entity entity : entities) {
+                    store.put(entity.getId(), (TestEntity) entity);
+                }
+                return new ArrayList<>(entities);
+            }
+        }.getMockInstance();
+        manager.dataManager = new MockUp<DataManager>() {
+            @Mock
+            Set<Entity> commit(CommitContext context) {
+                calls.add("delete " + describe(context.getRemoveInstances()));
+                for (Entity entity : context.getRemoveInstances()) {
+                    if (((TestEntity) entity).getStringField().startsWith("referenced")) {
+                        throw new IllegalStateException("Entity is referenced");
+                    }
+                }
+                context.getRemoveInstances().forEach(entity -> store.remove(entity.getId()));
+                return Collections.emptySet();
+            }
+
+            @Mock
+            void remove(Entity entity) {
+                commit(new CommitContext().addInstanceToRemove(entity));
+            }
+        }.getMockInstance();
+    }
+
+    @Test
+    public void testMixedStructuresKeepOrder() throws Exception {
+        TestEntity first = entity("first");
+        List<BatchOperation> operations = Arrays.asList(
+                create(0, first, "name"),
+                update(1, first.getId(), "first updated", "name,int"),
+                create(2, entity("second"), "name"),
+                create(3, entity("third"), "name"));
+
+        manager.executeBatchChunk(operations, null);
+
+        assertEquals(Arrays.asList("import first", "import first updated", "import second,third"), calls);
+        assertEquals(Arrays.asList(HttpStatus.CREATED, HttpStatus.OK, HttpStatus.CREATED, HttpStatus.CREATED),
+                statuses(operations));
+        assertEquals("first updated", store.get(first.getId()).getStringField());
+    }
+
+    @Test
+    public void testItemErrorsAfterGroupFailure() throws Exception {
+        List<BatchOperation> operations = Arrays.asList(
+                create(0, entity("first"), "name"),
+                create(1, entity("invalid"), "name"),
+                update(2, UUID.randomUUID(), "missing", "name"),
+                create(3, entity("third"), "name"));
+
+        manager.executeBatchChunk(operations, null);
+
+        assertEquals(Arrays.asList(HttpStatus.CREATED, HttpStatus.BAD_REQUEST, HttpStatus.NOT_FOUND, HttpStatus.CREATED),
+                statuses(operations));
+        assertEquals(Arrays.asList("import first,invalid,third", "import first", "import invalid", "import third"),
+                calls);
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void testDeleteFailureIsReportedPerItem() throws Exception {
+        TestEntity first = stored("first");
+        TestEntity referenced = stored("referenced");
+        List<BatchOperation> operations = Arrays.asList(
+                delete(0, first.getId()),
+                delete(1, referenced.getId()),
+                delete(2, UUID.randomUUID()));
+
+        manager.executeBatchChunk(operations, null);
+
+        assertEquals(Arrays.asList(HttpStatus.OK, HttpStatus.INTERNAL_SERVER_ERROR, HttpStatus.NOT_FOUND),
+                statuses(operations));
+        assertEquals(Collections.singleton(referenced.getId()), store.keySet());
+    }
+
+    @Test
+    public void testDeleteThenUpdate() throws Exception {
+        TestEntity deleted = stored("deleted");
+        TestEntity kept = stored("kept");
+        List<BatchOperation> operations = Arrays.asList(
+                delete(0, deleted.getId()),
+                update(1, deleted.getId(), "deleted updated", "name"),
+                update(2, kept.getId(), "kept updated", "name"),
+                delete(3, kept.getId()));
+
+        manager.executeBatchChunk(operations, null);
+
+        // the update is checked after the preceding delete is committed and doesn't recreate the entity
+        assertEquals(Arrays.asList(HttpStatus.OK, HttpStatus.NOT_FOUND, HttpStatus.OK, HttpStatus.OK),
+                statuses(operations));
+        assertEquals(Arrays.asList("delete deleted", "import kept updated", "delete kept updated"), calls);
+        assertTrue(store.isEmpty());
+    }
+
+    private TestEntity entity(String name) {
+        TestEntity entity = new TestEntity();
+        entity.setStringField(name);
+        return entity;
+    }
+
+    private TestEntity stored(String name) {
+        TestEntity entity = entity(name);
+        store.put(entity.getId(), entity);
+        return entity;
+    }
+
+    private BatchOperation create(int index, TestEntity entity, String structure) {
+        BatchOperation operation = operation(index, BatchOperationType.CREATE);
+        operation.entity = entity;
+        operation.importViewKey = structure;
+        return operation;
+    }
+
+    private BatchOperation update(int index, UUID id, String name, String structure) {
+        BatchOperation operation = operation(index, BatchOperationType.UPDATE);
+        TestEntity entity = entity(name);
+        entity.setId(id);
+        operation.entity = entity;
+        operation.id = id;
+        operation.entityId = id.toString();
+        operation.importViewKey = structure;
+        return operation;
+    }
+
+    private BatchOperation delete(int index, UUID id) {
+        BatchOperation operation = operation(index, BatchOperationType.DELETE);
+        operation.id = id;
+        operation.entityId = id.toString();
+        return operation;
+    }
+
+    private BatchOperation operation(int index, BatchOperationType type) {
+        BatchOperation operation = new BatchOperation(index);
+        operation.type = type;
+        operation.entityName = metaClass.getName();
+        operation.metaClass = metaClass;
+        return operation;
+    }
+
+    private List<HttpStatus> statuses(List<BatchOperation> operations) {
+        return operations.stream()
+                .map(operation -> operation.status)
+                .collect(Collectors.toList());
+    }
+
+    private String describe(Collection<? extends Entity> entities) {
+        return entities.stream()
+                .map(entity -> ((TestEntity) entity).getStringField())
+                .collect(Collectors.joining(","));
+    }
+}
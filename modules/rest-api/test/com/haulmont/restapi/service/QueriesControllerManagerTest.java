@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.restapi.service;
+
+import com.haulmont.cuba.client.testsupport.CubaClientTestCase;
+import com.haulmont.restapi.config.RestQueriesConfiguration;
+import com.haulmont.restapi.exception.RestAPIException;
+import com.haulmont.restapi.service.QueriesControllerManager.QueryExecutionPlan;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class QueriesControllerManagerTest extends CubaClientTestCase {
+
+    private QueriesControllerManager manager;
+
+    private RestQueriesConfiguration configuration;
+
+    // jpql of the query returned by the configuration when it is loaded, null if there is no query
+    private String jpql = "select u from sec$User u where u.login = :login";
+
+    @Before
+    public void setUp() throws Exception {
+        addEntityPackage("com.haulmont.cuba");
+        setupInfrastructure();
+
+        configuration = new RestQueriesConfiguration() {
+            @Override
+            protected void init() {
+                if (jpql == null) {
+                    return;
+                }
+                QueryInfo queryInfo = new QueryInfo();
+                queryInfo.setName("userByLogin");
+                queryInfo.setEntityName("sec$User");
+                queryInfo.setJpql(jpql);
+                queryInfo.setViewName("_local");
+                queryInfo.setParams(Collections.singletonList(new QueryParamInfo("login", "java.lang.String")));
+                queries.add(queryInfo);
+            }
+        };
+
+        manager = new QueriesControllerManager();
+        manager.restQueriesConfiguration = configuration;
+    }
+
+    @Test
+    public void testPlanIsCached() throws Exception {
+        QueryExecutionPlan plan = manager.getQueryPlan("sec$User", "userByLogin");
+
+        assertEquals(jpql, plan.getJpql());
+        assertEquals("_local", plan.getViewName());
+        assertEquals(1, plan.getParamBinders().size());
+        assertEquals("login", plan.getParamBinders().get(0).getName());
+        assertEquals("admin", plan.getParamBinders().get(0).getConverter().convert("admin"));
+
+        assertSame(plan, manager.getQueryPlan("sec$User", "userByLogin"));
+    }
+
+    @Test
+    public void testPlanIsRefreshedOnReload() throws Exception {
+        QueryExecutionPlan plan = manager.getQueryPlan("sec$User", "userByLogin");
+
+        jpql = "select u from sec$User u where u.login = :login and u.active = true";
+        // the plan is not affected until the configuration is reloaded
+        assertSame(plan, manager.getQueryPlan("sec$User", "userByLogin"));
+
+        configuration.reset();
+
+        QueryExecutionPlan reloadedPlan = manager.getQueryPlan("sec$User", "userByLogin");
+        assertNotSame(plan, reloadedPlan);
+        assertEquals(jpql, reloadedPlan.getJpql());
+        assertNotEquals(plan.getConfigVersion(), reloadedPlan.getConfigVersion());
+
+        assertSame(reloadedPlan, manager.getQueryPlan("sec$User", "userByLogin"));
+    }
+
+    @Test
+    public void testPlanIsRemovedWithQuery() throws Exception {
+        manager.getQueryPlan("sec$User", "userByLogin");
+        assertTrue(manager.queryPlans.containsKey("sec$User.userByLogin"));
+
+        jpql = null;
+        configuration.reset();
+
+        try {
+            manager.getQueryPlan("sec$User", "userByLogin");
+            fail("RestAPIException expected");
+        } catch (RestAPIException e) {
+            assertEquals(HttpStatus.NOT_FOUND, e.getHttpStatus());
+        }
+        assertFalse(manager.queryPlans.containsKey("sec$User.userByLogin"));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.restapi.service;
+
+import com.haulmont.cuba.client.testsupport.CubaClientTestCase;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.restapi.config.RestServicesConfiguration;
+import com.haulmont.restapi.exception.RestAPIException;
+import com.haulmont.restapi.service.ServicesControllerManager.ServiceMethodPlan;
+import mockit.NonStrictExpectations;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ServicesControllerManagerTest extends CubaClientTestCase {
+
+    private static final String SERVICE_NAME = "test_GreetingService";
+
+    private static final List<String> PARAM_NAMES = Collections.singletonList("name");
+
+    private ServicesControllerManager manager;
+
+    private RestServicesConfiguration configuration;
+
+    // name of the service method returned by the configuration when it is loaded, null if there is no method
+    private String methodName = "greet";
+
+    @Before
+    public void setUp() throws Exception {
+        addEntityPackage("com.haulmont.cuba");
+        setupInfrastructure();
+
+        GreetingService service = new GreetingService();
+        new NonStrictExpectations() {
+            {
+                AppBeans.get(SERVICE_NAME); result = service;
+            }
+        };
+
+        configuration = new RestServicesConfiguration() {
+            @Override
+            protected void init() {
+                if (methodName == null) {
+                    return;
+                }
+                RestMethodInfo methodInfo;
+                try {
+                    methodInfo = new RestMethodInfo("greet",
+                            Collections.singletonList(new RestMethodParamInfo("name", "java.lang.String")),
+                            GreetingService.class.getMethod(methodName, String.class));
+                } catch (NoSuchMethodException e) {
+                    throw new RuntimeException(e);
+                }
+                serviceInfosMap.put(SERVICE_NAME,
+                        new RestServiceInfo(SERVICE_NAME, Collections.singletonList(methodInfo)));
+            }
+        };
+
+        manager = new ServicesControllerManager();
+        manager.restServicesConfiguration = configuration;
+    }
+
+    @Test
+    public void testPlanIsCached() throws Throwable {
+        ServiceMethodPlan plan = manager.getServiceMethodPlan(SERVICE_NAME, "greet", PARAM_NAMES);
+
+        assertEquals(ServicesControllerManager.ServiceMethodResultKind.DATATYPE, plan.getResultKind());
+        assertEquals("Hello, John", invoke(plan, "John"));
+
+        assertSame(plan, manager.getServiceMethodPlan(SERVICE_NAME, "greet", PARAM_NAMES));
+    }
+
+    @Test
+    public void testPlanIsRefreshedOnReload() throws Throwable {
+        ServiceMethodPlan plan = manager.getServiceMethodPlan(SERVICE_NAME, "greet", PARAM_NAMES);
+
+        methodName = "greetFormally";
+        // the plan is not affected until the configuration is reloaded
+        assertSame(plan, manager.getServiceMethodPlan(SERVICE_NAME, "greet", PARAM_NAMES));
+
+        configuration.reset();
+
+        ServiceMethodPlan reloadedPlan = manager.getServiceMethodPlan(SERVICE_NAME, "greet", PARAM_NAMES);
+        assertNotSame(plan, reloadedPlan);
+        assertEquals("Good day, John", invoke(reloadedPlan, "John"));
+        assertNotEquals(plan.getConfigVersion(), reloadedPlan.getConfigVersion());
+
+        assertSame(reloadedPlan, manager.getServiceMethodPlan(SERVICE_NAME, "greet", PARAM_NAMES));
+    }
+
+    @Test
+    public void testPlanIsRemovedWithMethod() throws Exception {
+        manager.getServiceMethodPlan(SERVICE_NAME, "greet", PARAM_NAMES);
+        assertEquals(1, manager.methodPlans.size());
+
+        methodName = null;
+        configuration.reset();
+
+        try {
+            manager.getServiceMethodPlan(SERVICE_NAME, "greet", PARAM_NAMES);
+            fail("RestAPIException expected");
+        } catch (RestAPIException e) {
+            assertEquals(HttpStatus.NOT_FOUND, e.getHttpStatus());
+        }
+        assertTrue(manager.methodPlans.isEmpty());
+    }
+
+    private Object invoke(ServiceMethodPlan plan, String value) throws Throwable {
+        Object arg = plan.getParamConverters()[0].convert(value, null);
+        return plan.getMethodHandle().invokeExact(new Object[]{arg});
+    }
+
+    public static class GreetingService {
+
+        public String greet(String name) {
+            return "Hello, " + name;
+        }
+
+        public String greetFormally(String name) {
+            return "Good day, " + name;
+        }
+    }
+}